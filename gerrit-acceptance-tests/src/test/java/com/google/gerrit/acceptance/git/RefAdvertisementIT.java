@@ -22,6 +22,7 @@ import static java.util.stream.Collectors.toList;
 
 import com.google.gerrit.acceptance.AbstractDaemonTest;
 import com.google.gerrit.acceptance.AcceptanceTestRequestScope;
+import com.google.gerrit.acceptance.GerritConfig;
 import com.google.gerrit.acceptance.NoHttpd;
 import com.google.gerrit.acceptance.PushOneCommit;
 import com.google.gerrit.acceptance.TestAccount;
@@ -208,6 +209,32 @@ public class RefAdvertisementIT extends AbstractDaemonTest {
         "refs/tags/master-tag");
   }
 
+  @Test
+  @GerritConfig(name = "cache.change_bitmaps.memoryLimit", value = "1024")
+  public void uploadPackOmitsChangeMadePrivateAfterRefsWereListed() throws Exception {
+    allow("refs/heads/master", Permission.READ, REGISTERED_USERS);
+    deny("refs/heads/branch", Permission.READ, REGISTERED_USERS);
+
+    setApiUser(user);
+    assertUploadPackRefs(
+        "HEAD",
+        r1 + "1",
+        r1 + "meta",
+        r3 + "1",
+        r3 + "meta",
+        "refs/heads/master",
+        "refs/tags/master-tag");
+
+    // Making a change private moves no ref in ReviewDb; only its reindex
+    // tells the cached change bitmaps.
+    setApiUser(admin);
+    gApi.changes().id(c3.getId().get()).setPrivate(true, null);
+
+    setApiUser(user);
+    assertUploadPackRefs(
+        "HEAD", r1 + "1", r1 + "meta", "refs/heads/master", "refs/tags/master-tag");
+  }
+
   @Test
   public void uploadPackSubsetOfBranchesVisibleNotIncludingHead() throws Exception {
     deny("refs/heads/master", Permission.READ, REGISTERED_USERS);
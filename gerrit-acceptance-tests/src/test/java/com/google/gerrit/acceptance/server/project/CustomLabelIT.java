@@ -19,11 +19,14 @@ import static com.google.gerrit.server.group.SystemGroupBackend.ANONYMOUS_USERS;
 import static com.google.gerrit.server.project.Util.category;
 import static com.google.gerrit.server.project.Util.value;
 
+import com.google.common.collect.ImmutableList;
 import com.google.gerrit.acceptance.AbstractDaemonTest;
 import com.google.gerrit.acceptance.NoHttpd;
 import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.LabelType;
 import com.google.gerrit.common.data.Permission;
+import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.extensions.api.changes.AddReviewerInput;
 import com.google.gerrit.extensions.api.changes.ReviewInput;
 import com.google.gerrit.extensions.client.ListChangesOption;
@@ -34,17 +37,32 @@ import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.registration.RegistrationHandle;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.reviewdb.client.AccountGroup;
+import com.google.gerrit.server.account.Emails;
 import com.google.gerrit.server.git.ProjectConfig;
+import com.google.gerrit.server.project.DefaultSubmitRule;
+import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.project.Util;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.testutil.ConfigSuite;
 import com.google.inject.Inject;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 @NoHttpd
 public class CustomLabelIT extends AbstractDaemonTest {
+  @ConfigSuite.Config
+  public static Config prologDefaultRules() {
+    Config cfg = new Config();
+    cfg.setBoolean("rules", null, "nativeDefaultRules", false);
+    return cfg;
+  }
 
   @Inject private DynamicSet<CommentAddedListener> source;
+  @Inject private DefaultSubmitRule defaultSubmitRule;
+  @Inject private Emails emails;
 
   private final LabelType label =
       category("CustomLabel", value(1, "Positive"), value(0, "No score"), value(-1, "Negative"));
@@ -193,6 +211,64 @@ public class CustomLabelIT extends AbstractDaemonTest {
     revision(r).review(in);
   }
 
+  @Test
+  public void defaultSubmitRuleMatchesProlog() throws Exception {
+    for (String function :
+        ImmutableList.of(
+            "MaxWithBlock", "AnyWithBlock", "MaxNoBlock", "NoBlock", "NoOp", "PatchSetLock")) {
+      label.setFunctionName(function);
+      P.setFunctionName(function);
+      saveLabelConfig();
+      for (int value = -1; value <= 1; value++) {
+        PushOneCommit.Result r = createChange();
+        ReviewInput in =
+            new ReviewInput().label(label.getName(), value).label(P.getName(), Math.max(value, 0));
+        if (value > 0) {
+          in.label("Code-Review", 2);
+        }
+        revision(r).review(in);
+        for (boolean fast : new boolean[] {false, true}) {
+          assertThat(evaluate(r, defaultSubmitRule, fast)).isEqualTo(evaluate(r, null, fast));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void defaultSubmitRuleMatchesPrologWithTwoVoters() throws Exception {
+    for (String function :
+        ImmutableList.of(
+            "MaxWithBlock", "AnyWithBlock", "MaxNoBlock", "NoBlock", "NoOp", "PatchSetLock")) {
+      label.setFunctionName(function);
+      P.setFunctionName(function);
+      saveLabelConfig();
+      for (int value : new int[] {-1, 1}) {
+        // Both voters cast the same vote, so the label is applied by whichever
+        // vote the rule looks at first.
+        PushOneCommit.Result r = createChange();
+        ReviewInput in = new ReviewInput().label(label.getName(), value).label(P.getName(), 1);
+        setApiUser(admin);
+        revision(r).review(in);
+        setApiUser(user);
+        revision(r).review(in);
+        setApiUser(admin);
+        for (boolean fast : new boolean[] {false, true}) {
+          assertThat(evaluate(r, defaultSubmitRule, fast)).isEqualTo(evaluate(r, null, fast));
+        }
+      }
+    }
+  }
+
+  private List<SubmitRecord> evaluate(
+      PushOneCommit.Result r, @Nullable DefaultSubmitRule rule, boolean fastEvalLabels)
+      throws Exception {
+    ChangeData cd = changeDataFactory.create(db, project, r.getChange().getId());
+    return new SubmitRuleEvaluator(accountCache, accounts, emails, null, rule, cd)
+        .setFastEvalLabels(fastEvalLabels)
+        .setLogErrors(false)
+        .evaluate();
+  }
+
   private void saveLabelConfig() throws Exception {
     ProjectConfig cfg = projectCache.checkedGet(project).getConfig();
     cfg.getLabelSections().put(label.getName(), label);
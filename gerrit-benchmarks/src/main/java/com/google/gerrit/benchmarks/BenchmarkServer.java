@@ -0,0 +1,206 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.lifecycle.LifecycleManager;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.Sequences;
+import com.google.gerrit.server.account.AccountManager;
+import com.google.gerrit.server.account.AuthRequest;
+import com.google.gerrit.server.change.ChangeInserter;
+import com.google.gerrit.server.git.MetaDataUpdate;
+import com.google.gerrit.server.git.ProjectConfig;
+import com.google.gerrit.server.notedb.MutableNotesMigration;
+import com.google.gerrit.server.notedb.NotesMigrationState;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.schema.SchemaCreator;
+import com.google.gerrit.server.update.BatchUpdate;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.gerrit.testutil.InMemoryDatabase;
+import com.google.gerrit.testutil.InMemoryModule;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
+import com.google.gwtorm.server.SchemaFactory;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.util.Providers;
+import java.util.function.Consumer;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+/**
+ * In-memory Gerrit server shared by the benchmarks.
+ *
+ * <p>Uses the same module as the server tests: ReviewDb in H2, repositories in memory and the
+ * change index in in-memory Lucene directories. Changes are stored in NoteDb only, as on a
+ * migrated site. The server has an administrator, used to set up data, and a regular user.
+ */
+public class BenchmarkServer implements AutoCloseable {
+  public static BenchmarkServer start() throws Exception {
+    return start(InMemoryModule.newDefaultConfig());
+  }
+
+  public static BenchmarkServer start(Config cfg) throws Exception {
+    MutableNotesMigration migration =
+        MutableNotesMigration.newDisabled().setFrom(NotesMigrationState.NOTE_DB);
+    BenchmarkServer server =
+        new BenchmarkServer(Guice.createInjector(new InMemoryModule(cfg, migration)));
+    server.init();
+    return server;
+  }
+
+  @Inject private AccountManager accountManager;
+  @Inject private BatchUpdate.Factory updateFactory;
+  @Inject private ChangeInserter.Factory changeFactory;
+  @Inject private GerritApi gApi;
+  @Inject private IdentifiedUser.GenericFactory userFactory;
+  @Inject private InMemoryDatabase inMemoryDatabase;
+  @Inject private InMemoryRepositoryManager repoManager;
+  @Inject private MetaDataUpdate.Server metaDataUpdateFactory;
+  @Inject private ProjectCache projectCache;
+  @Inject private SchemaCreator schemaCreator;
+  @Inject private SchemaFactory<ReviewDb> schemaFactory;
+  @Inject private Sequences seq;
+  @Inject private ThreadLocalRequestContext requestContext;
+
+  private final Injector injector;
+  private final LifecycleManager lifecycle;
+  private ReviewDb db;
+  private IdentifiedUser admin;
+  private IdentifiedUser user;
+
+  private BenchmarkServer(Injector injector) {
+    this.injector = injector;
+    this.lifecycle = new LifecycleManager();
+  }
+
+  private void init() throws Exception {
+    lifecycle.add(injector);
+    injector.injectMembers(this);
+    lifecycle.start();
+    try (ReviewDb underlyingDb = inMemoryDatabase.getDatabase().open()) {
+      schemaCreator.create(underlyingDb);
+    }
+    db = schemaFactory.open();
+
+    // The first account becomes an administrator.
+    admin = userFactory.create(authenticate("admin"));
+    user = userFactory.create(authenticate("user"));
+    setContext(admin);
+  }
+
+  private Account.Id authenticate(String username) throws Exception {
+    return accountManager.authenticate(AuthRequest.forUser(username)).getAccountId();
+  }
+
+  public <T> T getInstance(Class<T> type) {
+    return injector.getInstance(type);
+  }
+
+  public <T> Provider<T> getProvider(Class<T> type) {
+    return injector.getProvider(type);
+  }
+
+  public GerritApi api() {
+    return gApi;
+  }
+
+  public ReviewDb db() {
+    return db;
+  }
+
+  public IdentifiedUser admin() {
+    return admin;
+  }
+
+  public IdentifiedUser user() {
+    return user;
+  }
+
+  /**
+   * Set the user of the current thread.
+   *
+   * <p>JMH may run setup and benchmark methods on different threads; benchmarks depending on the
+   * current user call this from a per-iteration setup method.
+   */
+  public void setContext(CurrentUser currentUser) {
+    requestContext.setContext(
+        new RequestContext() {
+          @Override
+          public CurrentUser getUser() {
+            return currentUser;
+          }
+
+          @Override
+          public Provider<ReviewDb> getReviewDbProvider() {
+            return Providers.of(db);
+          }
+        });
+  }
+
+  public TestRepository<Repo> createProject(String name) throws Exception {
+    gApi.projects().create(name).get();
+    return new TestRepository<>(repoManager.openRepository(new Project.NameKey(name)));
+  }
+
+  public void updateProjectConfig(Project.NameKey project, Consumer<ProjectConfig> update)
+      throws Exception {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(project)) {
+      ProjectConfig cfg = ProjectConfig.read(md);
+      update.accept(cfg);
+      cfg.commit(md);
+    }
+    projectCache.evict(project);
+  }
+
+  public Change createChange(TestRepository<Repo> repo) throws Exception {
+    return createChange(repo, repo.parseBody(repo.commit().message("message").create()));
+  }
+
+  public Change createChange(TestRepository<Repo> repo, RevCommit commit) throws Exception {
+    Project.NameKey project =
+        new Project.NameKey(repo.getRepository().getDescription().getRepositoryName());
+    ChangeInserter ins =
+        changeFactory
+            .create(new Change.Id(seq.nextChangeId()), commit, "refs/heads/master")
+            .setValidate(false);
+    try (BatchUpdate bu = updateFactory.create(db, project, admin, TimeUtil.nowTs())) {
+      bu.insertChange(ins);
+      bu.execute();
+      return ins.getChange();
+    }
+  }
+
+  @Override
+  public void close() {
+    lifecycle.stop();
+    requestContext.setContext(null);
+    if (db != null) {
+      db.close();
+    }
+    InMemoryDatabase.drop(inMemoryDatabase);
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.client.ListChangesOption;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryResult;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.change.ChangeJson;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.junit.TestRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formats a page of query results, as returned by {@code GET /changes/}.
+ *
+ * <p>Each invocation starts from new {@link ChangeData} instances, like a new query, so loading
+ * the notes and computing labels is included in the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChangeJsonBenchmark {
+  @Param({"100"})
+  public int changes;
+
+  @Param({
+    "NONE",
+    "LABELS,DETAILED_ACCOUNTS",
+    "LABELS,DETAILED_ACCOUNTS,CURRENT_REVISION,CURRENT_COMMIT,SUBMITTABLE"
+  })
+  public String options;
+
+  private BenchmarkServer server;
+  private ChangeJson json;
+  private ChangeData.Factory changeDataFactory;
+  private List<Change> changeList;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    Project.NameKey project = new Project.NameKey("json");
+    TestRepository<Repo> repo = server.createProject(project.get());
+    changeList = new ArrayList<>(changes);
+    for (int i = 0; i < changes; i++) {
+      Change change = server.createChange(repo);
+      server
+          .api()
+          .changes()
+          .id(change.getId().get())
+          .current()
+          .review(ReviewInput.recommend().message("looks good"));
+      changeList.add(change);
+    }
+
+    EnumSet<ListChangesOption> opts = EnumSet.noneOf(ListChangesOption.class);
+    if (!options.equals("NONE")) {
+      for (String o : Splitter.on(',').split(options)) {
+        opts.add(ListChangesOption.valueOf(o));
+      }
+    }
+    json = server.getInstance(ChangeJson.Factory.class).create(opts);
+    changeDataFactory = server.getInstance(ChangeData.Factory.class);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUser() {
+    server.setContext(server.user());
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public List<List<ChangeInfo>> format() {
+    List<ChangeData> cds = new ArrayList<>(changeList.size());
+    for (Change change : changeList) {
+      cds.add(changeDataFactory.create(server.db(), change));
+    }
+    List<List<ChangeInfo>> result =
+        json.formatQueryResults(
+            ImmutableList.of(QueryResult.create(null, Predicate.any(), cds.size(), cds)));
+    // Results are formatted lazily while they are written out.
+    result.get(0).size();
+    return result;
+  }
+}
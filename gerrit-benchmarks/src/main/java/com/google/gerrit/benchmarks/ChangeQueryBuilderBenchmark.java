@@ -0,0 +1,83 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.index.IndexConfig;
+import com.google.gerrit.index.QueryOptions;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.server.index.change.ChangeIndexRewriter;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.inject.Provider;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parses a change query and rewrites it into index predicates, without running it. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChangeQueryBuilderBenchmark {
+  @Param({
+    "status:open project:foo branch:master",
+    "is:open owner:self -is:wip",
+    "(label:Code-Review=+2 OR label:Verified=+1) status:open -age:1w",
+    "status:open (project:foo OR project:bar OR project:baz) (file:^src/.* OR topic:q)"
+  })
+  public String query;
+
+  private BenchmarkServer server;
+  private Provider<ChangeQueryBuilder> queryBuilder;
+  private ChangeIndexRewriter rewriter;
+  private QueryOptions opts;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    queryBuilder = server.getProvider(ChangeQueryBuilder.class);
+    rewriter = server.getInstance(ChangeIndexRewriter.class);
+    opts = QueryOptions.create(server.getInstance(IndexConfig.class), 0, 100, ImmutableSet.of());
+  }
+
+  @Setup(Level.Iteration)
+  public void setUser() {
+    server.setContext(server.user());
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public Predicate<ChangeData> parseAndRewrite() throws Exception {
+    return rewriter.rewrite(queryBuilder.get().parse(query), opts);
+  }
+}
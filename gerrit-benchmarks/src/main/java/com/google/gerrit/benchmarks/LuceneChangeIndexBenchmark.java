@@ -0,0 +1,105 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.index.change.ChangeIndex;
+import com.google.gerrit.server.index.change.ChangeIndexCollection;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.InternalChangeQuery;
+import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
+import com.google.inject.Provider;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.junit.TestRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes changes to and queries the Lucene change index.
+ *
+ * <p>{@link #replace()} reindexes already loaded changes in turn, so it measures building and
+ * writing the document rather than reading NoteDb. {@link #query()} reads a page of open changes
+ * of the project, as the dashboard and {@code ls-changes} style queries do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LuceneChangeIndexBenchmark {
+  @Param({"1000"})
+  public int changes;
+
+  @Param({"100"})
+  public int limit;
+
+  private BenchmarkServer server;
+  private Project.NameKey project;
+  private ChangeIndex index;
+  private Provider<InternalChangeQuery> queryProvider;
+  private ChangeData[] changeData;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    project = new Project.NameKey("index");
+    TestRepository<Repo> repo = server.createProject(project.get());
+    ChangeData.Factory changeDataFactory = server.getInstance(ChangeData.Factory.class);
+    changeData = new ChangeData[changes];
+    for (int i = 0; i < changes; i++) {
+      Change change = server.createChange(repo);
+      changeData[i] = changeDataFactory.create(server.db(), change);
+    }
+
+    index = server.getInstance(ChangeIndexCollection.class).getSearchIndex();
+    queryProvider = server.getProvider(InternalChangeQuery.class);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUser() {
+    server.setContext(server.admin());
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public void replace() throws Exception {
+    index.replace(changeData[next]);
+    next = (next + 1) % changeData.length;
+  }
+
+  @Benchmark
+  public List<ChangeData> query() throws Exception {
+    return queryProvider.get().setLimit(limit).byProjectOpen(project);
+  }
+}
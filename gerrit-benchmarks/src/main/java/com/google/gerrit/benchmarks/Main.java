@@ -0,0 +1,41 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with JMH.
+ *
+ * <p>All arguments are passed to JMH, e.g. a regular expression selecting benchmarks or {@code -p
+ * name=value} to override parameters. Unless another result format is requested, results are
+ * written as JSON to {@code jmh-result.json} in the directory the command was started from.
+ */
+public class Main {
+  public static void main(String[] args) throws Exception {
+    List<String> argv = new ArrayList<>(Arrays.asList(args));
+    if (!argv.contains("-rf")) {
+      // Set by "bazel run"; the process itself runs in the runfiles tree.
+      String cwd = System.getenv("BUILD_WORKING_DIRECTORY");
+      Path out = Paths.get(cwd != null ? cwd : "").toAbsolutePath().resolve("jmh-result.json");
+      argv.addAll(Arrays.asList("-rf", "json", "-rff", out.toString()));
+    }
+    org.openjdk.jmh.Main.main(argv.toArray(new String[argv.size()]));
+  }
+}
@@ -0,0 +1,117 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.patch.PatchList;
+import com.google.gerrit.server.patch.PatchListKey;
+import com.google.gerrit.server.patch.PatchListLoader;
+import com.google.gerrit.testutil.InMemoryModule;
+import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computes the file list of a commit that modifies many files, bypassing the patch list cache.
+ *
+ * <p>Every file of the parent has a few hundred lines; the commit changes one line in each block of
+ * twenty, so each file has several edit regions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PatchListLoaderBenchmark {
+  @Param({"10", "100", "1000"})
+  public int files;
+
+  @Param({"200"})
+  public int lines;
+
+  @Param({"1", "8"})
+  public int threads;
+
+  private BenchmarkServer server;
+  private Project.NameKey project;
+  private PatchListLoader.Factory loaderFactory;
+  private PatchListKey key;
+
+  @Setup
+  public void setUp() throws Exception {
+    Config cfg = InMemoryModule.newDefaultConfig();
+    cfg.setInt("cache", "diff", "threads", threads);
+    server = BenchmarkServer.start(cfg);
+    project = new Project.NameKey("diffs");
+    TestRepository<Repo> repo = server.createProject(project.get());
+
+    TestRepository<Repo>.CommitBuilder base = repo.branch("refs/heads/master").commit();
+    for (int i = 0; i < files; i++) {
+      base.add(path(i), content(i, false));
+    }
+    RevCommit parent = base.message("base").create();
+
+    TestRepository<Repo>.CommitBuilder tip = repo.commit().parent(parent);
+    for (int i = 0; i < files; i++) {
+      tip.add(path(i), content(i, true));
+    }
+    RevCommit commit = repo.parseBody(tip.message("modify all files").create());
+
+    loaderFactory = server.getInstance(PatchListLoader.Factory.class);
+    key = PatchListKey.againstCommit(parent, commit, Whitespace.IGNORE_NONE);
+  }
+
+  private static String path(int i) {
+    return "src/dir-" + (i % 10) + "/File" + i + ".java";
+  }
+
+  private String content(int file, boolean modified) {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      b.append("line ").append(i).append(" of file ").append(file);
+      if (modified && i % 20 == 10) {
+        b.append(" (modified)");
+      }
+      b.append('\n');
+    }
+    return b.toString();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public PatchList load() throws Exception {
+    return loaderFactory.create(key, project).call();
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import static com.google.gerrit.server.group.SystemGroupBackend.REGISTERED_USERS;
+
+import com.google.gerrit.common.data.Permission;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.RefPermission;
+import com.google.gerrit.server.project.Util;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves ref permissions of a project with many access sections.
+ *
+ * <p>Each invocation starts from a new project-level permission check, so the sections matching
+ * each ref are sorted and collected again, like in a new request. The project state itself comes
+ * from the project cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProjectPermissionBenchmark {
+  @Param({"10", "100"})
+  public int sections;
+
+  @Param({"100"})
+  public int refs;
+
+  private BenchmarkServer server;
+  private Project.NameKey project;
+  private PermissionBackend permissionBackend;
+  private String[] refNames;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    project = new Project.NameKey("permissions");
+    server.createProject(project.get());
+    server.updateProjectConfig(
+        project,
+        cfg -> {
+          for (int i = 0; i < sections; i++) {
+            String ref = "refs/heads/team-" + i + "/*";
+            Util.allow(cfg, Permission.READ, REGISTERED_USERS, ref);
+            Util.allow(cfg, Permission.PUSH, REGISTERED_USERS, "refs/for/" + ref);
+          }
+          Util.block(cfg, Permission.READ, REGISTERED_USERS, "refs/heads/team-0/secret/*");
+        });
+
+    refNames = new String[refs];
+    for (int i = 0; i < refs; i++) {
+      refNames[i] = "refs/heads/team-" + (i % sections) + "/branch-" + i;
+    }
+    permissionBackend = server.getInstance(PermissionBackend.class);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUser() {
+    server.setContext(server.user());
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public int canRead() throws Exception {
+    PermissionBackend.ForProject perm = permissionBackend.user(server.user()).project(project);
+    int readable = 0;
+    for (String ref : refNames) {
+      if (perm.ref(ref).test(RefPermission.READ)) {
+        readable++;
+      }
+    }
+    return readable;
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmarks;
+
+import static com.google.gerrit.server.group.SystemGroupBackend.REGISTERED_USERS;
+
+import com.google.gerrit.common.data.Permission;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.git.VisibleRefFilter;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.project.Util;
+import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filters all refs of a large repository for a regular user, as done for every fetch.
+ *
+ * <p>Besides the refs of real changes, the repository has branches and tags pointing to one
+ * commit. A quarter of the branches are not readable, so refs are checked one by one instead of
+ * taking the shortcut for users who can see everything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VisibleRefFilterBenchmark {
+  @Param({"100000"})
+  public int refs;
+
+  @Param({"1000"})
+  public int changes;
+
+  private BenchmarkServer server;
+  private Repository repo;
+  private ProjectState projectState;
+  private VisibleRefFilter.Factory filterFactory;
+  private Map<String, Ref> all;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    Project.NameKey project = new Project.NameKey("refs");
+    TestRepository<Repo> testRepo = server.createProject(project.get());
+    for (int i = 0; i < changes; i++) {
+      server.createChange(testRepo);
+    }
+    server.updateProjectConfig(
+        project, cfg -> Util.block(cfg, Permission.READ, REGISTERED_USERS, "refs/heads/hidden/*"));
+
+    repo = testRepo.getRepository();
+    RevCommit commit = testRepo.commit().message("branch").create();
+    BatchRefUpdate bru = repo.getRefDatabase().newBatchUpdate();
+    for (int i = repo.getAllRefs().size(); i < refs; i++) {
+      String name;
+      switch (i % 4) {
+        case 0:
+          name = "refs/heads/hidden/branch-" + i;
+          break;
+        case 1:
+          name = "refs/tags/tag-" + i;
+          break;
+        default:
+          name = "refs/heads/branch-" + i;
+          break;
+      }
+      bru.addCommand(new ReceiveCommand(ObjectId.zeroId(), commit, name));
+    }
+    try (RevWalk rw = new RevWalk(repo)) {
+      bru.execute(rw, NullProgressMonitor.INSTANCE);
+    }
+
+    all = repo.getAllRefs();
+    projectState = server.getInstance(ProjectCache.class).checkedGet(project);
+    filterFactory = server.getInstance(VisibleRefFilter.Factory.class);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUser() {
+    server.setContext(server.user());
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public Map<String, Ref> filter() {
+    return filterFactory.create(projectState, repo).filter(all, false);
+  }
+}
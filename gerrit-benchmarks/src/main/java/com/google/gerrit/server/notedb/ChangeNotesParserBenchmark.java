@@ -0,0 +1,111 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.notedb;
+
+import com.google.gerrit.benchmarks.BenchmarkServer;
+import com.google.gerrit.extensions.api.changes.ChangeApi;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.notedb.ChangeNotesCommit.ChangeNotesRevWalk;
+import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the NoteDb history of a change, bypassing the {@link ChangeNotesCache}.
+ *
+ * <p>The history alternates between reviews with a vote and a message, and topic changes. The
+ * incremental variant parses only the last update, on top of the state of its parent commit, as
+ * done after a change is updated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChangeNotesParserBenchmark {
+  @Param({"10", "100", "1000"})
+  public int updates;
+
+  private BenchmarkServer server;
+  private Repository repo;
+  private Change.Id changeId;
+  private ObjectId tip;
+  private ChangeNoteUtil noteUtil;
+  private NoteDbMetrics metrics;
+  private ChangeNotesParser.Checkpoint parent;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServer.start();
+    TestRepository<Repo> testRepo = server.createProject("notes");
+    changeId = server.createChange(testRepo).getId();
+    ChangeApi change = server.api().changes().id(changeId.get());
+    for (int i = 0; i < updates; i++) {
+      if (i % 2 == 0) {
+        change.current().review(ReviewInput.recommend().message("Review " + i));
+      } else {
+        change.topic("topic-" + i);
+      }
+    }
+
+    repo = testRepo.getRepository();
+    tip = repo.exactRef(RefNames.changeMetaRef(changeId)).getObjectId();
+    noteUtil = server.getInstance(ChangeNoteUtil.class);
+    metrics = server.getInstance(NoteDbMetrics.class);
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      ChangeNotesParser parser =
+          new ChangeNotesParser(
+              changeId, walk.parseCommit(tip).getParent(0), walk, noteUtil, metrics);
+      parser.parseAll();
+      parent = parser.getCheckpoint();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public ChangeNotesState parse() throws Exception {
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      return new ChangeNotesParser(changeId, tip, walk, noteUtil, metrics).parseAll();
+    }
+  }
+
+  @Benchmark
+  public ChangeNotesState parseIncremental() throws Exception {
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      return new ChangeNotesParser(changeId, tip, walk, noteUtil, metrics, parent).parseAll();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import com.google.common.cache.Cache;
+import com.google.gerrit.server.cache.PersistentCache.DiskStats;
+import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
+
+/**
+ * On-disk tier of a {@link H2CacheImpl}.
+ *
+ * <p>Implementations must be safe for concurrent use. Writes are normally issued from the disk
+ * cache store thread, reads from any request thread.
+ */
+interface DiskStore<K, V> {
+  /** Kind of store backing a persistent cache, configured by {@code cache.<name>.diskType}. */
+  enum Type {
+    /** H2 database with one table per cache. */
+    H2,
+
+    /** Append-only, memory-mapped segment files with an in-memory index. */
+    SEGMENT;
+  }
+
+  void open();
+
+  void close();
+
+  /** @return false if the key is definitely not stored; true if it may be stored. */
+  boolean mightContain(K key);
+
+  ValueHolder<V> getIfPresent(K key);
+
+  void put(K key, ValueHolder<V> holder);
+
+  void invalidate(K key);
+
+  void invalidateAll();
+
+  /**
+   * Trim the store to its configured disk limit.
+   *
+   * @param mem in-memory tier; entries still held in memory are retained if possible.
+   */
+  void prune(Cache<K, ?> mem);
+
+  DiskStats diskStats();
+}
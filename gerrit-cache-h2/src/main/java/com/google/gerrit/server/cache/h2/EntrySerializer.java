@@ -0,0 +1,98 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import com.google.gerrit.server.cache.CacheBinding;
+import com.google.gerrit.server.cache.CacheSerializer;
+import com.google.gerrit.server.cache.JavaCacheSerializer;
+import com.google.gerrit.server.cache.PersistentCache.DiskStats;
+
+/**
+ * Key and value serializers of one persistent cache.
+ *
+ * <p>Types without a bound {@link CacheSerializer} use Java serialization. Time spent in the
+ * serializers is accumulated in {@link SerializationStats} and reported through {@link
+ * DiskStats}.
+ */
+class EntrySerializer<K, V> {
+  static <K, V> EntrySerializer<K, V> create(CacheBinding<K, V> def) {
+    return new EntrySerializer<>(
+        def.keySerializer() != null
+            ? def.keySerializer()
+            : new JavaCacheSerializer<>(def.keyType().getRawType().getClassLoader()),
+        def.valueSerializer() != null
+            ? def.valueSerializer()
+            : new JavaCacheSerializer<>(def.valueType().getRawType().getClassLoader()),
+        def.version());
+  }
+
+  private final CacheSerializer<K> keySerializer;
+  private final CacheSerializer<V> valueSerializer;
+  private final int version;
+  private final SerializationStats stats = new SerializationStats();
+
+  EntrySerializer(
+      CacheSerializer<K> keySerializer, CacheSerializer<V> valueSerializer, int version) {
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.version = version;
+  }
+
+  int version() {
+    return version;
+  }
+
+  SerializationStats stats() {
+    return stats;
+  }
+
+  byte[] serializeKey(K key) {
+    return serialize(keySerializer, key);
+  }
+
+  byte[] serializeValue(V value) {
+    return serialize(valueSerializer, value);
+  }
+
+  K deserializeKey(byte[] in) {
+    return deserialize(keySerializer, in);
+  }
+
+  V deserializeValue(byte[] in) {
+    return deserialize(valueSerializer, in);
+  }
+
+  DiskStats diskStats(long size, long space, long hitCount, long missCount) {
+    return stats.diskStats(size, space, hitCount, missCount);
+  }
+
+  private <T> byte[] serialize(CacheSerializer<T> serializer, T object) {
+    long start = System.nanoTime();
+    try {
+      return serializer.serialize(object);
+    } finally {
+      stats.serialized(start);
+    }
+  }
+
+  private <T> T deserialize(CacheSerializer<T> serializer, byte[] in) {
+    long start = System.nanoTime();
+    try {
+      return serializer.deserialize(in);
+    } finally {
+      stats.deserialized(start);
+    }
+  }
+}
@@ -30,7 +30,6 @@ import com.google.gerrit.server.plugins.Plugin;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
-import com.google.inject.TypeLiteral;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -161,8 +160,7 @@ class H2CacheFactory implements PersistentCacheFactory, LifecycleListener {
       return defaultFactory.build(def);
     }
 
-    SqlStore<K, V> store =
-        newSqlStore(def.name(), def.keyType(), limit, def.expireAfterWrite(TimeUnit.SECONDS));
+    DiskStore<K, V> store = newStore(def, limit);
     H2CacheImpl<K, V> cache =
         new H2CacheImpl<>(
             executor,
@@ -184,8 +182,7 @@ class H2CacheFactory implements PersistentCacheFactory, LifecycleListener {
       return defaultFactory.build(def, loader);
     }
 
-    SqlStore<K, V> store =
-        newSqlStore(def.name(), def.keyType(), limit, def.expireAfterWrite(TimeUnit.SECONDS));
+    DiskStore<K, V> store = newStore(def, limit);
     Cache<K, ValueHolder<V>> mem =
         (Cache<K, ValueHolder<V>>)
             defaultFactory
@@ -209,10 +206,42 @@ class H2CacheFactory implements PersistentCacheFactory, LifecycleListener {
     }
   }
 
-  private <V, K> SqlStore<K, V> newSqlStore(
-      String name, TypeLiteral<K> keyType, long maxSize, Long expireAfterWrite) {
+  private <K, V> DiskStore<K, V> newStore(CacheBinding<K, V> def, long maxSize) {
+    Long expireAfterWrite = def.expireAfterWrite(TimeUnit.SECONDS);
+    long expire = expireAfterWrite == null ? 0 : expireAfterWrite.longValue();
+    DiskStore.Type type =
+        config.getEnum(
+            "cache",
+            def.name(),
+            "diskType",
+            config.getEnum("cache", null, "diskType", DiskStore.Type.H2));
+    switch (type) {
+      case SEGMENT:
+        return newSegmentStore(def, maxSize, expire);
+      case H2:
+      default:
+        return newSqlStore(def, maxSize, expire);
+    }
+  }
+
+  private <K, V> SegmentStore<K, V> newSegmentStore(
+      CacheBinding<K, V> def, long maxSize, long expireAfterWrite) {
+    long segmentSize = config.getLong("cache", def.name(), "segmentSize", 64 << 20);
+    int stripes = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+    return new SegmentStore<>(
+        cacheDir.resolve(def.name() + ".segments"),
+        EntrySerializer.create(def),
+        maxSize,
+        expireAfterWrite,
+        segmentSize,
+        stripes,
+        cleanup);
+  }
+
+  private <K, V> SqlStore<K, V> newSqlStore(
+      CacheBinding<K, V> def, long maxSize, long expireAfterWrite) {
     StringBuilder url = new StringBuilder();
-    url.append("jdbc:h2:").append(cacheDir.resolve(name).toUri());
+    url.append("jdbc:h2:").append(cacheDir.resolve(def.name()).toUri());
     if (h2CacheSize >= 0) {
       url.append(";CACHE_SIZE=");
       // H2 CACHE_SIZE is always given in KB
@@ -221,10 +250,9 @@ class H2CacheFactory implements PersistentCacheFactory, LifecycleListener {
     if (h2AutoServer) {
       url.append(";AUTO_SERVER=TRUE");
     }
-    return new SqlStore<>(
-        url.toString(),
-        keyType,
-        maxSize,
-        expireAfterWrite == null ? 0 : expireAfterWrite.longValue());
+    if (def.keySerializer() != null || def.valueSerializer() != null) {
+      return new SqlStore<>(url.toString(), EntrySerializer.create(def), maxSize, expireAfterWrite);
+    }
+    return new SqlStore<>(url.toString(), def.keyType(), maxSize, expireAfterWrite);
   }
 }
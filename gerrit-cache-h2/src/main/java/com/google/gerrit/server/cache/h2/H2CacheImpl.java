@@ -55,7 +55,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Hybrid in-memory and database backed cache built on H2.
+ * Hybrid in-memory and disk backed cache.
  *
  * <p>This cache can be used as either a recall cache, or a loading cache if a CacheLoader was
  * supplied to its constructor at build time. Before creating an entry the in-memory cache is
@@ -63,6 +63,9 @@ import org.slf4j.LoggerFactory;
  * construct the item. This is mostly useful for CacheLoaders that are computationally intensive,
  * such as the PatchListCache.
  *
+ * <p>The disk tier is a {@link DiskStore}; by default an H2 database ({@link SqlStore}), or
+ * segment files ({@link SegmentStore}) if configured for the cache.
+ *
  * <p>Cache stores and invalidations are performed on a background thread, hiding the latency
  * associated with serializing the key and value pairs and writing them to the database log.
  *
@@ -82,13 +85,13 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       ImmutableSet.of("com.google.gerrit.server.change.ChangeKind");
 
   private final Executor executor;
-  private final SqlStore<K, V> store;
+  private final DiskStore<K, V> store;
   private final TypeLiteral<K> keyType;
   private final Cache<K, ValueHolder<V>> mem;
 
   H2CacheImpl(
       Executor executor,
-      SqlStore<K, V> store,
+      DiskStore<K, V> store,
       TypeLiteral<K> keyType,
       Cache<K, ValueHolder<V>> mem) {
     this.executor = executor;
@@ -229,10 +232,10 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
 
   static class Loader<K, V> extends CacheLoader<K, ValueHolder<V>> {
     private final Executor executor;
-    private final SqlStore<K, V> store;
+    private final DiskStore<K, V> store;
     private final CacheLoader<K, V> loader;
 
-    Loader(Executor executor, SqlStore<K, V> store, CacheLoader<K, V> loader) {
+    Loader(Executor executor, DiskStore<K, V> store, CacheLoader<K, V> loader) {
       this.executor = executor;
       this.store = store;
       this.loader = loader;
@@ -285,14 +288,65 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
     }
 
     @SuppressWarnings("unchecked")
-    static <K> KeyType<K> create(TypeLiteral<K> type) {
+    static <K> KeyType<K> create(TypeLiteral<K> type, SerializationStats stats) {
       if (type.getRawType() == String.class) {
         return (KeyType<K>) STRING;
       }
-      return (KeyType<K>) OTHER;
+      // H2 serializes Java objects inside setObject and deserializes them inside getObject.
+      return new KeyType<K>() {
+        @Override
+        K get(ResultSet rs, int col) throws SQLException {
+          long start = System.nanoTime();
+          try {
+            return super.get(rs, col);
+          } finally {
+            stats.deserialized(start);
+          }
+        }
+
+        @Override
+        void set(PreparedStatement ps, int col, K value) throws SQLException {
+          long start = System.nanoTime();
+          try {
+            super.set(ps, col, value);
+          } finally {
+            stats.serialized(start);
+          }
+        }
+      };
+    }
+
+    static <K> KeyType<K> create(EntrySerializer<K, ?> serializer) {
+      return new KeyType<K>() {
+        @Override
+        String columnType() {
+          return "VARBINARY";
+        }
+
+        @Override
+        K get(ResultSet rs, int col) throws SQLException {
+          return serializer.deserializeKey(rs.getBytes(col));
+        }
+
+        @Override
+        void set(PreparedStatement ps, int col, K value) throws SQLException {
+          ps.setBytes(col, serializer.serializeKey(value));
+        }
+
+        @Override
+        Funnel<K> funnel() {
+          return new Funnel<K>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void funnel(K from, PrimitiveSink into) {
+              into.putBytes(serializer.serializeKey(from));
+            }
+          };
+        }
+      };
     }
 
-    static final KeyType<?> OTHER = new KeyType<>();
     static final KeyType<String> STRING =
         new KeyType<String>() {
           @Override
@@ -319,9 +373,20 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
         };
   }
 
-  static class SqlStore<K, V> {
+  /**
+   * Disk store in an H2 database.
+   *
+   * <p>Without an {@link EntrySerializer} keys and values are stored as Java objects in table
+   * {@code data}. With a serializer they are stored as bytes in table {@code entries}, along with
+   * the version of the serialized format; a leftover {@code data} table is dropped. Time spent in
+   * either kind of serialization is reported through {@link #diskStats()}.
+   */
+  static class SqlStore<K, V> implements DiskStore<K, V> {
     private final String url;
     private final KeyType<K> keyType;
+    private final EntrySerializer<K, V> serializer;
+    private final SerializationStats stats;
+    private final String table;
     private final long maxSize;
     private final long expireAfterWrite;
     private final BlockingQueue<SqlHandle> handles;
@@ -331,8 +396,41 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
     private int estimatedSize;
 
     SqlStore(String jdbcUrl, TypeLiteral<K> keyType, long maxSize, long expireAfterWrite) {
+      this(jdbcUrl, keyType, new SerializationStats(), maxSize, expireAfterWrite);
+    }
+
+    SqlStore(
+        String jdbcUrl, EntrySerializer<K, V> serializer, long maxSize, long expireAfterWrite) {
+      this(
+          jdbcUrl,
+          KeyType.create(serializer),
+          serializer,
+          serializer.stats(),
+          maxSize,
+          expireAfterWrite);
+    }
+
+    private SqlStore(
+        String jdbcUrl,
+        TypeLiteral<K> keyType,
+        SerializationStats stats,
+        long maxSize,
+        long expireAfterWrite) {
+      this(jdbcUrl, KeyType.create(keyType, stats), null, stats, maxSize, expireAfterWrite);
+    }
+
+    private SqlStore(
+        String jdbcUrl,
+        KeyType<K> keyType,
+        EntrySerializer<K, V> serializer,
+        SerializationStats stats,
+        long maxSize,
+        long expireAfterWrite) {
       this.url = jdbcUrl;
-      this.keyType = KeyType.create(keyType);
+      this.keyType = keyType;
+      this.serializer = serializer;
+      this.stats = stats;
+      this.table = serializer != null ? "entries" : "data";
       this.maxSize = maxSize;
       this.expireAfterWrite = expireAfterWrite;
 
@@ -341,20 +439,23 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       this.handles = new ArrayBlockingQueue<>(keep);
     }
 
-    synchronized void open() {
+    @Override
+    public synchronized void open() {
       if (bloomFilter == null) {
         bloomFilter = buildBloomFilter();
       }
     }
 
-    void close() {
+    @Override
+    public void close() {
       SqlHandle h;
       while ((h = handles.poll()) != null) {
         h.close();
       }
     }
 
-    boolean mightContain(K key) {
+    @Override
+    public boolean mightContain(K key) {
       BloomFilter<K> b = bloomFilter;
       if (b == null) {
         synchronized (this) {
@@ -373,14 +474,17 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       try {
         c = acquire();
         try (Statement s = c.conn.createStatement()) {
+          if (serializer != null) {
+            s.executeUpdate("DELETE FROM entries WHERE version<>" + serializer.version());
+          }
           if (estimatedSize <= 0) {
-            try (ResultSet r = s.executeQuery("SELECT COUNT(*) FROM data")) {
+            try (ResultSet r = s.executeQuery("SELECT COUNT(*) FROM " + table)) {
               estimatedSize = r.next() ? r.getInt(1) : 0;
             }
           }
 
           BloomFilter<K> b = newBloomFilter();
-          try (ResultSet r = s.executeQuery("SELECT k FROM data")) {
+          try (ResultSet r = s.executeQuery("SELECT k FROM " + table)) {
             while (r.next()) {
               b.put(keyType.get(r, 1));
             }
@@ -395,6 +499,9 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
             } else {
               throw e;
             }
+          } catch (IllegalArgumentException e) {
+            log.warn("Entries cached for " + url + " can't be deserialized. Cache is flushed.");
+            invalidateAll();
           }
           return b;
         }
@@ -407,12 +514,13 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       }
     }
 
-    ValueHolder<V> getIfPresent(K key) {
+    @Override
+    public ValueHolder<V> getIfPresent(K key) {
       SqlHandle c = null;
       try {
         c = acquire();
         if (c.get == null) {
-          c.get = c.conn.prepareStatement("SELECT v, created FROM data WHERE k=?");
+          c.get = c.conn.prepareStatement("SELECT v, created FROM " + table + " WHERE k=?");
         }
         keyType.set(c.get, 1, key);
         try (ResultSet r = c.get.executeQuery()) {
@@ -428,9 +536,7 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
             return null;
           }
 
-          @SuppressWarnings("unchecked")
-          V val = (V) r.getObject(1);
-          ValueHolder<V> h = new ValueHolder<>(val);
+          ValueHolder<V> h = new ValueHolder<>(getValue(r, 1));
           h.clean = true;
           hitCount.incrementAndGet();
           touch(c, key);
@@ -444,6 +550,10 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
         }
         c = close(c);
         return null;
+      } catch (IllegalArgumentException e) {
+        log.warn("Cannot deserialize cache " + url + " for " + key, e);
+        missCount.incrementAndGet();
+        return null;
       } finally {
         release(c);
       }
@@ -458,6 +568,19 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       return false;
     }
 
+    @SuppressWarnings("unchecked")
+    private V getValue(ResultSet r, int col) throws SQLException {
+      if (serializer != null) {
+        return serializer.deserializeValue(r.getBytes(col));
+      }
+      long start = System.nanoTime();
+      try {
+        return (V) r.getObject(col);
+      } finally {
+        stats.deserialized(start);
+      }
+    }
+
     private boolean expired(Timestamp created) {
       if (expireAfterWrite == 0) {
         return false;
@@ -468,7 +591,7 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
 
     private void touch(SqlHandle c, K key) throws SQLException {
       if (c.touch == null) {
-        c.touch = c.conn.prepareStatement("UPDATE data SET accessed=? WHERE k=?");
+        c.touch = c.conn.prepareStatement("UPDATE " + table + " SET accessed=? WHERE k=?");
       }
       try {
         c.touch.setTimestamp(1, TimeUtil.nowTs());
@@ -479,7 +602,8 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       }
     }
 
-    void put(K key, ValueHolder<V> holder) {
+    @Override
+    public void put(K key, ValueHolder<V> holder) {
       if (holder.clean) {
         return;
       }
@@ -495,11 +619,25 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
         c = acquire();
         if (c.put == null) {
           c.put =
-              c.conn.prepareStatement("MERGE INTO data (k, v, created, accessed) VALUES(?,?,?,?)");
+              serializer != null
+                  ? c.conn.prepareStatement(
+                      "MERGE INTO entries (k, v, created, accessed, version) VALUES(?,?,?,?,?)")
+                  : c.conn.prepareStatement(
+                      "MERGE INTO data (k, v, created, accessed) VALUES(?,?,?,?)");
         }
         try {
           keyType.set(c.put, 1, key);
-          c.put.setObject(2, holder.value, Types.JAVA_OBJECT);
+          if (serializer != null) {
+            c.put.setBytes(2, serializer.serializeValue(holder.value));
+            c.put.setInt(5, serializer.version());
+          } else {
+            long start = System.nanoTime();
+            try {
+              c.put.setObject(2, holder.value, Types.JAVA_OBJECT);
+            } finally {
+              stats.serialized(start);
+            }
+          }
           c.put.setTimestamp(3, new Timestamp(holder.created));
           c.put.setTimestamp(4, TimeUtil.nowTs());
           c.put.executeUpdate();
@@ -510,12 +648,15 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       } catch (SQLException e) {
         log.warn("Cannot put into cache " + url, e);
         c = close(c);
+      } catch (IllegalStateException e) {
+        log.warn("Cannot serialize entry for cache " + url, e);
       } finally {
         release(c);
       }
     }
 
-    void invalidate(K key) {
+    @Override
+    public void invalidate(K key) {
       SqlHandle c = null;
       try {
         c = acquire();
@@ -530,7 +671,7 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
 
     private void invalidate(SqlHandle c, K key) throws SQLException {
       if (c.invalidate == null) {
-        c.invalidate = c.conn.prepareStatement("DELETE FROM data WHERE k=?");
+        c.invalidate = c.conn.prepareStatement("DELETE FROM " + table + " WHERE k=?");
       }
       try {
         keyType.set(c.invalidate, 1, key);
@@ -540,12 +681,13 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       }
     }
 
-    void invalidateAll() {
+    @Override
+    public void invalidateAll() {
       SqlHandle c = null;
       try {
         c = acquire();
         try (Statement s = c.conn.createStatement()) {
-          s.executeUpdate("DELETE FROM data");
+          s.executeUpdate("DELETE FROM " + table);
         }
         bloomFilter = newBloomFilter();
       } catch (SQLException e) {
@@ -556,13 +698,14 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       }
     }
 
-    void prune(Cache<K, ?> mem) {
+    @Override
+    public void prune(Cache<K, ?> mem) {
       SqlHandle c = null;
       try {
         c = acquire();
         try (Statement s = c.conn.createStatement()) {
           long used = 0;
-          try (ResultSet r = s.executeQuery("SELECT SUM(space) FROM data")) {
+          try (ResultSet r = s.executeQuery("SELECT SUM(space) FROM " + table)) {
             used = r.next() ? r.getLong(1) : 0;
           }
           if (used <= maxSize) {
@@ -571,7 +714,8 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
 
           try (ResultSet r =
               s.executeQuery(
-                  "SELECT" + " k" + ",space" + ",created" + " FROM data" + " ORDER BY accessed")) {
+                  "SELECT" + " k" + ",space" + ",created" + " FROM " + table
+                      + " ORDER BY accessed")) {
             while (maxSize < used && r.next()) {
               K key = keyType.get(r, 1);
               Timestamp created = r.getTimestamp(3);
@@ -592,14 +736,16 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       }
     }
 
-    DiskStats diskStats() {
+    @Override
+    public DiskStats diskStats() {
       long size = 0;
       long space = 0;
       SqlHandle c = null;
       try {
         c = acquire();
         try (Statement s = c.conn.createStatement();
-            ResultSet r = s.executeQuery("SELECT" + " COUNT(*)" + ",SUM(space)" + " FROM data")) {
+            ResultSet r =
+                s.executeQuery("SELECT" + " COUNT(*)" + ",SUM(space)" + " FROM " + table)) {
           if (r.next()) {
             size = r.getLong(1);
             space = r.getLong(2);
@@ -611,12 +757,12 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       } finally {
         release(c);
       }
-      return new DiskStats(size, space, hitCount.get(), missCount.get());
+      return stats.diskStats(size, space, hitCount.get(), missCount.get());
     }
 
     private SqlHandle acquire() throws SQLException {
       SqlHandle h = handles.poll();
-      return h != null ? h : new SqlHandle(url, keyType);
+      return h != null ? h : new SqlHandle(url, keyType, serializer != null);
     }
 
     private void release(SqlHandle h) {
@@ -646,22 +792,37 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
     PreparedStatement touch;
     PreparedStatement invalidate;
 
-    SqlHandle(String url, KeyType<?> type) throws SQLException {
+    SqlHandle(String url, KeyType<?> type, boolean serialized) throws SQLException {
       this.url = url;
       this.conn = org.h2.Driver.load().connect(url, null);
       try (Statement stmt = conn.createStatement()) {
-        stmt.addBatch(
-            "CREATE TABLE IF NOT EXISTS data"
-                + "(k "
-                + type.columnType()
-                + " NOT NULL PRIMARY KEY HASH"
-                + ",v OTHER NOT NULL"
-                + ",created TIMESTAMP NOT NULL"
-                + ",accessed TIMESTAMP NOT NULL"
-                + ")");
-        stmt.addBatch(
-            "ALTER TABLE data ADD COLUMN IF NOT EXISTS "
-                + "space BIGINT AS OCTET_LENGTH(k) + OCTET_LENGTH(v)");
+        if (serialized) {
+          stmt.addBatch("DROP TABLE IF EXISTS data");
+          stmt.addBatch(
+              "CREATE TABLE IF NOT EXISTS entries"
+                  + "(k "
+                  + type.columnType()
+                  + " NOT NULL PRIMARY KEY HASH"
+                  + ",v VARBINARY NOT NULL"
+                  + ",created TIMESTAMP NOT NULL"
+                  + ",accessed TIMESTAMP NOT NULL"
+                  + ",version INT NOT NULL"
+                  + ",space BIGINT AS OCTET_LENGTH(k) + OCTET_LENGTH(v)"
+                  + ")");
+        } else {
+          stmt.addBatch(
+              "CREATE TABLE IF NOT EXISTS data"
+                  + "(k "
+                  + type.columnType()
+                  + " NOT NULL PRIMARY KEY HASH"
+                  + ",v OTHER NOT NULL"
+                  + ",created TIMESTAMP NOT NULL"
+                  + ",accessed TIMESTAMP NOT NULL"
+                  + ")");
+          stmt.addBatch(
+              "ALTER TABLE data ADD COLUMN IF NOT EXISTS "
+                  + "space BIGINT AS OCTET_LENGTH(k) + OCTET_LENGTH(v)");
+        }
         stmt.executeBatch();
       }
     }
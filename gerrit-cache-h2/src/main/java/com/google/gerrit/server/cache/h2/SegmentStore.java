@@ -0,0 +1,872 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparing;
+
+import com.google.common.cache.Cache;
+import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.server.cache.PersistentCache.DiskStats;
+import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk store keeping entries in append-only segment files.
+ *
+ * <p>Every put or invalidate appends a record to the active segment of the key's stripe. Keys are
+ * assigned to a stripe by hash, so writers on different stripes never contend, and all records of
+ * one key are found in one stripe in the order they were written. Once a segment reaches the
+ * configured size it is sealed and memory-mapped read-only; reads then copy the record straight
+ * out of the mapping.
+ *
+ * <p>The location of the newest record of each key is held in an in-memory index that is rebuilt
+ * by scanning the segments when the store is opened, so lookups never touch the disk unless the
+ * key is actually stored. Segments whose records are mostly superseded are compacted in the
+ * background by copying their live records into the active segment and deleting the file.
+ *
+ * <p>The number of stripes is recorded in the directory when it is first used and kept from then
+ * on, even if a different number is configured later, so that every segment file is loaded again
+ * and the records of a key stay in one stripe.
+ *
+ * <p>The active segment is written and read with positional {@link FileChannel} I/O. A thread
+ * interrupted during that I/O closes the channel for everyone, so the segment then reopens its
+ * file; only the interrupted operation fails.
+ *
+ * <p>Record layout:
+ *
+ * <pre>
+ *   int   MAGIC
+ *   int   key length
+ *   int   value length, or -1 for an invalidation
+ *   int   version of the serialized format
+ *   long  created, milliseconds since the epoch
+ *   byte* key
+ *   byte* value
+ *   int   CRC-32 of all preceding bytes of the record
+ * </pre>
+ */
+class SegmentStore<K, V> implements DiskStore<K, V> {
+  private static final Logger log = LoggerFactory.getLogger(SegmentStore.class);
+
+  private static final int MAGIC = 0x47435331; // "GCS1"
+  private static final int HEADER_SIZE = 24;
+  private static final int TRAILER_SIZE = 4;
+  private static final int TOMBSTONE = -1;
+  private static final String SUFFIX = ".seg";
+  private static final String STRIPES_FILE = "stripes";
+
+  /** Sealed segments are mapped and addressed with int positions. */
+  static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+  /** Sealed segments with less than this fraction of live bytes are compacted. */
+  private static final double COMPACT_RATIO = 0.5;
+
+  private final Path dir;
+  private final EntrySerializer<K, V> serializer;
+  private final long maxSize;
+  private final long expireAfterWrite;
+  private final long segmentSize;
+  private final Executor compactor;
+  private volatile List<Stripe> stripes;
+  private final Map<K, Location> index = new ConcurrentHashMap<>();
+  private final AtomicLong space = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private volatile boolean opened;
+  private volatile boolean closed;
+
+  /**
+   * @param dir directory holding the segment files of this cache only.
+   * @param serializer serializer for keys and values.
+   * @param maxSize disk limit in bytes, enforced by {@link #prune(Cache)}.
+   * @param expireAfterWrite seconds an entry is valid, or 0 to never expire.
+   * @param segmentSize size in bytes after which a segment is sealed; at most {@link
+   *     #MAX_SEGMENT_SIZE}.
+   * @param stripes number of independently locked writer stripes, unless the directory already
+   *     records a number.
+   * @param compactor executor to run background compactions on.
+   */
+  SegmentStore(
+      Path dir,
+      EntrySerializer<K, V> serializer,
+      long maxSize,
+      long expireAfterWrite,
+      long segmentSize,
+      int stripes,
+      Executor compactor) {
+    this.dir = dir;
+    this.serializer = serializer;
+    this.maxSize = maxSize;
+    this.expireAfterWrite = expireAfterWrite;
+    this.segmentSize = Math.min(segmentSize, MAX_SEGMENT_SIZE);
+    this.compactor = compactor;
+    this.stripes = newStripes(stripes);
+  }
+
+  private List<Stripe> newStripes(int n) {
+    List<Stripe> r = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      r.add(new Stripe(i));
+    }
+    return r;
+  }
+
+  @Override
+  public synchronized void open() {
+    if (opened) {
+      return;
+    }
+    try {
+      Files.createDirectories(dir);
+      int n = stripeCount();
+      if (n != stripes.size()) {
+        log.info("Using " + n + " stripes recorded in " + dir + " instead of " + stripes.size());
+        stripes = newStripes(n);
+      }
+      for (Stripe s : stripes) {
+        s.load();
+      }
+      for (Stripe s : stripes) {
+        s.maybeCompact();
+      }
+    } catch (IOException e) {
+      log.warn("Cannot open segment cache " + dir + "; cache is flushed", e);
+      invalidateAll();
+    }
+    opened = true;
+  }
+
+  /**
+   * Read the number of stripes recorded in the directory, recording the current number if there
+   * is none yet.
+   */
+  private int stripeCount() throws IOException {
+    Path file = dir.resolve(STRIPES_FILE);
+    if (Files.exists(file)) {
+      String s = new String(Files.readAllBytes(file), UTF_8).trim();
+      try {
+        int n = Integer.parseInt(s);
+        if (n > 0) {
+          return n;
+        }
+      } catch (NumberFormatException e) {
+        // Fall through and record the number again.
+      }
+      log.warn("Ignoring invalid stripe count \"" + s + "\" in " + file);
+    }
+
+    // Directories written before the count was recorded: every stripe has an
+    // active segment, so the highest prefix is the last stripe.
+    int n = stripes.size();
+    int highest = -1;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "[0-9][0-9]-*" + SUFFIX)) {
+      for (Path p : files) {
+        highest = Math.max(highest, Integer.parseInt(p.getFileName().toString().substring(0, 2)));
+      }
+    }
+    if (highest >= 0) {
+      n = highest + 1;
+    }
+    Files.write(file, Integer.toString(n).getBytes(UTF_8));
+    return n;
+  }
+
+  private void ensureOpen() {
+    if (!opened) {
+      open();
+    }
+  }
+
+  @Override
+  public void close() {
+    // Writes after closing, e.g. of requests still running on shutdown, are dropped.
+    closed = true;
+    for (Stripe s : stripes) {
+      s.lock.lock();
+      try {
+        s.closeActive();
+      } finally {
+        s.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public boolean mightContain(K key) {
+    ensureOpen();
+    return index.containsKey(key);
+  }
+
+  @Override
+  public ValueHolder<V> getIfPresent(K key) {
+    ensureOpen();
+    Location loc = index.get(key);
+    if (loc == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    if (expired(loc.created)) {
+      invalidate(key);
+      missCount.incrementAndGet();
+      return null;
+    }
+
+    try {
+      byte[] rec = loc.segment.read(loc.offset, loc.length);
+      ValueHolder<V> h = new ValueHolder<>(decodeValue(rec));
+      h.created = loc.created;
+      h.clean = true;
+      loc.accessed = TimeUtil.nowMs();
+      hitCount.incrementAndGet();
+      return h;
+    } catch (ClosedByInterruptException e) {
+      // The record is fine; only this thread gave up on it.
+      missCount.incrementAndGet();
+      return null;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Cannot read cache " + dir + " for " + key, e);
+      invalidate(key);
+      missCount.incrementAndGet();
+      return null;
+    }
+  }
+
+  @Override
+  public void put(K key, ValueHolder<V> holder) {
+    if (holder.clean || closed) {
+      return;
+    }
+    ensureOpen();
+
+    byte[] rec;
+    try {
+      rec =
+          encode(
+              serializer.serializeKey(key),
+              serializer.serializeValue(holder.value),
+              holder.created);
+    } catch (RuntimeException e) {
+      log.warn("Cannot serialize entry for cache " + dir, e);
+      return;
+    }
+
+    Stripe s = stripe(key);
+    s.lock.lock();
+    try {
+      Location loc = s.append(rec, holder.created);
+      release(index.put(key, loc));
+      loc.segment.live.addAndGet(loc.length);
+      space.addAndGet(loc.length);
+      holder.clean = true;
+    } catch (IOException e) {
+      log.warn("Cannot put into cache " + dir, e);
+    } finally {
+      s.lock.unlock();
+    }
+    s.maybeCompact();
+  }
+
+  @Override
+  public void invalidate(K key) {
+    if (closed) {
+      return;
+    }
+    ensureOpen();
+    Stripe s = stripe(key);
+    s.lock.lock();
+    try {
+      Location old = index.remove(key);
+      if (old == null) {
+        return;
+      }
+      release(old);
+      s.append(encode(serializer.serializeKey(key), null, 0), 0);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Cannot invalidate cache " + dir, e);
+    } finally {
+      s.lock.unlock();
+    }
+    s.maybeCompact();
+  }
+
+  @Override
+  public void invalidateAll() {
+    for (Stripe s : stripes) {
+      s.lock.lock();
+    }
+    try {
+      index.clear();
+      space.set(0);
+      for (Stripe s : stripes) {
+        s.deleteAll();
+      }
+    } catch (IOException e) {
+      log.warn("Cannot invalidate cache " + dir, e);
+    } finally {
+      for (Stripe s : stripes) {
+        s.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public void prune(Cache<K, ?> mem) {
+    ensureOpen();
+    List<Candidate<K>> candidates = new ArrayList<>(index.size());
+    for (Map.Entry<K, Location> e : index.entrySet()) {
+      Location loc = e.getValue();
+      if (expired(loc.created)) {
+        invalidate(e.getKey());
+      } else {
+        candidates.add(new Candidate<>(e.getKey(), loc, loc.accessed));
+      }
+    }
+
+    if (space.get() > maxSize) {
+      candidates.sort(comparing(c -> c.accessed));
+      for (Candidate<K> c : candidates) {
+        if (space.get() <= maxSize) {
+          break;
+        }
+        Location cur = index.get(c.key);
+        if (cur == null || cur.created != c.loc.created) {
+          // Replaced since the scan; compaction moves a record but keeps its creation time.
+          continue;
+        }
+        if (mem.getIfPresent(c.key) != null) {
+          cur.accessed = TimeUtil.nowMs();
+        } else {
+          invalidate(c.key);
+        }
+      }
+    }
+
+    for (Stripe s : stripes) {
+      s.compact();
+    }
+  }
+
+  @Override
+  public DiskStats diskStats() {
+    ensureOpen();
+    return serializer.diskStats(index.size(), space.get(), hitCount.get(), missCount.get());
+  }
+
+  private Stripe stripe(K key) {
+    return stripes.get(Math.floorMod(key.hashCode(), stripes.size()));
+  }
+
+  /** Account a location that is no longer the newest record of its key. */
+  private void release(Location old) {
+    if (old != null) {
+      old.segment.live.addAndGet(-old.length);
+      space.addAndGet(-old.length);
+    }
+  }
+
+  private boolean expired(long created) {
+    if (expireAfterWrite == 0) {
+      return false;
+    }
+    long age = TimeUtil.nowMs() - created;
+    return 1000 * expireAfterWrite < age;
+  }
+
+  private byte[] encode(byte[] key, byte[] val, long created) {
+    int valLen = val != null ? val.length : 0;
+    ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE + key.length + valLen + TRAILER_SIZE);
+    b.putInt(MAGIC);
+    b.putInt(key.length);
+    b.putInt(val != null ? val.length : TOMBSTONE);
+    b.putInt(serializer.version());
+    b.putLong(created);
+    b.put(key);
+    if (val != null) {
+      b.put(val);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(b.array(), 0, b.position());
+    b.putInt((int) crc.getValue());
+    return b.array();
+  }
+
+  private K decodeKey(byte[] rec) {
+    int keyLen = ByteBuffer.wrap(rec).getInt(4);
+    return serializer.deserializeKey(Arrays.copyOfRange(rec, HEADER_SIZE, HEADER_SIZE + keyLen));
+  }
+
+  private V decodeValue(byte[] rec) {
+    ByteBuffer b = ByteBuffer.wrap(rec);
+    int off = HEADER_SIZE + b.getInt(4);
+    return serializer.deserializeValue(Arrays.copyOfRange(rec, off, off + b.getInt(8)));
+  }
+
+  private int version(byte[] rec) {
+    return ByteBuffer.wrap(rec).getInt(12);
+  }
+
+  private static boolean isTombstone(byte[] rec) {
+    return ByteBuffer.wrap(rec).getInt(8) == TOMBSTONE;
+  }
+
+  private static long created(byte[] rec) {
+    return ByteBuffer.wrap(rec).getLong(16);
+  }
+
+  /**
+   * Read the length of the record starting at {@code pos}.
+   *
+   * @return length of a complete, valid record; -1 if the record is truncated or corrupt.
+   */
+  private static int recordLength(FileChannel ch, long pos, long end) throws IOException {
+    if (end - pos < HEADER_SIZE + TRAILER_SIZE) {
+      return -1;
+    }
+    ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(ch, hdr, pos);
+    if (hdr.getInt(0) != MAGIC) {
+      return -1;
+    }
+    long len = HEADER_SIZE + (long) hdr.getInt(4) + Math.max(hdr.getInt(8), 0) + TRAILER_SIZE;
+    if (hdr.getInt(4) < 0 || len > end - pos) {
+      return -1;
+    }
+    return (int) len;
+  }
+
+  private static boolean checkCrc(byte[] rec) {
+    CRC32 crc = new CRC32();
+    crc.update(rec, 0, rec.length - TRAILER_SIZE);
+    return (int) crc.getValue() == ByteBuffer.wrap(rec).getInt(rec.length - TRAILER_SIZE);
+  }
+
+  private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+    while (buf.hasRemaining()) {
+      if (ch.read(buf, pos + buf.position()) < 0) {
+        throw new IOException("Unexpected end of segment");
+      }
+    }
+  }
+
+  /** Entry considered by {@link #prune(Cache)}, with a stable access time for sorting. */
+  private static class Candidate<K> {
+    final K key;
+    final Location loc;
+    final long accessed;
+
+    Candidate(K key, Location loc, long accessed) {
+      this.key = key;
+      this.loc = loc;
+      this.accessed = accessed;
+    }
+  }
+
+  /** Position of the newest record of a key. */
+  private static class Location {
+    final Segment segment;
+    final long offset;
+    final int length;
+    final long created;
+    volatile long accessed;
+
+    Location(Segment segment, long offset, int length, long created) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.created = created;
+      this.accessed = created;
+    }
+  }
+
+  /** One segment file; writable while active, memory-mapped once sealed. */
+  private static class Segment {
+    final long seq;
+    final Path path;
+    final AtomicLong live = new AtomicLong();
+    volatile FileChannel channel;
+    volatile MappedByteBuffer map;
+    long size;
+
+    Segment(long seq, Path path, FileChannel channel, long size) {
+      this.seq = seq;
+      this.path = path;
+      this.channel = channel;
+      this.size = size;
+    }
+
+    byte[] read(long offset, int length) throws IOException {
+      byte[] rec = new byte[length];
+      MappedByteBuffer m = map;
+      if (m == null) {
+        FileChannel ch = channel;
+        while (ch != null) {
+          try {
+            readFully(ch, ByteBuffer.wrap(rec), offset);
+            return check(rec, offset);
+          } catch (ClosedByInterruptException e) {
+            reopen(ch);
+            throw e;
+          } catch (ClosedChannelException e) {
+            // Sealed concurrently, or closed by another thread's interrupt.
+            ch = reopen(ch);
+          }
+        }
+        m = map;
+        if (m == null) {
+          throw new IOException(path + " is closed");
+        }
+      }
+      ByteBuffer b = m.duplicate();
+      b.position((int) offset);
+      b.get(rec);
+      return check(rec, offset);
+    }
+
+    private byte[] check(byte[] rec, long offset) throws IOException {
+      if (!checkCrc(rec)) {
+        throw new IOException("Corrupt record at " + offset + " in " + path);
+      }
+      return rec;
+    }
+
+    /** Length of the record at {@code pos} of a sealed segment. */
+    int recordLength(long pos) {
+      ByteBuffer b = map.duplicate();
+      int keyLen = b.getInt((int) pos + 4);
+      int valLen = b.getInt((int) pos + 8);
+      return HEADER_SIZE + keyLen + Math.max(valLen, 0) + TRAILER_SIZE;
+    }
+
+    /**
+     * Append a record at {@link #size}. A partially written record is overwritten by the next
+     * append, since {@link #size} only advances once the record is complete.
+     */
+    void append(byte[] rec) throws IOException {
+      FileChannel ch = channel;
+      if (ch == null) {
+        throw new IOException(path + " is closed");
+      }
+      ByteBuffer b = ByteBuffer.wrap(rec);
+      try {
+        while (b.hasRemaining()) {
+          ch.write(b, size + b.position());
+        }
+      } catch (ClosedChannelException e) {
+        reopen(ch);
+        throw e;
+      }
+      size += rec.length;
+    }
+
+    synchronized void seal() throws IOException {
+      FileChannel ch = channel;
+      try {
+        ch.force(false);
+        map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } catch (ClosedChannelException e) {
+        reopen(ch);
+        throw e;
+      }
+      ch.close();
+      channel = null;
+    }
+
+    synchronized void close() throws IOException {
+      if (channel != null) {
+        try {
+          channel.force(false);
+        } finally {
+          channel.close();
+          channel = null;
+        }
+      }
+    }
+
+    /**
+     * Replace a channel that was closed without the segment being sealed or closed, e.g. because
+     * a thread using it was interrupted.
+     *
+     * @return current channel; null once the segment is sealed or closed.
+     */
+    synchronized FileChannel reopen(FileChannel closed) throws IOException {
+      if (channel == closed && !closed.isOpen()) {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+      return channel;
+    }
+  }
+
+  /** Independently locked group of segments; all records of a key go to one stripe. */
+  private class Stripe {
+    final int id;
+    final ReentrantLock lock = new ReentrantLock();
+    final AtomicBoolean compacting = new AtomicBoolean();
+    final List<Segment> sealed = new ArrayList<>();
+    Segment active;
+    long nextSeq;
+
+    Stripe(int id) {
+      this.id = id;
+    }
+
+    private Path path(long seq) {
+      return dir.resolve(String.format("%02d-%012d%s", id, seq, SUFFIX));
+    }
+
+    void load() throws IOException {
+      List<Long> seqs = new ArrayList<>();
+      String prefix = String.format("%02d-", id);
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + SUFFIX)) {
+        for (Path p : files) {
+          String n = p.getFileName().toString();
+          try {
+            seqs.add(Long.parseLong(n.substring(prefix.length(), n.length() - SUFFIX.length())));
+          } catch (NumberFormatException e) {
+            log.warn("Ignoring unexpected file " + p);
+          }
+        }
+      }
+      seqs.sort(null);
+
+      for (long seq : seqs) {
+        Path p = path(seq);
+        FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment seg = new Segment(seq, p, ch, 0);
+        // A larger segment cannot be mapped; its records beyond the limit are dropped.
+        scan(seg, Math.min(ch.size(), MAX_SEGMENT_SIZE));
+        if (ch.size() > seg.size) {
+          ch.truncate(seg.size);
+        }
+        if (active != null) {
+          active.seal();
+          sealed.add(active);
+        }
+        active = seg;
+        nextSeq = seq + 1;
+      }
+      if (active == null) {
+        active = newSegment();
+      }
+    }
+
+    private void scan(Segment seg, long end) throws IOException {
+      long pos = 0;
+      while (pos < end) {
+        int len = recordLength(seg.channel, pos, end);
+        byte[] rec = len > 0 ? new byte[len] : null;
+        if (rec != null) {
+          readFully(seg.channel, ByteBuffer.wrap(rec), pos);
+        }
+        if (rec == null || !checkCrc(rec)) {
+          log.warn("Truncating " + seg.path + " at corrupt record at " + pos);
+          seg.channel.truncate(pos);
+          break;
+        }
+
+        if (version(rec) != serializer.version()) {
+          pos += len;
+          continue;
+        }
+        K key;
+        try {
+          key = decodeKey(rec);
+        } catch (RuntimeException e) {
+          log.warn("Entries cached in " + seg.path + " cannot be deserialized; skipping");
+          pos += len;
+          continue;
+        }
+        if (isTombstone(rec)) {
+          release(index.remove(key));
+        } else {
+          long created = created(rec);
+          Location loc = new Location(seg, pos, len, created);
+          release(index.put(key, loc));
+          seg.live.addAndGet(len);
+          space.addAndGet(len);
+          if (expired(created)) {
+            release(index.remove(key));
+          }
+        }
+        pos += len;
+      }
+      seg.size = pos;
+    }
+
+    private Segment newSegment() throws IOException {
+      long seq = nextSeq++;
+      Path p = path(seq);
+      FileChannel ch =
+          FileChannel.open(
+              p,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+      return new Segment(seq, p, ch, 0);
+    }
+
+    /** Append a record to the active segment; caller must hold {@link #lock}. */
+    Location append(byte[] rec, long created) throws IOException {
+      if (active.size > 0 && active.size + rec.length > segmentSize) {
+        active.seal();
+        sealed.add(active);
+        active = newSegment();
+      }
+      long offset = active.size;
+      active.append(rec);
+      return new Location(active, offset, rec.length, created);
+    }
+
+    void maybeCompact() {
+      if (!compacting.get() && !candidates().isEmpty()) {
+        try {
+          compactor.execute(this::compact);
+        } catch (RejectedExecutionException e) {
+          // Shutting down; compact on the next start instead.
+        }
+      }
+    }
+
+    private List<Segment> candidates() {
+      List<Segment> r = new ArrayList<>();
+      lock.lock();
+      try {
+        for (Segment s : sealed) {
+          if (s.live.get() < COMPACT_RATIO * s.size) {
+            r.add(s);
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+      return r;
+    }
+
+    void compact() {
+      if (!compacting.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        for (Segment s : candidates()) {
+          compact(s);
+        }
+      } catch (IOException e) {
+        log.warn("Cannot compact cache " + dir, e);
+      } finally {
+        compacting.set(false);
+      }
+    }
+
+    /**
+     * Move the live records of a sealed segment into the active segment.
+     *
+     * <p>An invalidation is carried forward only while an older segment may still hold a record
+     * it has to hide, and only if no newer record of the key exists.
+     */
+    private void compact(Segment seg) throws IOException {
+      long pos = 0;
+      while (pos < seg.size) {
+        int len = seg.recordLength(pos);
+        byte[] rec = seg.read(pos, len);
+        K key;
+        try {
+          key = version(rec) == serializer.version() ? decodeKey(rec) : null;
+        } catch (RuntimeException e) {
+          key = null;
+        }
+        if (key == null) {
+          pos += len;
+          continue;
+        }
+
+        lock.lock();
+        try {
+          if (isTombstone(rec)) {
+            if (!index.containsKey(key) && sealed.indexOf(seg) > 0) {
+              append(rec, 0);
+            }
+          } else {
+            Location old = index.get(key);
+            if (old != null && old.segment == seg && old.offset == pos) {
+              Location loc = append(rec, old.created);
+              loc.accessed = old.accessed;
+              index.put(key, loc);
+              seg.live.addAndGet(-len);
+              loc.segment.live.addAndGet(len);
+            }
+          }
+        } finally {
+          lock.unlock();
+        }
+        pos += len;
+      }
+
+      lock.lock();
+      try {
+        sealed.remove(seg);
+      } finally {
+        lock.unlock();
+      }
+      Files.deleteIfExists(seg.path);
+    }
+
+    void closeActive() {
+      try {
+        if (active != null) {
+          active.close();
+        }
+      } catch (IOException e) {
+        log.warn("Cannot close cache " + dir, e);
+      }
+    }
+
+    /** Delete all segments and start a new one; caller must hold {@link #lock}. */
+    void deleteAll() throws IOException {
+      closeActive();
+      for (Segment s : sealed) {
+        Files.deleteIfExists(s.path);
+      }
+      sealed.clear();
+      if (active != null) {
+        Files.deleteIfExists(active.path);
+      }
+      Files.createDirectories(dir);
+      active = newSegment();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import com.google.gerrit.server.cache.PersistentCache.DiskStats;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count and time of the key and value (de)serializations of one persistent cache.
+ *
+ * <p>Callers pass the {@link System#nanoTime()} taken before the work, so the same counters cover
+ * bound {@code CacheSerializer}s and Java serialization done by the database driver.
+ */
+class SerializationStats {
+  private final AtomicLong serializeCount = new AtomicLong();
+  private final AtomicLong serializeNanos = new AtomicLong();
+  private final AtomicLong deserializeCount = new AtomicLong();
+  private final AtomicLong deserializeNanos = new AtomicLong();
+
+  void serialized(long startNanos) {
+    serializeNanos.addAndGet(System.nanoTime() - startNanos);
+    serializeCount.incrementAndGet();
+  }
+
+  void deserialized(long startNanos) {
+    deserializeNanos.addAndGet(System.nanoTime() - startNanos);
+    deserializeCount.incrementAndGet();
+  }
+
+  DiskStats diskStats(long size, long space, long hitCount, long missCount) {
+    return new DiskStats(
+        size,
+        space,
+        hitCount,
+        missCount,
+        serializeCount.get(),
+        serializeNanos.get(),
+        deserializeCount.get(),
+        deserializeNanos.get());
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.server.cache.JavaCacheSerializer;
+import com.google.gerrit.server.cache.PersistentCache.DiskStats;
+import com.google.gerrit.server.cache.h2.H2CacheImpl.SqlStore;
+import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
+import com.google.inject.TypeLiteral;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares get/put throughput and latency of the {@link DiskStore} implementations.
+ *
+ * <p>Run with {@code bazel run //gerrit-cache-h2:benchmark -- [entries] [valueBytes]}; defaults to
+ * 1,000,000 entries of 512 bytes. Each store receives the same sequence of puts followed by the
+ * same sequence of random gets, issued directly against the disk tier.
+ */
+public class DiskStoreBenchmark {
+  public static void main(String[] args) throws Exception {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int valueBytes = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+    Path dir = Files.createTempDirectory("diskstore-benchmark");
+    TypeLiteral<String> keyType = new TypeLiteral<String>() {};
+    long maxSize = Long.MAX_VALUE;
+
+    run(
+        "h2",
+        new SqlStore<>("jdbc:h2:" + dir.resolve("h2").toUri(), keyType, maxSize, 0),
+        entries,
+        valueBytes);
+    run(
+        "segment",
+        new SegmentStore<>(
+            dir.resolve("segment"),
+            new EntrySerializer<>(
+                new JavaCacheSerializer<String>(null), new JavaCacheSerializer<byte[]>(null), 0),
+            maxSize,
+            0,
+            64 << 20,
+            Math.min(Runtime.getRuntime().availableProcessors(), 16),
+            MoreExecutors.directExecutor()),
+        entries,
+        valueBytes);
+  }
+
+  private static void run(
+      String name, DiskStore<String, byte[]> store, int entries, int valueBytes) {
+    Random rnd = new Random(42);
+    byte[] value = new byte[valueBytes];
+    rnd.nextBytes(value);
+    store.open();
+
+    long[] put = new long[entries];
+    long start = System.nanoTime();
+    for (int i = 0; i < entries; i++) {
+      ValueHolder<byte[]> h = new ValueHolder<>(value);
+      h.created = TimeUtil.nowMs();
+      long t = System.nanoTime();
+      store.put("key-" + i, h);
+      put[i] = System.nanoTime() - t;
+    }
+    report(name, "put", put, System.nanoTime() - start);
+
+    long[] get = new long[entries];
+    start = System.nanoTime();
+    for (int i = 0; i < entries; i++) {
+      String key = "key-" + rnd.nextInt(entries);
+      long t = System.nanoTime();
+      if (store.getIfPresent(key) == null) {
+        throw new IllegalStateException(name + " lost " + key);
+      }
+      get[i] = System.nanoTime() - t;
+    }
+    report(name, "get", get, System.nanoTime() - start);
+
+    DiskStats stats = store.diskStats();
+    System.out.format(
+        "store=%s entries=%d space_bytes=%d bytes_per_entry=%d serialize_us=%.2f"
+            + " deserialize_us=%.2f%n",
+        name,
+        stats.size(),
+        stats.space(),
+        stats.space() / Math.max(stats.size(), 1),
+        stats.serializeMicros(),
+        stats.deserializeMicros());
+    store.close();
+  }
+
+  private static void report(String store, String op, long[] nanos, long elapsed) {
+    Arrays.sort(nanos);
+    System.out.format(
+        "store=%s op=%s n=%d ops_per_sec=%.0f p50_us=%.1f p99_us=%.1f%n",
+        store,
+        op,
+        nanos.length,
+        nanos.length / (elapsed / 1e9),
+        nanos[nanos.length / 2] / 1e3,
+        nanos[(int) (nanos.length * 0.99)] / 1e3);
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.gerrit.server.cache.h2;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -21,6 +22,8 @@ import static org.junit.Assert.assertTrue;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.server.cache.BooleanCacheSerializer;
+import com.google.gerrit.server.cache.StringCacheSerializer;
 import com.google.gerrit.server.cache.h2.H2CacheImpl.SqlStore;
 import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
 import com.google.inject.TypeLiteral;
@@ -34,12 +37,12 @@ public class H2CacheTest {
 
   private Cache<String, ValueHolder<Boolean>> mem;
   private H2CacheImpl<String, Boolean> impl;
+  private final TypeLiteral<String> keyType = new TypeLiteral<String>() {};
 
   @Before
   public void setUp() {
     mem = CacheBuilder.newBuilder().build();
 
-    TypeLiteral<String> keyType = new TypeLiteral<String>() {};
     SqlStore<String, Boolean> store =
         new SqlStore<>("jdbc:h2:mem:Test_" + (++dbCnt), keyType, 1 << 20, 0);
     impl = new H2CacheImpl<>(MoreExecutors.directExecutor(), store, keyType, mem);
@@ -72,4 +75,40 @@ public class H2CacheTest {
             }));
     assertFalse("did not invoke Callable", called.get());
   }
+
+  @Test
+  public void getWithSerializer() throws ExecutionException {
+    SqlStore<String, Boolean> store =
+        new SqlStore<>(
+            "jdbc:h2:mem:Test_" + (++dbCnt),
+            new EntrySerializer<>(
+                StringCacheSerializer.INSTANCE, BooleanCacheSerializer.INSTANCE, 1),
+            1 << 20,
+            0);
+    impl = new H2CacheImpl<>(MoreExecutors.directExecutor(), store, keyType, mem);
+
+    assertNull(impl.getIfPresent("foo"));
+    assertTrue(impl.get("foo", () -> true));
+    mem.invalidate("foo");
+    assertTrue("exists on disk", impl.getIfPresent("foo"));
+    assertEquals(1, store.diskStats().size());
+    assertTrue(store.diskStats().serializeMicros() > 0);
+    assertTrue(store.diskStats().deserializeMicros() > 0);
+  }
+
+  @Test
+  public void javaSerializationIsTimed() throws ExecutionException {
+    SqlStore<Integer, Boolean> store =
+        new SqlStore<>("jdbc:h2:mem:Test_" + (++dbCnt), new TypeLiteral<Integer>() {}, 1 << 20, 0);
+    Cache<Integer, ValueHolder<Boolean>> intMem = CacheBuilder.newBuilder().build();
+    H2CacheImpl<Integer, Boolean> cache =
+        new H2CacheImpl<>(
+            MoreExecutors.directExecutor(), store, new TypeLiteral<Integer>() {}, intMem);
+
+    assertTrue(cache.get(1, () -> true));
+    intMem.invalidate(1);
+    assertTrue("exists on disk", cache.getIfPresent(1));
+    assertTrue(store.diskStats().serializeMicros() > 0);
+    assertTrue(store.diskStats().deserializeMicros() > 0);
+  }
 }
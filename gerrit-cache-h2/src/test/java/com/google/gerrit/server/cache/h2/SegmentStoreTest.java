@@ -0,0 +1,224 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.server.cache.StringCacheSerializer;
+import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentStoreTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = tmp.newFolder().toPath();
+  }
+
+  @Test
+  public void putAndGet() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    assertFalse(store.mightContain("foo"));
+    assertNull(store.getIfPresent("foo"));
+
+    store.put("foo", holder("bar"));
+    assertTrue(store.mightContain("foo"));
+    assertEquals("bar", store.getIfPresent("foo").value);
+    assertEquals(1, store.diskStats().size());
+    assertEquals(1, store.diskStats().hitCount());
+    assertEquals(2, store.diskStats().requestCount());
+  }
+
+  @Test
+  public void entriesSurviveReopen() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    for (int i = 0; i < 500; i++) {
+      store.put("k" + i, holder("v" + i));
+    }
+    store.put("k1", holder("updated"));
+    store.invalidate("k2");
+    store.close();
+
+    store = newStore(1 << 20);
+    assertEquals(499, store.diskStats().size());
+    assertEquals("updated", store.getIfPresent("k1").value);
+    assertNull(store.getIfPresent("k2"));
+    assertEquals("v499", store.getIfPresent("k499").value);
+  }
+
+  @Test
+  public void compactionKeepsLiveEntries() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    for (int i = 0; i < 500; i++) {
+      store.put("k" + i, holder("v" + i));
+    }
+    for (int i = 0; i < 500; i += 2) {
+      store.invalidate("k" + i);
+    }
+    long space = store.diskStats().space();
+    store.prune(CacheBuilder.newBuilder().build());
+    assertEquals(space, store.diskStats().space());
+    store.close();
+
+    store = newStore(1 << 20);
+    assertEquals(250, store.diskStats().size());
+    assertNull(store.getIfPresent("k0"));
+    assertEquals("v1", store.getIfPresent("k1").value);
+  }
+
+  @Test
+  public void pruneTrimsToDiskLimit() {
+    SegmentStore<String, String> store = newStore(4096);
+    for (int i = 0; i < 500; i++) {
+      store.put("k" + i, holder("v" + i));
+    }
+    store.prune(CacheBuilder.newBuilder().build());
+    assertTrue(store.diskStats().space() <= 4096);
+    assertTrue(store.diskStats().size() > 0);
+  }
+
+  @Test
+  public void invalidateAll() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    store.put("foo", holder("bar"));
+    store.invalidateAll();
+    assertNull(store.getIfPresent("foo"));
+    store.close();
+
+    store = newStore(1 << 20);
+    assertEquals(0, store.diskStats().size());
+  }
+
+  @Test
+  public void writesAfterCloseAreDropped() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    store.put("foo", holder("bar"));
+    store.put("baz", holder("qux"));
+    store.close();
+
+    store.put("new", holder("value"));
+    store.invalidate("foo");
+    assertFalse(store.mightContain("new"));
+
+    store = newStore(1 << 20);
+    assertEquals(2, store.diskStats().size());
+    assertEquals("bar", store.getIfPresent("foo").value);
+    assertNull(store.getIfPresent("new"));
+  }
+
+  @Test
+  public void interruptedReadDoesNotCloseSegment() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    store.put("foo", holder("bar"));
+
+    Thread.currentThread().interrupt();
+    try {
+      assertNull(store.getIfPresent("foo"));
+    } finally {
+      assertTrue(Thread.interrupted());
+    }
+
+    assertEquals("bar", store.getIfPresent("foo").value);
+    store.put("baz", holder("qux"));
+    assertEquals("qux", store.getIfPresent("baz").value);
+    store.close();
+
+    store = newStore(1 << 20);
+    assertEquals(2, store.diskStats().size());
+  }
+
+  @Test
+  public void interruptedPutDoesNotCloseSegment() {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    store.put("foo", holder("bar"));
+
+    Thread.currentThread().interrupt();
+    try {
+      store.put("lost", holder("value"));
+    } finally {
+      assertTrue(Thread.interrupted());
+    }
+
+    store.put("baz", holder("qux"));
+    assertEquals("bar", store.getIfPresent("foo").value);
+    assertEquals("qux", store.getIfPresent("baz").value);
+    assertNull(store.getIfPresent("lost"));
+    store.close();
+
+    store = newStore(1 << 20);
+    assertEquals("qux", store.getIfPresent("baz").value);
+    assertNull(store.getIfPresent("lost"));
+  }
+
+  @Test
+  public void stripeCountIsKeptWhenConfigurationChanges() throws IOException {
+    SegmentStore<String, String> store = newStore(1 << 20);
+    for (int i = 0; i < 500; i++) {
+      store.put("k" + i, holder("v" + i));
+    }
+    store.close();
+
+    store = newStore(1 << 20, 2);
+    assertEquals(500, store.diskStats().size());
+    store.invalidate("k1");
+    store.close();
+
+    // Directories written before the count was recorded.
+    Files.delete(dir.resolve("stripes"));
+    store = newStore(1 << 20, 8);
+    assertEquals(499, store.diskStats().size());
+    assertNull(store.getIfPresent("k1"));
+    assertEquals("v499", store.getIfPresent("k499").value);
+    store.close();
+    assertEquals("4", new String(Files.readAllBytes(dir.resolve("stripes")), UTF_8));
+  }
+
+  private SegmentStore<String, String> newStore(long maxSize) {
+    return newStore(maxSize, 4);
+  }
+
+  private SegmentStore<String, String> newStore(long maxSize, int stripes) {
+    return new SegmentStore<>(
+        dir,
+        new EntrySerializer<>(StringCacheSerializer.INSTANCE, StringCacheSerializer.INSTANCE, 1),
+        maxSize,
+        0,
+        2048,
+        stripes,
+        MoreExecutors.directExecutor());
+  }
+
+  private static ValueHolder<String> holder(String value) {
+    ValueHolder<String> h = new ValueHolder<>(value);
+    h.created = TimeUtil.nowMs();
+    return h;
+  }
+}
@@ -109,6 +109,9 @@ public class ElasticAccountIndex extends AbstractElasticIndex<Account.Id, Accoun
   @Override
   public DataSource<AccountState> getSource(Predicate<AccountState> p, QueryOptions opts)
       throws QueryParseException {
+    if (opts.searchAfter() != null) {
+      throw new QueryParseException("search-after is not supported for account queries");
+    }
     return new QuerySource(p, opts);
   }
 
@@ -32,6 +32,7 @@ import com.google.common.collect.Sets;
 import com.google.gerrit.elasticsearch.ElasticMapping.MappingProperties;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.Schema;
+import com.google.gerrit.index.SortKey;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.reviewdb.client.Account;
@@ -65,6 +66,7 @@ import io.searchbox.core.Search;
 import io.searchbox.core.search.sort.Sort;
 import io.searchbox.core.search.sort.Sort.Sorting;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -72,6 +74,7 @@ import java.util.Set;
 import org.apache.commons.codec.binary.Base64;
 import org.eclipse.jgit.lib.Config;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -191,6 +194,9 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
         sort.setIgnoreUnmapped();
       }
       QueryBuilder qb = queryBuilder.toQueryBuilder(p);
+      if (opts.searchAfter() != null) {
+        qb = QueryBuilders.boolQuery().must(qb).filter(searchAfter(opts.searchAfter()));
+      }
       fields = IndexUtils.changeFields(opts);
       SearchSourceBuilder searchSource =
           new SearchSourceBuilder()
@@ -207,6 +213,27 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
               .build();
     }
 
+    /**
+     * Filter for results sorted after a position.
+     *
+     * <p>Elasticsearch 2.x has no {@code search_after}, so this restricts the query to documents
+     * that are less than the key in the (updated, legacy_id) descending sort instead.
+     */
+    private QueryBuilder searchAfter(SortKey key) throws QueryParseException {
+      if (key.values().size() != 2) {
+        throw new QueryParseException("Invalid search-after position: " + key.encode());
+      }
+      String updated = ChangeField.UPDATED.getName();
+      Instant ts = Instant.ofEpochMilli(key.get(0));
+      return QueryBuilders.boolQuery()
+          .should(QueryBuilders.rangeQuery(updated).lt(ts))
+          .should(
+              QueryBuilders.boolQuery()
+                  .must(QueryBuilders.rangeQuery(updated).gte(ts).lte(ts))
+                  .must(QueryBuilders.rangeQuery(ChangeField.LEGACY_ID.getName()).lt(key.get(1))))
+          .minimumNumberShouldMatch(1);
+    }
+
     @Override
     public int getCardinality() {
       return 10;
@@ -106,6 +106,9 @@ public class ElasticGroupIndex extends AbstractElasticIndex<AccountGroup.UUID, A
   @Override
   public DataSource<AccountGroup> getSource(Predicate<AccountGroup> p, QueryOptions opts)
       throws QueryParseException {
+    if (opts.searchAfter() != null) {
+      throw new QueryParseException("search-after is not supported for group queries");
+    }
     return new QuerySource(p, opts);
   }
 
@@ -0,0 +1,39 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.extensions.restapi;
+
+import java.util.Iterator;
+
+/**
+ * Result of a {@link RestReadView} that can be sent to the client while it is being computed.
+ *
+ * <p>A result implementing {@link java.util.Map} streams its entries and is sent as a JSON object;
+ * any other result is sent as a JSON array of its elements. The REST API servlet writes such
+ * results element by element with chunked transfer encoding, instead of first rendering the whole
+ * response in memory.
+ *
+ * @param <T> type of element, or {@code Map.Entry} for maps.
+ */
+public interface StreamingResult<T> {
+  /**
+   * Compute the elements of the result.
+   *
+   * <p>If the result was not read in any other way before, elements are computed on demand and are
+   * not retained once returned by the iterator. In that case this method may only be called once.
+   *
+   * @return iterator over the elements.
+   */
+  Iterator<T> elements();
+}
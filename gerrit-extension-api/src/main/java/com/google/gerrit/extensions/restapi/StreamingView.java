@@ -0,0 +1,27 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.extensions.restapi;
+
+/**
+ * {@link RestReadView} that can return a {@link StreamingResult}.
+ *
+ * <p>Views only stream when asked to by the REST API servlet, which writes the result out right
+ * away. Other callers, such as the Java API, get a fully computed result, so that errors are
+ * thrown from {@code apply} instead of while the result is read.
+ */
+public interface StreamingView {
+  /** @param streaming whether the next {@code apply} may return a {@link StreamingResult}. */
+  void setStreaming(boolean streaming);
+}
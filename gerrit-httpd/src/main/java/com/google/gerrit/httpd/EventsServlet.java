@@ -0,0 +1,182 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.httpd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.events.EventLog;
+import com.google.gerrit.server.permissions.GlobalPermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gwtexpui.server.CacheHeaders;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.lib.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams events recorded in the {@link EventLog} as server-sent events.
+ *
+ * <p>Each request is a long poll: the response contains the events following the requested
+ * position, waiting up to {@code wait} seconds for a first one, and then ends so the client
+ * reconnects. Every event is a message whose {@code id} is its sequence number, so standard
+ * {@code EventSource} clients resume through the {@code Last-Event-ID} header. Events the user
+ * cannot see are sent as messages without data, which only advance the client's position.
+ *
+ * <p>A waiting request holds a container thread, so at most {@code eventLog.maxWaiters} requests
+ * wait at the same time. Further requests are answered immediately with the events already
+ * available and a {@code retry} hint, which makes {@code EventSource} clients reconnect later.
+ */
+@SuppressWarnings("serial")
+@Singleton
+class EventsServlet extends HttpServlet {
+  private static final Logger log = LoggerFactory.getLogger(EventsServlet.class);
+
+  private static final int BATCH_SIZE = 128;
+  private static final int MAX_EVENTS = 4096;
+  private static final long DEFAULT_WAIT_SECONDS = 30;
+  private static final long MAX_WAIT_SECONDS = 60;
+  private static final long RETRY_MILLIS = 10000;
+
+  private static final byte[] DROPPED =
+      "event: dropped-output\ndata: {\"type\":\"dropped-output\"}\n\n".getBytes(UTF_8);
+
+  private final EventLog eventLog;
+  private final Provider<CurrentUser> user;
+  private final Provider<ReviewDb> db;
+  private final PermissionBackend permissionBackend;
+  private final Semaphore waiters;
+
+  @Inject
+  EventsServlet(
+      @GerritServerConfig Config cfg,
+      EventLog eventLog,
+      Provider<CurrentUser> user,
+      Provider<ReviewDb> db,
+      PermissionBackend permissionBackend) {
+    this.eventLog = eventLog;
+    this.user = user;
+    this.db = db;
+    this.permissionBackend = permissionBackend;
+    this.waiters = new Semaphore(Math.max(cfg.getInt("eventLog", "maxWaiters", 8), 0));
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+    CurrentUser self = user.get();
+    try {
+      permissionBackend.user(self).check(GlobalPermission.STREAM_EVENTS);
+    } catch (AuthException e) {
+      res.sendError(SC_FORBIDDEN, "not permitted to stream events");
+      return;
+    } catch (PermissionBackendException e) {
+      log.warn("Cannot check streamEvents capability", e);
+      res.sendError(SC_INTERNAL_SERVER_ERROR);
+      return;
+    }
+    if (!eventLog.isEnabled()) {
+      res.sendError(SC_NOT_FOUND, "event log is disabled");
+      return;
+    }
+
+    long next;
+    long wait;
+    try {
+      String from = req.getParameter("from");
+      String last = req.getHeader("Last-Event-ID");
+      if (!Strings.isNullOrEmpty(from)) {
+        next = Math.max(Long.parseLong(from), 1);
+      } else if (!Strings.isNullOrEmpty(last)) {
+        next = Long.parseLong(last.trim()) + 1;
+      } else {
+        next = eventLog.nextSequence();
+      }
+      String w = req.getParameter("wait");
+      wait =
+          Strings.isNullOrEmpty(w)
+              ? DEFAULT_WAIT_SECONDS
+              : Math.min(Math.max(Long.parseLong(w), 0), MAX_WAIT_SECONDS);
+    } catch (NumberFormatException e) {
+      res.sendError(SC_BAD_REQUEST, "invalid sequence number or wait time");
+      return;
+    }
+    String[] types = req.getParameterValues("type");
+    List<String> subscribed = types != null ? Arrays.asList(types) : Collections.emptyList();
+
+    boolean waited = false;
+    if (wait > 0 && waiters.tryAcquire()) {
+      try {
+        // If nothing arrives in time the response is empty and the client reconnects.
+        eventLog.await(next, wait, TimeUnit.SECONDS);
+        waited = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        waiters.release();
+      }
+    }
+
+    CacheHeaders.setNotCacheable(res);
+    res.setContentType("text/event-stream");
+    res.setCharacterEncoding(UTF_8.name());
+    OutputStream out = res.getOutputStream();
+    if (wait > 0 && !waited) {
+      out.write(("retry: " + RETRY_MILLIS + "\n\n").getBytes(UTF_8));
+    }
+    int sent = 0;
+    List<EventLog.Entry> entries;
+    while (sent < MAX_EVENTS && !(entries = eventLog.read(next, BATCH_SIZE)).isEmpty()) {
+      if (entries.get(0).seq > next) {
+        // Requested events were already deleted from the log.
+        out.write(DROPPED);
+      }
+      for (EventLog.Entry e : entries) {
+        out.write(("id: " + e.seq + "\n").getBytes(UTF_8));
+        if ((subscribed.isEmpty() || subscribed.contains(e.type))
+            && eventLog.isVisibleTo(e, self, db.get())) {
+          out.write("data: ".getBytes(UTF_8));
+          out.write(e.json);
+          out.write('\n');
+        }
+        out.write('\n');
+      }
+      sent += entries.size();
+      next = entries.get(entries.size() - 1).seq + 1;
+      out.flush();
+    }
+  }
+}
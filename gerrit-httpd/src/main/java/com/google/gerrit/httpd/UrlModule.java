@@ -100,6 +100,7 @@ class UrlModule extends ServletModule {
     install(new RunAsFilter.Module());
 
     serveRegex("^/(?:a/)?tools/(.*)$").with(ToolServlet.class);
+    serveRegex("^/(?:a/)?events/?$").with(EventsServlet.class);
 
     // Bind servlets for REST root collections.
     // The '/plugins/' root collection is already handled by HttpPluginServlet
@@ -91,6 +91,8 @@ import com.google.gerrit.extensions.restapi.RestModifyView;
 import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.extensions.restapi.RestResource;
 import com.google.gerrit.extensions.restapi.RestView;
+import com.google.gerrit.extensions.restapi.StreamingResult;
+import com.google.gerrit.extensions.restapi.StreamingView;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
 import com.google.gerrit.httpd.WebSession;
@@ -141,6 +143,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -394,6 +397,9 @@ public class RestApiServlet extends HttpServlet {
       }
 
       if (viewData.view instanceof RestReadView<?> && isRead(req)) {
+        if (viewData.view instanceof StreamingView) {
+          ((StreamingView) viewData.view).setStreaming(true);
+        }
         result = ((RestReadView<RestResource>) viewData.view).apply(rsrc);
       } else if (viewData.view instanceof RestModifyView<?, ?>) {
         @SuppressWarnings("unchecked")
@@ -431,6 +437,8 @@ public class RestApiServlet extends HttpServlet {
         result = Response.unwrap(result);
         if (result instanceof BinaryResult) {
           responseBytes = replyBinaryResult(req, res, (BinaryResult) result);
+        } else if (result instanceof StreamingResult) {
+          responseBytes = replyJsonStream(req, res, qp.config(), (StreamingResult<?>) result);
         } else {
           responseBytes = replyJson(req, res, qp.config(), result);
         }
@@ -876,6 +884,77 @@ public class RestApiServlet extends HttpServlet {
         req, res, asBinaryResult(buf).setContentType(JSON_TYPE).setCharacterEncoding(UTF_8));
   }
 
+  /**
+   * Write a result while it is being computed.
+   *
+   * <p>Unlike {@link #replyJson}, the response is not rendered in memory first, so it is sent
+   * without a content length using chunked transfer encoding. If the client accepts gzip, the
+   * response is always compressed as its size is not known in advance.
+   */
+  @SuppressWarnings("resource")
+  private static long replyJsonStream(
+      HttpServletRequest req,
+      HttpServletResponse res,
+      ListMultimap<String, String> config,
+      StreamingResult<?> result)
+      throws IOException {
+    res.setContentType(JSON_TYPE);
+    res.setCharacterEncoding(UTF_8.name());
+    if ("HEAD".equals(req.getMethod())) {
+      return 0;
+    }
+
+    CountingOutputStream dst = new CountingOutputStream(res.getOutputStream());
+    OutputStream out = dst;
+    if (acceptsGzip(req)) {
+      res.setHeader("Content-Encoding", "gzip");
+      out = new GZIPOutputStream(dst);
+    }
+    out.write(JSON_MAGIC);
+    Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+    Gson gson = newGson(config, req);
+    JsonWriter json = gson.newJsonWriter(w);
+    writeStream(gson, json, result);
+    json.flush();
+    w.write('\n');
+    // Only close on success, an error response can still replace an uncommitted one.
+    w.close();
+    return dst.getCount();
+  }
+
+  private static void writeStream(Gson gson, JsonWriter json, StreamingResult<?> result)
+      throws IOException {
+    Iterator<?> it = result.elements();
+    if (result instanceof Map) {
+      json.beginObject();
+      while (it.hasNext()) {
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) it.next();
+        if (e.getValue() != null) {
+          json.name(String.valueOf(e.getKey()));
+          writeValue(gson, json, e.getValue());
+        }
+      }
+      json.endObject();
+    } else {
+      json.beginArray();
+      while (it.hasNext()) {
+        writeValue(gson, json, it.next());
+      }
+      json.endArray();
+    }
+  }
+
+  private static void writeValue(Gson gson, JsonWriter json, @Nullable Object value)
+      throws IOException {
+    if (value instanceof StreamingResult) {
+      writeStream(gson, json, (StreamingResult<?>) value);
+    } else if (value == null) {
+      json.nullValue();
+    } else {
+      gson.toJson(value, value.getClass(), json);
+    }
+  }
+
   private static Gson newGson(
       ListMultimap<String, String> config, @Nullable HttpServletRequest req) {
     GsonBuilder gb = OutputFormat.JSON_COMPACT.newGsonBuilder();
@@ -0,0 +1,153 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.httpd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventLog;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.permissions.GlobalPermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.util.http.testutil.FakeHttpServletRequest;
+import com.google.gerrit.util.http.testutil.FakeHttpServletResponse;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.util.Providers;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EventsServletTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Config cfg;
+  private CurrentUser user;
+  private PermissionBackend permissionBackend;
+  private EventLog eventLog;
+
+  @Before
+  public void setUp() throws Exception {
+    cfg = new Config();
+    cfg.setBoolean("eventLog", null, "enabled", true);
+    SitePaths site = new SitePaths(tmp.newFolder().toPath());
+
+    user = createNiceMock(CurrentUser.class);
+    permissionBackend = createMock(PermissionBackend.class);
+    PermissionBackend.WithUser withUser = createMock(PermissionBackend.WithUser.class);
+    expect(permissionBackend.user(user)).andReturn(withUser).anyTimes();
+    withUser.check(GlobalPermission.STREAM_EVENTS);
+    expectLastCall().anyTimes();
+    replay(user, permissionBackend, withUser);
+
+    eventLog =
+        Guice.createInjector(
+                new AbstractModule() {
+                  @Override
+                  protected void configure() {
+                    bind(Config.class).annotatedWith(GerritServerConfig.class).toInstance(cfg);
+                    bind(SitePaths.class).toInstance(site);
+                    bind(PermissionBackend.class).toInstance(permissionBackend);
+                    bind(ProjectCache.class).toInstance(createMock(ProjectCache.class));
+                    bind(ChangeNotes.Factory.class)
+                        .toInstance(createMock(ChangeNotes.Factory.class));
+                  }
+                })
+            .getInstance(EventLog.class);
+    eventLog.start();
+    assertThat(eventLog.isEnabled()).isTrue();
+  }
+
+  @After
+  public void tearDown() {
+    eventLog.stop();
+  }
+
+  @Test
+  public void resumeAfterLastEventId() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      eventLog.onEvent(new TestEvent());
+    }
+
+    FakeHttpServletRequest req = new FakeHttpServletRequest();
+    req.setQueryString("wait=0");
+    req.addHeader("Last-Event-ID", "1");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    newServlet().doGet(req, res);
+
+    String body = res.getActualBodyString();
+    assertThat(body).doesNotContain("id: 1\n");
+    assertThat(body).contains("id: 2\ndata: {\"seq\":2,");
+    assertThat(body).contains("id: 3\ndata: {\"seq\":3,");
+    assertThat(body).doesNotContain("dropped-output");
+  }
+
+  @Test
+  public void fromParameterOverridesLastEventId() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      eventLog.onEvent(new TestEvent());
+    }
+
+    FakeHttpServletRequest req = new FakeHttpServletRequest();
+    req.setQueryString("wait=0&from=3");
+    req.addHeader("Last-Event-ID", "0");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    newServlet().doGet(req, res);
+
+    String body = res.getActualBodyString();
+    assertThat(body).doesNotContain("id: 2\n");
+    assertThat(body).contains("id: 3\n");
+  }
+
+  @Test
+  public void doNotWaitWithoutFreeWaiter() throws Exception {
+    cfg.setInt("eventLog", null, "maxWaiters", 0);
+
+    FakeHttpServletRequest req = new FakeHttpServletRequest();
+    req.setQueryString("wait=60");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    newServlet().doGet(req, res);
+
+    assertThat(res.getActualBodyString()).isEqualTo("retry: 10000\n\n");
+  }
+
+  private EventsServlet newServlet() {
+    return new EventsServlet(
+        cfg,
+        eventLog,
+        Providers.of(user),
+        Providers.<ReviewDb>of(null),
+        permissionBackend);
+  }
+
+  private static class TestEvent extends Event {
+    TestEvent() {
+      super("test-event");
+    }
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.index;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Longs;
+import com.google.gerrit.index.query.QueryParseException;
+import java.util.List;
+
+/**
+ * Position of a result in the sort order of an index.
+ *
+ * <p>A sort key holds the values of the sort fields of the last result returned on a page. Passing
+ * it back as {@link QueryOptions#searchAfter()} continues the query directly after that result, so
+ * deep pages cost the same as the first page instead of requiring the index to collect and skip all
+ * preceding results.
+ *
+ * <p>The {@link #encode() encoded} form is opaque to clients.
+ */
+@AutoValue
+public abstract class SortKey {
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+  public static SortKey create(long... values) {
+    checkArgument(values.length > 0, "sort key must have at least one value");
+    return new AutoValue_SortKey(ImmutableList.copyOf(Longs.asList(values)));
+  }
+
+  /**
+   * Decode a sort key previously returned by {@link #encode()}.
+   *
+   * @param token encoded sort key.
+   * @return decoded sort key.
+   * @throws QueryParseException if the token is malformed.
+   */
+  public static SortKey decode(String token) throws QueryParseException {
+    List<String> parts;
+    try {
+      parts = Splitter.on('.').splitToList(new String(ENCODING.decode(token), UTF_8));
+    } catch (IllegalArgumentException e) {
+      throw new QueryParseException("Invalid search-after token: " + token);
+    }
+    long[] values = new long[parts.size()];
+    for (int i = 0; i < values.length; i++) {
+      Long v = Longs.tryParse(parts.get(i));
+      if (v == null) {
+        throw new QueryParseException("Invalid search-after token: " + token);
+      }
+      values[i] = v;
+    }
+    return create(values);
+  }
+
+  /** @return values of the sort fields, in the order of the index's sort. */
+  public abstract ImmutableList<Long> values();
+
+  public long get(int i) {
+    return values().get(i);
+  }
+
+  public String encode() {
+    return ENCODING.encode(Joiner.on('.').join(values()).getBytes(UTF_8));
+  }
+}
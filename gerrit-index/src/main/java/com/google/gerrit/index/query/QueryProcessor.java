@@ -29,6 +29,7 @@ import com.google.gerrit.index.IndexConfig;
 import com.google.gerrit.index.IndexRewriter;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.SchemaDefinitions;
+import com.google.gerrit.index.SortKey;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.MetricMaker;
@@ -82,6 +83,7 @@ public abstract class QueryProcessor<T> {
 
   private boolean enforceVisibility = true;
   private int userProvidedLimit;
+  private String searchAfter;
   private Set<String> requestedFields;
 
   protected QueryProcessor(
@@ -107,6 +109,21 @@ public abstract class QueryProcessor<T> {
     return this;
   }
 
+  /**
+   * Continue a previous query directly after its last result.
+   *
+   * <p>Unlike {@link #setStart(int)}, the index does not need to collect and skip the results of
+   * preceding pages, so the cost of a page does not grow with its depth.
+   *
+   * @param token value of {@link QueryResult#searchAfter()} from the previous page; null to start
+   *     from the first result.
+   * @return this.
+   */
+  public QueryProcessor<T> setSearchAfter(@Nullable String token) {
+    searchAfter = token;
+    return this;
+  }
+
   /**
    * Specify whether to enforce visibility by filtering out results that are not visible to the
    * user.
@@ -199,6 +216,8 @@ public abstract class QueryProcessor<T> {
       return disabledResults(queryStrings, queries);
     }
 
+    SortKey after = searchAfter != null ? SortKey.decode(searchAfter) : null;
+
     // Parse and rewrite all queries.
     List<Integer> limits = new ArrayList<>(cnt);
     List<Predicate<T>> predicates = new ArrayList<>(cnt);
@@ -220,7 +239,8 @@ public abstract class QueryProcessor<T> {
       // Always bump limit by 1, even if this results in exceeding the permitted
       // max for this user. The only way to see if there are more entities is to
       // ask for one more result from the query.
-      QueryOptions opts = createOptions(indexConfig, start, limit + 1, getRequestedFields());
+      QueryOptions opts =
+          createOptions(indexConfig, start, limit + 1, getRequestedFields()).withSearchAfter(after);
       Predicate<T> pred = rewriter.rewrite(q, opts);
       if (enforceVisibility) {
         pred = enforceVisibility(pred);
@@ -240,12 +260,16 @@ public abstract class QueryProcessor<T> {
 
     List<QueryResult<T>> out = new ArrayList<>(cnt);
     for (int i = 0; i < cnt; i++) {
+      List<T> entities = matches.get(i).toList();
+      int limit = limits.get(i);
+      SortKey next = entities.size() > limit ? sortKey(entities.get(limit - 1)) : null;
       out.add(
           QueryResult.create(
               queryStrings != null ? queryStrings.get(i) : null,
               predicates.get(i),
-              limits.get(i),
-              matches.get(i).toList()));
+              limit,
+              entities,
+              next != null ? next.encode() : null));
     }
 
     // Only measure successful queries that actually touched the index.
@@ -272,6 +296,20 @@ public abstract class QueryProcessor<T> {
     return QueryOptions.create(indexConfig, start, limit, requestedFields);
   }
 
+  /**
+   * Get the position of an entity in the sort order of the index.
+   *
+   * <p>Subclasses whose index supports {@link QueryOptions#searchAfter()} should return the values
+   * of the index's sort fields, so the last result of a page can be used to request the next one.
+   *
+   * @param entity result of a query.
+   * @return sort key of the entity; null if cursors are not supported.
+   */
+  @Nullable
+  protected SortKey sortKey(T entity) throws OrmException {
+    return null;
+  }
+
   /**
    * Invoked after the query was rewritten. Subclasses must overwrite this method to filter out
    * results that are not visible to the calling user.
@@ -23,14 +23,24 @@ import java.util.List;
 public abstract class QueryResult<T> {
   public static <T> QueryResult<T> create(
       @Nullable String query, Predicate<T> predicate, int limit, List<T> entites) {
+    return create(query, predicate, limit, entites, null);
+  }
+
+  public static <T> QueryResult<T> create(
+      @Nullable String query,
+      Predicate<T> predicate,
+      int limit,
+      List<T> entites,
+      @Nullable String searchAfter) {
     boolean more;
     if (entites.size() > limit) {
       more = true;
       entites = entites.subList(0, limit);
     } else {
       more = false;
+      searchAfter = null;
     }
-    return new AutoValue_QueryResult<>(query, predicate, entites, more);
+    return new AutoValue_QueryResult<>(query, predicate, entites, more, searchAfter);
   }
 
   /** @return the original query string, or null if the query was created programmatically. */
@@ -48,4 +58,11 @@ public abstract class QueryResult<T> {
    *     Never true if {@link #entities()} is empty.
    */
   public abstract boolean more();
+
+  /**
+   * @return opaque token to pass as the search-after position of the next page, or null if there
+   *     are no {@link #more()} results or the index does not support cursors.
+   */
+  @Nullable
+  public abstract String searchAfter();
 }
@@ -16,14 +16,16 @@ package com.google.gerrit.lucene;
 
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gerrit.index.FieldDef;
 import com.google.gerrit.index.FieldType;
@@ -34,12 +36,15 @@ import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.index.IndexUtils;
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -51,7 +56,6 @@ import org.apache.lucene.document.LongField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TrackingIndexWriter;
 import org.apache.lucene.search.ControlledRealTimeReopenThread;
@@ -76,11 +80,16 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
   private final SitePaths sitePaths;
   private final Directory dir;
   private final String name;
-  private final ListeningExecutorService writerThread;
+  private final String indexName;
+  private final ListeningScheduledExecutorService writerThread;
+  private final AutoCommitWriter delegateWriter;
   private final TrackingIndexWriter writer;
   private final ReferenceManager<IndexSearcher> searcherManager;
   private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
   private final Set<NrtFuture> notDoneNrtFutures;
+  private final long groupCommitWindowMs;
+  private final GroupCommitMetrics groupCommitMetrics;
+  private final List<PendingWrite> pendingWrites;
   private ScheduledThreadPoolExecutor autoCommitExecutor;
 
   AbstractLuceneIndex(
@@ -90,14 +99,16 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
       String name,
       String subIndex,
       GerritIndexWriterConfig writerConfig,
-      SearcherFactory searcherFactory)
+      SearcherFactory searcherFactory,
+      GroupCommitMetrics groupCommitMetrics)
       throws IOException {
     this.schema = schema;
     this.sitePaths = sitePaths;
     this.dir = dir;
     this.name = name;
+    this.groupCommitMetrics = groupCommitMetrics;
     String index = Joiner.on('_').skipNulls().join(name, subIndex);
-    IndexWriter delegateWriter;
+    indexName = index;
     long commitPeriod = writerConfig.getCommitWithinMs();
 
     if (commitPeriod < 0) {
@@ -149,10 +160,12 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
     searcherManager = new WrappableSearcherManager(writer.getIndexWriter(), true, searcherFactory);
 
     notDoneNrtFutures = Sets.newConcurrentHashSet();
+    groupCommitWindowMs = writerConfig.getGroupCommitWindowMs();
+    pendingWrites = new ArrayList<>();
 
     writerThread =
         MoreExecutors.listeningDecorator(
-            Executors.newFixedThreadPool(
+            Executors.newScheduledThreadPool(
                 1,
                 new ThreadFactoryBuilder()
                     .setNameFormat(index + " Write-%d")
@@ -255,6 +268,9 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
   }
 
   private ListenableFuture<?> submit(Callable<Long> task) {
+    if (groupCommitWindowMs >= 0) {
+      return enqueue(task);
+    }
     ListenableFuture<Long> future = Futures.nonCancellationPropagating(writerThread.submit(task));
     return Futures.transformAsync(
         future,
@@ -267,6 +283,74 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
         directExecutor());
   }
 
+  private ListenableFuture<?> enqueue(Callable<Long> task) {
+    PendingWrite w = new PendingWrite(task);
+    synchronized (pendingWrites) {
+      pendingWrites.add(w);
+      if (pendingWrites.size() == 1) {
+        // First write of a new batch; later writes join it until the window closes.
+        try {
+          @SuppressWarnings("unused") // Errors are reported through the pending futures.
+          Future<?> possiblyIgnoredError =
+              writerThread.schedule(this::writeBatch, groupCommitWindowMs, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+          pendingWrites.remove(w);
+          throw e;
+        }
+      }
+    }
+    w.future.addListener(
+        () ->
+            groupCommitMetrics.waitTime.record(
+                indexName, System.nanoTime() - w.createdNanos, NANOSECONDS),
+        directExecutor());
+    return w.future;
+  }
+
+  private void writeBatch() {
+    List<PendingWrite> batch;
+    synchronized (pendingWrites) {
+      batch = new ArrayList<>(pendingWrites);
+      pendingWrites.clear();
+    }
+    groupCommitMetrics.batchSize.record(indexName, batch.size());
+
+    long gen = -1;
+    delegateWriter.beginBatch();
+    try {
+      for (PendingWrite w : batch) {
+        try {
+          gen = Math.max(gen, w.task.call());
+        } catch (Exception e) {
+          w.future.setException(e);
+        }
+      }
+    } finally {
+      try {
+        delegateWriter.endBatch();
+      } catch (IOException e) {
+        for (PendingWrite w : batch) {
+          w.future.setException(e);
+        }
+      }
+    }
+    if (gen < 0) {
+      return;
+    }
+
+    // A single generation covers every write of the batch, so all callers
+    // share one wait and one searcher refresh.
+    try {
+      reopenThread.waitForGeneration(gen, 0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    NrtFuture nrt = new NrtFuture(gen);
+    for (PendingWrite w : batch) {
+      w.future.setFuture(Futures.nonCancellationPropagating(nrt));
+    }
+  }
+
   @Override
   public void deleteAll() throws IOException {
     writer.deleteAll();
@@ -332,6 +416,18 @@ public abstract class AbstractLuceneIndex<K, V> implements Index<K, V> {
     return f.isStored() ? Field.Store.YES : Field.Store.NO;
   }
 
+  private static class PendingWrite {
+    final Callable<Long> task;
+    final SettableFuture<Void> future;
+    final long createdNanos;
+
+    PendingWrite(Callable<Long> task) {
+      this.task = task;
+      future = SettableFuture.create();
+      createdNanos = System.nanoTime();
+    }
+  }
+
   private final class NrtFuture extends AbstractFuture<Void> {
     private final long gen;
 
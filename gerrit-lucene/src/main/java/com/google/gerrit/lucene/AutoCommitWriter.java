@@ -26,6 +26,7 @@ import org.apache.lucene.store.Directory;
 /** Writer that optionally flushes/commits after every write. */
 public class AutoCommitWriter extends IndexWriter {
   private boolean autoCommit;
+  private volatile boolean batching;
 
   AutoCommitWriter(Directory dir, IndexWriterConfig config) throws IOException {
     this(dir, config, false);
@@ -101,6 +102,16 @@ public class AutoCommitWriter extends IndexWriter {
     autoFlush();
   }
 
+  /** Defer automatic flushes until {@link #endBatch()}, so a batch of writes commits once. */
+  void beginBatch() {
+    batching = true;
+  }
+
+  void endBatch() throws IOException {
+    batching = false;
+    autoFlush();
+  }
+
   void manualFlush() throws IOException {
     flush();
     if (autoCommit) {
@@ -109,7 +120,7 @@ public class AutoCommitWriter extends IndexWriter {
   }
 
   public void autoFlush() throws IOException {
-    if (autoCommit) {
+    if (autoCommit && !batching) {
       manualFlush();
     }
   }
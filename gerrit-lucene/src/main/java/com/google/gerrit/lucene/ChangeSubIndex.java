@@ -47,7 +47,8 @@ public class ChangeSubIndex extends AbstractLuceneIndex<Change.Id, ChangeData>
       SitePaths sitePaths,
       Path path,
       GerritIndexWriterConfig writerConfig,
-      SearcherFactory searcherFactory)
+      SearcherFactory searcherFactory,
+      GroupCommitMetrics groupCommitMetrics)
       throws IOException {
     this(
         schema,
@@ -55,7 +56,8 @@ public class ChangeSubIndex extends AbstractLuceneIndex<Change.Id, ChangeData>
         FSDirectory.open(path),
         path.getFileName().toString(),
         writerConfig,
-        searcherFactory);
+        searcherFactory,
+        groupCommitMetrics);
   }
 
   ChangeSubIndex(
@@ -64,9 +66,11 @@ public class ChangeSubIndex extends AbstractLuceneIndex<Change.Id, ChangeData>
       Directory dir,
       String subIndex,
       GerritIndexWriterConfig writerConfig,
-      SearcherFactory searcherFactory)
+      SearcherFactory searcherFactory,
+      GroupCommitMetrics groupCommitMetrics)
       throws IOException {
-    super(schema, sitePaths, dir, NAME, subIndex, writerConfig, searcherFactory);
+    super(
+        schema, sitePaths, dir, NAME, subIndex, writerConfig, searcherFactory, groupCommitMetrics);
   }
 
   @Override
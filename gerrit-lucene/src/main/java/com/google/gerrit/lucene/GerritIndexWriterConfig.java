@@ -32,6 +32,7 @@ class GerritIndexWriterConfig {
 
   private final IndexWriterConfig luceneConfig;
   private long commitWithinMs;
+  private final long groupCommitWindowMs;
   private final CustomMappingAnalyzer analyzer;
 
   GerritIndexWriterConfig(Config cfg, String name) {
@@ -59,6 +60,8 @@ class GerritIndexWriterConfig {
     } catch (IllegalArgumentException e) {
       commitWithinMs = cfg.getLong("index", name, "commitWithin", 0);
     }
+    groupCommitWindowMs =
+        ConfigUtil.getTimeUnit(cfg, "index", name, "groupCommitWindow", -1, MILLISECONDS);
   }
 
   CustomMappingAnalyzer getAnalyzer() {
@@ -72,4 +75,8 @@ class GerritIndexWriterConfig {
   long getCommitWithinMs() {
     return commitWithinMs;
   }
+
+  long getGroupCommitWindowMs() {
+    return groupCommitWindowMs;
+  }
 }
@@ -0,0 +1,50 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.lucene;
+
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram1;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/** Metrics of writes batched by {@link AbstractLuceneIndex} in group commit mode. */
+@Singleton
+class GroupCommitMetrics {
+  final Histogram1<String> batchSize;
+  final Timer1<String> waitTime;
+
+  @Inject
+  GroupCommitMetrics(MetricMaker metricMaker) {
+    Field<String> index = Field.ofString("index", "index name");
+    batchSize =
+        metricMaker.newHistogram(
+            "index/lucene/group_commit/batch_size",
+            new Description("Number of writes applied with a single searcher refresh")
+                .setCumulative()
+                .setUnit("writes"),
+            index);
+    waitTime =
+        metricMaker.newTimer(
+            "index/lucene/group_commit/wait_time",
+            new Description("Time from submitting a write until it is visible to searches")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            index);
+  }
+}
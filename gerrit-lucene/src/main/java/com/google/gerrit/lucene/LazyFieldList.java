@@ -0,0 +1,57 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.lucene;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import org.apache.lucene.index.IndexableField;
+
+/**
+ * Immutable list of values decoded from stored fields on first access.
+ *
+ * <p>Most callers of a query only look at a few of the fields loaded for each result, so decoding
+ * blobs like patch sets or approvals up front wastes time and garbage for large result pages. The
+ * size is known without decoding; each element is decoded the first time it is read.
+ */
+class LazyFieldList<T> extends AbstractList<T> {
+  private final List<IndexableField> fields;
+  private final Function<IndexableField, T> decoder;
+  private final Object[] values;
+
+  LazyFieldList(Collection<IndexableField> fields, Function<IndexableField, T> decoder) {
+    this.fields = new ArrayList<>(fields);
+    this.decoder = decoder;
+    this.values = new Object[fields.size()];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized T get(int index) {
+    Object v = values[index];
+    if (v == null) {
+      v = decoder.apply(fields.get(index));
+      values[index] = v;
+    }
+    return (T) v;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+}
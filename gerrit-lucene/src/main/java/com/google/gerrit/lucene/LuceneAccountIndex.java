@@ -90,6 +90,7 @@ public class LuceneAccountIndex extends AbstractLuceneIndex<Account.Id, AccountS
       @GerritServerConfig Config cfg,
       SitePaths sitePaths,
       Provider<AccountCache> accountCache,
+      GroupCommitMetrics groupCommitMetrics,
       @Assisted Schema<AccountState> schema)
       throws IOException {
     super(
@@ -99,7 +100,8 @@ public class LuceneAccountIndex extends AbstractLuceneIndex<Account.Id, AccountS
         ACCOUNTS,
         null,
         new GerritIndexWriterConfig(cfg, ACCOUNTS),
-        new SearcherFactory());
+        new SearcherFactory(),
+        groupCommitMetrics);
     this.accountCache = accountCache;
 
     indexWriterConfig = new GerritIndexWriterConfig(cfg, ACCOUNTS);
@@ -127,6 +129,9 @@ public class LuceneAccountIndex extends AbstractLuceneIndex<Account.Id, AccountS
   @Override
   public DataSource<AccountState> getSource(Predicate<AccountState> p, QueryOptions opts)
       throws QueryParseException {
+    if (opts.searchAfter() != null) {
+      throw new QueryParseException("search-after is not supported for account queries");
+    }
     return new QuerySource(
         opts,
         queryBuilder.toQuery(p),
@@ -27,8 +27,8 @@ import static com.google.gerrit.server.index.change.ChangeIndexRewriter.OPEN_STA
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.base.Throwables;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
@@ -38,6 +38,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gerrit.index.QueryOptions;
 import com.google.gerrit.index.Schema;
+import com.google.gerrit.index.SortKey;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.reviewdb.client.Account;
@@ -76,12 +77,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
@@ -113,6 +115,7 @@ public class LuceneChangeIndex implements ChangeIndex {
   private static final String ADDED_FIELD = ChangeField.ADDED.getName();
   private static final String APPROVAL_FIELD = ChangeField.APPROVAL.getName();
   private static final String CHANGE_FIELD = ChangeField.CHANGE.getName();
+  private static final String ID_FIELD = LEGACY_ID.getName();
   private static final String DELETED_FIELD = ChangeField.DELETED.getName();
   private static final String MERGEABLE_FIELD = ChangeField.MERGEABLE.getName();
   private static final String PATCH_SET_FIELD = ChangeField.PATCH_SET.getName();
@@ -156,6 +159,7 @@ public class LuceneChangeIndex implements ChangeIndex {
       @IndexExecutor(INTERACTIVE) ListeningExecutorService executor,
       Provider<ReviewDb> db,
       ChangeData.Factory changeDataFactory,
+      GroupCommitMetrics groupCommitMetrics,
       @Assisted Schema<ChangeData> schema)
       throws IOException {
     this.executor = executor;
@@ -172,18 +176,40 @@ public class LuceneChangeIndex implements ChangeIndex {
     if (LuceneIndexModule.isInMemoryTest(cfg)) {
       openIndex =
           new ChangeSubIndex(
-              schema, sitePaths, new RAMDirectory(), "ramOpen", openConfig, searcherFactory);
+              schema,
+              sitePaths,
+              new RAMDirectory(),
+              "ramOpen",
+              openConfig,
+              searcherFactory,
+              groupCommitMetrics);
       closedIndex =
           new ChangeSubIndex(
-              schema, sitePaths, new RAMDirectory(), "ramClosed", closedConfig, searcherFactory);
+              schema,
+              sitePaths,
+              new RAMDirectory(),
+              "ramClosed",
+              closedConfig,
+              searcherFactory,
+              groupCommitMetrics);
     } else {
       Path dir = LuceneVersionManager.getDir(sitePaths, CHANGES, schema);
       openIndex =
           new ChangeSubIndex(
-              schema, sitePaths, dir.resolve(CHANGES_OPEN), openConfig, searcherFactory);
+              schema,
+              sitePaths,
+              dir.resolve(CHANGES_OPEN),
+              openConfig,
+              searcherFactory,
+              groupCommitMetrics);
       closedIndex =
           new ChangeSubIndex(
-              schema, sitePaths, dir.resolve(CHANGES_CLOSED), closedConfig, searcherFactory);
+              schema,
+              sitePaths,
+              dir.resolve(CHANGES_CLOSED),
+              closedConfig,
+              searcherFactory,
+              groupCommitMetrics);
     }
   }
 
@@ -266,6 +292,17 @@ public class LuceneChangeIndex implements ChangeIndex {
         new SortField(ID_SORT_FIELD, SortField.Type.LONG, true));
   }
 
+  private static FieldDoc searchAfter(QueryOptions opts) throws QueryParseException {
+    SortKey key = opts.searchAfter();
+    if (key == null) {
+      return null;
+    } else if (key.values().size() != 2) {
+      throw new QueryParseException("Invalid search-after position: " + key.encode());
+    }
+    // Values must match getSort(); the doc number is irrelevant since the ID is unique.
+    return new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[] {key.get(0), key.get(1)});
+  }
+
   public ChangeSubIndex getClosedChangesIndex() {
     return closedIndex;
   }
@@ -276,6 +313,7 @@ public class LuceneChangeIndex implements ChangeIndex {
     private final Query query;
     private final QueryOptions opts;
     private final Sort sort;
+    private final FieldDoc after;
 
     private QuerySource(
         List<ChangeSubIndex> indexes, Predicate<ChangeData> predicate, QueryOptions opts, Sort sort)
@@ -285,6 +323,7 @@ public class LuceneChangeIndex implements ChangeIndex {
       this.query = checkNotNull(queryBuilder.toQuery(predicate), "null query from Lucene");
       this.opts = opts;
       this.sort = sort;
+      this.after = searchAfter(opts);
     }
 
     @Override
@@ -336,14 +375,30 @@ public class LuceneChangeIndex implements ChangeIndex {
         TopFieldDocs[] hits = new TopFieldDocs[indexes.size()];
         for (int i = 0; i < indexes.size(); i++) {
           searchers[i] = indexes.get(i).acquire();
-          hits[i] = searchers[i].search(query, realLimit, sort);
+          hits[i] =
+              after != null
+                  ? (TopFieldDocs) searchers[i].searchAfter(after, query, realLimit, sort)
+                  : searchers[i].search(query, realLimit, sort);
         }
         TopDocs docs = TopDocs.merge(sort, realLimit, hits);
 
+        // The change number is also a sort field, so its value is already
+        // known from DocValues and doesn't need to be read as a stored field.
+        boolean idFromSort = fields.contains(ID_FIELD);
+        Set<String> storedFields =
+            idFromSort ? Sets.difference(fields, ImmutableSet.of(ID_FIELD)) : fields;
+
         List<Document> result = new ArrayList<>(docs.scoreDocs.length);
         for (int i = opts.start(); i < docs.scoreDocs.length; i++) {
-          ScoreDoc sd = docs.scoreDocs[i];
-          result.add(searchers[sd.shardIndex].doc(sd.doc, fields));
+          FieldDoc sd = (FieldDoc) docs.scoreDocs[i];
+          Document doc =
+              storedFields.isEmpty()
+                  ? new Document()
+                  : searchers[sd.shardIndex].doc(sd.doc, storedFields);
+          if (idFromSort) {
+            doc.add(new StoredField(ID_FIELD, ((Long) sd.fields[1]).intValue()));
+          }
+          result.add(doc);
         }
         return result;
       } finally {
@@ -586,8 +641,11 @@ public class LuceneChangeIndex implements ChangeIndex {
       String field,
       SubmitRuleOptions opts,
       ChangeData cd) {
-    ChangeField.parseSubmitRecords(
-        Collections2.transform(doc.get(field), f -> f.binaryValue().utf8ToString()), opts, cd);
+    ChangeField.setSubmitRecords(
+        new LazyFieldList<>(
+            doc.get(field), f -> ChangeField.parseSubmitRecord(f.binaryValue().utf8ToString())),
+        opts,
+        cd);
   }
 
   private void decodeRefStates(ListMultimap<String, IndexableField> doc, ChangeData cd) {
@@ -612,13 +670,12 @@ public class LuceneChangeIndex implements ChangeIndex {
     if (fields.isEmpty()) {
       return Collections.emptyList();
     }
-
-    List<T> result = new ArrayList<>(fields.size());
-    for (IndexableField f : fields) {
-      BytesRef r = f.binaryValue();
-      result.add(codec.decode(r.bytes, r.offset, r.length));
-    }
-    return result;
+    return new LazyFieldList<>(
+        fields,
+        f -> {
+          BytesRef r = f.binaryValue();
+          return codec.decode(r.bytes, r.offset, r.length);
+        });
   }
 
   private static List<byte[]> copyAsBytes(Collection<IndexableField> fields) {
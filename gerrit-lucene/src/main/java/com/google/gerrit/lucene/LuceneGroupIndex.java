@@ -89,6 +89,7 @@ public class LuceneGroupIndex extends AbstractLuceneIndex<AccountGroup.UUID, Acc
       @GerritServerConfig Config cfg,
       SitePaths sitePaths,
       Provider<GroupCache> groupCache,
+      GroupCommitMetrics groupCommitMetrics,
       @Assisted Schema<AccountGroup> schema)
       throws IOException {
     super(
@@ -98,7 +99,8 @@ public class LuceneGroupIndex extends AbstractLuceneIndex<AccountGroup.UUID, Acc
         GROUPS,
         null,
         new GerritIndexWriterConfig(cfg, GROUPS),
-        new SearcherFactory());
+        new SearcherFactory(),
+        groupCommitMetrics);
     this.groupCache = groupCache;
 
     indexWriterConfig = new GerritIndexWriterConfig(cfg, GROUPS);
@@ -126,6 +128,9 @@ public class LuceneGroupIndex extends AbstractLuceneIndex<AccountGroup.UUID, Acc
   @Override
   public DataSource<AccountGroup> getSource(Predicate<AccountGroup> p, QueryOptions opts)
       throws QueryParseException {
+    if (opts.searchAfter() != null) {
+      throw new QueryParseException("search-after is not supported for group queries");
+    }
     return new QuerySource(
         opts,
         queryBuilder.toQuery(p),
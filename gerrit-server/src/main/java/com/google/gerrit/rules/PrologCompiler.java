@@ -12,8 +12,9 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
-package com.google.gerrit.pgm.rules;
+package com.google.gerrit.rules;
 
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.TimeUtil;
 import com.google.gerrit.common.Version;
 import com.google.gerrit.reviewdb.client.RefNames;
@@ -32,6 +33,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -52,8 +54,9 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 
 /**
- * Helper class for Rulec: does the actual prolog -> java src -> class -> jar work Finds rules.pl in
- * refs/meta/config branch Creates rules-(sha1 of rules.pl).jar in (site-path)/cache/rules
+ * Helper class for Rulec and {@link RulesCache}: does the actual prolog -> java src -> class -> jar
+ * work. Finds rules.pl in refs/meta/config branch. Creates rules-(sha1 of rules.pl).jar in
+ * (site-path)/cache/rules
  */
 public class PrologCompiler implements Callable<PrologCompiler.Status> {
   public interface Factory {
@@ -88,6 +91,19 @@ public class PrologCompiler implements Callable<PrologCompiler.Status> {
       return Status.NO_RULES;
     }
 
+    compile(metaConfig, rulesId);
+    return Status.COMPILED;
+  }
+
+  /**
+   * Compile one version of rules.pl.
+   *
+   * @param metaConfig commit the rules were read from, recorded in the jar manifest; may be null.
+   * @param rulesId blob of rules.pl.
+   * @return path of the created jar.
+   */
+  public Path compile(@Nullable ObjectId metaConfig, ObjectId rulesId)
+      throws IOException, CompileException {
     if (ruleDir == null) {
       throw new CompileException("Caching not enabled");
     }
@@ -110,8 +126,7 @@ public class PrologCompiler implements Callable<PrologCompiler.Status> {
       Path jarPath = ruleDir.resolve("rules-" + rulesId.getName() + ".jar");
       List<String> classFiles = getRelativePaths(tempDir, ".class");
       createJar(jarPath, classFiles, tempDir, metaConfig, rulesId);
-
-      return Status.COMPILED;
+      return jarPath;
     } finally {
       deleteAllFiles(tempDir);
     }
@@ -215,7 +230,9 @@ public class PrologCompiler implements Callable<PrologCompiler.Status> {
     if (git.getDirectory() != null) {
       mf.getMainAttributes().putValue("Source-Repository", git.getDirectory().getPath());
     }
-    mf.getMainAttributes().putValue("Source-Commit", metaConfig.name());
+    if (metaConfig != null) {
+      mf.getMainAttributes().putValue("Source-Commit", metaConfig.name());
+    }
     mf.getMainAttributes().putValue("Source-Blob", rulesId.name());
 
     Path tmpjar = Files.createTempFile(archiveFile.getParent(), ".rulec_", ".jar");
@@ -244,7 +261,7 @@ public class PrologCompiler implements Callable<PrologCompiler.Status> {
     }
 
     try {
-      Files.move(tmpjar, archiveFile);
+      Files.move(tmpjar, archiveFile, StandardCopyOption.REPLACE_EXISTING);
     } catch (IOException e) {
       throw new IOException("Cannot replace " + archiveFile, e);
     }
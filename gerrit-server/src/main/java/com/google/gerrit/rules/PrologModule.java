@@ -21,6 +21,7 @@ public class PrologModule extends FactoryModule {
   @Override
   protected void configure() {
     install(new EnvironmentModule());
+    install(RulesCache.module());
     bind(PrologEnvironment.Args.class);
   }
 
@@ -15,17 +15,31 @@
 package com.google.gerrit.rules;
 
 import static com.googlecode.prolog_cafe.lang.PrologMachineCopy.save;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.inject.Inject;
+import com.google.inject.Module;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.googlecode.prolog_cafe.exceptions.CompileException;
 import com.googlecode.prolog_cafe.exceptions.SyntaxException;
 import com.googlecode.prolog_cafe.exceptions.TermException;
@@ -42,9 +56,6 @@ import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Reader;
 import java.io.StringReader;
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -52,9 +63,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
@@ -62,28 +77,66 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.util.RawParseUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Manages a cache of compiled Prolog rules.
  *
  * <p>Rules are loaded from the {@code site_path/cache/rules/rules-SHA1.jar}, where {@code SHA1} is
  * the SHA1 of the Prolog {@code rules.pl} in a project's {@link RefNames#REFS_CONFIG} branch.
+ *
+ * <p>Machines are held in the {@code "prolog_rules"} cache, keyed by the blob id of {@code
+ * rules.pl}. Only threads asking for the same rules wait for each other while a machine loads. If
+ * {@code rules.compileOnLoad} is set, rules consulted from source are compiled to a jar in the
+ * background on a {@link WorkQueue} queue, so the machine can be loaded from bytecode after an
+ * eviction or restart.
  */
 @Singleton
 public class RulesCache {
+  private static final Logger log = LoggerFactory.getLogger(RulesCache.class);
+
   private static final ImmutableList<String> PACKAGE_LIST =
       ImmutableList.of(Prolog.BUILTIN, "gerrit");
 
-  private static final class MachineRef extends WeakReference<PrologMachineCopy> {
-    final ObjectId key;
+  static final String CACHE_NAME = "prolog_rules";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, ObjectId.class, Machine.class)
+            .maximumWeight(1 << 20)
+            .weigher(MachineWeigher.class);
+        bind(RulesCache.class);
+      }
+    };
+  }
 
-    MachineRef(ObjectId key, PrologMachineCopy pcm, ReferenceQueue<PrologMachineCopy> queue) {
-      super(pcm, queue);
-      this.key = key;
+  /** Machine with the rules of one {@code rules.pl} loaded. */
+  static class Machine {
+    final PrologMachineCopy pmc;
+
+    /** Size of the rules the machine was created from, in bytes. */
+    final int weight;
+
+    Machine(PrologMachineCopy pmc, long weight) {
+      this.pmc = pmc;
+      this.weight = (int) Math.min(Math.max(weight, 1), Integer.MAX_VALUE);
     }
   }
 
+  static class MachineWeigher implements Weigher<ObjectId, Machine> {
+    @Override
+    public int weigh(ObjectId key, Machine value) {
+      return value.weight;
+    }
+  }
+
+  private final Config config;
+  private final SitePaths site;
   private final boolean enableProjectRules;
+  private final boolean compileOnLoad;
   private final int maxDbSize;
   private final int maxSrcBytes;
   private final Path cacheDir;
@@ -92,22 +145,54 @@ public class RulesCache {
   private final DynamicSet<PredicateProvider> predicateProviders;
   private final ClassLoader systemLoader;
   private final PrologMachineCopy defaultMachine;
-  private final Map<ObjectId, MachineRef> machineCache = new HashMap<>();
-  private final ReferenceQueue<PrologMachineCopy> dead = new ReferenceQueue<>();
+  private final Cache<ObjectId, Machine> machines;
+  private final Set<ObjectId> compiling = ConcurrentHashMap.newKeySet();
+  private final Executor compileExecutor;
+  private final Counter1<String> loadCount;
+  private final Timer0 consultLatency;
+  private final Timer0 waitLatency;
 
   @Inject
   protected RulesCache(
       @GerritServerConfig Config config,
       SitePaths site,
       GitRepositoryManager gm,
-      DynamicSet<PredicateProvider> predicateProviders) {
+      DynamicSet<PredicateProvider> predicateProviders,
+      @Named(CACHE_NAME) Cache<ObjectId, Machine> machines,
+      WorkQueue workQueue,
+      MetricMaker metricMaker) {
+    this.config = config;
+    this.site = site;
     maxDbSize = config.getInt("rules", null, "maxPrologDatabaseSize", 256);
     maxSrcBytes = config.getInt("rules", null, "maxSourceBytes", 128 << 10);
     enableProjectRules = config.getBoolean("rules", null, "enable", true) && maxSrcBytes > 0;
     cacheDir = site.resolve(config.getString("cache", null, "directory"));
     rulesDir = cacheDir != null ? cacheDir.resolve("rules") : null;
+    compileOnLoad = config.getBoolean("rules", null, "compileOnLoad", false) && rulesDir != null;
     gitMgr = gm;
     this.predicateProviders = predicateProviders;
+    this.machines = machines;
+    compileExecutor = compileOnLoad ? workQueue.createQueue(1, "RulesCompiler") : null;
+
+    loadCount =
+        metricMaker.newCounter(
+            "rules/machine_load_count",
+            new Description("Prolog machines created, by whether rules were read from a jar")
+                .setRate()
+                .setUnit("machines"),
+            Field.ofString("source"));
+    consultLatency =
+        metricMaker.newTimer(
+            "rules/consult_latency",
+            new Description("Latency for consulting rules.pl from source")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+    waitLatency =
+        metricMaker.newTimer(
+            "rules/machine_wait_latency",
+            new Description("Latency for looking up a cached Prolog machine, including waits")
+                .setCumulative()
+                .setUnit(Units.MICROSECONDS));
 
     systemLoader = getClass().getClassLoader();
     defaultMachine = save(newEmptyMachine(systemLoader));
@@ -123,29 +208,35 @@ public class RulesCache {
    * @return a Prolog machine, after loading the specified rules.
    * @throws CompileException the machine cannot be created.
    */
-  public synchronized PrologMachineCopy loadMachine(Project.NameKey project, ObjectId rulesId)
+  public PrologMachineCopy loadMachine(Project.NameKey project, ObjectId rulesId)
       throws CompileException {
     if (!enableProjectRules || project == null || rulesId == null) {
       return defaultMachine;
     }
 
-    Reference<? extends PrologMachineCopy> ref = machineCache.get(rulesId);
-    if (ref != null) {
-      PrologMachineCopy pmc = ref.get();
-      if (pmc != null) {
-        return pmc;
+    // Time spent here by threads that did not create the machine themselves
+    // is the contention on the cache.
+    AtomicBoolean created = new AtomicBoolean();
+    long start = System.nanoTime();
+    try {
+      Machine m =
+          machines.get(
+              rulesId,
+              () -> {
+                created.set(true);
+                return createMachine(project, rulesId);
+              });
+      return m.pmc;
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof CompileException) {
+        throw (CompileException) e.getCause();
+      }
+      throw new CompileException("Cannot load rules of " + project, e.getCause());
+    } finally {
+      if (!created.get()) {
+        waitLatency.record(System.nanoTime() - start, NANOSECONDS);
       }
-
-      machineCache.remove(rulesId);
-      ref.enqueue();
     }
-
-    gc();
-
-    PrologMachineCopy pcm = createMachine(project, rulesId);
-    MachineRef newRef = new MachineRef(rulesId, pcm, dead);
-    machineCache.put(rulesId, newRef);
-    return pcm;
   }
 
   public PrologMachineCopy loadMachine(String name, Reader in) throws CompileException {
@@ -156,17 +247,7 @@ public class RulesCache {
     return pmc;
   }
 
-  private void gc() {
-    Reference<?> ref;
-    while ((ref = dead.poll()) != null) {
-      ObjectId key = ((MachineRef) ref).key;
-      if (machineCache.get(key) == ref) {
-        machineCache.remove(key);
-      }
-    }
-  }
-
-  private PrologMachineCopy createMachine(Project.NameKey project, ObjectId rulesId)
+  private Machine createMachine(Project.NameKey project, ObjectId rulesId)
       throws CompileException {
     // If the rules are available as a complied JAR on local disk, prefer
     // that over dynamic consult as the bytecode will be faster.
@@ -175,18 +256,56 @@ public class RulesCache {
       Path jarPath = rulesDir.resolve("rules-" + rulesId.getName() + ".jar");
       if (Files.isRegularFile(jarPath)) {
         URL[] cp = new URL[] {toURL(jarPath)};
-        return save(newEmptyMachine(new URLClassLoader(cp, systemLoader)));
+        loadCount.increment("jar");
+        return new Machine(
+            save(newEmptyMachine(new URLClassLoader(cp, systemLoader))), size(jarPath));
       }
     }
 
     // Dynamically consult the rules into the machine's internal database.
     //
     String rules = read(project, rulesId);
-    PrologMachineCopy pmc = consultRules("rules.pl", new StringReader(rules));
+    PrologMachineCopy pmc;
+    try (Timer0.Context ctx = consultLatency.start()) {
+      pmc = consultRules("rules.pl", new StringReader(rules));
+    }
     if (pmc == null) {
       throw new CompileException("Cannot consult rules of " + project);
     }
-    return pmc;
+    loadCount.increment("consult");
+    if (compileOnLoad) {
+      compileLater(project, rulesId);
+    }
+    return new Machine(pmc, rules.length());
+  }
+
+  private void compileLater(Project.NameKey project, ObjectId rulesId) {
+    if (!compiling.add(rulesId)) {
+      return;
+    }
+    try {
+      compileExecutor.execute(
+          () -> {
+            try (Repository git = gitMgr.openRepository(project)) {
+              new PrologCompiler(config, site, git).compile(null, rulesId);
+              compiling.remove(rulesId);
+            } catch (IOException | CompileException | RuntimeException e) {
+              // Leave the rules marked, so they are not compiled again.
+              log.warn("Cannot compile rules of " + project + " to bytecode", e);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // The server is shutting down.
+      compiling.remove(rulesId);
+    }
+  }
+
+  private static long size(Path jarPath) {
+    try {
+      return Files.size(jarPath);
+    } catch (IOException e) {
+      return 1;
+    }
   }
 
   private PrologMachineCopy consultRules(String name, Reader rules) throws CompileException {
@@ -0,0 +1,73 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serializer built from a pair of stream functions.
+ *
+ * <p>Intended for hand-written encodings using {@link
+ * com.google.gerrit.server.ioutil.BasicSerialization} and {@link
+ * org.eclipse.jgit.lib.ObjectIdSerialization}, typically exposed by the cached type as {@code
+ * writeTo(OutputStream)} and {@code static readFrom(InputStream)}.
+ */
+public class BinaryCacheSerializer<T> implements CacheSerializer<T> {
+  @FunctionalInterface
+  public interface Writer<T> {
+    void write(T object, OutputStream out) throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface Reader<T> {
+    T read(InputStream in) throws IOException;
+  }
+
+  public static <T> BinaryCacheSerializer<T> of(Writer<T> writer, Reader<T> reader) {
+    return new BinaryCacheSerializer<>(writer, reader);
+  }
+
+  private final Writer<T> writer;
+  private final Reader<T> reader;
+
+  private BinaryCacheSerializer(Writer<T> writer, Reader<T> reader) {
+    this.writer = writer;
+    this.reader = reader;
+  }
+
+  @Override
+  public byte[] serialize(T object) {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try {
+      writer.write(object, buf);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot serialize " + object, e);
+    }
+    return buf.toByteArray();
+  }
+
+  @Override
+  public T deserialize(byte[] in) {
+    try {
+      return reader.read(new ByteArrayInputStream(in));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot deserialize cache entry", e);
+    }
+  }
+}
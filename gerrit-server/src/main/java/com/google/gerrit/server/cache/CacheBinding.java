@@ -37,6 +37,15 @@ public interface CacheBinding<K, V> {
   /** Algorithm to weigh an object with a method other than the unit weight 1. */
   CacheBinding<K, V> weigher(Class<? extends Weigher<K, V>> clazz);
 
+  /** Serialize keys on disk with this serializer instead of Java serialization. */
+  CacheBinding<K, V> keySerializer(CacheSerializer<K> serializer);
+
+  /** Serialize values on disk with this serializer instead of Java serialization. */
+  CacheBinding<K, V> valueSerializer(CacheSerializer<V> serializer);
+
+  /** Set the version of the on-disk format; entries of other versions are discarded. */
+  CacheBinding<K, V> version(int version);
+
   String name();
 
   TypeLiteral<K> keyType();
@@ -55,4 +64,12 @@ public interface CacheBinding<K, V> {
 
   @Nullable
   CacheLoader<K, V> loader();
+
+  @Nullable
+  CacheSerializer<K> keySerializer();
+
+  @Nullable
+  CacheSerializer<V> valueSerializer();
+
+  int version();
 }
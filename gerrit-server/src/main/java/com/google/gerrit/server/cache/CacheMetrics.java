@@ -64,8 +64,41 @@ public class CacheMetrics {
             new Description("Disk hit ratio for persistent cache").setGauge().setUnit("percent"),
             F_NAME);
 
+    CallbackMetric1<String, Long> perDiskEntSize =
+        metrics.newCallbackMetric(
+            "caches/disk_bytes_per_entry",
+            Long.class,
+            new Description("Average disk space per entry of persistent cache")
+                .setGauge()
+                .setUnit(Description.Units.BYTES),
+            F_NAME);
+    CallbackMetric1<String, Double> perDiskSer =
+        metrics.newCallbackMetric(
+            "caches/disk_serialize_latency",
+            Double.class,
+            new Description("Average time to serialize an entry of persistent cache")
+                .setGauge()
+                .setUnit(Description.Units.MICROSECONDS),
+            F_NAME);
+    CallbackMetric1<String, Double> perDiskDeser =
+        metrics.newCallbackMetric(
+            "caches/disk_deserialize_latency",
+            Double.class,
+            new Description("Average time to deserialize an entry of persistent cache")
+                .setGauge()
+                .setUnit(Description.Units.MICROSECONDS),
+            F_NAME);
+
     Set<CallbackMetric<?>> cacheMetrics =
-        ImmutableSet.<CallbackMetric<?>>of(memEnt, memHit, memEvict, perDiskEnt, perDiskHit);
+        ImmutableSet.<CallbackMetric<?>>of(
+            memEnt,
+            memHit,
+            memEvict,
+            perDiskEnt,
+            perDiskHit,
+            perDiskEntSize,
+            perDiskSer,
+            perDiskDeser);
 
     metrics.newTrigger(
         cacheMetrics,
@@ -81,6 +114,9 @@ public class CacheMetrics {
               PersistentCache.DiskStats d = ((PersistentCache) c).diskStats();
               perDiskEnt.set(name, d.size());
               perDiskHit.set(name, hitRatio(d));
+              perDiskEntSize.set(name, d.bytesPerEntry());
+              perDiskSer.set(name, d.serializeMicros());
+              perDiskDeser.set(name, d.deserializeMicros());
             }
           }
           cacheMetrics.forEach(CallbackMetric::prune);
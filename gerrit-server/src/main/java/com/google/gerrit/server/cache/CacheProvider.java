@@ -39,6 +39,9 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V> {
   private Long expireAfterWrite;
   private Provider<CacheLoader<K, V>> loader;
   private Provider<Weigher<K, V>> weigher;
+  private CacheSerializer<K> keySerializer;
+  private CacheSerializer<V> valueSerializer;
+  private int version;
 
   private String plugin;
   private MemoryCacheFactory memoryCacheFactory;
@@ -109,6 +112,30 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V> {
     return this;
   }
 
+  @Override
+  public CacheBinding<K, V> keySerializer(CacheSerializer<K> serializer) {
+    Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
+    Preconditions.checkState(persist, "keySerializer supported for persistent caches only");
+    keySerializer = serializer;
+    return this;
+  }
+
+  @Override
+  public CacheBinding<K, V> valueSerializer(CacheSerializer<V> serializer) {
+    Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
+    Preconditions.checkState(persist, "valueSerializer supported for persistent caches only");
+    valueSerializer = serializer;
+    return this;
+  }
+
+  @Override
+  public CacheBinding<K, V> version(int v) {
+    Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
+    Preconditions.checkState(persist, "version supported for persistent caches only");
+    version = v;
+    return this;
+  }
+
   @Override
   public String name() {
     if (!Strings.isNullOrEmpty(plugin)) {
@@ -158,6 +185,23 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V> {
     return loader != null ? loader.get() : null;
   }
 
+  @Override
+  @Nullable
+  public CacheSerializer<K> keySerializer() {
+    return keySerializer;
+  }
+
+  @Override
+  @Nullable
+  public CacheSerializer<V> valueSerializer() {
+    return valueSerializer;
+  }
+
+  @Override
+  public int version() {
+    return version;
+  }
+
   @Override
   public Cache<K, V> get() {
     frozen = true;
@@ -0,0 +1,46 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+/**
+ * Converts keys or values of a persistent cache to and from bytes.
+ *
+ * <p>Bound on a persistent cache with {@link CacheBinding#keySerializer(CacheSerializer)} and
+ * {@link CacheBinding#valueSerializer(CacheSerializer)}. Without a serializer the disk cache falls
+ * back to Java serialization, which ties stored entries to class names and {@code
+ * serialVersionUID}s and stores a class descriptor with every entry.
+ *
+ * <p>Implementations must be thread-safe. If the encoding changes incompatibly, the {@link
+ * CacheBinding#version(int) version} of the cache must be increased so stored entries are dropped.
+ */
+public interface CacheSerializer<T> {
+  /**
+   * Serialize an object.
+   *
+   * @param object object to serialize, never null.
+   * @return serialized form.
+   * @throws IllegalStateException if the object cannot be serialized.
+   */
+  byte[] serialize(T object);
+
+  /**
+   * Deserialize an object previously serialized by this serializer.
+   *
+   * @param in serialized form.
+   * @return deserialized object.
+   * @throws IllegalArgumentException if the input cannot be deserialized.
+   */
+  T deserialize(byte[] in);
+}
@@ -0,0 +1,76 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * Serializer using Java serialization.
+ *
+ * <p>Used by disk caches for types that have no {@link CacheSerializer} bound. Classes are resolved
+ * through the given class loader first, so plugin types can be read back.
+ */
+public class JavaCacheSerializer<T> implements CacheSerializer<T> {
+  private final ClassLoader loader;
+
+  public JavaCacheSerializer(ClassLoader loader) {
+    this.loader = loader;
+  }
+
+  @Override
+  public byte[] serialize(T object) {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+      out.writeObject(object);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot serialize " + object, e);
+    }
+    return buf.toByteArray();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T deserialize(byte[] in) {
+    try (ObjectInputStream ois = new LoaderObjectInputStream(in)) {
+      return (T) ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalArgumentException("Cannot deserialize cache entry", e);
+    }
+  }
+
+  private class LoaderObjectInputStream extends ObjectInputStream {
+    LoaderObjectInputStream(byte[] in) throws IOException {
+      super(new ByteArrayInputStream(in));
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException {
+      if (loader != null) {
+        try {
+          return Class.forName(desc.getName(), false, loader);
+        } catch (ClassNotFoundException e) {
+          // Fall through to the default resolution.
+        }
+      }
+      return super.resolveClass(desc);
+    }
+  }
+}
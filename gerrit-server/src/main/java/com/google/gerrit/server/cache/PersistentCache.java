@@ -23,12 +23,32 @@ public interface PersistentCache {
     private final long space;
     private final long hitCount;
     private final long missCount;
+    private final long serializeCount;
+    private final long serializeNanos;
+    private final long deserializeCount;
+    private final long deserializeNanos;
 
     public DiskStats(long size, long space, long hitCount, long missCount) {
+      this(size, space, hitCount, missCount, 0, 0, 0, 0);
+    }
+
+    public DiskStats(
+        long size,
+        long space,
+        long hitCount,
+        long missCount,
+        long serializeCount,
+        long serializeNanos,
+        long deserializeCount,
+        long deserializeNanos) {
       this.size = size;
       this.space = space;
       this.hitCount = hitCount;
       this.missCount = missCount;
+      this.serializeCount = serializeCount;
+      this.serializeNanos = serializeNanos;
+      this.deserializeCount = deserializeCount;
+      this.deserializeNanos = deserializeNanos;
     }
 
     public long size() {
@@ -46,5 +66,20 @@ public interface PersistentCache {
     public long requestCount() {
       return hitCount + missCount;
     }
+
+    /** @return average bytes stored per entry, or 0 if the cache is empty. */
+    public long bytesPerEntry() {
+      return size > 0 ? space / size : 0;
+    }
+
+    /** @return average time to serialize one entry in microseconds, or 0 if not measured. */
+    public double serializeMicros() {
+      return serializeCount > 0 ? serializeNanos / 1e3 / serializeCount : 0;
+    }
+
+    /** @return average time to deserialize one entry in microseconds, or 0 if not measured. */
+    public double deserializeMicros() {
+      return deserializeCount > 0 ? deserializeNanos / 1e3 / deserializeCount : 0;
+    }
   }
 }
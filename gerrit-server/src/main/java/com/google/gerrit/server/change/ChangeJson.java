@@ -43,6 +43,7 @@ import com.google.auto.value.AutoValue;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableMap;
@@ -57,6 +58,10 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.LabelType;
 import com.google.gerrit.common.data.LabelTypes;
@@ -66,6 +71,7 @@ import com.google.gerrit.common.data.SubmitTypeRecord;
 import com.google.gerrit.extensions.api.changes.FixInput;
 import com.google.gerrit.extensions.client.ListChangesOption;
 import com.google.gerrit.extensions.client.ReviewerState;
+import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.extensions.common.AccountInfo;
 import com.google.gerrit.extensions.common.ApprovalInfo;
 import com.google.gerrit.extensions.common.ChangeInfo;
@@ -86,6 +92,7 @@ import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.extensions.restapi.Url;
 import com.google.gerrit.index.query.QueryResult;
 import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
 import com.google.gerrit.reviewdb.client.ChangeMessage;
 import com.google.gerrit.reviewdb.client.Patch;
@@ -114,6 +121,7 @@ import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.mail.Address;
 import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.notedb.NotesMigration;
 import com.google.gerrit.server.notedb.ReviewerStateInternal;
 import com.google.gerrit.server.patch.PatchListNotAvailableException;
 import com.google.gerrit.server.permissions.LabelPermission;
@@ -122,12 +130,15 @@ import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.project.ChangeControl;
 import com.google.gerrit.server.project.NoSuchChangeException;
 import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
 import com.google.gerrit.server.project.RemoveReviewerControl;
 import com.google.gerrit.server.project.SubmitRuleOptions;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.ChangeData.ChangedLines;
 import com.google.gerrit.server.query.change.PluginDefinedAttributesFactory;
+import com.google.gerrit.server.util.StreamingList;
 import com.google.gwtorm.server.OrmException;
+import com.google.gwtorm.server.OrmRuntimeException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -139,12 +150,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -156,6 +169,9 @@ import org.slf4j.LoggerFactory;
 public class ChangeJson {
   private static final Logger log = LoggerFactory.getLogger(ChangeJson.class);
 
+  /** Number of query results loaded and formatted together. */
+  private static final int QUERY_CHUNK_SIZE = 100;
+
   // Submit rule options in this class should always use fastEvalLabels for
   // efficiency reasons. Callers that care about submittability after taking
   // vote squashing into account should be looking at the submit action.
@@ -220,6 +236,9 @@ public class ChangeJson {
   private final ApprovalsUtil approvalsUtil;
   private final RemoveReviewerControl removeReviewerControl;
   private final TrackingFooters trackingFooters;
+  private final MergeabilityCache mergeabilityCache;
+  private final ListeningExecutorService prefetchExecutor;
+  private final NotesMigration notesMigration;
   private boolean lazyLoad = true;
   private AccountLoader accountLoader;
   private FixInput fix;
@@ -252,6 +271,9 @@ public class ChangeJson {
       ApprovalsUtil approvalsUtil,
       RemoveReviewerControl removeReviewerControl,
       TrackingFooters trackingFooters,
+      MergeabilityCache mergeabilityCache,
+      @ChangeJsonExecutor ListeningExecutorService prefetchExecutor,
+      NotesMigration notesMigration,
       @Assisted Iterable<ListChangesOption> options) {
     this.db = db;
     this.userProvider = user;
@@ -279,6 +301,9 @@ public class ChangeJson {
     this.removeReviewerControl = removeReviewerControl;
     this.options = Sets.immutableEnumSet(options);
     this.trackingFooters = trackingFooters;
+    this.mergeabilityCache = mergeabilityCache;
+    this.prefetchExecutor = prefetchExecutor;
+    this.notesMigration = notesMigration;
   }
 
   public ChangeJson lazyLoad(boolean load) {
@@ -354,13 +379,18 @@ public class ChangeJson {
       throws OrmException {
     accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
     ensureLoaded(FluentIterable.from(in).transformAndConcat(QueryResult::entities));
+    for (QueryResult<ChangeData> r : in) {
+      prefetch(r.entities());
+    }
 
     List<List<ChangeInfo>> res = Lists.newArrayListWithCapacity(in.size());
     Map<Change.Id, ChangeInfo> out = new HashMap<>();
     for (QueryResult<ChangeData> r : in) {
       List<ChangeInfo> infos = toChangeInfo(out, r.entities());
       if (!infos.isEmpty() && r.more()) {
-        infos.get(infos.size() - 1)._moreChanges = true;
+        ChangeInfo last = infos.get(infos.size() - 1);
+        last._moreChanges = true;
+        last._searchAfter = r.searchAfter();
       }
       res.add(infos);
     }
@@ -368,6 +398,73 @@ public class ChangeJson {
     return res;
   }
 
+  /**
+   * Format query results while they are written to a REST client.
+   *
+   * <p>Unlike {@link #formatQueryResults(List)}, the returned lists are computed on demand. Changes
+   * are loaded and formatted in chunks of {@value #QUERY_CHUNK_SIZE}, so a large result does not
+   * hold all changes in memory at once. Errors loading a chunk are thrown as {@link
+   * OrmRuntimeException} while the lists are read, so only callers that write the lists out right
+   * away, like the REST API servlet, should use this method.
+   */
+  public List<List<ChangeInfo>> streamQueryResults(List<QueryResult<ChangeData>> in) {
+    List<List<ChangeInfo>> res = Lists.newArrayListWithCapacity(in.size());
+    for (QueryResult<ChangeData> r : in) {
+      res.add(new StreamingList<>(new QueryResultFormatter(r)));
+    }
+    return res;
+  }
+
+  private class QueryResultFormatter extends AbstractIterator<ChangeInfo> {
+    private final List<ChangeData> changes;
+    private final boolean more;
+    private final String searchAfter;
+    private Iterator<ChangeInfo> chunk = Collections.emptyIterator();
+    private int next;
+
+    QueryResultFormatter(QueryResult<ChangeData> r) {
+      changes = new ArrayList<>(r.entities());
+      more = r.more();
+      searchAfter = r.searchAfter();
+    }
+
+    @Override
+    protected ChangeInfo computeNext() {
+      while (!chunk.hasNext()) {
+        if (next >= changes.size()) {
+          return endOfData();
+        }
+        int end = Math.min(next + QUERY_CHUNK_SIZE, changes.size());
+        List<ChangeData> in = changes.subList(next, end);
+        List<ChangeInfo> infos;
+        try {
+          infos = formatChunk(in);
+        } catch (OrmException e) {
+          throw new OrmRuntimeException(e);
+        }
+        // Formatted changes are not needed anymore; let them be collected.
+        Collections.fill(in, null);
+        next = end;
+        if (next == changes.size() && !infos.isEmpty() && more) {
+          ChangeInfo last = infos.get(infos.size() - 1);
+          last._moreChanges = true;
+          last._searchAfter = searchAfter;
+        }
+        chunk = infos.iterator();
+      }
+      return chunk.next();
+    }
+  }
+
+  private List<ChangeInfo> formatChunk(List<ChangeData> in) throws OrmException {
+    accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
+    ensureLoaded(in);
+    prefetch(in);
+    List<ChangeInfo> infos = toChangeInfo(new HashMap<>(), in);
+    accountLoader.fill();
+    return infos;
+  }
+
   public List<ChangeInfo> formatChangeDatas(Collection<ChangeData> in) throws OrmException {
     accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
     ensureLoaded(in);
@@ -398,6 +495,144 @@ public class ChangeJson {
     }
   }
 
+  /**
+   * Compute expensive per-change data of a batch in parallel on the {@link ChangeJsonExecutor}.
+   *
+   * <p>Everything read from the database, the notes and the project cache is loaded here on the
+   * request thread first, each project only once. A worker then evaluates the submit rules of one
+   * change, which only it uses until the request thread collected all results, and computes
+   * mergeability from immutable inputs. Accounts are not loaded here, {@link AccountLoader} loads
+   * each of them once on the request thread.
+   *
+   * <p>Submit rules may still read through the request's single {@link ReviewDb} handle, which is
+   * not thread safe, so the work only runs in parallel while changes are read from NoteDb.
+   * Otherwise it runs on the request thread.
+   *
+   * <p>The changes are still formatted one at a time afterwards, so the output is the same whether
+   * or not this ran. Failures are ignored here and reported when the change is formatted.
+   */
+  private void prefetch(Collection<ChangeData> changes) {
+    if (!lazyLoad || has(CHECK) || changes.size() < 2) {
+      return;
+    }
+    Map<Project.NameKey, ProjectState> projects = new HashMap<>();
+    List<Prefetch> work = new ArrayList<>(changes.size());
+    for (ChangeData cd : changes) {
+      try {
+        Prefetch p = newPrefetch(cd, projects);
+        if (p != null) {
+          work.add(p);
+        }
+      } catch (OrmException | RuntimeException e) {
+        log.debug("Cannot prefetch change " + cd.getId(), e);
+      }
+    }
+    if (work.size() < 2) {
+      return;
+    }
+
+    ListeningExecutorService executor =
+        notesMigration.readChanges() ? prefetchExecutor : MoreExecutors.newDirectExecutorService();
+    List<ListenableFuture<?>> futures = new ArrayList<>(work.size());
+    for (Prefetch p : work) {
+      futures.add(executor.submit(p::run));
+    }
+    try {
+      Futures.successfulAsList(futures).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (ExecutionException e) {
+      log.warn("Cannot prefetch changes", e);
+    }
+    for (Prefetch p : work) {
+      if (p.mergeable != null) {
+        p.cd.setMergeable(p.mergeable);
+      }
+    }
+  }
+
+  /** Load on the request thread what the submit rules of a change read from storage. */
+  @Nullable
+  private Prefetch newPrefetch(ChangeData cd, Map<Project.NameKey, ProjectState> projects)
+      throws OrmException {
+    Change c = cd.change();
+    if (c == null) {
+      return null;
+    }
+    boolean open = c.getStatus().isOpen();
+    boolean labels =
+        has(DETAILED_LABELS) || (has(LABELS) && c.getStatus() != Change.Status.MERGED);
+    if (!open && !labels) {
+      return null;
+    }
+    ProjectState state = projects.computeIfAbsent(c.getProject(), projectCache::get);
+    if (state == null) {
+      return null;
+    }
+    ChangeControl ctl = cd.changeControl();
+    PatchSet ps = cd.currentPatchSet();
+    cd.currentApprovals();
+
+    Prefetch p = new Prefetch(cd, open, labels);
+    if (open
+        && !c.isWorkInProgress()
+        && !cd.hasMergeable()
+        && ps != null
+        && ctl.isPatchVisible(ps, db.get())) {
+      p.commit = ObjectId.fromString(ps.getRevision().get());
+      p.dest = c.getDest();
+      p.mergeStrategy = mergeUtilFactory.create(state).mergeStrategyName();
+    }
+    return p;
+  }
+
+  /** Work on one change done by a {@link ChangeJsonExecutor} thread. */
+  private class Prefetch {
+    final ChangeData cd;
+    final boolean open;
+    final boolean labels;
+
+    // Inputs to compute mergeability from; commit is null if it is not computed.
+    ObjectId commit;
+    Branch.NameKey dest;
+    String mergeStrategy;
+
+    volatile Boolean mergeable;
+
+    Prefetch(ChangeData cd, boolean open, boolean labels) {
+      this.cd = cd;
+      this.open = open;
+      this.labels = labels;
+    }
+
+    void run() {
+      try {
+        if (open) {
+          SubmitTypeRecord str = cd.submitTypeRecord();
+          if (has(SUBMITTABLE)) {
+            cd.submitRecords(SUBMIT_RULE_OPTIONS_STRICT);
+          }
+          if (commit != null) {
+            mergeable = str.isOk() ? isMergeable(str.type) : false;
+          }
+        }
+        if (labels) {
+          cd.submitRecords(SUBMIT_RULE_OPTIONS_LENIENT);
+        }
+      } catch (OrmException | IOException | RuntimeException e) {
+        log.debug("Cannot prefetch change " + cd.getId(), e);
+      }
+    }
+
+    private boolean isMergeable(SubmitType type) throws IOException {
+      try (Repository repo = repoManager.openRepository(dest.getParentKey())) {
+        Ref ref = repo.getRefDatabase().exactRef(dest.get());
+        return mergeabilityCache.get(commit, ref, type, mergeStrategy, dest, repo);
+      }
+    }
+  }
+
   private boolean has(ListChangesOption option) {
     return options.contains(option);
   }
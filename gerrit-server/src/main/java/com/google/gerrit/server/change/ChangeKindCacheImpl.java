@@ -16,6 +16,8 @@ package com.google.gerrit.server.change;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
 
@@ -29,7 +31,9 @@ import com.google.gerrit.reviewdb.client.Change;
 import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.cache.BinaryCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.EnumCacheSerializer;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.InMemoryInserter;
@@ -40,8 +44,10 @@ import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.name.Named;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
@@ -71,6 +77,8 @@ public class ChangeKindCacheImpl implements ChangeKindCache {
       protected void configure() {
         bind(ChangeKindCache.class).to(ChangeKindCacheImpl.class);
         persist(ID_CACHE, Key.class, ChangeKind.class)
+            .keySerializer(BinaryCacheSerializer.of(Key::writeTo, Key::readFrom))
+            .valueSerializer(new EnumCacheSerializer<>(ChangeKind.class))
             .maximumWeight(2 << 20)
             .weigher(ChangeKindWeigher.class);
       }
@@ -171,6 +179,16 @@ public class ChangeKindCacheImpl implements ChangeKindCache {
       return Objects.hash(prior, next, strategyName);
     }
 
+    void writeTo(OutputStream out) throws IOException {
+      writeNotNull(out, prior);
+      writeNotNull(out, next);
+      writeString(out, strategyName);
+    }
+
+    static Key readFrom(InputStream in) throws IOException {
+      return new Key(readNotNull(in), readNotNull(in), readString(in));
+    }
+
     private void writeObject(ObjectOutputStream out) throws IOException {
       writeNotNull(out, prior);
       writeNotNull(out, next);
@@ -24,6 +24,7 @@ import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.ReachabilityCache;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
@@ -38,11 +39,16 @@ import org.eclipse.jgit.revwalk.RevWalk;
 public class IncludedIn {
   private final GitRepositoryManager repoManager;
   private final DynamicSet<ExternalIncludedIn> externalIncludedIn;
+  private final ReachabilityCache reachabilityCache;
 
   @Inject
-  IncludedIn(GitRepositoryManager repoManager, DynamicSet<ExternalIncludedIn> externalIncludedIn) {
+  IncludedIn(
+      GitRepositoryManager repoManager,
+      DynamicSet<ExternalIncludedIn> externalIncludedIn,
+      ReachabilityCache reachabilityCache) {
     this.repoManager = repoManager;
     this.externalIncludedIn = externalIncludedIn;
+    this.reachabilityCache = reachabilityCache;
   }
 
   public IncludedInInfo apply(Project.NameKey project, String revisionId)
@@ -59,7 +65,8 @@ public class IncludedIn {
         throw new ResourceConflictException(err.getMessage());
       }
 
-      IncludedInResolver.Result d = IncludedInResolver.resolve(r, rw, rev);
+      IncludedInResolver.Result d =
+          IncludedInResolver.resolve(r, rw, rev, reachabilityCache.get(project, r));
       ListMultimap<String, String> external = MultimapBuilder.hashKeys().arrayListValues().build();
       for (ExternalIncludedIn ext : externalIncludedIn) {
         ListMultimap<String, String> extIncludedIns =
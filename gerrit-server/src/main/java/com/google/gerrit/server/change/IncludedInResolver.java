@@ -17,6 +17,8 @@ package com.google.gerrit.server.change;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.git.ReachabilityIndex;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,6 +53,33 @@ public class IncludedInResolver {
     }
   }
 
+  /**
+   * Resolve in which tags and branches a commit is included, using a reachability index if one is
+   * available.
+   *
+   * @param index index of the repository; null to walk the history instead.
+   */
+  public static Result resolve(
+      Repository repo, RevWalk rw, RevCommit commit, @Nullable ReachabilityIndex index)
+      throws IOException {
+    if (index == null) {
+      return resolve(repo, rw, commit);
+    }
+    List<String> branches = new ArrayList<>();
+    List<String> tags = new ArrayList<>();
+    for (String name : index.refsContaining(commit)) {
+      if (name.startsWith(Constants.R_HEADS)) {
+        branches.add(Repository.shortenRefName(name));
+      } else if (name.startsWith(Constants.R_TAGS)) {
+        tags.add(Repository.shortenRefName(name));
+      }
+    }
+    Result detail = new Result();
+    detail.setBranches(branches);
+    detail.setTags(tags);
+    return detail;
+  }
+
   public static boolean includedInAny(
       final Repository repo, RevWalk rw, RevCommit commit, Collection<Ref> refs)
       throws IOException {
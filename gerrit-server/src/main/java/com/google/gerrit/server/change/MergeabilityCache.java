@@ -16,6 +16,8 @@ package com.google.gerrit.server.change;
 
 import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.server.git.strategy.SubmitDryRun;
+import java.util.Set;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -34,6 +36,18 @@ public interface MergeabilityCache {
       throw new UnsupportedOperationException("Mergeability checking disabled");
     }
 
+    @Override
+    public boolean get(
+        ObjectId commit,
+        Ref intoRef,
+        SubmitType submitType,
+        String mergeStrategy,
+        Branch.NameKey dest,
+        Repository repo,
+        Set<ObjectId> alreadyAccepted) {
+      throw new UnsupportedOperationException("Mergeability checking disabled");
+    }
+
     @Override
     public Boolean getIfPresent(
         ObjectId commit, Ref intoRef, SubmitType submitType, String mergeStrategy) {
@@ -49,5 +63,22 @@ public interface MergeabilityCache {
       Branch.NameKey dest,
       Repository repo);
 
+  /**
+   * Get mergeability, reusing the already accepted commits of the repository.
+   *
+   * <p>Useful when checking many commits against the same repository state, as the references of
+   * the repository are only scanned once.
+   *
+   * @param alreadyAccepted result of {@link SubmitDryRun#getAlreadyAccepted(Repository)}.
+   */
+  boolean get(
+      ObjectId commit,
+      Ref intoRef,
+      SubmitType submitType,
+      String mergeStrategy,
+      Branch.NameKey dest,
+      Repository repo,
+      Set<ObjectId> alreadyAccepted);
+
   Boolean getIfPresent(ObjectId commit, Ref intoRef, SubmitType submitType, String mergeStrategy);
 }
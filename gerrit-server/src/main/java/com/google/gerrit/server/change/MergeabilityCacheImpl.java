@@ -17,7 +17,9 @@ package com.google.gerrit.server.change;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
 import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
 
@@ -26,8 +28,11 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.server.cache.BinaryCacheSerializer;
+import com.google.gerrit.server.cache.BooleanCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.git.CodeReviewCommit;
 import com.google.gerrit.server.git.CodeReviewCommit.CodeReviewRevWalk;
@@ -37,10 +42,13 @@ import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -78,6 +86,8 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
       @Override
       protected void configure() {
         persist(CACHE_NAME, EntryKey.class, Boolean.class)
+            .keySerializer(BinaryCacheSerializer.of(EntryKey::writeTo, EntryKey::readFrom))
+            .valueSerializer(BooleanCacheSerializer.INSTANCE)
             .maximumWeight(1 << 20)
             .weigher(MergeabilityWeigher.class);
         bind(MergeabilityCache.class).to(MergeabilityCacheImpl.class);
@@ -147,6 +157,28 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
           .toString();
     }
 
+    void writeTo(OutputStream out) throws IOException {
+      writeNotNull(out, commit);
+      writeNotNull(out, into);
+      Character c = SUBMIT_TYPES.get(submitType);
+      if (c == null) {
+        throw new IOException("Invalid submit type: " + submitType);
+      }
+      writeVarInt32(out, c);
+      writeString(out, mergeStrategy);
+    }
+
+    static EntryKey readFrom(InputStream in) throws IOException {
+      ObjectId commit = readNotNull(in);
+      ObjectId into = readNotNull(in);
+      char t = (char) readVarInt32(in);
+      SubmitType submitType = SUBMIT_TYPES.inverse().get(t);
+      if (submitType == null) {
+        throw new IOException("Invalid submit type code: " + t);
+      }
+      return new EntryKey(commit, into, submitType, readString(in));
+    }
+
     private void writeObject(ObjectOutputStream out) throws IOException {
       writeNotNull(out, commit);
       writeNotNull(out, into);
@@ -198,6 +230,18 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
       String mergeStrategy,
       Branch.NameKey dest,
       Repository repo) {
+    return get(commit, intoRef, submitType, mergeStrategy, dest, repo, null);
+  }
+
+  @Override
+  public boolean get(
+      ObjectId commit,
+      Ref intoRef,
+      SubmitType submitType,
+      String mergeStrategy,
+      Branch.NameKey dest,
+      Repository repo,
+      @Nullable Set<ObjectId> alreadyAccepted) {
     ObjectId into = intoRef != null ? intoRef.getObjectId() : ObjectId.zeroId();
     EntryKey key = new EntryKey(commit, into, submitType, mergeStrategy);
     try {
@@ -208,7 +252,13 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
               return true; // Assume yes on new branch.
             }
             try (CodeReviewRevWalk rw = CodeReviewCommit.newRevWalk(repo)) {
-              Set<RevCommit> accepted = SubmitDryRun.getAlreadyAccepted(repo, rw);
+              Set<RevCommit> accepted;
+              if (alreadyAccepted != null) {
+                accepted = new HashSet<>();
+                SubmitDryRun.addCommits(alreadyAccepted, rw, accepted);
+              } else {
+                accepted = SubmitDryRun.getAlreadyAccepted(repo, rw);
+              }
               accepted.add(rw.parseCommit(key.into));
               accepted.addAll(Arrays.asList(rw.parseCommit(key.commit).getParents()));
               return submitDryRun.run(
@@ -33,8 +33,10 @@ import com.google.gerrit.server.git.BranchOrderSection;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.MergeUtil;
 import com.google.gerrit.server.index.change.ChangeIndexer;
+import com.google.gerrit.server.project.DefaultSubmitRule;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.project.SubmitRecordCache;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gwtorm.server.OrmException;
@@ -67,6 +69,8 @@ public class Mergeable implements RestReadView<RevisionResource> {
   private final AccountCache accountCache;
   private final Accounts accounts;
   private final Emails emails;
+  private final SubmitRecordCache submitRecordCache;
+  private final DefaultSubmitRule defaultSubmitRule;
   private final ProjectCache projectCache;
   private final MergeUtil.Factory mergeUtilFactory;
   private final ChangeData.Factory changeDataFactory;
@@ -80,6 +84,8 @@ public class Mergeable implements RestReadView<RevisionResource> {
       AccountCache accountCache,
       Accounts accounts,
       Emails emails,
+      SubmitRecordCache submitRecordCache,
+      DefaultSubmitRule defaultSubmitRule,
       ProjectCache projectCache,
       MergeUtil.Factory mergeUtilFactory,
       ChangeData.Factory changeDataFactory,
@@ -90,6 +96,8 @@ public class Mergeable implements RestReadView<RevisionResource> {
     this.accountCache = accountCache;
     this.accounts = accounts;
     this.emails = emails;
+    this.submitRecordCache = submitRecordCache;
+    this.defaultSubmitRule = defaultSubmitRule;
     this.projectCache = projectCache;
     this.mergeUtilFactory = mergeUtilFactory;
     this.changeDataFactory = changeDataFactory;
@@ -152,7 +160,8 @@ public class Mergeable implements RestReadView<RevisionResource> {
 
   private SubmitType getSubmitType(ChangeData cd, PatchSet patchSet) throws OrmException {
     SubmitTypeRecord rec =
-        new SubmitRuleEvaluator(accountCache, accounts, emails, cd)
+        new SubmitRuleEvaluator(
+                accountCache, accounts, emails, submitRecordCache, defaultSubmitRule, cd)
             .setPatchSet(patchSet)
             .getSubmitType();
     if (rec.status != SubmitTypeRecord.Status.OK) {
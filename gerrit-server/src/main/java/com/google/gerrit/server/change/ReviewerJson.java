@@ -35,6 +35,8 @@ import com.google.gerrit.server.permissions.LabelPermission;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.project.ChangeControl;
+import com.google.gerrit.server.project.DefaultSubmitRule;
+import com.google.gerrit.server.project.SubmitRecordCache;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gwtorm.server.OrmException;
@@ -53,6 +55,8 @@ public class ReviewerJson {
   private final AccountCache accountCache;
   private final Accounts accounts;
   private final Emails emails;
+  private final SubmitRecordCache submitRecordCache;
+  private final DefaultSubmitRule defaultSubmitRule;
   private final ApprovalsUtil approvalsUtil;
   private final AccountLoader.Factory accountLoaderFactory;
 
@@ -64,6 +68,8 @@ public class ReviewerJson {
       AccountCache accountCache,
       Accounts accounts,
       Emails emails,
+      SubmitRecordCache submitRecordCache,
+      DefaultSubmitRule defaultSubmitRule,
       ApprovalsUtil approvalsUtil,
       AccountLoader.Factory accountLoaderFactory) {
     this.db = db;
@@ -72,6 +78,8 @@ public class ReviewerJson {
     this.accountCache = accountCache;
     this.accounts = accounts;
     this.emails = emails;
+    this.submitRecordCache = submitRecordCache;
+    this.defaultSubmitRule = defaultSubmitRule;
     this.approvalsUtil = approvalsUtil;
     this.accountLoaderFactory = accountLoaderFactory;
   }
@@ -136,7 +144,8 @@ public class ReviewerJson {
     PatchSet ps = cd.currentPatchSet();
     if (ps != null) {
       for (SubmitRecord rec :
-          new SubmitRuleEvaluator(accountCache, accounts, emails, cd)
+          new SubmitRuleEvaluator(
+                  accountCache, accounts, emails, submitRecordCache, defaultSubmitRule, cd)
               .setFastEvalLabels(true)
               .setAllowDraft(true)
               .evaluate()) {
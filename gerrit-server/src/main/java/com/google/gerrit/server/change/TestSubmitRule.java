@@ -80,7 +80,12 @@ public class TestSubmitRule implements RestModifyView<RevisionResource, TestSubm
     input.filters = MoreObjects.firstNonNull(input.filters, filters);
     SubmitRuleEvaluator evaluator =
         new SubmitRuleEvaluator(
-            accountCache, accounts, emails, changeDataFactory.create(db.get(), rsrc.getControl()));
+            accountCache,
+            accounts,
+            emails,
+            null,
+            null,
+            changeDataFactory.create(db.get(), rsrc.getControl()));
 
     List<SubmitRecord> records =
         evaluator
@@ -15,13 +15,16 @@
 package com.google.gerrit.server.config;
 
 import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.patch.DiffAlgorithm;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.eclipse.jgit.lib.Config;
 
@@ -32,6 +35,8 @@ public class RepositoryConfig {
   static final String OWNER_GROUP_NAME = "ownerGroup";
   static final String DEFAULT_SUBMIT_TYPE_NAME = "defaultSubmitType";
   static final String BASE_PATH_NAME = "basePath";
+  static final String DIFF_ALGORITHM_NAME = "diffAlgorithm";
+  static final String GENERATED_FILE_NAME = "generatedFile";
 
   private final Config cfg;
 
@@ -58,6 +63,30 @@ public class RepositoryConfig {
     return basePath != null ? Paths.get(basePath) : null;
   }
 
+  @Nullable
+  public DiffAlgorithm getDiffAlgorithm(Project.NameKey project) {
+    return cfg.getEnum(
+        DiffAlgorithm.values(),
+        SECTION_NAME,
+        findSubSection(project.get()),
+        DIFF_ALGORITHM_NAME,
+        null);
+  }
+
+  public List<String> getGeneratedFiles(Project.NameKey project) {
+    return ImmutableList.copyOf(
+        cfg.getStringList(SECTION_NAME, findSubSection(project.get()), GENERATED_FILE_NAME));
+  }
+
+  public List<String> getAllGeneratedFiles() {
+    List<String> generatedFiles = new ArrayList<>();
+    for (String subSection : cfg.getSubsections(SECTION_NAME)) {
+      generatedFiles.addAll(
+          Arrays.asList(cfg.getStringList(SECTION_NAME, subSection, GENERATED_FILE_NAME)));
+    }
+    return generatedFiles;
+  }
+
   public List<Path> getAllBasePaths() {
     List<Path> basePaths = new ArrayList<>();
     for (String subSection : cfg.getSubsections(SECTION_NAME)) {
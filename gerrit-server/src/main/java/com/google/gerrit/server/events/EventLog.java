@@ -0,0 +1,581 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.events;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.EventListener;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.extensions.registration.RegistrationHandle;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.PatchSet;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.permissions.ChangePermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.permissions.ProjectPermission;
+import com.google.gerrit.server.permissions.RefPermission;
+import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.eclipse.jgit.lib.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of all events posted to the {@link com.google.gerrit.common.EventBroker}.
+ *
+ * <p>Each event is assigned a sequence number and serialized to JSON exactly once. Subscribers
+ * share the serialized bytes and only keep their own position in the log, so a slow reader falls
+ * behind instead of losing events, and a reader that disconnects can resume where it stopped.
+ *
+ * <p>Records are appended to segment files in {@code $site_path/data/events}, named after the
+ * sequence number of their first record. A new segment is started once the current one exceeds
+ * {@code eventLog.segmentSize}, and the oldest segments are deleted when there are more than
+ * {@code eventLog.maxSegments}. The most recent records are also kept in memory, so readers that
+ * keep up never touch the disk. Each record is:
+ *
+ * <pre>
+ *   int   length of the payload
+ *   byte  payload[length]
+ *   int   CRC-32 of the payload
+ * </pre>
+ *
+ * where the payload holds the sequence number, event type, project, ref, change number and JSON.
+ */
+@Singleton
+public class EventLog implements EventListener, LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(EventLog.class);
+
+  private static final String SECTION = "eventLog";
+  private static final String SUFFIX = ".log";
+
+  /** Number of most recent records kept in memory; must be a power of 2. */
+  private static final int MEMORY_ENTRIES = 4096;
+
+  /** Largest payload written to disk; a longer record length marks the end of a segment. */
+  private static final int MAX_RECORD_SIZE = 16 << 20;
+
+  public static class Module extends LifecycleModule {
+    @Override
+    protected void configure() {
+      bind(EventLog.class);
+      listener().to(EventLog.class);
+      DynamicSet.bind(binder(), EventListener.class).to(EventLog.class);
+    }
+  }
+
+  /** An event stored in the log. */
+  public static class Entry {
+    public final long seq;
+    public final String type;
+    @Nullable public final Project.NameKey project;
+    @Nullable public final String ref;
+    @Nullable public final Change.Id change;
+
+    /** Event as one line of UTF-8 JSON; shared by all readers and must not be modified. */
+    public final byte[] json;
+
+    Entry(
+        long seq,
+        String type,
+        @Nullable Project.NameKey project,
+        @Nullable String ref,
+        @Nullable Change.Id change,
+        byte[] json) {
+      this.seq = seq;
+      this.type = type;
+      this.project = project;
+      this.ref = ref;
+      this.change = change;
+      this.json = json;
+    }
+  }
+
+  private final boolean enabled;
+  private final Path dir;
+  private final long segmentSize;
+  private final int maxSegments;
+  private final Gson gson;
+  private final PermissionBackend permissionBackend;
+  private final ProjectCache projectCache;
+  private final ChangeNotes.Factory notesFactory;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  // All of the following are guarded by this.
+  private final Entry[] recent = new Entry[MEMORY_ENTRIES];
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+  private DataOutputStream out;
+  private long nextSeq = 1;
+  private boolean open;
+
+  @Inject
+  EventLog(
+      @GerritServerConfig Config cfg,
+      SitePaths site,
+      PermissionBackend permissionBackend,
+      ProjectCache projectCache,
+      ChangeNotes.Factory notesFactory) {
+    this.enabled = cfg.getBoolean(SECTION, "enabled", false);
+    this.dir = site.data_dir.resolve("events");
+    this.segmentSize = cfg.getLong(SECTION, "segmentSize", 64 << 20);
+    this.maxSegments = Math.max(cfg.getInt(SECTION, "maxSegments", 16), 1);
+    this.gson =
+        new GsonBuilder()
+            .registerTypeAdapter(Supplier.class, new SupplierSerializer())
+            .registerTypeAdapter(Project.NameKey.class, new ProjectNameKeySerializer())
+            .create();
+    this.permissionBackend = permissionBackend;
+    this.projectCache = projectCache;
+    this.notesFactory = notesFactory;
+  }
+
+  /** @return true if events are being recorded. */
+  public synchronized boolean isEnabled() {
+    return open;
+  }
+
+  /** @return sequence number the next event will be assigned. */
+  public synchronized long nextSequence() {
+    return nextSeq;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      Files.createDirectories(dir);
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+        for (Path p : files) {
+          String name = p.getFileName().toString();
+          try {
+            segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), p);
+          } catch (NumberFormatException e) {
+            log.warn("Ignoring unexpected file " + p);
+          }
+        }
+      }
+      if (!segments.isEmpty()) {
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        nextSeq = recover(last.getValue(), last.getKey());
+      }
+      openSegment();
+      open = true;
+    } catch (IOException e) {
+      log.error("Cannot open event log in " + dir + "; events are not recorded", e);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    open = false;
+    closeSegment();
+    notifyAll();
+  }
+
+  @Override
+  public void onEvent(Event event) {
+    if (!enabled) {
+      return;
+    }
+    String json;
+    try {
+      json = gson.toJson(event);
+    } catch (RuntimeException e) {
+      log.warn("Cannot serialize event " + event.getType(), e);
+      return;
+    }
+
+    Project.NameKey project = null;
+    String ref = null;
+    Change.Id change = null;
+    if (event instanceof ProjectEvent) {
+      project = ((ProjectEvent) event).getProjectNameKey();
+    }
+    if (event instanceof RefEvent) {
+      ref = ((RefEvent) event).getRefName();
+    }
+    if (event instanceof ChangeEvent && ((ChangeEvent) event).change != null) {
+      // Already computed by the serialization above.
+      ChangeAttribute c = ((ChangeEvent) event).change.get();
+      if (c != null && c.number > 0) {
+        change = new Change.Id(c.number);
+      }
+    }
+
+    synchronized (this) {
+      if (!open) {
+        return;
+      }
+      long seq = nextSeq++;
+      byte[] bytes = ("{\"seq\":" + seq + "," + json.substring(1)).getBytes(UTF_8);
+      Entry e = new Entry(seq, event.getType(), project, ref, change, bytes);
+      recent[index(seq)] = e;
+      append(e);
+      notifyAll();
+    }
+    for (Runnable r : listeners) {
+      r.run();
+    }
+  }
+
+  /**
+   * Register a callback invoked after each new event was appended.
+   *
+   * <p>The callback runs on the thread posting the event and must not block.
+   */
+  public RegistrationHandle addListener(Runnable listener) {
+    listeners.add(listener);
+    return () -> listeners.remove(listener);
+  }
+
+  /**
+   * Wait for an event to be appended.
+   *
+   * @param seq sequence number of the awaited event.
+   * @param timeout maximum time to wait.
+   * @param unit unit of {@code timeout}.
+   * @return true if the event is available.
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public synchronized boolean await(long seq, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (open && nextSeq <= seq) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return nextSeq > seq;
+  }
+
+  /**
+   * Read events from the log.
+   *
+   * <p>If the requested events were already deleted, reading starts at the oldest event still
+   * present; callers can detect the gap by comparing the first returned sequence number with
+   * {@code from}.
+   *
+   * @param from sequence number of the first event to return.
+   * @param max maximum number of events to return.
+   * @return events in sequence order; empty if there are no events starting at {@code from}.
+   */
+  public List<Entry> read(long from, int max) {
+    List<Path> files;
+    synchronized (this) {
+      if (from >= nextSeq) {
+        return ImmutableList.of();
+      }
+      Entry first = recent[index(from)];
+      if (first != null && first.seq == from) {
+        // All later entries up to nextSeq are still in memory.
+        List<Entry> result = new ArrayList<>((int) Math.min(max, nextSeq - from));
+        for (long s = from; s < nextSeq && result.size() < max; s++) {
+          result.add(recent[index(s)]);
+        }
+        return result;
+      }
+      Long start = segments.floorKey(from);
+      files = new ArrayList<>((start != null ? segments.tailMap(start) : segments).values());
+    }
+
+    List<Entry> result = new ArrayList<>();
+    for (Path p : files) {
+      try (CountingInput in = new CountingInput(Files.newInputStream(p))) {
+        DataInputStream d = new DataInputStream(in);
+        long size = Files.size(p);
+        Entry e;
+        while (result.size() < max && (e = readRecord(d, size - in.count)) != null) {
+          if (e.seq >= from) {
+            result.add(e);
+          }
+        }
+      } catch (NoSuchFileException e) {
+        // Deleted since the list was taken; continue with the next segment.
+      } catch (IOException e) {
+        log.warn("Cannot read event log " + p, e);
+      }
+      if (result.size() >= max) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Check whether a user may see an event.
+   *
+   * @param e event to check.
+   * @param user user reading the event.
+   * @param db open database used to load the event's change.
+   * @return true if the event is visible; checks match those of the {@code EventBroker}.
+   */
+  public boolean isVisibleTo(Entry e, CurrentUser user, ReviewDb db) {
+    if (e.project == null) {
+      return true;
+    }
+    try {
+      if (projectCache.get(e.project) == null) {
+        return false;
+      }
+      Change.Id id = e.change;
+      if (id == null && e.ref != null && PatchSet.isChangeRef(e.ref)) {
+        id = PatchSet.Id.fromRef(e.ref).getParentKey();
+      }
+      if (id != null) {
+        try {
+          return permissionBackend
+              .user(user)
+              .change(notesFactory.createChecked(db, e.project, id))
+              .database(db)
+              .test(ChangePermission.READ);
+        } catch (NoSuchChangeException err) {
+          if (e.change != null) {
+            return false;
+          }
+          log.debug("Change {} cannot be found, falling back on ref visibility check", id.id);
+        }
+      }
+      if (e.ref != null) {
+        return permissionBackend
+            .user(user)
+            .ref(new Branch.NameKey(e.project, e.ref))
+            .test(RefPermission.READ);
+      }
+      return permissionBackend.user(user).project(e.project).test(ProjectPermission.ACCESS);
+    } catch (OrmException | PermissionBackendException err) {
+      log.warn("Cannot check visibility of event " + e.seq, err);
+      return false;
+    }
+  }
+
+  private static int index(long seq) {
+    return (int) (seq & (MEMORY_ENTRIES - 1));
+  }
+
+  private void append(Entry e) {
+    try {
+      if (out == null) {
+        openSegment();
+      }
+      ByteArrayOutputStream buf = new ByteArrayOutputStream(e.json.length + 64);
+      DataOutputStream d = new DataOutputStream(buf);
+      d.writeLong(e.seq);
+      d.writeUTF(e.type);
+      d.writeUTF(e.project != null ? e.project.get() : "");
+      d.writeUTF(e.ref != null ? e.ref : "");
+      d.writeInt(e.change != null ? e.change.get() : 0);
+      d.writeInt(e.json.length);
+      d.write(e.json);
+      byte[] payload = buf.toByteArray();
+      if (payload.length > MAX_RECORD_SIZE) {
+        // Readers still get the event from memory until it is replaced by newer events.
+        log.warn("Event {} is too large for the event log: {} bytes", e.seq, payload.length);
+        return;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+
+      out.writeInt(payload.length);
+      out.write(payload);
+      out.writeInt((int) crc.getValue());
+      out.flush();
+      if (out.size() >= segmentSize) {
+        closeSegment();
+        openSegment();
+      }
+    } catch (IOException err) {
+      // Readers still get the event from memory; the next event starts a new segment.
+      log.error("Cannot append event " + e.seq + " to event log in " + dir, err);
+      closeSegment();
+    }
+  }
+
+  private void openSegment() throws IOException {
+    Path p = dir.resolve(String.format("%020d%s", nextSeq, SUFFIX));
+    OutputStream os =
+        Files.newOutputStream(p, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    out = new DataOutputStream(new BufferedOutputStream(os));
+    segments.put(nextSeq, p);
+    while (segments.size() > maxSegments) {
+      Path old = segments.pollFirstEntry().getValue();
+      try {
+        Files.deleteIfExists(old);
+      } catch (IOException e) {
+        log.warn("Cannot delete " + old, e);
+      }
+    }
+  }
+
+  private void closeSegment() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        log.warn("Cannot close event log in " + dir, e);
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Truncate a partially written record at the end of a segment.
+   *
+   * @return sequence number following the last complete record.
+   */
+  private static long recover(Path p, long firstSeq) throws IOException {
+    long next = firstSeq;
+    long valid = 0;
+    long size = Files.size(p);
+    try (CountingInput in = new CountingInput(Files.newInputStream(p))) {
+      DataInputStream d = new DataInputStream(in);
+      Entry e;
+      while ((e = readRecord(d, size - in.count)) != null) {
+        next = e.seq + 1;
+        valid = in.count;
+      }
+    } catch (IOException e) {
+      log.warn("Truncating " + p + " after corrupt record", e);
+    }
+    if (valid < size) {
+      try (FileChannel ch = FileChannel.open(p, StandardOpenOption.WRITE)) {
+        ch.truncate(valid);
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Read the next record of a segment.
+   *
+   * @param in stream positioned at the start of a record.
+   * @param remaining number of bytes left in the segment, including the record.
+   * @return the record, or null at the end of the segment or before a partially written record.
+   */
+  @Nullable
+  private static Entry readRecord(DataInputStream in, long remaining) throws IOException {
+    int len;
+    try {
+      len = in.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    if (len <= 0) {
+      throw new IOException("Corrupt record length " + len);
+    }
+    if (len > MAX_RECORD_SIZE || len > remaining - 8) {
+      // Either garbage or a record that was never completely written; do not allocate for it.
+      return null;
+    }
+    byte[] payload = new byte[len];
+    try {
+      in.readFully(payload);
+      int sum = in.readInt();
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      if (sum != (int) crc.getValue()) {
+        throw new IOException("Corrupt record checksum");
+      }
+    } catch (EOFException e) {
+      // Partially written record at the end of the segment.
+      return null;
+    }
+
+    DataInputStream d = new DataInputStream(new ByteArrayInputStream(payload));
+    long seq = d.readLong();
+    String type = d.readUTF();
+    String project = d.readUTF();
+    String ref = d.readUTF();
+    int change = d.readInt();
+    byte[] json = new byte[d.readInt()];
+    d.readFully(json);
+    return new Entry(
+        seq,
+        type,
+        project.isEmpty() ? null : new Project.NameKey(project),
+        ref.isEmpty() ? null : ref,
+        change > 0 ? new Change.Id(change) : null,
+        json);
+  }
+
+  private static class CountingInput extends BufferedInputStream {
+    long count;
+
+    CountingInput(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+  }
+}
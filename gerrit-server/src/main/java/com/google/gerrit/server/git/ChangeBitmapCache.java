@@ -0,0 +1,296 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.TreeMultiset;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.ChangeIndexedListener;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.index.change.ChangeField;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.InternalChangeQuery;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.inject.util.Providers;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-project {@link ChangeBitmaps} used by {@link VisibleRefFilter}.
+ *
+ * <p>Entries are loaded from the secondary index once and then maintained incrementally: indexing a
+ * change or updating one of its refs only marks that change, and the next reader re-reads the
+ * marked changes from the index instead of reloading the whole project. Reindexing catches updates
+ * that move no ref, like making a change private in ReviewDb or any NoteDb meta ref update.
+ *
+ * <p>Marks are numbered. Each cached entry remembers the last mark it reflects, and an entry being
+ * loaded the number current when its load started, so a change marked while a project is loaded is
+ * still applied to the loaded entry.
+ */
+@Singleton
+public class ChangeBitmapCache implements GitReferenceUpdatedListener, ChangeIndexedListener {
+  private static final Logger log = LoggerFactory.getLogger(ChangeBitmapCache.class);
+  static final String CACHE_NAME = "change_bitmaps";
+
+  /** Beyond this many pending marks, dropping all projects is cheaper than refreshing them. */
+  private static final int MAX_MARKS = 10000;
+
+  private static final ImmutableSet<String> FIELDS =
+      ImmutableSet.of(ChangeField.CHANGE.getName(), ChangeField.REVIEWER.getName());
+
+  public static class Module extends CacheModule {
+    private final boolean slave;
+
+    public Module() {
+      this(false);
+    }
+
+    public Module(boolean slave) {
+      this.slave = slave;
+    }
+
+    @Override
+    protected void configure() {
+      if (slave) {
+        bind(ChangeBitmapCache.class).toProvider(Providers.<ChangeBitmapCache>of(null));
+      } else {
+        cache(CACHE_NAME, Project.NameKey.class, Snapshot.class).maximumWeight(0);
+
+        bind(ChangeBitmapCache.class);
+        DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ChangeBitmapCache.class);
+        DynamicSet.bind(binder(), ChangeIndexedListener.class).to(ChangeBitmapCache.class);
+      }
+    }
+  }
+
+  /** Bitmaps of a project, reflecting all marks up to {@link #sequence}. */
+  static class Snapshot {
+    final ChangeBitmaps bitmaps;
+    final long sequence;
+
+    Snapshot(ChangeBitmaps bitmaps, long sequence) {
+      this.bitmaps = bitmaps;
+      this.sequence = sequence;
+    }
+  }
+
+  private final Cache<Project.NameKey, Snapshot> cache;
+  private final OneOffRequestContext requestContext;
+  private final Provider<InternalChangeQuery> queryProvider;
+
+  // Guarded by marks.
+  private final NavigableMap<Long, Change.Id> marks = new TreeMap<>();
+  private final TreeMultiset<Long> loading = TreeMultiset.create();
+  private long sequence;
+  private long dropped;
+
+  @Inject
+  ChangeBitmapCache(
+      @Named(CACHE_NAME) Cache<Project.NameKey, Snapshot> cache,
+      OneOffRequestContext requestContext,
+      Provider<InternalChangeQuery> queryProvider) {
+    this.cache = cache;
+    this.requestContext = requestContext;
+    this.queryProvider = queryProvider;
+  }
+
+  /**
+   * Get the change bitmaps of a project.
+   *
+   * @param project project to read.
+   * @return current bitmaps; null if the changes cannot be read from the index.
+   */
+  @Nullable
+  ChangeBitmaps get(Project.NameKey project) {
+    Snapshot snapshot;
+    boolean[] loaded = new boolean[1];
+    try {
+      snapshot =
+          cache.get(
+              project,
+              () -> {
+                loaded[0] = true;
+                return loadProject(project);
+              });
+    } catch (ExecutionException e) {
+      log.warn("Cannot fetch changes for " + project, e);
+      return null;
+    }
+
+    long last;
+    List<Change.Id> todo = new ArrayList<>();
+    synchronized (marks) {
+      if (loaded[0]) {
+        // Now in the cache, the entry holds back pruning by itself.
+        loading.remove(snapshot.sequence);
+      }
+      if (snapshot.sequence < dropped) {
+        // Loaded before the marks it missed were dropped.
+        cache.asMap().remove(project, snapshot);
+        return get(project);
+      }
+      if (sequence == snapshot.sequence) {
+        return snapshot.bitmaps;
+      }
+      last = sequence;
+      todo.addAll(marks.tailMap(snapshot.sequence, false).values());
+    }
+
+    synchronized (this) {
+      Snapshot current = cache.getIfPresent(project);
+      if (current == null || current.sequence < snapshot.sequence) {
+        return get(project);
+      } else if (current.sequence >= last) {
+        return current.bitmaps;
+      }
+      try {
+        // Marks after the snapshot also cover every entry that is at least as
+        // new; applying an older mark again only re-reads the change.
+        Map<Change.Id, ChangeData> changes = load(todo);
+        for (Map.Entry<Project.NameKey, Snapshot> e : cache.asMap().entrySet()) {
+          Snapshot s = e.getValue();
+          if (s.sequence >= snapshot.sequence && s.sequence < last) {
+            ChangeBitmaps bitmaps = s.bitmaps.update(entries(e.getKey(), todo, changes));
+            cache.put(e.getKey(), new Snapshot(bitmaps, last));
+          }
+        }
+      } catch (OrmException e) {
+        log.warn("Cannot refresh changes " + todo + " of " + project, e);
+        cache.invalidate(project);
+        return get(project);
+      }
+    }
+    prune();
+    Snapshot current = cache.getIfPresent(project);
+    return current != null ? current.bitmaps : get(project);
+  }
+
+  @Override
+  public void onGitReferenceUpdated(GitReferenceUpdatedListener.Event event) {
+    if (!event.getRefName().startsWith(RefNames.REFS_CHANGES)) {
+      return;
+    }
+    Change.Id id = Change.Id.fromRef(event.getRefName());
+    if (id != null) {
+      mark(id);
+    } else {
+      cache.invalidate(new Project.NameKey(event.getProjectName()));
+    }
+  }
+
+  @Override
+  public void onChangeIndexed(int id) {
+    // Always mark, even if nothing is cached yet: a project being loaded right
+    // now may have read the change before it was indexed.
+    mark(new Change.Id(id));
+  }
+
+  @Override
+  public void onChangeDeleted(int id) {
+    mark(new Change.Id(id));
+  }
+
+  private void mark(Change.Id id) {
+    synchronized (marks) {
+      marks.put(++sequence, id);
+      if (marks.size() > MAX_MARKS) {
+        marks.clear();
+        dropped = sequence;
+        cache.invalidateAll();
+      }
+    }
+  }
+
+  /** Drop marks that every cached entry and every running load already reflects. */
+  private void prune() {
+    synchronized (marks) {
+      long min = sequence;
+      for (Snapshot s : cache.asMap().values()) {
+        min = Math.min(min, s.sequence);
+      }
+      if (!loading.isEmpty()) {
+        min = Math.min(min, loading.firstEntry().getElement());
+      }
+      marks.headMap(min, true).clear();
+    }
+  }
+
+  private Snapshot loadProject(Project.NameKey project) throws OrmException {
+    long start;
+    synchronized (marks) {
+      start = sequence;
+      loading.add(start);
+    }
+    try (ManualRequestContext ctx = requestContext.open()) {
+      Map<Change.Id, ChangeBitmaps.Entry> changes = new HashMap<>();
+      for (ChangeData cd : queryProvider.get().setRequestedFields(FIELDS).byProject(project)) {
+        changes.put(cd.getId(), new ChangeBitmaps.Entry(cd.change(), cd.reviewers()));
+      }
+      return new Snapshot(ChangeBitmaps.create(changes), start);
+    } catch (OrmException | RuntimeException e) {
+      synchronized (marks) {
+        loading.remove(start);
+      }
+      throw e;
+    }
+  }
+
+  private Map<Change.Id, ChangeData> load(Collection<Change.Id> ids) throws OrmException {
+    Map<Change.Id, ChangeData> result = new HashMap<>();
+    try (ManualRequestContext ctx = requestContext.open()) {
+      for (ChangeData cd : queryProvider.get().setRequestedFields(FIELDS).byLegacyChangeIds(ids)) {
+        cd.change();
+        cd.reviewers();
+        result.put(cd.getId(), cd);
+      }
+    }
+    return result;
+  }
+
+  private static Map<Change.Id, ChangeBitmaps.Entry> entries(
+      Project.NameKey project, Collection<Change.Id> ids, Map<Change.Id, ChangeData> changes)
+      throws OrmException {
+    Map<Change.Id, ChangeBitmaps.Entry> result = new HashMap<>();
+    for (Change.Id id : ids) {
+      ChangeData cd = changes.get(id);
+      if (cd == null) {
+        result.put(id, null);
+      } else if (cd.project().equals(project)) {
+        result.put(id, new ChangeBitmaps.Entry(cd.change(), cd.reviewers()));
+      }
+    }
+    return result;
+  }
+}
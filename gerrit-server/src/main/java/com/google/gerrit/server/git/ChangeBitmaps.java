@@ -0,0 +1,179 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.ReviewerSet;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Change numbers of one project, grouped by destination branch.
+ *
+ * <p>Visibility of a change ref is the readability of the change's destination branch, unless the
+ * change is private or a draft. Those restricted changes are tracked separately with the accounts
+ * that can always see them, so the common case needs one permission check per branch instead of
+ * one per change.
+ *
+ * <p>Instances are immutable; {@link #update(Map)} returns a modified copy.
+ */
+class ChangeBitmaps {
+  /** Subset of a change needed to place it in the bitmaps. */
+  static class Entry {
+    final Branch.NameKey dest;
+    final boolean restricted;
+    final ImmutableSet<Account.Id> members;
+
+    Entry(Change change, ReviewerSet reviewers) {
+      dest = change.getDest();
+      restricted = change.isPrivate() || change.getStatus() == Change.Status.DRAFT;
+      members =
+          restricted
+              ? ImmutableSet.<Account.Id>builder()
+                  .add(change.getOwner())
+                  .addAll(reviewers.all())
+                  .build()
+              : ImmutableSet.of();
+    }
+  }
+
+  static ChangeBitmaps create(Map<Change.Id, Entry> changes) {
+    Map<Branch.NameKey, BitSet> byBranch = new HashMap<>();
+    ImmutableMap.Builder<Change.Id, ImmutableSet<Account.Id>> restricted = ImmutableMap.builder();
+    for (Map.Entry<Change.Id, Entry> e : changes.entrySet()) {
+      byBranch.computeIfAbsent(e.getValue().dest, b -> new BitSet()).set(e.getKey().get());
+      if (e.getValue().restricted) {
+        restricted.put(e.getKey(), e.getValue().members);
+      }
+    }
+
+    ImmutableMap.Builder<Branch.NameKey, EWAHCompressedBitmap> branches = ImmutableMap.builder();
+    for (Map.Entry<Branch.NameKey, BitSet> e : byBranch.entrySet()) {
+      // EWAHCompressedBitmap only accepts bits in increasing order.
+      EWAHCompressedBitmap bitmap = new EWAHCompressedBitmap();
+      BitSet bits = e.getValue();
+      for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+        bitmap.set(i);
+      }
+      branches.put(e.getKey(), bitmap);
+    }
+    return new ChangeBitmaps(branches.build(), restricted.build());
+  }
+
+  private final ImmutableMap<Branch.NameKey, EWAHCompressedBitmap> branches;
+  private final ImmutableMap<Change.Id, ImmutableSet<Account.Id>> restricted;
+
+  private ChangeBitmaps(
+      ImmutableMap<Branch.NameKey, EWAHCompressedBitmap> branches,
+      ImmutableMap<Change.Id, ImmutableSet<Account.Id>> restricted) {
+    this.branches = branches;
+    this.restricted = restricted;
+  }
+
+  /**
+   * Compute the change numbers visible to a user.
+   *
+   * @param canRead whether the user can read a destination branch.
+   * @param user account of the user; null for anonymous users.
+   * @param canReadRestricted full visibility check for a private or draft change on a readable
+   *     branch the user is neither owner nor reviewer of.
+   * @return set of visible change numbers.
+   */
+  BitSet visible(
+      Predicate<Branch.NameKey> canRead,
+      @Nullable Account.Id user,
+      Predicate<Change.Id> canReadRestricted) {
+    List<EWAHCompressedBitmap> readable = new ArrayList<>(branches.size());
+    for (Map.Entry<Branch.NameKey, EWAHCompressedBitmap> e : branches.entrySet()) {
+      if (canRead.test(e.getKey())) {
+        readable.add(e.getValue());
+      }
+    }
+
+    BitSet result = new BitSet();
+    if (readable.isEmpty()) {
+      return result;
+    }
+    EWAHCompressedBitmap all =
+        readable.size() == 1
+            ? readable.get(0)
+            : EWAHCompressedBitmap.or(readable.toArray(new EWAHCompressedBitmap[readable.size()]));
+    for (IntIterator i = all.intIterator(); i.hasNext(); ) {
+      result.set(i.next());
+    }
+
+    for (Map.Entry<Change.Id, ImmutableSet<Account.Id>> e : restricted.entrySet()) {
+      int id = e.getKey().get();
+      if (result.get(id) && !e.getValue().contains(user) && !canReadRestricted.test(e.getKey())) {
+        result.clear(id);
+      }
+    }
+    return result;
+  }
+
+  /** @return destination branch of the change, or null if the change is unknown. */
+  @Nullable
+  Branch.NameKey branch(Change.Id id) {
+    for (Map.Entry<Branch.NameKey, EWAHCompressedBitmap> e : branches.entrySet()) {
+      if (e.getValue().get(id.get())) {
+        return e.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Apply changes to the set.
+   *
+   * @param changes updated changes; a null entry removes the change.
+   * @return new copy with the changes applied.
+   */
+  ChangeBitmaps update(Map<Change.Id, Entry> changes) {
+    Map<Branch.NameKey, EWAHCompressedBitmap> newBranches = new HashMap<>(branches);
+    Map<Change.Id, ImmutableSet<Account.Id>> newRestricted = new HashMap<>(restricted);
+    for (Map.Entry<Change.Id, Entry> e : changes.entrySet()) {
+      EWAHCompressedBitmap bit = EWAHCompressedBitmap.bitmapOf(e.getKey().get());
+      Entry entry = e.getValue();
+      Branch.NameKey old = branch(e.getKey());
+      if (old != null && (entry == null || !old.equals(entry.dest))) {
+        EWAHCompressedBitmap remaining = newBranches.get(old).andNot(bit);
+        if (remaining.isEmpty()) {
+          newBranches.remove(old);
+        } else {
+          newBranches.put(old, remaining);
+        }
+      }
+      newRestricted.remove(e.getKey());
+      if (entry != null) {
+        newBranches.merge(entry.dest, bit, EWAHCompressedBitmap::or);
+        if (entry.restricted) {
+          newRestricted.put(e.getKey(), entry.members);
+        }
+      }
+    }
+    return new ChangeBitmaps(ImmutableMap.copyOf(newBranches), ImmutableMap.copyOf(newRestricted));
+  }
+}
@@ -76,7 +76,21 @@ public class InMemoryInserter extends ObjectInserter {
 
   @Override
   public ObjectReader newReader() {
-    return new Reader();
+    return new Reader(reader, false);
+  }
+
+  /**
+   * Create a reader that can be used concurrently with other readers of this inserter.
+   *
+   * <p>Readers returned by {@link #newReader()} share a single underlying reader, which is not
+   * thread-safe. The returned reader opens its own reader of {@code repo} for objects that were not
+   * inserted, and closes it when closed. No objects may be inserted while it is in use.
+   *
+   * @param repo repository to read objects from that were not inserted.
+   * @return new reader.
+   */
+  public ObjectReader newConcurrentReader(Repository repo) {
+    return new Reader(repo.newObjectReader(), true);
   }
 
   @Override
@@ -100,9 +114,17 @@ public class InMemoryInserter extends ObjectInserter {
   }
 
   private class Reader extends ObjectReader {
+    private final ObjectReader reader;
+    private final boolean closeReader;
+
+    Reader(ObjectReader reader, boolean closeReader) {
+      this.reader = reader;
+      this.closeReader = closeReader;
+    }
+
     @Override
     public ObjectReader newReader() {
-      return new Reader();
+      return new Reader(InMemoryInserter.this.reader, false);
     }
 
     @Override
@@ -136,7 +158,9 @@ public class InMemoryInserter extends ObjectInserter {
 
     @Override
     public void close() {
-      // Do nothing; this class owns no open resources.
+      if (closeReader) {
+        reader.close();
+      }
     }
 
     @Override
@@ -41,8 +41,10 @@ import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.permissions.ChangePermission;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.project.DefaultSubmitRule;
 import com.google.gerrit.server.project.NoSuchChangeException;
 import com.google.gerrit.server.project.NoSuchProjectException;
+import com.google.gerrit.server.project.SubmitRecordCache;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.InternalChangeQuery;
@@ -103,6 +105,8 @@ public class MergeSuperSet {
   private final AccountCache accountCache;
   private final Accounts accounts;
   private final Emails emails;
+  private final SubmitRecordCache submitRecordCache;
+  private final DefaultSubmitRule defaultSubmitRule;
   private final ChangeData.Factory changeDataFactory;
   private final Provider<InternalChangeQuery> queryProvider;
   private final Provider<MergeOpRepoManager> repoManagerProvider;
@@ -120,6 +124,8 @@ public class MergeSuperSet {
       AccountCache accountCache,
       Accounts accounts,
       Emails emails,
+      SubmitRecordCache submitRecordCache,
+      DefaultSubmitRule defaultSubmitRule,
       ChangeData.Factory changeDataFactory,
       Provider<InternalChangeQuery> queryProvider,
       Provider<MergeOpRepoManager> repoManagerProvider,
@@ -128,6 +134,8 @@ public class MergeSuperSet {
     this.accountCache = accountCache;
     this.accounts = accounts;
     this.emails = emails;
+    this.submitRecordCache = submitRecordCache;
+    this.defaultSubmitRule = defaultSubmitRule;
     this.changeDataFactory = changeDataFactory;
     this.queryProvider = queryProvider;
     this.repoManagerProvider = repoManagerProvider;
@@ -181,7 +189,8 @@ public class MergeSuperSet {
     SubmitTypeRecord str =
         ps == cd.currentPatchSet()
             ? cd.submitTypeRecord()
-            : new SubmitRuleEvaluator(accountCache, accounts, emails, cd)
+            : new SubmitRuleEvaluator(
+                    accountCache, accounts, emails, submitRecordCache, defaultSubmitRule, cd)
                 .setPatchSet(ps)
                 .getSubmitType();
     if (!str.isOk()) {
@@ -0,0 +1,102 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-project {@link ReachabilityIndex}, shared by "included in" lookups, commit visibility checks
+ * and {@link TagCache}.
+ *
+ * <p>Disabled unless {@code cache.git_reachability.memoryLimit} is set.
+ */
+@Singleton
+public class ReachabilityCache {
+  private static final Logger log = LoggerFactory.getLogger(ReachabilityCache.class);
+  static final String CACHE_NAME = "git_reachability";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, Project.NameKey.class, ReachabilityIndex.class)
+            .maximumWeight(0)
+            .weigher(IndexWeigher.class);
+        bind(ReachabilityCache.class);
+      }
+    };
+  }
+
+  private final Cache<Project.NameKey, ReachabilityIndex> cache;
+  private final boolean enabled;
+
+  @Inject
+  ReachabilityCache(
+      @Named(CACHE_NAME) Cache<Project.NameKey, ReachabilityIndex> cache,
+      @GerritServerConfig Config cfg) {
+    this.cache = cache;
+    this.enabled = cfg.getLong("cache", CACHE_NAME, "memoryLimit", 0) > 0;
+  }
+
+  /**
+   * Get the reachability index of a project.
+   *
+   * @param project project to read.
+   * @param repo open repository of the project.
+   * @return index, up to date with the current refs of the repository; null if the index is
+   *     disabled or cannot be updated.
+   */
+  @Nullable
+  public ReachabilityIndex get(Project.NameKey project, Repository repo) {
+    if (!enabled) {
+      return null;
+    }
+    try {
+      ReachabilityIndex index = cache.get(project, () -> new ReachabilityIndex(project));
+      if (index.update(repo, repo.getRefDatabase().getRefs(RefDatabase.ALL).values())) {
+        // Weigh the index again now that it changed.
+        cache.put(project, index);
+      }
+      return index;
+    } catch (ExecutionException | IOException e) {
+      log.warn("Cannot update reachability index of " + project, e);
+      cache.invalidate(project);
+      return null;
+    }
+  }
+
+  static class IndexWeigher implements Weigher<Project.NameKey, ReachabilityIndex> {
+    @Override
+    public int weigh(Project.NameKey key, ReachabilityIndex value) {
+      return value.weight();
+    }
+  }
+}
@@ -0,0 +1,357 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import com.google.gerrit.reviewdb.client.Project;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Commit reachability of the refs of one repository.
+ *
+ * <p>Every commit reachable from a ref has a position. Positions are assigned parents before
+ * children, so the ancestors of a commit mostly form long runs of positions. For every ref tip the
+ * index keeps an {@link EWAHCompressedBitmap} of the positions of its ancestors, which compresses
+ * to a few words per run. Whether a ref contains a commit is then a single bit lookup, and the
+ * bitmaps of many refs can be combined to answer the question for a set of refs, without walking
+ * history.
+ *
+ * <p>{@link #update(Repository, Collection)} brings the index up to date with the current refs of
+ * the repository. Only refs that moved are looked at, and the new commits are walked only until a
+ * commit that already has a bitmap: another ref tip, or a checkpoint kept every {@value
+ * #CHECKPOINT} positions.
+ *
+ * <p>Commits are never removed one by one, as positions are shared by all bitmaps. When refs are
+ * deleted or rewound and more than half of the indexed commits are no longer reachable from any
+ * ref, the index is rebuilt from scratch.
+ *
+ * <p>Methods are synchronized; queries are short, updates hold the lock while walking.
+ */
+public class ReachabilityIndex {
+  private static final Logger log = LoggerFactory.getLogger(ReachabilityIndex.class);
+
+  /** Every how many positions a commit keeps its bitmap even if it is not a ref tip. */
+  static final int CHECKPOINT = 1024;
+
+  /** Number of commits below which unreachable commits are not worth a rebuild. */
+  static final int MIN_REBUILD = CHECKPOINT;
+
+  private static class Node extends ObjectIdOwnerMap.Entry {
+    final int pos;
+    int pendingChildren;
+    EWAHCompressedBitmap ancestors;
+
+    Node(AnyObjectId id, int pos) {
+      super(id);
+      this.pos = pos;
+    }
+  }
+
+  private static class Tip {
+    final ObjectId refId;
+    final Node node;
+
+    Tip(ObjectId refId, Node node) {
+      this.refId = refId;
+      this.node = node;
+    }
+  }
+
+  private final Project.NameKey project;
+  private final ObjectIdOwnerMap<Node> nodes = new ObjectIdOwnerMap<>();
+  private Map<String, Tip> tips = new HashMap<>();
+  private Map<String, ObjectId> notCommits = new HashMap<>();
+  private int nextPos;
+
+  ReachabilityIndex(Project.NameKey project) {
+    this.project = project;
+  }
+
+  /**
+   * Bring the index up to date with the refs of the repository.
+   *
+   * @param repo repository of the project.
+   * @param refs all current refs of the repository; refs that cannot contain commits, such as
+   *     symbolic refs and change refs, are skipped.
+   * @return whether the index changed.
+   * @throws IOException the history of a ref cannot be read.
+   */
+  synchronized boolean update(Repository repo, Collection<Ref> refs) throws IOException {
+    Map<String, Tip> current = new HashMap<>();
+    Map<String, ObjectId> currentNotCommits = new HashMap<>();
+    Map<String, ObjectId> moved = new HashMap<>();
+    for (Ref ref : refs) {
+      if (TagSet.skip(ref)) {
+        continue;
+      }
+      Tip old = tips.get(ref.getName());
+      if (old != null && old.refId.equals(ref.getObjectId())) {
+        current.put(ref.getName(), old);
+      } else if (ref.getObjectId().equals(notCommits.get(ref.getName()))) {
+        currentNotCommits.put(ref.getName(), ref.getObjectId());
+      } else {
+        moved.put(ref.getName(), ref.getObjectId());
+      }
+    }
+    if (moved.isEmpty()
+        && current.size() == tips.size()
+        && currentNotCommits.size() == notCommits.size()) {
+      return false;
+    }
+
+    boolean dropped = false;
+    try (RevWalk rw = new RevWalk(repo)) {
+      rw.setRetainBody(false);
+      Map<String, RevCommit> starts = new HashMap<>();
+      for (Map.Entry<String, ObjectId> e : moved.entrySet()) {
+        RevCommit c = toCommit(rw, e.getKey(), e.getValue());
+        if (c != null) {
+          starts.put(e.getKey(), c);
+        } else {
+          // Tags may point to trees or blobs, or to missing objects.
+          currentNotCommits.put(e.getKey(), e.getValue());
+        }
+      }
+
+      Set<ObjectId> keep = new HashSet<>();
+      for (Tip t : current.values()) {
+        keep.add(t.node.copy());
+      }
+      for (RevCommit c : starts.values()) {
+        keep.add(c.copy());
+      }
+      index(rw, starts.values(), keep);
+
+      for (Map.Entry<String, RevCommit> e : starts.entrySet()) {
+        current.put(e.getKey(), new Tip(moved.get(e.getKey()), nodes.get(e.getValue())));
+      }
+      for (Map.Entry<String, Tip> e : tips.entrySet()) {
+        Tip t = e.getValue();
+        Tip now = current.get(e.getKey());
+        if (now != t && (now == null || !now.node.ancestors.get(t.node.pos))) {
+          dropped = true;
+        }
+        if (!keep.contains(t.node)) {
+          release(t.node);
+        }
+      }
+    }
+    tips = current;
+    notCommits = currentNotCommits;
+
+    if (dropped && nodes.size() >= MIN_REBUILD) {
+      int reachable = or(tips.values()).cardinality();
+      if (nodes.size() - reachable > reachable) {
+        log.debug(
+            "Rebuilding reachability index of {}: {} of {} commits unreachable",
+            project,
+            nodes.size() - reachable,
+            nodes.size());
+        nodes.clear();
+        tips = new HashMap<>();
+        notCommits = new HashMap<>();
+        nextPos = 0;
+        update(repo, refs);
+      }
+    }
+    return true;
+  }
+
+  /** @return whether the index covers a ref; symbolic refs and change refs are not indexed. */
+  public static boolean isIndexed(Ref ref) {
+    return !TagSet.skip(ref);
+  }
+
+  /** @return names of the refs that contain the commit. */
+  public synchronized List<String> refsContaining(AnyObjectId commit) {
+    List<String> result = new ArrayList<>();
+    Node n = nodes.get(commit);
+    if (n != null) {
+      for (Map.Entry<String, Tip> e : tips.entrySet()) {
+        if (e.getValue().node.ancestors.get(n.pos)) {
+          result.add(e.getKey());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Combine the ancestors of refs.
+   *
+   * @param refs refs of the repository; refs that are not indexed are ignored.
+   * @return bitmap to be passed to {@link #isReachable(EWAHCompressedBitmap, AnyObjectId)}.
+   */
+  public synchronized EWAHCompressedBitmap reachableFrom(Collection<Ref> refs) {
+    List<Tip> selected = new ArrayList<>(refs.size());
+    for (Ref ref : refs) {
+      Tip t = tips.get(ref.getName());
+      if (t != null) {
+        selected.add(t);
+      }
+    }
+    return or(selected);
+  }
+
+  private static EWAHCompressedBitmap or(Collection<Tip> selected) {
+    List<EWAHCompressedBitmap> bitmaps = new ArrayList<>(selected.size());
+    Set<Node> seen = new HashSet<>();
+    for (Tip t : selected) {
+      if (seen.add(t.node)) {
+        bitmaps.add(t.node.ancestors);
+      }
+    }
+    if (bitmaps.isEmpty()) {
+      return new EWAHCompressedBitmap();
+    } else if (bitmaps.size() == 1) {
+      return bitmaps.get(0);
+    }
+    return EWAHCompressedBitmap.or(bitmaps.toArray(new EWAHCompressedBitmap[bitmaps.size()]));
+  }
+
+  /** @return whether a commit is in a bitmap returned by {@link #reachableFrom(Collection)}. */
+  public synchronized boolean isReachable(EWAHCompressedBitmap reachable, AnyObjectId commit) {
+    Node n = nodes.get(commit);
+    return n != null && reachable.get(n.pos);
+  }
+
+  /** @return approximate size of the index in bytes, including tip and checkpoint bitmaps. */
+  synchronized int weight() {
+    long w = 64L * nodes.size();
+    for (Node n : nodes) {
+      if (n.ancestors != null) {
+        w += n.ancestors.sizeInBytes();
+      }
+    }
+    return (int) Math.min(w, Integer.MAX_VALUE);
+  }
+
+  private RevCommit toCommit(RevWalk rw, String name, ObjectId id) throws IOException {
+    try {
+      RevObject o = rw.peel(rw.parseAny(id));
+      return o instanceof RevCommit ? (RevCommit) o : null;
+    } catch (MissingObjectException | IncorrectObjectTypeException e) {
+      log.warn("Ref " + name + " in " + project + " points to dangling object " + id.name());
+      return null;
+    }
+  }
+
+  /**
+   * Compute the bitmaps of commits.
+   *
+   * <p>Walks from the starting commits through all commits that have no bitmap yet, and computes
+   * their bitmaps parents first from the parents' bitmaps. Bitmaps that are neither in {@code
+   * keep} nor on a checkpoint are released once all children have used them.
+   */
+  private void index(RevWalk rw, Collection<RevCommit> starts, Set<ObjectId> keep)
+      throws IOException {
+    RevFlag seen = rw.newFlag("SEEN");
+    RevFlag done = rw.newFlag("DONE");
+    List<RevCommit> order = new ArrayList<>();
+    Deque<RevCommit> stack = new ArrayDeque<>();
+    for (RevCommit c : starts) {
+      if (needsBitmap(c)) {
+        stack.push(c);
+      }
+    }
+    while (!stack.isEmpty()) {
+      RevCommit c = stack.peek();
+      if (!c.has(seen)) {
+        c.add(seen);
+        rw.parseHeaders(c);
+        for (RevCommit p : c.getParents()) {
+          if (!p.has(seen) && needsBitmap(p)) {
+            stack.push(p);
+          }
+        }
+      } else {
+        stack.pop();
+        if (!c.has(done)) {
+          c.add(done);
+          order.add(c);
+        }
+      }
+    }
+
+    List<Node> walked = new ArrayList<>(order.size());
+    for (RevCommit c : order) {
+      Node n = nodes.get(c);
+      if (n == null) {
+        n = new Node(c, nextPos++);
+        nodes.add(n);
+      }
+      walked.add(n);
+    }
+    for (RevCommit c : order) {
+      for (RevCommit p : c.getParents()) {
+        if (p.has(seen)) {
+          nodes.get(p).pendingChildren++;
+        }
+      }
+    }
+
+    for (int i = 0; i < order.size(); i++) {
+      RevCommit c = order.get(i);
+      Node n = walked.get(i);
+      EWAHCompressedBitmap bits = EWAHCompressedBitmap.bitmapOf(n.pos);
+      for (RevCommit p : c.getParents()) {
+        Node pn = nodes.get(p);
+        bits = bits.or(pn.ancestors);
+        if (p.has(seen) && --pn.pendingChildren == 0 && !keep.contains(pn)) {
+          release(pn);
+        }
+      }
+      n.ancestors = bits;
+    }
+    for (Node n : walked) {
+      if (n.pendingChildren == 0 && !keep.contains(n)) {
+        release(n);
+      }
+    }
+  }
+
+  private boolean needsBitmap(RevCommit c) {
+    Node n = nodes.get(c);
+    return n == null || n.ancestors == null;
+  }
+
+  private static void release(Node n) {
+    if (n.pos % CHECKPOINT != 0) {
+      n.ancestors = null;
+    }
+  }
+}
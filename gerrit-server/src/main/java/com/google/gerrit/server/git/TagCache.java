@@ -14,18 +14,31 @@
 
 package com.google.gerrit.server.git;
 
+import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+
 import com.google.common.cache.Cache;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.cache.BinaryCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.StringCacheSerializer;
 import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.function.Predicate;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 
 @Singleton
 public class TagCache {
@@ -35,18 +48,24 @@ public class TagCache {
     return new CacheModule() {
       @Override
       protected void configure() {
-        persist(CACHE_NAME, String.class, EntryVal.class);
+        persist(CACHE_NAME, String.class, EntryVal.class)
+            .keySerializer(StringCacheSerializer.INSTANCE)
+            .valueSerializer(BinaryCacheSerializer.of(EntryVal::writeTo, EntryVal::readFrom))
+            .version(1);
         bind(TagCache.class);
       }
     };
   }
 
   private final Cache<String, EntryVal> cache;
+  private final ReachabilityCache reachabilityCache;
   private final Object createLock = new Object();
 
   @Inject
-  TagCache(@Named(CACHE_NAME) Cache<String, EntryVal> cache) {
+  TagCache(
+      @Named(CACHE_NAME) Cache<String, EntryVal> cache, ReachabilityCache reachabilityCache) {
     this.cache = cache;
+    this.reachabilityCache = reachabilityCache;
   }
 
   /**
@@ -82,6 +101,41 @@ public class TagCache {
     }
   }
 
+  /**
+   * Build the tag set of a project ahead of its first use.
+   *
+   * @param name project the repository belongs to.
+   * @param db open repository of the project.
+   */
+  public void warm(Project.NameKey name, Repository db) {
+    get(name).warm(this, db);
+  }
+
+  /**
+   * Get the tags reachable from a set of refs.
+   *
+   * <p>Uses the {@link ReachabilityIndex} of the project if it is enabled, otherwise the tag set of
+   * the project.
+   *
+   * @param name project the repository belongs to.
+   * @param db open repository of the project.
+   * @param include refs the tags must be reachable from.
+   * @return predicate on tag refs.
+   */
+  Predicate<Ref> reachableTags(Project.NameKey name, Repository db, Collection<Ref> include) {
+    ReachabilityIndex index = reachabilityCache.get(name, db);
+    if (index == null) {
+      return get(name).matcher(this, db, include)::isReachable;
+    }
+    EWAHCompressedBitmap reachable = index.reachableFrom(include);
+    return tag -> {
+      Ref peeled = db.peel(tag);
+      ObjectId id =
+          peeled.getPeeledObjectId() != null ? peeled.getPeeledObjectId() : peeled.getObjectId();
+      return id != null && index.isReachable(reachable, id);
+    };
+  }
+
   TagSetHolder get(Project.NameKey name) {
     EntryVal val = cache.getIfPresent(name.get());
     if (val == null) {
@@ -108,6 +162,29 @@ public class TagCache {
 
     transient TagSetHolder holder;
 
+    void writeTo(OutputStream out) throws IOException {
+      TagSet tags = holder.getTagSet();
+      writeString(out, holder.getProjectName().get());
+      out.write(tags != null ? 1 : 0);
+      if (tags != null) {
+        tags.writeTo(out);
+      }
+    }
+
+    static EntryVal readFrom(InputStream in) throws IOException {
+      EntryVal val = new EntryVal();
+      val.holder = new TagSetHolder(new Project.NameKey(readString(in)));
+      int hasTags = in.read();
+      if (hasTags < 0) {
+        throw new EOFException();
+      } else if (hasTags != 0) {
+        TagSet tags = new TagSet(val.holder.getProjectName());
+        tags.readFrom(in);
+        val.holder.setTagSet(tags);
+      }
+      return val;
+    }
+
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
       holder = new TagSetHolder(new Project.NameKey(in.readUTF()));
       if (in.readBoolean()) {
@@ -14,7 +14,6 @@
 
 package com.google.gerrit.server.git;
 
-import com.google.gerrit.server.git.TagSet.Tag;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
@@ -34,6 +33,7 @@ class TagMatcher {
   TagSet tags;
   final boolean updated;
   private boolean rebuiltForNewTags;
+  private BitSet reachable;
 
   TagMatcher(
       TagSetHolder holder,
@@ -61,8 +61,8 @@ class TagMatcher {
       }
     }
 
-    Tag tag = tags.lookupTag(tagObj);
-    if (tag == null) {
+    int tag = tags.lookupTag(tagObj);
+    if (tag < 0) {
       if (rebuiltForNewTags) {
         return false;
       }
@@ -72,14 +72,22 @@ class TagMatcher {
       return isReachable(tagRef);
     }
 
-    return tag.has(mask);
+    if (reachable == null) {
+      reachable = tags.reachable(mask);
+    }
+    return reachable.get(tag);
+  }
+
+  /** Forget the tags computed from the mask, after the mask or the tag set changed. */
+  void reset() {
+    reachable = null;
   }
 
   static class LostRef {
-    final Tag tag;
+    final int tag;
     final int flag;
 
-    LostRef(Tag tag, int flag) {
+    LostRef(int tag, int flag) {
       this.tag = tag;
       this.flag = flag;
     }
@@ -14,17 +14,32 @@
 
 package com.google.gerrit.server.git;
 
+import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
 
 import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.Project;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicReference;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.lib.AnyObjectId;
@@ -37,24 +52,78 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.IO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Which tags are reachable from which refs of a repository.
+ *
+ * <p>The matrix is stored by column: every ref has a compressed bitmap of the positions of the tags
+ * it reaches. Tags are numbered in the commit time order of the commits they point to, so the
+ * columns are mostly long runs. Tag names are not stored; tags are looked up by the object id they
+ * peel to, held in one byte array.
+ *
+ * <p>Once built a set is only read. Bitmaps are never modified in place, so a refresh shares the
+ * columns that did not change with the old set, and readers never need to lock. Only the ref tips
+ * are updated in place, atomically, on fast-forwards.
+ */
 class TagSet {
   private static final Logger log = LoggerFactory.getLogger(TagSet.class);
 
+  private static final byte[] NO_IDS = {};
+  private static final int[] NO_POSITIONS = {};
+  private static final EWAHCompressedBitmap[] NO_COLUMNS = {};
+
   private final Project.NameKey projectName;
   private final Map<String, CachedRef> refs;
-  private final ObjectIdOwnerMap<Tag> tags;
+
+  /** Peeled ids of the tags, {@link Constants#OBJECT_ID_LENGTH} bytes per tag position. */
+  private byte[] tagIds = NO_IDS;
+
+  /** Tag positions, sorted by the id of the tag. */
+  private int[] byId = NO_POSITIONS;
+
+  /** Tag positions reachable from each ref, indexed by {@link CachedRef#flag}. */
+  private EWAHCompressedBitmap[] columns = NO_COLUMNS;
 
   TagSet(Project.NameKey projectName) {
     this.projectName = projectName;
     this.refs = new HashMap<>();
-    this.tags = new ObjectIdOwnerMap<>();
   }
 
-  Tag lookupTag(AnyObjectId id) {
-    return tags.get(id);
+  /** @return position of the tag pointing to the object; -1 if no such tag is known. */
+  int lookupTag(AnyObjectId id) {
+    int lo = 0;
+    int hi = byId.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int cmp = id.compareTo(tagIds, byId[mid] * Constants.OBJECT_ID_LENGTH);
+      if (cmp < 0) {
+        hi = mid;
+      } else if (cmp > 0) {
+        lo = mid + 1;
+      } else {
+        return byId[mid];
+      }
+    }
+    return -1;
+  }
+
+  /** @return positions of the tags reachable from any ref whose flag is set in the mask. */
+  BitSet reachable(BitSet mask) {
+    BitSet result = new BitSet();
+    for (int flag = mask.nextSetBit(0); flag >= 0; flag = mask.nextSetBit(flag + 1)) {
+      for (IntIterator i = column(flag).intIterator(); i.hasNext(); ) {
+        result.set(i.next());
+      }
+    }
+    return result;
+  }
+
+  private EWAHCompressedBitmap column(int flag) {
+    // A build interrupted by an error may leave refs without a column.
+    return flag < columns.length ? columns[flag] : new EWAHCompressedBitmap();
   }
 
   boolean updateFastForward(String refName, ObjectId oldValue, ObjectId newValue) {
@@ -119,14 +188,21 @@ class TagSet {
           // The branch rewound. Walk the list of commits removed from
           // the reference. If any matches to a tag, this has to be removed.
           boolean err = false;
+          BitSet column = null;
           rw.reset();
           rw.markStart(savedCommit);
           rw.markUninteresting(currentCommit);
           rw.sort(RevSort.TOPO, true);
           RevCommit c;
           while ((c = rw.next()) != null) {
-            Tag tag = tags.get(c);
-            if (tag != null && tag.refFlags.get(savedRef.flag)) {
+            int tag = lookupTag(c);
+            if (tag < 0) {
+              continue;
+            }
+            if (column == null) {
+              column = toBitSet(column(savedRef.flag));
+            }
+            if (column.get(tag)) {
               m.lostRefs.add(new TagMatcher.LostRef(tag, savedRef.flag));
               err = true;
             }
@@ -157,13 +233,14 @@ class TagSet {
 
     try (TagWalk rw = new TagWalk(git)) {
       rw.setRetainBody(false);
+      ObjectIdOwnerMap<TagEntry> tags = new ObjectIdOwnerMap<>();
       for (Ref ref : git.getRefDatabase().getRefs(RefDatabase.ALL).values()) {
         if (skip(ref)) {
           continue;
 
         } else if (isTag(ref)) {
           // For a tag, remember where it points to.
-          addTag(rw, git.peel(ref));
+          addTag(rw, git.peel(ref), tags);
 
         } else {
           // New reference to include in the set.
@@ -172,9 +249,9 @@ class TagSet {
       }
 
       // Traverse the complete history. Copy any flags from a commit to
-      // all of its ancestors. This automatically updates any Tag object
-      // as the TagCommit and the stored Tag object share the same
-      // underlying bit set.
+      // all of its ancestors. This automatically updates any TagEntry
+      // as the TagCommit and the TagEntry share the same underlying bit
+      // set.
       TagCommit c;
       while ((c = (TagCommit) rw.next()) != null) {
         BitSet mine = c.refFlags;
@@ -183,41 +260,66 @@ class TagSet {
           ((TagCommit) c.getParent(pIdx)).refFlags.or(mine);
         }
       }
+
+      setTags(tags);
     } catch (IOException e) {
       log.warn("Error building tags for repository " + projectName, e);
     }
   }
 
-  void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-    int refCnt = in.readInt();
+  void readFrom(InputStream in) throws IOException {
+    int refCnt = readVarInt32(in);
     for (int i = 0; i < refCnt; i++) {
-      String name = in.readUTF();
-      int flag = in.readInt();
+      String name = readString(in);
+      int flag = readVarInt32(in);
       ObjectId id = readNotNull(in);
       refs.put(name, new CachedRef(flag, id));
     }
 
-    int tagCnt = in.readInt();
+    int tagCnt = readVarInt32(in);
+    tagIds = new byte[tagCnt * Constants.OBJECT_ID_LENGTH];
+    IO.readFully(in, tagIds, 0, tagIds.length);
+    byId = new int[tagCnt];
     for (int i = 0; i < tagCnt; i++) {
-      ObjectId id = readNotNull(in);
-      BitSet flags = (BitSet) in.readObject();
-      tags.add(new Tag(id, flags));
+      byId[i] = readVarInt32(in);
+    }
+
+    DataInputStream data = new DataInputStream(in);
+    columns = new EWAHCompressedBitmap[readVarInt32(in)];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = new EWAHCompressedBitmap();
+      columns[i].deserialize(data);
     }
   }
 
-  void writeObject(ObjectOutputStream out) throws IOException {
-    out.writeInt(refs.size());
+  void writeTo(OutputStream out) throws IOException {
+    writeVarInt32(out, refs.size());
     for (Map.Entry<String, CachedRef> e : refs.entrySet()) {
-      out.writeUTF(e.getKey());
-      out.writeInt(e.getValue().flag);
+      writeString(out, e.getKey());
+      writeVarInt32(out, e.getValue().flag);
       writeNotNull(out, e.getValue().get());
     }
 
-    out.writeInt(tags.size());
-    for (Tag tag : tags) {
-      writeNotNull(out, tag);
-      out.writeObject(tag.refFlags);
+    writeVarInt32(out, byId.length);
+    out.write(tagIds);
+    for (int pos : byId) {
+      writeVarInt32(out, pos);
+    }
+
+    DataOutputStream data = new DataOutputStream(out);
+    writeVarInt32(out, columns.length);
+    for (EWAHCompressedBitmap column : columns) {
+      column.serialize(data);
     }
+    data.flush();
+  }
+
+  void readObject(ObjectInputStream in) throws IOException {
+    readFrom(in);
+  }
+
+  void writeObject(ObjectOutputStream out) throws IOException {
+    writeTo(out);
   }
 
   private boolean refresh(TagSet old, TagMatcher m) {
@@ -251,44 +353,48 @@ class TagSet {
 
     copy(old, m);
 
+    List<EWAHCompressedBitmap> cols = new ArrayList<>(Arrays.asList(columns));
     for (Ref newRef : m.newRefs) {
       ObjectId id = newRef.getObjectId();
       if (id == null || refs.containsKey(newRef.getName())) {
         continue;
       }
 
+      // The new reference reaches exactly the tags of its source; share
+      // the column instead of copying it.
       int srcFlag = byObj.get(id);
       int newFlag = refs.size();
       refs.put(newRef.getName(), new CachedRef(newRef, newFlag));
-
-      for (Tag tag : tags) {
-        if (tag.refFlags.get(srcFlag)) {
-          tag.refFlags.set(newFlag);
-        }
-      }
+      cols.add(columns[srcFlag]);
     }
+    columns = cols.toArray(new EWAHCompressedBitmap[cols.size()]);
 
     return true;
   }
 
   private void copy(TagSet old, TagMatcher m) {
     refs.putAll(old.refs);
-
-    for (Tag srcTag : old.tags) {
-      BitSet mine = new BitSet();
-      mine.or(srcTag.refFlags);
-      tags.add(new Tag(srcTag, mine));
+    tagIds = old.tagIds;
+    byId = old.byId;
+    columns = new EWAHCompressedBitmap[refs.size()];
+    for (int flag = 0; flag < columns.length; flag++) {
+      columns[flag] = old.column(flag);
     }
 
-    for (TagMatcher.LostRef lost : m.lostRefs) {
-      Tag mine = tags.get(lost.tag);
-      if (mine != null) {
-        mine.refFlags.clear(lost.flag);
+    Map<Integer, TreeSet<Integer>> lost = new TreeMap<>();
+    for (TagMatcher.LostRef l : m.lostRefs) {
+      lost.computeIfAbsent(l.flag, f -> new TreeSet<>()).add(l.tag);
+    }
+    for (Map.Entry<Integer, TreeSet<Integer>> e : lost.entrySet()) {
+      EWAHCompressedBitmap removed = new EWAHCompressedBitmap();
+      for (int tag : e.getValue()) {
+        removed.set(tag);
       }
+      columns[e.getKey()] = columns[e.getKey()].andNot(removed);
     }
   }
 
-  private void addTag(TagWalk rw, Ref ref) {
+  private void addTag(TagWalk rw, Ref ref, ObjectIdOwnerMap<TagEntry> tags) {
     ObjectId id = ref.getPeeledObjectId();
     if (id == null) {
       id = ref.getObjectId();
@@ -296,15 +402,18 @@ class TagSet {
 
     if (!tags.contains(id)) {
       BitSet flags;
+      int time = 0;
       try {
-        flags = ((TagCommit) rw.parseCommit(id)).refFlags;
+        TagCommit c = (TagCommit) rw.parseCommit(id);
+        flags = c.refFlags;
+        time = c.getCommitTime();
       } catch (IncorrectObjectTypeException notCommit) {
         flags = new BitSet();
       } catch (IOException e) {
         log.warn("Error on " + ref.getName() + " of " + projectName, e);
         flags = new BitSet();
       }
-      tags.add(new Tag(id, flags));
+      tags.add(new TagEntry(id, flags, time));
     }
   }
 
@@ -326,6 +435,47 @@ class TagSet {
     }
   }
 
+  /** Transpose the per-tag ref flags of a completed walk into per-ref columns. */
+  private void setTags(ObjectIdOwnerMap<TagEntry> tags) {
+    List<TagEntry> byTime = new ArrayList<>(tags.size());
+    for (TagEntry t : tags) {
+      byTime.add(t);
+    }
+    byTime.sort((a, b) -> Integer.compare(a.time, b.time));
+
+    tagIds = new byte[byTime.size() * Constants.OBJECT_ID_LENGTH];
+    columns = new EWAHCompressedBitmap[refs.size()];
+    for (int flag = 0; flag < columns.length; flag++) {
+      columns[flag] = new EWAHCompressedBitmap();
+    }
+    for (int pos = 0; pos < byTime.size(); pos++) {
+      TagEntry t = byTime.get(pos);
+      t.copyRawTo(tagIds, pos * Constants.OBJECT_ID_LENGTH);
+      // Positions are visited in increasing order, as the bitmaps require.
+      for (int flag = t.refFlags.nextSetBit(0); flag >= 0; flag = t.refFlags.nextSetBit(flag + 1)) {
+        columns[flag].set(pos);
+      }
+    }
+
+    Integer[] order = new Integer[byTime.size()];
+    for (int pos = 0; pos < order.length; pos++) {
+      order[pos] = pos;
+    }
+    Arrays.sort(order, (a, b) -> byTime.get(a).compareTo(byTime.get(b)));
+    byId = new int[order.length];
+    for (int i = 0; i < byId.length; i++) {
+      byId[i] = order[i];
+    }
+  }
+
+  private static BitSet toBitSet(EWAHCompressedBitmap bitmap) {
+    BitSet result = new BitSet();
+    for (IntIterator i = bitmap.intIterator(); i.hasNext(); ) {
+      result.set(i.next());
+    }
+    return result;
+  }
+
   static boolean skip(Ref ref) {
     return ref.isSymbolic() || ref.getObjectId() == null || PatchSet.isChangeRef(ref.getName());
   }
@@ -334,16 +484,15 @@ class TagSet {
     return ref.getName().startsWith(Constants.R_TAGS);
   }
 
-  static final class Tag extends ObjectIdOwnerMap.Entry {
-    private final BitSet refFlags;
+  /** Tag of a repository while the set is being built. */
+  private static final class TagEntry extends ObjectIdOwnerMap.Entry {
+    final BitSet refFlags;
+    final int time;
 
-    Tag(AnyObjectId id, BitSet flags) {
+    TagEntry(AnyObjectId id, BitSet flags, int time) {
       super(id);
       this.refFlags = flags;
-    }
-
-    boolean has(BitSet mask) {
-      return refFlags.intersects(mask);
+      this.time = time;
     }
   }
 
@@ -61,11 +61,18 @@ class TagSetHolder {
     return m;
   }
 
+  void warm(TagCache cache, Repository db) {
+    if (tags == null) {
+      build(cache, db);
+    }
+  }
+
   void rebuildForNewTags(TagCache cache, TagMatcher m) {
     m.tags = rebuild(cache, m.db, m.tags, null);
     m.mask.clear();
     m.newRefs.clear();
     m.lostRefs.clear();
+    m.reset();
     m.tags.prepare(m);
   }
 
@@ -40,18 +40,19 @@ import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.permissions.RefPermission;
 import com.google.gerrit.server.project.ProjectControl;
 import com.google.gerrit.server.project.ProjectState;
-import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Ref;
@@ -73,7 +74,7 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
 
   private final TagCache tagCache;
   private final ChangeNotes.Factory changeNotesFactory;
-  @Nullable private final SearchingChangeCacheImpl changeCache;
+  @Nullable private final ChangeBitmapCache changeCache;
   private final Provider<ReviewDb> db;
   private final Provider<CurrentUser> user;
   private final PermissionBackend permissionBackend;
@@ -82,13 +83,14 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
   private ProjectControl projectCtl;
   private boolean showMetadata = true;
   private String userEditPrefix;
-  private Map<Change.Id, Branch.NameKey> visibleChanges;
+  private ChangeBitmaps changes;
+  private BitSet visibleChanges;
 
   @Inject
   VisibleRefFilter(
       TagCache tagCache,
       ChangeNotes.Factory changeNotesFactory,
-      @Nullable SearchingChangeCacheImpl changeCache,
+      @Nullable ChangeBitmapCache changeCache,
       Provider<ReviewDb> db,
       Provider<CurrentUser> user,
       PermissionBackend permissionBackend,
@@ -183,15 +185,13 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
     // to identify what tags we can actually reach, and what we cannot.
     //
     if (!deferredTags.isEmpty() && (!result.isEmpty() || filterTagsSeparately)) {
-      TagMatcher tags =
-          tagCache
-              .get(projectState.getProject().getNameKey())
-              .matcher(
-                  tagCache,
-                  git,
-                  filterTagsSeparately ? filter(git.getAllRefs()).values() : result.values());
+      Predicate<Ref> tags =
+          tagCache.reachableTags(
+              projectState.getProject().getNameKey(),
+              git,
+              filterTagsSeparately ? filter(git.getAllRefs()).values() : result.values());
       for (Ref tag : deferredTags) {
-        if (tags.isReachable(tag)) {
+        if (tags.test(tag)) {
           result.put(tag.getName(), tag);
         }
       }
@@ -241,65 +241,63 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
 
   private boolean visible(Change.Id changeId) {
     if (visibleChanges == null) {
-      if (changeCache == null) {
-        visibleChanges = visibleChangesByScan();
-      } else {
-        visibleChanges = visibleChangesBySearch();
+      changes = changeCache != null ? changeCache.get(projectCtl.getProject().getNameKey()) : null;
+      if (changes == null) {
+        changes = changesByScan();
       }
+      Account.Id userId = user.get().isIdentifiedUser() ? user.get().getAccountId() : null;
+      Map<Branch.NameKey, Boolean> readable = new HashMap<>();
+      visibleChanges =
+          changes.visible(
+              b -> readable.computeIfAbsent(b, k -> canReadRef(k.get())),
+              userId,
+              this::canReadRestricted);
     }
-    return visibleChanges.containsKey(changeId);
+    return changeId != null && visibleChanges.get(changeId.get());
   }
 
   private boolean visibleEdit(String name) {
     Change.Id id = Change.Id.fromEditRefPart(name);
-    // Initialize if it wasn't yet
-    if (visibleChanges == null) {
-      visible(id);
-    }
-    if (id != null) {
-      return (userEditPrefix != null && name.startsWith(userEditPrefix) && visible(id))
-          || (visibleChanges.containsKey(id)
-              && projectCtl.controlForRef(visibleChanges.get(id)).isEditVisible());
+    if (id != null && visible(id)) {
+      if (userEditPrefix != null && name.startsWith(userEditPrefix)) {
+        return true;
+      }
+      Branch.NameKey dest = changes.branch(id);
+      return dest != null && projectCtl.controlForRef(dest).isEditVisible();
     }
     return false;
   }
 
-  private Map<Change.Id, Branch.NameKey> visibleChangesBySearch() {
-    Project project = projectCtl.getProject();
+  private boolean canReadRestricted(Change.Id id) {
+    if (user.get().isInternalUser()) {
+      return true;
+    }
+    Project.NameKey p = projectCtl.getProject().getNameKey();
     try {
-      Map<Change.Id, Branch.NameKey> visibleChanges = new HashMap<>();
-      for (ChangeData cd : changeCache.getChangeData(db.get(), project.getNameKey())) {
-        if (permissionBackend
-            .user(user)
-            .indexedChange(cd, changeNotesFactory.createFromIndexedChange(cd.change()))
-            .database(db)
-            .test(ChangePermission.READ)) {
-          visibleChanges.put(cd.getId(), cd.change().getDest());
-        }
-      }
-      return visibleChanges;
+      ChangeNotes notes = changeNotesFactory.createChecked(db.get(), p, id);
+      return permissionBackend.user(user).change(notes).database(db).test(ChangePermission.READ);
     } catch (OrmException | PermissionBackendException e) {
-      log.error(
-          "Cannot load changes for project "
-              + project.getName()
-              + ", assuming no changes are visible",
-          e);
-      return Collections.emptyMap();
+      log.warn("Failed to check permission for " + id + " in " + p, e);
+      return false;
     }
   }
 
-  private Map<Change.Id, Branch.NameKey> visibleChangesByScan() {
+  private ChangeBitmaps changesByScan() {
     Project.NameKey p = projectCtl.getProject().getNameKey();
     Stream<ChangeNotesResult> s;
     try {
       s = changeNotesFactory.scan(git, db.get(), p);
     } catch (IOException e) {
       log.error("Cannot load changes for project " + p + ", assuming no changes are visible", e);
-      return Collections.emptyMap();
+      return ChangeBitmaps.create(Collections.emptyMap());
     }
-    return s.map(r -> toNotes(p, r))
-        .filter(Objects::nonNull)
-        .collect(toMap(n -> n.getChangeId(), n -> n.getChange().getDest()));
+    return ChangeBitmaps.create(
+        s.map(r -> toNotes(p, r))
+            .filter(Objects::nonNull)
+            .collect(
+                toMap(
+                    ChangeNotes::getChangeId,
+                    n -> new ChangeBitmaps.Entry(n.getChange(), n.getReviewers()))));
   }
 
   @Nullable
@@ -308,14 +306,7 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
       log.warn("Failed to load change " + r.id() + " in " + p, r.error().get());
       return null;
     }
-    try {
-      if (permissionBackend.user(user).change(r.notes()).database(db).test(ChangePermission.READ)) {
-        return r.notes();
-      }
-    } catch (PermissionBackendException e) {
-      log.warn("Failed to check permission for " + r.id() + " in " + p, e);
-    }
-    return null;
+    return r.notes();
   }
 
   private boolean isMetadata(String name) {
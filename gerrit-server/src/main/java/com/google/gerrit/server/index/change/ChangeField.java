@@ -631,8 +631,19 @@ public class ChangeField {
 
   public static void parseSubmitRecords(
       Collection<String> values, SubmitRuleOptions opts, ChangeData out) {
+    setSubmitRecords(parseSubmitRecords(values), opts, out);
+  }
+
+  /**
+   * Set submit records read from the index.
+   *
+   * @param records records decoded with {@link #parseSubmitRecord(String)}; may be decoded lazily.
+   * @param opts options of the stored field the records were read from.
+   * @param out change to set the records on.
+   */
+  public static void setSubmitRecords(
+      List<SubmitRecord> records, SubmitRuleOptions opts, ChangeData out) {
     checkArgument(!opts.fastEvalLabels());
-    List<SubmitRecord> records = parseSubmitRecords(values);
     if (records.isEmpty()) {
       // Assume no values means the field is not in the index;
       // SubmitRuleEvaluator ensures the list is non-empty.
@@ -647,10 +658,11 @@ public class ChangeField {
 
   @VisibleForTesting
   static List<SubmitRecord> parseSubmitRecords(Collection<String> values) {
-    return values
-        .stream()
-        .map(v -> GSON.fromJson(v, StoredSubmitRecord.class).toSubmitRecord())
-        .collect(toList());
+    return values.stream().map(ChangeField::parseSubmitRecord).collect(toList());
+  }
+
+  public static SubmitRecord parseSubmitRecord(String value) {
+    return GSON.fromJson(value, StoredSubmitRecord.class).toSubmitRecord();
   }
 
   @VisibleForTesting
@@ -17,23 +17,37 @@ package com.google.gerrit.server.index.change;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.google.gerrit.server.query.change.ChangeData.asChanges;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.common.data.SubmitTypeRecord;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.reviewdb.client.Account;
 import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
 import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.change.MergeabilityCache;
 import com.google.gerrit.server.config.AllUsersName;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.MergeUtil;
 import com.google.gerrit.server.git.QueueProvider.QueueType;
+import com.google.gerrit.server.git.strategy.SubmitDryRun;
 import com.google.gerrit.server.index.IndexExecutor;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.InternalChangeQuery;
 import com.google.gerrit.server.util.ManualRequestContext;
 import com.google.gerrit.server.util.OneOffRequestContext;
@@ -41,14 +55,34 @@ import com.google.gerrit.server.util.RequestContext;
 import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Reindexes open changes after their destination branch or project configuration is updated.
+ *
+ * <p>Updates of one branch are coalesced: while a branch is waiting to be processed further updates
+ * only record that it moved again, and work for a tip that has already been superseded is dropped.
+ * Before the changes of a branch are reindexed, their mergeability is computed in one pass over the
+ * repository, so the index tasks find it in the {@link MergeabilityCache}.
+ *
+ * <p>Each update of a branch is given a new generation number. A branch is only tracked until a
+ * task for its latest generation finishes.
+ */
+@Singleton
 public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
   private static final Logger log = LoggerFactory.getLogger(ReindexAfterRefUpdate.class);
 
@@ -60,8 +94,17 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
   private final AllUsersName allUsersName;
   private final AccountCache accountCache;
   private final ListeningExecutorService executor;
+  private final GitRepositoryManager repoManager;
+  private final ProjectCache projectCache;
+  private final MergeUtil.Factory mergeUtilFactory;
+  private final MergeabilityCache mergeabilityCache;
+  private final Counter0 supersededCount;
   private final boolean enabled;
 
+  private final Set<Branch.NameKey> scheduled = ConcurrentHashMap.newKeySet();
+  private final Map<Branch.NameKey, Long> generations = new ConcurrentHashMap<>();
+  private final AtomicLong lastGeneration = new AtomicLong();
+
   @Inject
   ReindexAfterRefUpdate(
       @GerritServerConfig Config cfg,
@@ -72,7 +115,12 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
       ChangeNotes.Factory notesFactory,
       AllUsersName allUsersName,
       AccountCache accountCache,
-      @IndexExecutor(QueueType.BATCH) ListeningExecutorService executor) {
+      @IndexExecutor(QueueType.BATCH) ListeningExecutorService executor,
+      GitRepositoryManager repoManager,
+      ProjectCache projectCache,
+      MergeUtil.Factory mergeUtilFactory,
+      MergeabilityCache mergeabilityCache,
+      MetricMaker metrics) {
     this.requestContext = requestContext;
     this.queryProvider = queryProvider;
     this.indexerFactory = indexerFactory;
@@ -81,7 +129,25 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
     this.allUsersName = allUsersName;
     this.accountCache = accountCache;
     this.executor = executor;
+    this.repoManager = repoManager;
+    this.projectCache = projectCache;
+    this.mergeUtilFactory = mergeUtilFactory;
+    this.mergeabilityCache = mergeabilityCache;
     this.enabled = cfg.getBoolean("index", null, "reindexAfterRefUpdate", true);
+
+    metrics.newCallbackMetric(
+        "index/mergeability/pending_branches",
+        Long.class,
+        new Description("Branches waiting to have their open changes reindexed after an update")
+            .setGauge()
+            .setUnit("branches"),
+        () -> (long) scheduled.size());
+    supersededCount =
+        metrics.newCounter(
+            "index/mergeability/superseded_count",
+            new Description("Changes not reindexed because their branch was updated again")
+                .setRate()
+                .setUnit("changes"));
   }
 
   @Override
@@ -103,6 +169,18 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
         || event.getRefName().startsWith(RefNames.REFS_USERS)) {
       return;
     }
+
+    Project.NameKey project = new Project.NameKey(event.getProjectName());
+    if (!event.getRefName().equals(RefNames.REFS_CONFIG)) {
+      Branch.NameKey branch = new Branch.NameKey(project, event.getRefName());
+      generations.put(branch, lastGeneration.incrementAndGet());
+      if (scheduled.add(branch)) {
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError = executor.submit(new ReindexBranch(event, branch));
+      }
+      return;
+    }
+
     Futures.addCallback(
         executor.submit(new GetChanges(event)),
         new FutureCallback<List<Change>>() {
@@ -111,7 +189,8 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
             for (Change c : changes) {
               // Don't retry indefinitely; if this fails changes may be stale.
               @SuppressWarnings("unused")
-              Future<?> possiblyIgnoredError = executor.submit(new Index(event, c.getId()));
+              Future<?> possiblyIgnoredError =
+                  executor.submit(new Index(event, c.getId(), null, 0));
             }
           }
 
@@ -150,12 +229,8 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
 
     @Override
     protected List<Change> impl(RequestContext ctx) throws OrmException {
-      String ref = event.getRefName();
       Project.NameKey project = new Project.NameKey(event.getProjectName());
-      if (ref.equals(RefNames.REFS_CONFIG)) {
-        return asChanges(queryProvider.get().byProjectOpen(project));
-      }
-      return asChanges(queryProvider.get().byBranchNew(new Branch.NameKey(project, ref)));
+      return asChanges(queryProvider.get().byProjectOpen(project));
     }
 
     @Override
@@ -167,16 +242,119 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
     }
   }
 
+  private class ReindexBranch extends Task<Void> {
+    private final Branch.NameKey branch;
+
+    ReindexBranch(Event event, Branch.NameKey branch) {
+      super(event);
+      this.branch = branch;
+    }
+
+    @Override
+    protected Void impl(RequestContext ctx) throws OrmException, IOException {
+      // Updates of the branch from now on schedule another task.
+      scheduled.remove(branch);
+      Long generation = generations.get(branch);
+      if (generation == null) {
+        return null;
+      }
+
+      List<ChangeData> changes = queryProvider.get().byBranchNew(branch);
+      if (!computeMergeability(changes, generation)) {
+        supersededCount.incrementBy(changes.size());
+        return null;
+      }
+      if (changes.isEmpty()) {
+        generations.remove(branch, generation);
+      }
+      for (ChangeData cd : changes) {
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError =
+            executor.submit(new Index(event, cd.getId(), branch, generation));
+      }
+      return null;
+    }
+
+    /** @return false if the branch was updated again before all changes were checked. */
+    private boolean computeMergeability(List<ChangeData> changes, long generation)
+        throws OrmException, IOException {
+      ProjectState projectState = projectCache.get(branch.getParentKey());
+      if (projectState == null || changes.isEmpty()) {
+        return true;
+      }
+      String mergeStrategy = mergeUtilFactory.create(projectState).mergeStrategyName();
+      try (Repository repo = repoManager.openRepository(branch.getParentKey())) {
+        Ref ref = repo.getRefDatabase().exactRef(branch.get());
+        Set<ObjectId> accepted = SubmitDryRun.getAlreadyAccepted(repo);
+        for (ChangeData cd : changes) {
+          if (isSuperseded(branch, generation)) {
+            return false;
+          }
+          PatchSet ps = cd.currentPatchSet();
+          if (ps == null || cd.change().isWorkInProgress()) {
+            continue;
+          }
+          SubmitTypeRecord str = cd.submitTypeRecord();
+          if (str.isOk()) {
+            mergeabilityCache.get(
+                ObjectId.fromString(ps.getRevision().get()),
+                ref,
+                str.type,
+                mergeStrategy,
+                branch,
+                repo,
+                accepted);
+          }
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "Reindex open changes of " + branch.get() + " of project " + event.getProjectName();
+    }
+  }
+
+  private boolean isSuperseded(@Nullable Branch.NameKey branch, long generation) {
+    if (branch == null) {
+      return false;
+    }
+    // No entry means a task of the latest generation already finished.
+    Long current = generations.get(branch);
+    return current != null && current != generation;
+  }
+
+  @VisibleForTesting
+  boolean isTracked(Branch.NameKey branch) {
+    return generations.containsKey(branch);
+  }
+
   private class Index extends Task<Void> {
     private final Change.Id id;
+    private final Branch.NameKey branch;
+    private final long generation;
 
-    Index(Event event, Change.Id id) {
+    /**
+     * @param branch branch whose update caused the reindex; null if the change must be reindexed
+     *     even if the branch is updated again.
+     * @param generation generation of the branch update that caused the reindex.
+     */
+    Index(Event event, Change.Id id, @Nullable Branch.NameKey branch, long generation) {
       super(event);
       this.id = id;
+      this.branch = branch;
+      this.generation = generation;
     }
 
     @Override
     protected Void impl(RequestContext ctx) throws OrmException, IOException {
+      if (isSuperseded(branch, generation)) {
+        // A later task reindexes the change against the new tip.
+        supersededCount.increment();
+        return null;
+      }
+
       // Reload change, as some time may have passed since GetChanges.
       ReviewDb db = ctx.getReviewDbProvider().get();
       try {
@@ -187,6 +365,11 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
         indexerFactory.create(executor, indexes).index(db, c);
       } catch (NoSuchChangeException e) {
         indexerFactory.create(executor, indexes).delete(id);
+      } finally {
+        if (branch != null) {
+          // Other tasks of this generation find no entry and still run.
+          generations.remove(branch, generation);
+        }
       }
       return null;
     }
@@ -14,6 +14,13 @@
 
 package com.google.gerrit.server.notedb;
 
+import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
+
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
@@ -24,14 +31,19 @@ import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
 import com.google.gerrit.server.ReviewerByEmailSet;
 import com.google.gerrit.server.ReviewerSet;
+import com.google.gerrit.server.cache.BinaryCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.notedb.AbstractChangeNotes.Args;
 import com.google.gerrit.server.notedb.ChangeNotesCommit.ChangeNotesRevWalk;
+import com.google.gerrit.server.notedb.ChangeNotesParser.Checkpoint;
 import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,26 +55,61 @@ import org.eclipse.jgit.lib.ObjectId;
 @Singleton
 public class ChangeNotesCache {
   @VisibleForTesting static final String CACHE_NAME = "change_notes";
+  static final String CHECKPOINT_CACHE_NAME = "change_notes_checkpoints";
 
   public static Module module() {
     return new CacheModule() {
       @Override
       protected void configure() {
         bind(ChangeNotesCache.class);
-        cache(CACHE_NAME, Key.class, ChangeNotesState.class)
+        persist(CACHE_NAME, Key.class, ChangeNotesState.class)
+            .keySerializer(BinaryCacheSerializer.of(Key::writeTo, Key::readFrom))
+            .valueSerializer(
+                BinaryCacheSerializer.of(ChangeNotesState::writeTo, ChangeNotesState::readFrom))
+            .version(1)
             .weigher(Weigher.class)
+            .maximumWeight(10 << 20)
+            .diskLimit(1 << 30);
+        cache(CHECKPOINT_CACHE_NAME, CheckpointKey.class, Checkpoint.class)
+            .weigher(CheckpointWeigher.class)
             .maximumWeight(10 << 20);
       }
     };
   }
 
   @AutoValue
-  public abstract static class Key {
+  public abstract static class Key implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     abstract Project.NameKey project();
 
     abstract Change.Id changeId();
 
     abstract ObjectId id();
+
+    void writeTo(OutputStream out) throws IOException {
+      writeString(out, project().get());
+      writeVarInt32(out, changeId().get());
+      writeNotNull(out, id());
+    }
+
+    static Key readFrom(InputStream in) throws IOException {
+      return new AutoValue_ChangeNotesCache_Key(
+          new Project.NameKey(readString(in)), new Change.Id(readVarInt32(in)), readNotNull(in));
+    }
+  }
+
+  /**
+   * Key of the most recently parsed state of a change.
+   *
+   * <p>When a change is updated, the new meta commit is parsed starting from this state instead of
+   * from the beginning of the history.
+   */
+  @AutoValue
+  abstract static class CheckpointKey {
+    abstract Project.NameKey project();
+
+    abstract Change.Id changeId();
   }
 
   public static class Weigher implements com.google.common.cache.Weigher<Key, ChangeNotesState> {
@@ -283,6 +330,33 @@ public class ChangeNotesCache {
     }
   }
 
+  static class CheckpointWeigher
+      implements com.google.common.cache.Weigher<CheckpointKey, Checkpoint> {
+    @Override
+    public int weigh(CheckpointKey key, Checkpoint cp) {
+      int notes = 0;
+      for (ChangeRevisionNote rn : cp.revisionNotes.values()) {
+        notes +=
+            Weigher.O
+                + Weigher.P
+                + 20 // noteId
+                + rn.getRaw().length
+                + Weigher.list(rn.getComments().size(), Weigher.comment());
+      }
+      return Weigher.O
+          + 20 // metaId
+          + 256 // columns
+          + Weigher.hashtable(cp.patchSets.size(), Weigher.patchSet())
+          + Weigher.hashtable(cp.approvals.size(), Weigher.approval())
+          + Weigher.hashtable(cp.reviewers.size(), Weigher.K + Weigher.T)
+          + Weigher.hashtable(cp.reviewersByEmail.size(), Weigher.str(40) + Weigher.T)
+          + Weigher.list(cp.reviewerUpdates.size(), 4 * Weigher.O + Weigher.K + Weigher.K)
+          + Weigher.list(cp.allChangeMessages.size(), Weigher.changeMessage())
+          + Weigher.hashtable(cp.changeMessagesByPatchSet.size(), Weigher.P)
+          + notes;
+    }
+  }
+
   @AutoValue
   abstract static class Value {
     abstract ChangeNotesState state();
@@ -301,19 +375,29 @@ public class ChangeNotesCache {
   private class Loader implements Callable<ChangeNotesState> {
     private final Key key;
     private final ChangeNotesRevWalk rw;
+    private final CheckpointKey checkpointKey;
 
     private RevisionNoteMap<ChangeRevisionNote> revisionNoteMap;
 
     private Loader(Key key, ChangeNotesRevWalk rw) {
       this.key = key;
       this.rw = rw;
+      this.checkpointKey =
+          new AutoValue_ChangeNotesCache_CheckpointKey(key.project(), key.changeId());
     }
 
     @Override
     public ChangeNotesState call() throws ConfigInvalidException, IOException {
       ChangeNotesParser parser =
-          new ChangeNotesParser(key.changeId(), key.id(), rw, args.noteUtil, args.metrics);
+          new ChangeNotesParser(
+              key.changeId(),
+              key.id(),
+              rw,
+              args.noteUtil,
+              args.metrics,
+              checkpoints.getIfPresent(checkpointKey));
       ChangeNotesState result = parser.parseAll();
+      checkpoints.put(checkpointKey, parser.getCheckpoint());
       // This assignment only happens if call() was actually called, which only
       // happens when Cache#get(K, Callable<V>) incurs a cache miss.
       revisionNoteMap = parser.getRevisionNoteMap();
@@ -322,11 +406,16 @@ public class ChangeNotesCache {
   }
 
   private final Cache<Key, ChangeNotesState> cache;
+  private final Cache<CheckpointKey, Checkpoint> checkpoints;
   private final Args args;
 
   @Inject
-  ChangeNotesCache(@Named(CACHE_NAME) Cache<Key, ChangeNotesState> cache, Args args) {
+  ChangeNotesCache(
+      @Named(CACHE_NAME) Cache<Key, ChangeNotesState> cache,
+      @Named(CHECKPOINT_CACHE_NAME) Cache<CheckpointKey, Checkpoint> checkpoints,
+      Args args) {
     this.cache = cache;
+    this.checkpoints = checkpoints;
     this.args = args;
   }
 
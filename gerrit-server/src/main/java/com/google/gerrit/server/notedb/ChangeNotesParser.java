@@ -42,6 +42,9 @@ import com.google.auto.value.AutoValue;
 import com.google.common.base.Enums;
 import com.google.common.base.Splitter;
 import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.LinkedListMultimap;
@@ -52,6 +55,7 @@ import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.collect.Tables;
 import com.google.common.primitives.Ints;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.LabelType;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.metrics.Timer1;
@@ -93,6 +97,7 @@ import java.util.TreeSet;
 import java.util.function.Function;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.InvalidObjectIdException;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -123,12 +128,101 @@ class ChangeNotesParser {
     }
   }
 
+  /**
+   * Parser state after walking the history up to a meta commit, before the final pruning.
+   *
+   * <p>Unlike {@link ChangeNotesState}, this keeps everything needed to continue parsing, e.g.
+   * removed reviewers and deleted patch sets, so a later meta commit can be parsed by walking only
+   * the commits added since. Instances are not modified after {@link #parseAll()} returns and may be
+   * shared between threads.
+   */
+  static class Checkpoint {
+    final ObjectId metaId;
+    final Timestamp createdOn;
+    final Timestamp lastUpdatedOn;
+    final Account.Id ownerId;
+    final String branch;
+    final String changeId;
+    final String subject;
+    final String originalSubject;
+    final String topic;
+    final String submissionId;
+    final Change.Status status;
+    final Optional<Account.Id> assignee;
+    final ImmutableList<Account.Id> pastAssignees;
+    final ImmutableSet<String> hashtags;
+    final ImmutableMap<PatchSet.Id, PatchSet> patchSets;
+    final ImmutableSet<PatchSet.Id> deletedPatchSets;
+    final ImmutableMap<PatchSet.Id, PatchSetState> patchSetStates;
+    final ImmutableList<PatchSet.Id> currentPatchSets;
+    final ImmutableMap<ApprovalKey, PatchSetApproval> approvals;
+    final ImmutableTable<Account.Id, ReviewerStateInternal, Timestamp> reviewers;
+    final ImmutableTable<Address, ReviewerStateInternal, Timestamp> reviewersByEmail;
+    final ImmutableList<ReviewerStatusUpdate> reviewerUpdates;
+    final ImmutableList<SubmitRecord> submitRecords;
+    final ImmutableList<ChangeMessage> allChangeMessages;
+    final ImmutableListMultimap<PatchSet.Id, ChangeMessage> changeMessagesByPatchSet;
+    final Timestamp readOnlyUntil;
+    final Boolean isPrivate;
+    final Boolean workInProgress;
+    final Boolean previousWorkInProgressFooter;
+    final Boolean hasReviewStarted;
+    final ReviewerSet pendingReviewers;
+    final ReviewerByEmailSet pendingReviewersByEmail;
+    final Change.Id revertOf;
+
+    /** Parsed notes of the meta commit, reused by later parses if the note is unchanged. */
+    ImmutableMap<RevId, ChangeRevisionNote> revisionNotes = ImmutableMap.of();
+
+    private Checkpoint(ChangeNotesParser p) {
+      metaId = p.tip.copy();
+      createdOn = p.createdOn;
+      lastUpdatedOn = p.lastUpdatedOn;
+      ownerId = p.ownerId;
+      branch = p.branch;
+      changeId = p.changeId;
+      subject = p.subject;
+      originalSubject = p.originalSubject;
+      topic = p.topic;
+      submissionId = p.submissionId;
+      status = p.status;
+      assignee = p.assignee;
+      pastAssignees = ImmutableList.copyOf(p.pastAssignees);
+      hashtags = p.hashtags != null ? ImmutableSet.copyOf(p.hashtags) : null;
+      // Patch sets are modified when the parse is finished; keep our own copies.
+      ImmutableMap.Builder<PatchSet.Id, PatchSet> ps = ImmutableMap.builder();
+      for (PatchSet s : p.patchSets.values()) {
+        ps.put(s.getId(), new PatchSet(s));
+      }
+      patchSets = ps.build();
+      deletedPatchSets = ImmutableSet.copyOf(p.deletedPatchSets);
+      patchSetStates = ImmutableMap.copyOf(p.patchSetStates);
+      currentPatchSets = ImmutableList.copyOf(p.currentPatchSets);
+      approvals = ImmutableMap.copyOf(p.approvals);
+      reviewers = ImmutableTable.copyOf(p.reviewers);
+      reviewersByEmail = ImmutableTable.copyOf(p.reviewersByEmail);
+      reviewerUpdates = ImmutableList.copyOf(p.reviewerUpdates);
+      submitRecords = ImmutableList.copyOf(p.submitRecords);
+      allChangeMessages = ImmutableList.copyOf(p.allChangeMessages);
+      changeMessagesByPatchSet = ImmutableListMultimap.copyOf(p.changeMessagesByPatchSet);
+      readOnlyUntil = p.readOnlyUntil;
+      isPrivate = p.isPrivate;
+      workInProgress = p.workInProgress;
+      previousWorkInProgressFooter = p.previousWorkInProgressFooter;
+      hasReviewStarted = p.hasReviewStarted;
+      pendingReviewers = p.pendingReviewers;
+      pendingReviewersByEmail = p.pendingReviewersByEmail;
+      revertOf = p.revertOf;
+    }
+  }
+
   // Private final members initialized in the constructor.
   private final ChangeNoteUtil noteUtil;
   private final NoteDbMetrics metrics;
   private final Change.Id id;
   private final ObjectId tip;
   private final ChangeNotesRevWalk walk;
+  private final Checkpoint base;
 
   // Private final but mutable members initialized in the constructor and filled
   // in during the parsing process.
@@ -171,6 +265,7 @@ class ChangeNotesParser {
   private ReviewerSet pendingReviewers;
   private ReviewerByEmailSet pendingReviewersByEmail;
   private Change.Id revertOf;
+  private Checkpoint checkpoint;
 
   ChangeNotesParser(
       Change.Id changeId,
@@ -178,11 +273,29 @@ class ChangeNotesParser {
       ChangeNotesRevWalk walk,
       ChangeNoteUtil noteUtil,
       NoteDbMetrics metrics) {
+    this(changeId, tip, walk, noteUtil, metrics, null);
+  }
+
+  /**
+   * Create a parser.
+   *
+   * @param base state parsed from an earlier meta commit of the same change, or null. If the base
+   *     commit is an ancestor of {@code tip}, only the commits after it are parsed; otherwise the
+   *     whole history is.
+   */
+  ChangeNotesParser(
+      Change.Id changeId,
+      ObjectId tip,
+      ChangeNotesRevWalk walk,
+      ChangeNoteUtil noteUtil,
+      NoteDbMetrics metrics,
+      @Nullable Checkpoint base) {
     this.id = changeId;
     this.tip = tip;
     this.walk = walk;
     this.noteUtil = noteUtil;
     this.metrics = metrics;
+    this.base = base;
     approvals = new LinkedHashMap<>();
     bufferedApprovals = new ArrayList<>();
     reviewers = HashBasedTable.create();
@@ -205,14 +318,28 @@ class ChangeNotesParser {
     // Don't include initial parse in timer, as this might do more I/O to page
     // in the block containing most commits. Later reads are not guaranteed to
     // avoid I/O, but often should.
-    walk.reset();
-    walk.markStart(walk.parseCommit(tip));
-
-    try (Timer1.Context timer = metrics.parseLatency.start(CHANGES)) {
-      ChangeNotesCommit commit;
-      while ((commit = walk.next()) != null) {
-        parse(commit);
+    List<ChangeNotesCommit> newCommits = findNewCommits();
+    if (newCommits == null) {
+      walk.reset();
+      walk.markStart(walk.parseCommit(tip));
+    }
+
+    Timer1<NoteDbTable> latency =
+        newCommits != null ? metrics.incrementalParseLatency : metrics.parseLatency;
+    try (Timer1.Context timer = latency.start(CHANGES)) {
+      if (newCommits != null) {
+        for (ChangeNotesCommit commit : newCommits) {
+          parse(commit);
+        }
+        merge(base);
+      } else {
+        ChangeNotesCommit commit;
+        while ((commit = walk.next()) != null) {
+          parse(commit);
+        }
       }
+      checkpoint = new Checkpoint(this);
+
       if (hasReviewStarted == null) {
         if (previousWorkInProgressFooter == null) {
           hasReviewStarted = true;
@@ -221,6 +348,7 @@ class ChangeNotesParser {
         }
       }
       parseNotes();
+      checkpoint.revisionNotes = revisionNoteMap.revisionNotes;
       allPastReviewers.addAll(reviewers.rowKeySet());
       pruneReviewers();
       pruneReviewersByEmail();
@@ -236,6 +364,194 @@ class ChangeNotesParser {
     return revisionNoteMap;
   }
 
+  /** @return state to continue parsing from in a later parse; only set after {@link #parseAll}. */
+  Checkpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Find the commits added after the base checkpoint.
+   *
+   * @return new commits, newest first; null if there is no base or it is not on the linear history
+   *     of the tip, in which case all commits have to be parsed.
+   */
+  @Nullable
+  private List<ChangeNotesCommit> findNewCommits() throws IOException {
+    if (base == null) {
+      return null;
+    }
+    walk.reset();
+    try {
+      walk.markStart(walk.parseCommit(tip));
+      walk.markUninteresting(walk.parseCommit(base.metaId));
+    } catch (MissingObjectException e) {
+      // The base was parsed from staged objects that were never written.
+      return null;
+    }
+
+    List<ChangeNotesCommit> commits = new ArrayList<>();
+    ChangeNotesCommit commit;
+    while ((commit = walk.next()) != null) {
+      if (commit.getParentCount() != 1) {
+        return null;
+      }
+      commits.add(commit);
+    }
+    ObjectId start = commits.isEmpty() ? tip : commits.get(commits.size() - 1).getParent(0);
+    return start.equals(base.metaId) ? commits : null;
+  }
+
+  /**
+   * Continue parsing with the commits of the base checkpoint.
+   *
+   * <p>The result is the same as if the commits of the base had been parsed after the ones already
+   * parsed, which are all newer.
+   */
+  private void merge(Checkpoint b) throws ConfigInvalidException {
+    // A full parse attributes reviewer updates in server commits to the last identified user
+    // parsed before, which for the newest commits of the base is one of the new commits.
+    Account.Id newestOwnerId = ownerId;
+    for (ReviewerStatusUpdate u : b.reviewerUpdates) {
+      reviewerUpdates.add(
+          u.updatedBy() != null
+              ? u
+              : ReviewerStatusUpdate.create(u.date(), newestOwnerId, u.reviewer(), u.state()));
+    }
+
+    // Snapshot of the reviewers when the change last became work in progress.
+    if (workInProgress == null && Boolean.TRUE.equals(b.workInProgress)) {
+      pendingReviewers =
+          ReviewerSet.fromTable(
+              Tables.transpose(
+                  mergeReviewers(reviewers, Tables.transpose(b.pendingReviewers.asTable()))));
+      pendingReviewersByEmail =
+          ReviewerByEmailSet.fromTable(
+              Tables.transpose(
+                  mergeReviewers(
+                      reviewersByEmail, Tables.transpose(b.pendingReviewersByEmail.asTable()))));
+    }
+    if (workInProgress == null) {
+      workInProgress = b.workInProgress;
+    }
+    if (hasReviewStarted == null) {
+      hasReviewStarted = b.hasReviewStarted;
+    }
+    previousWorkInProgressFooter = b.previousWorkInProgressFooter;
+
+    if (status == null) {
+      status = b.status;
+      if (status == Change.Status.MERGED) {
+        for (PatchSetApproval psa : bufferedApprovals) {
+          if (!psa.isLegacySubmit()) {
+            psa.setPostSubmit(true);
+          }
+        }
+      }
+      bufferedApprovals.clear();
+    }
+    for (Map.Entry<ApprovalKey, PatchSetApproval> e : b.approvals.entrySet()) {
+      approvals.putIfAbsent(e.getKey(), e.getValue());
+    }
+
+    for (Table.Cell<Account.Id, ReviewerStateInternal, Timestamp> c : b.reviewers.cellSet()) {
+      if (!reviewers.containsRow(c.getRowKey())) {
+        reviewers.put(c.getRowKey(), c.getColumnKey(), c.getValue());
+      }
+    }
+    for (Table.Cell<Address, ReviewerStateInternal, Timestamp> c :
+        b.reviewersByEmail.cellSet()) {
+      if (!reviewersByEmail.containsRow(c.getRowKey())) {
+        reviewersByEmail.put(c.getRowKey(), c.getColumnKey(), c.getValue());
+      }
+    }
+
+    for (Map.Entry<PatchSet.Id, PatchSetState> e : b.patchSetStates.entrySet()) {
+      patchSetStates.putIfAbsent(e.getKey(), e.getValue());
+    }
+    deletedPatchSets.addAll(b.deletedPatchSets);
+    for (PatchSet old : b.patchSets.values()) {
+      mergePatchSet(old);
+    }
+    currentPatchSets.addAll(b.currentPatchSets);
+
+    allChangeMessages.addAll(b.allChangeMessages);
+    changeMessagesByPatchSet.putAll(b.changeMessagesByPatchSet);
+    if (submitRecords.isEmpty()) {
+      submitRecords.addAll(b.submitRecords);
+    }
+    if (pastAssignees == null) {
+      pastAssignees = Lists.newArrayList();
+    }
+    pastAssignees.addAll(b.pastAssignees);
+    if (assignee == null) {
+      assignee = b.assignee;
+    }
+    if (hashtags == null) {
+      hashtags = b.hashtags;
+    }
+
+    createdOn = b.createdOn;
+    if (b.ownerId != null) {
+      ownerId = b.ownerId;
+    }
+    if (b.originalSubject != null) {
+      originalSubject = b.originalSubject;
+    }
+    if (lastUpdatedOn == null || b.lastUpdatedOn.after(lastUpdatedOn)) {
+      lastUpdatedOn = b.lastUpdatedOn;
+    }
+    branch = firstNonNull(branch, b.branch);
+    changeId = firstNonNull(changeId, b.changeId);
+    subject = firstNonNull(subject, b.subject);
+    topic = firstNonNull(topic, b.topic);
+    submissionId = firstNonNull(submissionId, b.submissionId);
+    readOnlyUntil = firstNonNull(readOnlyUntil, b.readOnlyUntil);
+    isPrivate = firstNonNull(isPrivate, b.isPrivate);
+    revertOf = firstNonNull(revertOf, b.revertOf);
+  }
+
+  private void mergePatchSet(PatchSet old) throws ConfigInvalidException {
+    PatchSet ps = patchSets.get(old.getId());
+    if (ps == null) {
+      patchSets.put(old.getId(), new PatchSet(old));
+      return;
+    }
+    if (!old.getRevision().equals(PARTIAL_PATCH_SET)) {
+      if (ps.getRevision().equals(PARTIAL_PATCH_SET)) {
+        ps.setRevision(old.getRevision());
+        ps.setUploader(old.getUploader());
+        ps.setCreatedOn(old.getCreatedOn());
+      } else if (!deletedPatchSets.contains(ps.getId())) {
+        throw new ConfigInvalidException(
+            String.format(
+                "Multiple revisions parsed for patch set %s: %s and %s",
+                ps.getId().get(), ps.getRevision(), old.getRevision().get()));
+      }
+    }
+    if (ps.getGroups().isEmpty() && !old.getGroups().isEmpty()) {
+      ps.setGroups(old.getGroups());
+    }
+    if (ps.getDescription() == null) {
+      ps.setDescription(old.getDescription());
+    }
+  }
+
+  private static <K, V> Table<K, ReviewerStateInternal, V> mergeReviewers(
+      Table<K, ReviewerStateInternal, V> newer, Table<K, ReviewerStateInternal, V> older) {
+    Table<K, ReviewerStateInternal, V> result = HashBasedTable.create(newer);
+    for (Table.Cell<K, ReviewerStateInternal, V> c : older.cellSet()) {
+      if (!result.containsRow(c.getRowKey())) {
+        result.put(c.getRowKey(), c.getColumnKey(), c.getValue());
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private static <T> T firstNonNull(@Nullable T first, @Nullable T second) {
+    return first != null ? first : second;
+  }
+
   private ChangeNotesState buildState() {
     return ChangeNotesState.create(
         tip.copy(),
@@ -764,7 +1080,8 @@ class ChangeNotesParser {
             id,
             reader,
             NoteMap.read(reader, tipCommit),
-            PatchLineComment.Status.PUBLISHED);
+            PatchLineComment.Status.PUBLISHED,
+            base != null ? base.revisionNotes : ImmutableMap.of());
     Map<RevId, ChangeRevisionNote> rns = revisionNoteMap.revisionNotes;
 
     for (Map.Entry<RevId, ChangeRevisionNote> e : rns.entrySet()) {
@@ -16,13 +16,25 @@ package com.google.gerrit.server.notedb;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readBytes;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readFixInt64;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeBytes;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeFixInt64;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.readCanBeNull;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.writeCanBeNull;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Strings;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.reviewdb.client.Account;
@@ -30,6 +42,7 @@ import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
 import com.google.gerrit.reviewdb.client.ChangeMessage;
 import com.google.gerrit.reviewdb.client.Comment;
+import com.google.gerrit.reviewdb.client.LabelId;
 import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.PatchSetApproval;
 import com.google.gerrit.reviewdb.client.Project;
@@ -37,12 +50,23 @@ import com.google.gerrit.reviewdb.client.RevId;
 import com.google.gerrit.server.ReviewerByEmailSet;
 import com.google.gerrit.server.ReviewerSet;
 import com.google.gerrit.server.ReviewerStatusUpdate;
+import com.google.gerrit.server.mail.Address;
 import com.google.gerrit.server.notedb.NoteDbChangeState.PrimaryStorage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.eclipse.jgit.lib.ObjectId;
 
 /**
@@ -53,9 +77,15 @@ import org.eclipse.jgit.lib.ObjectId;
  *
  * <p>Note that {@link ChangeNotes} contains more than just a single {@code ChangeNoteState}, such
  * as per-draft information, so that class is not cached directly.
+ *
+ * <p>Instances are persisted in the {@code change_notes} cache using the binary encoding of {@link
+ * #writeTo(OutputStream)}. The encoding must be kept in sync with the fields of this class, and the
+ * cache version in {@link ChangeNotesCache} bumped whenever it changes.
  */
 @AutoValue
-public abstract class ChangeNotesState {
+public abstract class ChangeNotesState implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   static ChangeNotesState empty(Change change) {
     return new AutoValue_ChangeNotesState(
         null,
@@ -338,4 +368,512 @@ public abstract class ChangeNotesState {
       change.clearCurrentPatchSet();
     }
   }
+
+  void writeTo(OutputStream output) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (DeflaterOutputStream out = new DeflaterOutputStream(buf)) {
+      writeCanBeNull(out, metaId());
+      writeVarInt32(out, changeId().get());
+      ChangeColumns c = columns();
+      writeBoolean(out, c != null);
+      if (c != null) {
+        writeStr(out, c.changeKey().get());
+        writeTimestamp(out, c.createdOn());
+        writeTimestamp(out, c.lastUpdatedOn());
+        writeAccountId(out, c.owner());
+        writeStr(out, c.branch());
+        writeNullable(out, c.currentPatchSetId(), ChangeNotesState::writePatchSetId);
+        writeStr(out, c.subject());
+        writeNullable(out, c.topic(), ChangeNotesState::writeStr);
+        writeNullable(out, c.originalSubject(), ChangeNotesState::writeStr);
+        writeNullable(out, c.submissionId(), ChangeNotesState::writeStr);
+        writeNullable(out, c.assignee(), ChangeNotesState::writeAccountId);
+        writeNullable(out, c.status(), ChangeNotesState::writeEnumName);
+        writeNullable(out, c.isPrivate(), ChangeNotesState::writeBoolean);
+        writeNullable(out, c.isWorkInProgress(), ChangeNotesState::writeBoolean);
+        writeNullable(out, c.hasReviewStarted(), ChangeNotesState::writeBoolean);
+        writeNullable(out, c.revertOf(), ChangeNotesState::writeChangeId);
+      }
+
+      writeList(out, pastAssignees(), ChangeNotesState::writeAccountId);
+      writeList(out, hashtags(), ChangeNotesState::writeStr);
+      writeList(out, patchSets(), (o, e) -> writePatchSet(o, e.getValue()));
+      writeList(out, approvals(), (o, e) -> writeApproval(o, e.getValue()));
+      writeReviewers(out, reviewers().asTable(), ChangeNotesState::writeAccountId);
+      writeReviewers(out, reviewersByEmail().asTable(), ChangeNotesState::writeAddress);
+      writeReviewers(out, pendingReviewers().asTable(), ChangeNotesState::writeAccountId);
+      writeReviewers(out, pendingReviewersByEmail().asTable(), ChangeNotesState::writeAddress);
+      writeList(out, allPastReviewers(), ChangeNotesState::writeAccountId);
+      writeList(out, reviewerUpdates(), ChangeNotesState::writeReviewerUpdate);
+      writeList(out, submitRecords(), ChangeNotesState::writeSubmitRecord);
+      writeList(out, allChangeMessages(), ChangeNotesState::writeChangeMessage);
+
+      // Messages by patch set are the same instances as in allChangeMessages, so only their
+      // position is stored. Anything else is written in full after a -1 marker.
+      Map<ChangeMessage, Integer> positions = new IdentityHashMap<>();
+      for (int i = 0; i < allChangeMessages().size(); i++) {
+        positions.put(allChangeMessages().get(i), i);
+      }
+      writeList(
+          out,
+          changeMessagesByPatchSet().entries(),
+          (o, e) -> {
+            writePatchSetId(o, e.getKey());
+            Integer pos = positions.get(e.getValue());
+            writeVarInt32(o, pos != null ? pos : -1);
+            if (pos == null) {
+              writeChangeMessage(o, e.getValue());
+            }
+          });
+
+      writeList(
+          out,
+          publishedComments().entries(),
+          (o, e) -> {
+            writeStr(o, e.getKey().get());
+            writeComment(o, e.getValue());
+          });
+      writeNullable(out, readOnlyUntil(), ChangeNotesState::writeTimestamp);
+      writeNullable(out, isPrivate(), ChangeNotesState::writeBoolean);
+      writeNullable(out, isWorkInProgress(), ChangeNotesState::writeBoolean);
+      writeNullable(out, hasReviewStarted(), ChangeNotesState::writeBoolean);
+      writeNullable(out, revertOf(), ChangeNotesState::writeChangeId);
+    }
+    writeBytes(output, buf.toByteArray());
+  }
+
+  static ChangeNotesState readFrom(InputStream input) throws IOException {
+    ByteArrayInputStream buf = new ByteArrayInputStream(readBytes(input));
+    try (InflaterInputStream in = new InflaterInputStream(buf)) {
+      ObjectId metaId = readCanBeNull(in);
+      Change.Id changeId = new Change.Id(readVarInt32(in));
+      ChangeColumns columns = null;
+      if (readBoolean(in)) {
+        columns =
+            new AutoValue_ChangeNotesState_ChangeColumns(
+                new Change.Key(readStr(in)),
+                readTimestamp(in),
+                readTimestamp(in),
+                readAccountId(in),
+                readStr(in),
+                readNullable(in, ChangeNotesState::readPatchSetId),
+                readStr(in),
+                readNullable(in, ChangeNotesState::readStr),
+                readNullable(in, ChangeNotesState::readStr),
+                readNullable(in, ChangeNotesState::readStr),
+                readNullable(in, ChangeNotesState::readAccountId),
+                readNullable(in, i -> readEnumName(i, Change.Status.class)),
+                readNullable(in, ChangeNotesState::readBoolean),
+                readNullable(in, ChangeNotesState::readBoolean),
+                readNullable(in, ChangeNotesState::readBoolean),
+                readNullable(in, ChangeNotesState::readChangeId));
+      }
+
+      ImmutableSet<Account.Id> pastAssignees =
+          ImmutableSet.copyOf(readList(in, ChangeNotesState::readAccountId));
+      ImmutableSet<String> hashtags = ImmutableSet.copyOf(readList(in, ChangeNotesState::readStr));
+      ImmutableList<Map.Entry<PatchSet.Id, PatchSet>> patchSets =
+          readList(
+              in,
+              i -> {
+                PatchSet ps = readPatchSet(i);
+                return Maps.immutableEntry(ps.getId(), ps);
+              });
+      ImmutableList<Map.Entry<PatchSet.Id, PatchSetApproval>> approvals =
+          readList(
+              in,
+              i -> {
+                PatchSetApproval psa = readApproval(i);
+                return Maps.immutableEntry(psa.getPatchSetId(), psa);
+              });
+      ReviewerSet reviewers =
+          ReviewerSet.fromTable(readReviewers(in, ChangeNotesState::readAccountId));
+      ReviewerByEmailSet reviewersByEmail =
+          ReviewerByEmailSet.fromTable(readReviewers(in, ChangeNotesState::readAddress));
+      ReviewerSet pendingReviewers =
+          ReviewerSet.fromTable(readReviewers(in, ChangeNotesState::readAccountId));
+      ReviewerByEmailSet pendingReviewersByEmail =
+          ReviewerByEmailSet.fromTable(readReviewers(in, ChangeNotesState::readAddress));
+      ImmutableList<Account.Id> allPastReviewers = readList(in, ChangeNotesState::readAccountId);
+      ImmutableList<ReviewerStatusUpdate> reviewerUpdates =
+          readList(in, ChangeNotesState::readReviewerUpdate);
+      ImmutableList<SubmitRecord> submitRecords = readList(in, ChangeNotesState::readSubmitRecord);
+      ImmutableList<ChangeMessage> allChangeMessages =
+          readList(in, ChangeNotesState::readChangeMessage);
+
+      ImmutableListMultimap.Builder<PatchSet.Id, ChangeMessage> changeMessagesByPatchSet =
+          ImmutableListMultimap.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        PatchSet.Id psId = readPatchSetId(in);
+        int pos = readVarInt32(in);
+        changeMessagesByPatchSet.put(
+            psId, pos >= 0 ? allChangeMessages.get(pos) : readChangeMessage(in));
+      }
+
+      ImmutableListMultimap.Builder<RevId, Comment> publishedComments =
+          ImmutableListMultimap.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        publishedComments.put(new RevId(readStr(in)), readComment(in));
+      }
+
+      return new AutoValue_ChangeNotesState(
+          metaId,
+          changeId,
+          columns,
+          pastAssignees,
+          hashtags,
+          patchSets,
+          approvals,
+          reviewers,
+          reviewersByEmail,
+          pendingReviewers,
+          pendingReviewersByEmail,
+          allPastReviewers,
+          reviewerUpdates,
+          submitRecords,
+          allChangeMessages,
+          changeMessagesByPatchSet.build(),
+          publishedComments.build(),
+          readNullable(in, ChangeNotesState::readTimestamp),
+          readNullable(in, ChangeNotesState::readBoolean),
+          readNullable(in, ChangeNotesState::readBoolean),
+          readNullable(in, ChangeNotesState::readBoolean),
+          readNullable(in, ChangeNotesState::readChangeId));
+    }
+  }
+
+  Object writeReplace() throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    writeTo(buf);
+    return new SerializedForm(buf.toByteArray());
+  }
+
+  private static class SerializedForm implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] data;
+
+    SerializedForm(byte[] data) {
+      this.data = data;
+    }
+
+    private Object readResolve() throws IOException {
+      return readFrom(new ByteArrayInputStream(data));
+    }
+  }
+
+  @FunctionalInterface
+  private interface Writer<T> {
+    void write(OutputStream out, T value) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface Reader<T> {
+    T read(InputStream in) throws IOException;
+  }
+
+  private static <T> void writeNullable(OutputStream out, @Nullable T value, Writer<T> writer)
+      throws IOException {
+    writeBoolean(out, value != null);
+    if (value != null) {
+      writer.write(out, value);
+    }
+  }
+
+  @Nullable
+  private static <T> T readNullable(InputStream in, Reader<T> reader) throws IOException {
+    return readBoolean(in) ? reader.read(in) : null;
+  }
+
+  private static <T> void writeList(OutputStream out, Collection<T> values, Writer<T> writer)
+      throws IOException {
+    writeVarInt32(out, values.size());
+    for (T value : values) {
+      writer.write(out, value);
+    }
+  }
+
+  private static <T> ImmutableList<T> readList(InputStream in, Reader<T> reader)
+      throws IOException {
+    int n = readVarInt32(in);
+    ImmutableList.Builder<T> result = ImmutableList.builder();
+    for (int i = 0; i < n; i++) {
+      result.add(reader.read(in));
+    }
+    return result.build();
+  }
+
+  private static <C> void writeReviewers(
+      OutputStream out, Table<ReviewerStateInternal, C, Timestamp> table, Writer<C> writer)
+      throws IOException {
+    writeList(
+        out,
+        table.cellSet(),
+        (o, cell) -> {
+          writeEnumName(o, cell.getRowKey());
+          writer.write(o, cell.getColumnKey());
+          writeTimestamp(o, cell.getValue());
+        });
+  }
+
+  private static <C> Table<ReviewerStateInternal, C, Timestamp> readReviewers(
+      InputStream in, Reader<C> reader) throws IOException {
+    Table<ReviewerStateInternal, C, Timestamp> result = HashBasedTable.create();
+    for (int n = readVarInt32(in); n > 0; n--) {
+      result.put(
+          readEnumName(in, ReviewerStateInternal.class), reader.read(in), readTimestamp(in));
+    }
+    return result;
+  }
+
+  private static void writePatchSet(OutputStream out, PatchSet ps) throws IOException {
+    writePatchSetId(out, ps.getId());
+    writeNullable(out, ps.getRevision(), (o, r) -> writeStr(o, r.get()));
+    writeAccountId(out, ps.getUploader());
+    writeTimestamp(out, ps.getCreatedOn());
+    writeList(out, ps.getGroups(), ChangeNotesState::writeStr);
+    writeNullable(out, ps.getPushCertificate(), ChangeNotesState::writeStr);
+    writeNullable(out, ps.getDescription(), ChangeNotesState::writeStr);
+    writeBoolean(out, ps.isDraft());
+  }
+
+  private static PatchSet readPatchSet(InputStream in) throws IOException {
+    PatchSet ps = new PatchSet(readPatchSetId(in));
+    ps.setRevision(readNullable(in, i -> new RevId(readStr(i))));
+    ps.setUploader(readAccountId(in));
+    ps.setCreatedOn(readTimestamp(in));
+    List<String> groups = readList(in, ChangeNotesState::readStr);
+    if (!groups.isEmpty()) {
+      ps.setGroups(groups);
+    }
+    ps.setPushCertificate(readNullable(in, ChangeNotesState::readStr));
+    ps.setDescription(readNullable(in, ChangeNotesState::readStr));
+    ps.setDraft(readBoolean(in));
+    return ps;
+  }
+
+  private static void writeApproval(OutputStream out, PatchSetApproval psa) throws IOException {
+    writePatchSetId(out, psa.getPatchSetId());
+    writeAccountId(out, psa.getAccountId());
+    writeStr(out, psa.getLabel());
+    writeVarInt32(out, psa.getValue());
+    writeTimestamp(out, psa.getGranted());
+    writeNullable(out, psa.getTag(), ChangeNotesState::writeStr);
+    writeAccountId(out, psa.getRealAccountId());
+    writeBoolean(out, psa.isPostSubmit());
+  }
+
+  private static PatchSetApproval readApproval(InputStream in) throws IOException {
+    PatchSetApproval.Key key =
+        new PatchSetApproval.Key(readPatchSetId(in), readAccountId(in), new LabelId(readStr(in)));
+    PatchSetApproval psa = new PatchSetApproval(key, (short) readVarInt32(in), readTimestamp(in));
+    psa.setTag(readNullable(in, ChangeNotesState::readStr));
+    psa.setRealAccountId(readAccountId(in));
+    psa.setPostSubmit(readBoolean(in));
+    return psa;
+  }
+
+  private static void writeReviewerUpdate(OutputStream out, ReviewerStatusUpdate u)
+      throws IOException {
+    writeTimestamp(out, u.date());
+    writeNullable(out, u.updatedBy(), ChangeNotesState::writeAccountId);
+    writeAccountId(out, u.reviewer());
+    writeEnumName(out, u.state());
+  }
+
+  private static ReviewerStatusUpdate readReviewerUpdate(InputStream in) throws IOException {
+    return ReviewerStatusUpdate.create(
+        readTimestamp(in),
+        readNullable(in, ChangeNotesState::readAccountId),
+        readAccountId(in),
+        readEnumName(in, ReviewerStateInternal.class));
+  }
+
+  private static void writeSubmitRecord(OutputStream out, SubmitRecord rec) throws IOException {
+    writeNullable(out, rec.status, ChangeNotesState::writeEnumName);
+    writeNullable(
+        out,
+        rec.labels,
+        (o, labels) ->
+            writeList(
+                o,
+                labels,
+                (o2, label) -> {
+                  writeNullable(o2, label.label, ChangeNotesState::writeStr);
+                  writeNullable(o2, label.status, ChangeNotesState::writeEnumName);
+                  writeNullable(o2, label.appliedBy, ChangeNotesState::writeAccountId);
+                }));
+    writeNullable(out, rec.errorMessage, ChangeNotesState::writeStr);
+  }
+
+  private static SubmitRecord readSubmitRecord(InputStream in) throws IOException {
+    SubmitRecord rec = new SubmitRecord();
+    rec.status = readNullable(in, i -> readEnumName(i, SubmitRecord.Status.class));
+    rec.labels =
+        readNullable(
+            in,
+            i ->
+                new ArrayList<>(
+                    readList(
+                        i,
+                        i2 -> {
+                          SubmitRecord.Label label = new SubmitRecord.Label();
+                          label.label = readNullable(i2, ChangeNotesState::readStr);
+                          label.status =
+                              readNullable(
+                                  i2, i3 -> readEnumName(i3, SubmitRecord.Label.Status.class));
+                          label.appliedBy = readNullable(i2, ChangeNotesState::readAccountId);
+                          return label;
+                        })));
+    rec.errorMessage = readNullable(in, ChangeNotesState::readStr);
+    return rec;
+  }
+
+  private static void writeChangeMessage(OutputStream out, ChangeMessage cm) throws IOException {
+    writeChangeId(out, cm.getKey().getParentKey());
+    writeStr(out, cm.getKey().get());
+    writeNullable(out, cm.getAuthor(), ChangeNotesState::writeAccountId);
+    writeTimestamp(out, cm.getWrittenOn());
+    writeNullable(out, cm.getPatchSetId(), ChangeNotesState::writePatchSetId);
+    writeNullable(out, cm.getMessage(), ChangeNotesState::writeStr);
+    writeNullable(out, cm.getTag(), ChangeNotesState::writeStr);
+    writeNullable(out, cm.getRealAuthor(), ChangeNotesState::writeAccountId);
+  }
+
+  private static ChangeMessage readChangeMessage(InputStream in) throws IOException {
+    ChangeMessage.Key key = new ChangeMessage.Key(readChangeId(in), readStr(in));
+    ChangeMessage cm =
+        new ChangeMessage(
+            key,
+            readNullable(in, ChangeNotesState::readAccountId),
+            readTimestamp(in),
+            readNullable(in, ChangeNotesState::readPatchSetId));
+    cm.setMessage(readNullable(in, ChangeNotesState::readStr));
+    cm.setTag(readNullable(in, ChangeNotesState::readStr));
+    cm.setRealAuthor(readNullable(in, ChangeNotesState::readAccountId));
+    return cm;
+  }
+
+  private static void writeComment(OutputStream out, Comment c) throws IOException {
+    writeStr(out, c.key.uuid);
+    writeStr(out, c.key.filename);
+    writeVarInt32(out, c.key.patchSetId);
+    writeVarInt32(out, c.lineNbr);
+    writeAccountId(out, c.author.getId());
+    writeAccountId(out, c.getRealAuthor().getId());
+    writeTimestamp(out, c.writtenOn);
+    writeVarInt32(out, c.side);
+    writeNullable(out, c.message, ChangeNotesState::writeStr);
+    writeNullable(out, c.parentUuid, ChangeNotesState::writeStr);
+    writeNullable(
+        out,
+        c.range,
+        (o, r) -> {
+          writeVarInt32(o, r.startLine);
+          writeVarInt32(o, r.startChar);
+          writeVarInt32(o, r.endLine);
+          writeVarInt32(o, r.endChar);
+        });
+    writeNullable(out, c.tag, ChangeNotesState::writeStr);
+    writeNullable(out, c.revId, ChangeNotesState::writeStr);
+    writeNullable(out, c.serverId, ChangeNotesState::writeStr);
+    writeBoolean(out, c.unresolved);
+  }
+
+  private static Comment readComment(InputStream in) throws IOException {
+    Comment.Key key = new Comment.Key(readStr(in), readStr(in), readVarInt32(in));
+    int lineNbr = readVarInt32(in);
+    Account.Id author = readAccountId(in);
+    Account.Id realAuthor = readAccountId(in);
+    Timestamp writtenOn = readTimestamp(in);
+    short side = (short) readVarInt32(in);
+    String message = readNullable(in, ChangeNotesState::readStr);
+    String parentUuid = readNullable(in, ChangeNotesState::readStr);
+    Comment.Range range =
+        readNullable(
+            in,
+            i ->
+                new Comment.Range(
+                    readVarInt32(i), readVarInt32(i), readVarInt32(i), readVarInt32(i)));
+    String tag = readNullable(in, ChangeNotesState::readStr);
+    String revId = readNullable(in, ChangeNotesState::readStr);
+    String serverId = readNullable(in, ChangeNotesState::readStr);
+    Comment c = new Comment(key, author, writtenOn, side, message, serverId, readBoolean(in));
+    c.lineNbr = lineNbr;
+    c.setRealAuthor(realAuthor);
+    c.parentUuid = parentUuid;
+    c.range = range;
+    c.tag = tag;
+    c.revId = revId;
+    return c;
+  }
+
+  private static void writeAddress(OutputStream out, Address a) throws IOException {
+    writeNullable(out, a.getName(), ChangeNotesState::writeStr);
+    writeStr(out, a.getEmail());
+  }
+
+  private static Address readAddress(InputStream in) throws IOException {
+    return new Address(readNullable(in, ChangeNotesState::readStr), readStr(in));
+  }
+
+  private static void writePatchSetId(OutputStream out, PatchSet.Id id) throws IOException {
+    writeChangeId(out, id.getParentKey());
+    writeVarInt32(out, id.get());
+  }
+
+  private static PatchSet.Id readPatchSetId(InputStream in) throws IOException {
+    return new PatchSet.Id(readChangeId(in), readVarInt32(in));
+  }
+
+  private static void writeChangeId(OutputStream out, Change.Id id) throws IOException {
+    writeVarInt32(out, id.get());
+  }
+
+  private static Change.Id readChangeId(InputStream in) throws IOException {
+    return new Change.Id(readVarInt32(in));
+  }
+
+  private static void writeAccountId(OutputStream out, Account.Id id) throws IOException {
+    writeVarInt32(out, id.get());
+  }
+
+  private static Account.Id readAccountId(InputStream in) throws IOException {
+    return new Account.Id(readVarInt32(in));
+  }
+
+  private static void writeTimestamp(OutputStream out, Timestamp ts) throws IOException {
+    writeFixInt64(out, ts.getTime());
+  }
+
+  private static Timestamp readTimestamp(InputStream in) throws IOException {
+    return new Timestamp(readFixInt64(in));
+  }
+
+  private static void writeBoolean(OutputStream out, boolean b) throws IOException {
+    writeVarInt32(out, b ? 1 : 0);
+  }
+
+  private static boolean readBoolean(InputStream in) throws IOException {
+    return readVarInt32(in) != 0;
+  }
+
+  private static void writeEnumName(OutputStream out, Enum<?> e) throws IOException {
+    writeStr(out, e.name());
+  }
+
+  private static <E extends Enum<E>> E readEnumName(InputStream in, Class<E> type)
+      throws IOException {
+    return Enum.valueOf(type, readStr(in));
+  }
+
+  // Unlike BasicSerialization.writeString, keeps empty strings distinct from null, which are
+  // written with writeNullable.
+  private static void writeStr(OutputStream out, String s) throws IOException {
+    writeBytes(out, s.getBytes(UTF_8));
+  }
+
+  private static String readStr(InputStream in) throws IOException {
+    return new String(readBytes(in), UTF_8);
+  }
 }
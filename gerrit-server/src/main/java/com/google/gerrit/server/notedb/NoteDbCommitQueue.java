@@ -0,0 +1,277 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.notedb;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.GerritPersonIdent;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.update.RefUpdateUtil;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * Writes the NoteDb ref updates of concurrent batch updates on one repository together.
+ *
+ * <p>Each caller queues its {@link BatchRefUpdate}. The first caller to find no write in progress
+ * for the repository becomes the leader: it waits for the configured window, takes the queued
+ * updates that touch disjoint refs, and executes their commands as one {@link BatchRefUpdate}. The
+ * commands are shared with the callers' updates, so every caller sees the results of its own
+ * commands. A caller whose commands all failed, possibly only because another update of the same
+ * group aborted the transaction, is executed again on its own.
+ *
+ * <p>Disabled unless {@code noteDb.changes.groupCommit} is set; updates are then executed directly.
+ */
+@Singleton
+public class NoteDbCommitQueue {
+  private static final String DEFAULT_MESSAGE = "Update NoteDb refs";
+
+  private static class Request {
+    final BatchRefUpdate bru;
+    final Set<String> refs = new HashSet<>();
+    boolean done;
+    IOException error;
+
+    Request(BatchRefUpdate bru) {
+      this.bru = bru;
+      for (ReceiveCommand cmd : bru.getCommands()) {
+        refs.add(cmd.getRefName());
+      }
+    }
+  }
+
+  private static class RepoQueue {
+    final Deque<Request> pending = new ArrayDeque<>();
+    boolean writing;
+  }
+
+  private final Provider<PersonIdent> serverIdent;
+  private final NoteDbMetrics metrics;
+  private final boolean enabled;
+  private final long window;
+  private final int maxBatchSize;
+  private final Map<Project.NameKey, RepoQueue> queues = new ConcurrentHashMap<>();
+
+  @Inject
+  NoteDbCommitQueue(
+      @GerritServerConfig Config cfg,
+      @GerritPersonIdent Provider<PersonIdent> serverIdent,
+      NoteDbMetrics metrics) {
+    this.serverIdent = serverIdent;
+    this.metrics = metrics;
+    this.enabled = cfg.getBoolean("noteDb", "changes", "groupCommit", false);
+    this.window = cfg.getTimeUnit("noteDb", "changes", "groupCommitWindow", 0, MILLISECONDS);
+    this.maxBatchSize = Math.max(cfg.getInt("noteDb", "changes", "groupCommitMaxSize", 100), 1);
+  }
+
+  /**
+   * Execute a batch ref update, possibly together with concurrent updates of the same repository.
+   *
+   * @param project name of the repository.
+   * @param repo open repository.
+   * @param bru batch update to execute; its commands are updated with their results.
+   * @param rw walk to use if the update is executed on its own.
+   * @throws IOException as for {@link RefUpdateUtil#executeChecked(BatchRefUpdate, RevWalk)}.
+   */
+  public void execute(Project.NameKey project, Repository repo, BatchRefUpdate bru, RevWalk rw)
+      throws IOException {
+    if (!enabled || bru.getCommands().isEmpty()) {
+      RefUpdateUtil.executeChecked(bru, rw);
+      return;
+    }
+
+    RepoQueue q = queues.computeIfAbsent(project, p -> new RepoQueue());
+    Request req = new Request(bru);
+    synchronized (q) {
+      q.pending.add(req);
+      if (q.pending.size() >= maxBatchSize) {
+        // Wake a leader waiting for the window to end.
+        q.notifyAll();
+      }
+    }
+    boolean interrupted = false;
+    try {
+      while (true) {
+        synchronized (q) {
+          while (!req.done && q.writing) {
+            try {
+              q.wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+              if (q.pending.remove(req)) {
+                throw new InterruptedIOException("Interrupted waiting to update " + project);
+              }
+              // Already taken by the current writer; its result must be reported,
+              // so keep waiting and restore the interrupt afterwards.
+            }
+          }
+          if (req.done) {
+            break;
+          }
+          q.writing = true;
+        }
+        interrupted |= lead(q, repo);
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (req.error != null) {
+      throw req.error;
+    }
+  }
+
+  /** @return whether the leader was interrupted while waiting for the window to end. */
+  private boolean lead(RepoQueue q, Repository repo) {
+    boolean interrupted = false;
+    List<Request> batch = new ArrayList<>();
+    try {
+      synchronized (q) {
+        if (window > 0 && q.pending.size() < maxBatchSize) {
+          try {
+            q.wait(window);
+          } catch (InterruptedException e) {
+            // Write the batch anyway, the callers are waiting for it.
+            interrupted = true;
+          }
+        }
+        metrics.groupCommitQueueDepth.record(q.pending.size());
+        Set<String> refs = new HashSet<>();
+        for (Iterator<Request> i = q.pending.iterator();
+            i.hasNext() && batch.size() < maxBatchSize; ) {
+          Request r = i.next();
+          // Two updates of one ref cannot be part of the same transaction.
+          if (r.refs.stream().noneMatch(refs::contains)) {
+            refs.addAll(r.refs);
+            batch.add(r);
+            i.remove();
+          }
+        }
+      }
+      metrics.groupCommitBatchSize.record(batch.size());
+      write(repo, batch);
+    } catch (IOException | RuntimeException e) {
+      for (Request r : batch) {
+        if (r.error == null) {
+          r.error = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+      }
+    } finally {
+      synchronized (q) {
+        for (Request r : batch) {
+          r.done = true;
+        }
+        q.writing = false;
+        q.notifyAll();
+      }
+    }
+    return interrupted;
+  }
+
+  private void write(Repository repo, List<Request> batch) throws IOException {
+    try (RevWalk rw = new RevWalk(repo)) {
+      if (batch.size() == 1) {
+        executeAlone(batch.get(0), rw);
+        return;
+      }
+
+      BatchRefUpdate combined = repo.getRefDatabase().newBatchUpdate();
+      combined.setAllowNonFastForwards(true);
+      setRefLog(combined, batch);
+      for (Request r : batch) {
+        combined.addCommand(r.bru.getCommands());
+      }
+      combined.execute(rw, NullProgressMonitor.INSTANCE);
+
+      for (Request r : batch) {
+        boolean anyOk = false;
+        boolean allOk = true;
+        for (ReceiveCommand cmd : r.bru.getCommands()) {
+          boolean ok = cmd.getResult() == ReceiveCommand.Result.OK;
+          anyOk |= ok;
+          allOk &= ok;
+        }
+        if (allOk) {
+          continue;
+        } else if (!anyOk) {
+          metrics.groupCommitRetryCount.increment();
+          for (ReceiveCommand cmd : r.bru.getCommands()) {
+            cmd.setResult(ReceiveCommand.Result.NOT_ATTEMPTED);
+          }
+          rw.reset();
+          executeAlone(r, rw);
+        } else {
+          try {
+            RefUpdateUtil.checkResults(r.bru);
+          } catch (IOException e) {
+            r.error = e;
+          }
+        }
+      }
+    }
+  }
+
+  private static void executeAlone(Request r, RevWalk rw) {
+    try {
+      RefUpdateUtil.executeChecked(r.bru, rw);
+    } catch (IOException e) {
+      r.error = e;
+    }
+  }
+
+  private void setRefLog(BatchRefUpdate combined, List<Request> batch) {
+    BatchRefUpdate first = batch.get(0).bru;
+    String message = first.getRefLogMessage();
+    PersonIdent ident = first.getRefLogIdent();
+    for (Request r : batch) {
+      if (!Objects.equals(message, r.bru.getRefLogMessage())) {
+        message = DEFAULT_MESSAGE;
+      }
+      if (ident != null && !sameIdent(ident, r.bru.getRefLogIdent())) {
+        ident = null;
+      }
+    }
+    combined.setRefLogMessage(message != null ? message : DEFAULT_MESSAGE, false);
+    combined.setRefLogIdent(ident != null ? ident : serverIdent.get());
+  }
+
+  private static boolean sameIdent(PersonIdent a, PersonIdent b) {
+    return b != null
+        && Objects.equals(a.getName(), b.getName())
+        && Objects.equals(a.getEmailAddress(), b.getEmailAddress());
+  }
+}
@@ -14,10 +14,12 @@
 
 package com.google.gerrit.server.notedb;
 
+import com.google.gerrit.metrics.Counter0;
 import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Description.Units;
 import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram0;
 import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.metrics.Timer1;
 import com.google.inject.Inject;
@@ -44,6 +46,12 @@ class NoteDbMetrics {
    */
   final Timer1<NoteDbTable> parseLatency;
 
+  /**
+   * Like {@link #parseLatency}, for parses that only read the commits added since an earlier parse
+   * of the same change.
+   */
+  final Timer1<NoteDbTable> incrementalParseLatency;
+
   /**
    * Latency due to auto-rebuilding entities when out of date.
    *
@@ -54,6 +62,15 @@ class NoteDbMetrics {
   /** Count of auto-rebuild attempts that failed. */
   final Counter1<NoteDbTable> autoRebuildFailureCount;
 
+  /** Number of batch updates whose refs were written by one group commit. */
+  final Histogram0 groupCommitBatchSize;
+
+  /** Number of batch updates waiting for a repository when a group commit starts. */
+  final Histogram0 groupCommitQueueDepth;
+
+  /** Count of batch updates executed again on their own after their group commit failed. */
+  final Counter0 groupCommitRetryCount;
+
   @Inject
   NoteDbMetrics(MetricMaker metrics) {
     Field<NoteDbTable> view = Field.ofEnum(NoteDbTable.class, "table");
@@ -90,6 +107,14 @@ class NoteDbMetrics {
                 .setUnit(Units.MICROSECONDS),
             view);
 
+    incrementalParseLatency =
+        metrics.newTimer(
+            "notedb/incremental_parse_latency",
+            new Description("NoteDb incremental parse latency by table")
+                .setCumulative()
+                .setUnit(Units.MICROSECONDS),
+            view);
+
     autoRebuildLatency =
         metrics.newTimer(
             "notedb/auto_rebuild_latency",
@@ -103,5 +128,25 @@ class NoteDbMetrics {
             "notedb/auto_rebuild_failure_count",
             new Description("NoteDb auto-rebuilding attempts that failed by table").setCumulative(),
             view);
+
+    groupCommitBatchSize =
+        metrics.newHistogram(
+            "notedb/group_commit/batch_size",
+            new Description("Distribution of batch updates written by one NoteDb group commit")
+                .setCumulative()
+                .setUnit("updates"));
+
+    groupCommitQueueDepth =
+        metrics.newHistogram(
+            "notedb/group_commit/queue_depth",
+            new Description("Distribution of batch updates queued when a group commit starts")
+                .setCumulative()
+                .setUnit("updates"));
+
+    groupCommitRetryCount =
+        metrics.newCounter(
+            "notedb/group_commit/retry_count",
+            new Description("Batch updates retried on their own after a failed group commit")
+                .setRate());
   }
 }
@@ -208,6 +208,7 @@ public class NoteDbUpdateManager implements AutoCloseable {
   private final NotesMigration migration;
   private final AllUsersName allUsersName;
   private final NoteDbMetrics metrics;
+  private final NoteDbCommitQueue commitQueue;
   private final Project.NameKey projectName;
   private final ListMultimap<String, ChangeUpdate> changeUpdates;
   private final ListMultimap<String, ChangeDraftUpdate> draftUpdates;
@@ -230,12 +231,14 @@ public class NoteDbUpdateManager implements AutoCloseable {
       NotesMigration migration,
       AllUsersName allUsersName,
       NoteDbMetrics metrics,
+      NoteDbCommitQueue commitQueue,
       @Assisted Project.NameKey projectName) {
     this.serverIdent = serverIdent;
     this.repoManager = repoManager;
     this.migration = migration;
     this.allUsersName = allUsersName;
     this.metrics = metrics;
+    this.commitQueue = commitQueue;
     this.projectName = projectName;
     changeUpdates = MultimapBuilder.hashKeys().arrayListValues().build();
     draftUpdates = MultimapBuilder.hashKeys().arrayListValues().build();
@@ -525,15 +528,16 @@ public class NoteDbUpdateManager implements AutoCloseable {
       // we may have stale draft comments. Doing it in this order allows stale
       // comments to be filtered out by ChangeNotes, reflecting the fact that
       // comments can only go from DRAFT to PUBLISHED, not vice versa.
-      BatchRefUpdate result = execute(changeRepo, dryrun, pushCert);
-      execute(allUsersRepo, dryrun, null);
+      BatchRefUpdate result = execute(changeRepo, projectName, dryrun, pushCert);
+      execute(allUsersRepo, allUsersName, dryrun, null);
       return result;
     } finally {
       close();
     }
   }
 
-  private BatchRefUpdate execute(OpenRepo or, boolean dryrun, @Nullable PushCertificate pushCert)
+  private BatchRefUpdate execute(
+      OpenRepo or, Project.NameKey name, boolean dryrun, @Nullable PushCertificate pushCert)
       throws IOException {
     if (or == null || or.cmds.isEmpty()) {
       return null;
@@ -557,8 +561,13 @@ public class NoteDbUpdateManager implements AutoCloseable {
     or.cmds.addTo(bru);
     bru.setAllowNonFastForwards(true);
 
-    if (!dryrun) {
+    if (dryrun) {
+      return bru;
+    } else if (pushCert != null) {
+      // The certificate applies to this update only, so it cannot be combined with others.
       RefUpdateUtil.executeChecked(bru, or.rw);
+    } else {
+      commitQueue.execute(name, or.repo, bru, or.rw);
     }
     return bru;
   }
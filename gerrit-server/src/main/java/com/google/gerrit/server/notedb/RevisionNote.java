@@ -35,9 +35,11 @@ abstract class RevisionNote<T extends Comment> {
     }
   }
 
-  private final ObjectReader reader;
   private final ObjectId noteId;
 
+  // Only needed until the note is parsed; parsed notes may be kept in caches.
+  private ObjectReader reader;
+
   private byte[] raw;
   private ImmutableList<T> comments;
 
@@ -46,6 +48,10 @@ abstract class RevisionNote<T extends Comment> {
     this.noteId = noteId;
   }
 
+  ObjectId getNoteId() {
+    return noteId;
+  }
+
   public byte[] getRaw() {
     checkParsed();
     return raw;
@@ -58,6 +64,7 @@ abstract class RevisionNote<T extends Comment> {
 
   public void parse() throws IOException, ConfigInvalidException {
     raw = reader.open(noteId, OBJ_BLOB).getCachedBytes(MAX_NOTE_SZ);
+    reader = null;
     MutableInteger p = new MutableInteger();
     trimLeadingEmptyLines(raw, p);
     if (p.value >= raw.length) {
@@ -38,12 +38,32 @@ class RevisionNoteMap<T extends RevisionNote<? extends Comment>> {
       NoteMap noteMap,
       PatchLineComment.Status status)
       throws ConfigInvalidException, IOException {
+    return parse(noteUtil, changeId, reader, noteMap, status, ImmutableMap.of());
+  }
+
+  /**
+   * Parse the notes of a change, reusing already parsed notes.
+   *
+   * @param previous notes parsed from an earlier version of the note map with the same status. A
+   *     note is only parsed again if its blob differs from the previous note of the revision.
+   */
+  static RevisionNoteMap<ChangeRevisionNote> parse(
+      ChangeNoteUtil noteUtil,
+      Change.Id changeId,
+      ObjectReader reader,
+      NoteMap noteMap,
+      PatchLineComment.Status status,
+      Map<RevId, ChangeRevisionNote> previous)
+      throws ConfigInvalidException, IOException {
     Map<RevId, ChangeRevisionNote> result = new HashMap<>();
     for (Note note : noteMap) {
-      ChangeRevisionNote rn =
-          new ChangeRevisionNote(noteUtil, changeId, reader, note.getData(), status);
-      rn.parse();
-      result.put(new RevId(note.name()), rn);
+      RevId revId = new RevId(note.name());
+      ChangeRevisionNote rn = previous.get(revId);
+      if (rn == null || !rn.getNoteId().equals(note.getData())) {
+        rn = new ChangeRevisionNote(noteUtil, changeId, reader, note.getData(), status);
+        rn.parse();
+      }
+      result.put(revId, rn);
     }
     return new RevisionNoteMap<>(noteMap, ImmutableMap.copyOf(result));
   }
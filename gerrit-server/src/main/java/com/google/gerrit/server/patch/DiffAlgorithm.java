@@ -0,0 +1,95 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.MyersDiff;
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+/**
+ * Algorithm used to compute the edits of a file in the {@code diff} and {@code diff_intraline}
+ * caches.
+ *
+ * <p>The algorithm is part of the cache keys, as different algorithms may produce different but
+ * equally valid edits for the same input.
+ */
+public enum DiffAlgorithm {
+  /** Myers' O(ND) algorithm. */
+  MYERS('M'),
+
+  /** Histogram diff, falling back to Myers for regions with many repeated elements. */
+  HISTOGRAM('H'),
+
+  /** Histogram diff without fallback; never degrades to quadratic time, but may be coarser. */
+  HISTOGRAM_WITHOUT_FALLBACK('W'),
+
+  /**
+   * Trims the elements common to the start and end of both sides, and reports everything in
+   * between as a single edit.
+   *
+   * <p>Linear in the size of the input, for generated files whose differences nobody reads in
+   * detail. No intraline differences are computed with this algorithm.
+   */
+  PREFIX_SUFFIX('P');
+
+  private final char code;
+
+  DiffAlgorithm(char code) {
+    this.code = code;
+  }
+
+  char getCode() {
+    return code;
+  }
+
+  static DiffAlgorithm forCode(char code) {
+    for (DiffAlgorithm a : values()) {
+      if (a.code == code) {
+        return a;
+      }
+    }
+    return null;
+  }
+
+  org.eclipse.jgit.diff.DiffAlgorithm newInstance() {
+    switch (this) {
+      case MYERS:
+        return MyersDiff.INSTANCE;
+      case HISTOGRAM:
+        return new HistogramDiff();
+      case HISTOGRAM_WITHOUT_FALLBACK:
+        HistogramDiff histogramDiff = new HistogramDiff();
+        histogramDiff.setFallbackAlgorithm(null);
+        return histogramDiff;
+      case PREFIX_SUFFIX:
+      default:
+        return PrefixSuffixDiff.INSTANCE;
+    }
+  }
+
+  private static class PrefixSuffixDiff extends org.eclipse.jgit.diff.DiffAlgorithm {
+    static final PrefixSuffixDiff INSTANCE = new PrefixSuffixDiff();
+
+    @Override
+    public <S extends Sequence> EditList diffNonCommon(
+        SequenceComparator<? super S> cmp, S a, S b) {
+      // Only called with the common start and end already removed.
+      return EditList.singleton(new Edit(0, a.size(), 0, b.size()));
+    }
+  }
+}
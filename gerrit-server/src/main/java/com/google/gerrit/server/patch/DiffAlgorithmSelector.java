@@ -0,0 +1,122 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.RepositoryConfig;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Selects the {@link DiffAlgorithm} of a project and its files. */
+@Singleton
+class DiffAlgorithmSelector {
+  private static final Logger log = LoggerFactory.getLogger(DiffAlgorithmSelector.class);
+
+  private final RepositoryConfig repositoryConfig;
+  private final GitRepositoryManager repoManager;
+  private final Map<Project.NameKey, Predicate<String>> generatedFiles = new ConcurrentHashMap<>();
+
+  @Inject
+  DiffAlgorithmSelector(RepositoryConfig repositoryConfig, GitRepositoryManager repoManager) {
+    this.repositoryConfig = repositoryConfig;
+    this.repoManager = repoManager;
+    for (String p : repositoryConfig.getAllGeneratedFiles()) {
+      if (p.startsWith("^") && compile(p) == null) {
+        log.warn("Ignoring invalid repository.generatedFile pattern " + p);
+      }
+    }
+  }
+
+  /**
+   * @return algorithm for the file list of commits in the project; without one configured for the
+   *     project, the {@code diff.algorithm} of its repository, which inherits the server's git
+   *     configuration.
+   */
+  DiffAlgorithm forFiles(Project.NameKey project) {
+    DiffAlgorithm a = repositoryConfig.getDiffAlgorithm(project);
+    if (a != null) {
+      return a;
+    }
+    try (Repository repo = repoManager.openRepository(project)) {
+      SupportedAlgorithm s = repo.getConfig().get(DiffConfig.KEY).getDiffAlgorithm();
+      return s == SupportedAlgorithm.MYERS ? DiffAlgorithm.MYERS : DiffAlgorithm.HISTOGRAM;
+    } catch (RepositoryNotFoundException e) {
+      return DiffAlgorithm.HISTOGRAM;
+    } catch (IOException | IllegalArgumentException e) {
+      log.warn("Cannot read diff.algorithm of " + project, e);
+      return DiffAlgorithm.HISTOGRAM;
+    }
+  }
+
+  /** @return algorithm for the intraline differences of a file in the project. */
+  DiffAlgorithm forIntraline(Project.NameKey project, String path) {
+    if (generatedFiles(project).test(path)) {
+      return DiffAlgorithm.PREFIX_SUFFIX;
+    }
+    DiffAlgorithm a = repositoryConfig.getDiffAlgorithm(project);
+    return a != null ? a : DiffAlgorithm.MYERS;
+  }
+
+  /**
+   * @return predicate on file paths that matches the generated files of the project, which are
+   *     diffed with {@link DiffAlgorithm#PREFIX_SUFFIX}.
+   */
+  Predicate<String> generatedFiles(Project.NameKey project) {
+    return generatedFiles.computeIfAbsent(project, this::newGeneratedFiles);
+  }
+
+  private Predicate<String> newGeneratedFiles(Project.NameKey project) {
+    List<Predicate<String>> matchers = new ArrayList<>();
+    for (String p : repositoryConfig.getGeneratedFiles(project)) {
+      if (p.startsWith("^")) {
+        Pattern pattern = compile(p);
+        if (pattern != null) {
+          matchers.add(path -> pattern.matcher(path).matches());
+        }
+      } else {
+        matchers.add(path -> path.endsWith(p));
+      }
+    }
+    if (matchers.isEmpty()) {
+      return path -> false;
+    }
+    return path -> path != null && matchers.stream().anyMatch(m -> m.test(path));
+  }
+
+  @Nullable
+  private static Pattern compile(String p) {
+    try {
+      return Pattern.compile(p);
+    } catch (PatternSyntaxException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+@Singleton
+class DiffMetrics {
+  /** Latency of computing the edits of a single file, including files that time out. */
+  final Timer1<DiffAlgorithm> fileDiffLatency;
+
+  /** Latency of computing the intraline edits of a single file. */
+  final Timer1<DiffAlgorithm> intralineDiffLatency;
+
+  @Inject
+  DiffMetrics(MetricMaker metrics) {
+    Field<DiffAlgorithm> algorithm = Field.ofEnum(DiffAlgorithm.class, "algorithm");
+
+    fileDiffLatency =
+        metrics.newTimer(
+            "diff/file_latency",
+            new Description("Latency of computing the edits of a file by algorithm")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            algorithm);
+
+    intralineDiffLatency =
+        metrics.newTimer(
+            "diff/intraline_latency",
+            new Description("Latency of computing the intraline edits of a file by algorithm")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            algorithm);
+  }
+}
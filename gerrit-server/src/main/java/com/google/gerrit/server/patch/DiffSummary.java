@@ -21,12 +21,15 @@ import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 
 import com.google.gerrit.server.query.change.ChangeData.ChangedLines;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -51,18 +54,40 @@ public class DiffSummary implements Serializable {
     return new ChangedLines(insertions, deletions);
   }
 
-  private void writeObject(ObjectOutputStream output) throws IOException {
+  private DiffSummary() {}
+
+  /** Write the encoding shared by Java serialization and the {@code diff_summary} disk cache. */
+  void writeTo(OutputStream output) throws IOException {
     writeVarInt32(output, insertions);
     writeVarInt32(output, deletions);
     writeVarInt32(output, paths.length);
-    try (DeflaterOutputStream out = new DeflaterOutputStream(output)) {
+    Deflater def = new Deflater();
+    try {
+      DeflaterOutputStream out = new DeflaterOutputStream(output, def);
       for (String p : paths) {
         writeString(out, p);
       }
+      out.finish();
+    } finally {
+      def.end();
     }
   }
 
+  static DiffSummary readFrom(InputStream input) throws IOException {
+    DiffSummary d = new DiffSummary();
+    d.readFields(input);
+    return d;
+  }
+
+  private void writeObject(ObjectOutputStream output) throws IOException {
+    writeTo(output);
+  }
+
   private void readObject(ObjectInputStream input) throws IOException {
+    readFields(input);
+  }
+
+  private void readFields(InputStream input) throws IOException {
     insertions = readVarInt32(input);
     deletions = readVarInt32(input);
     paths = new String[readVarInt32(input)];
@@ -14,22 +14,27 @@
 
 package com.google.gerrit.server.patch;
 
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readCanBeNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeCanBeNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
 
 import com.google.common.base.Preconditions;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Objects;
 import org.eclipse.jgit.lib.ObjectId;
 
 public class DiffSummaryKey implements Serializable {
-  public static final long serialVersionUID = 1L;
+  public static final long serialVersionUID = 2L;
 
   /** see PatchListKey#oldId */
   private transient ObjectId oldId;
@@ -40,27 +45,51 @@ public class DiffSummaryKey implements Serializable {
   private transient ObjectId newId;
   private transient Whitespace whitespace;
 
+  /** see PatchListKey#diffAlgorithm */
+  private transient DiffAlgorithm diffAlgorithm;
+
   public static DiffSummaryKey fromPatchListKey(PatchListKey plk) {
     Preconditions.checkArgument(plk.getAlgorithm() == PatchListKey.Algorithm.OPTIMIZED_DIFF);
     return new DiffSummaryKey(
-        plk.getOldId(), plk.getParentNum(), plk.getNewId(), plk.getWhitespace());
+        plk.getOldId(),
+        plk.getParentNum(),
+        plk.getNewId(),
+        plk.getWhitespace(),
+        plk.getDiffAlgorithm());
   }
 
-  private DiffSummaryKey(ObjectId oldId, Integer parentNum, ObjectId newId, Whitespace whitespace) {
+  private DiffSummaryKey(
+      ObjectId oldId,
+      Integer parentNum,
+      ObjectId newId,
+      Whitespace whitespace,
+      @Nullable DiffAlgorithm diffAlgorithm) {
     this.oldId = oldId;
     this.parentNum = parentNum;
     this.newId = newId;
     this.whitespace = whitespace;
+    this.diffAlgorithm = diffAlgorithm;
+  }
+
+  /** @return copy of this key that diffs files with the given algorithm. */
+  DiffSummaryKey withDiffAlgorithm(DiffAlgorithm diffAlgorithm) {
+    return new DiffSummaryKey(oldId, parentNum, newId, whitespace, diffAlgorithm);
+  }
+
+  /** Algorithm for the file diffs, or null to use the one configured for the project. */
+  @Nullable
+  DiffAlgorithm getDiffAlgorithm() {
+    return diffAlgorithm;
   }
 
   PatchListKey toPatchListKey() {
     return new PatchListKey(
-        oldId, parentNum, newId, whitespace, PatchListKey.Algorithm.OPTIMIZED_DIFF);
+        oldId, parentNum, newId, whitespace, PatchListKey.Algorithm.OPTIMIZED_DIFF, diffAlgorithm);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(oldId, parentNum, newId, whitespace);
+    return Objects.hash(oldId, parentNum, newId, whitespace, diffAlgorithm);
   }
 
   @Override
@@ -70,7 +99,8 @@ public class DiffSummaryKey implements Serializable {
       return Objects.equals(oldId, k.oldId)
           && Objects.equals(parentNum, k.parentNum)
           && Objects.equals(newId, k.newId)
-          && whitespace == k.whitespace;
+          && whitespace == k.whitespace
+          && diffAlgorithm == k.diffAlgorithm;
     }
     return false;
   }
@@ -88,10 +118,37 @@ public class DiffSummaryKey implements Serializable {
       n.append(" ");
     }
     n.append(whitespace.name());
+    if (diffAlgorithm != null) {
+      n.append(" ");
+      n.append(diffAlgorithm.name());
+    }
     n.append("]");
     return n.toString();
   }
 
+  /** Write the compact encoding used by the {@code diff_summary} disk cache. */
+  void writeTo(OutputStream out) throws IOException {
+    writeCanBeNull(out, oldId);
+    writeVarInt32(out, parentNum == null ? 0 : parentNum);
+    writeNotNull(out, newId);
+    writeVarInt32(out, PatchListKey.WHITESPACE_TYPES.get(whitespace));
+    writeVarInt32(out, diffAlgorithm != null ? diffAlgorithm.getCode() : 0);
+  }
+
+  static DiffSummaryKey readFrom(InputStream in) throws IOException {
+    ObjectId oldId = readCanBeNull(in);
+    int n = readVarInt32(in);
+    ObjectId newId = readNotNull(in);
+    char t = (char) readVarInt32(in);
+    Whitespace whitespace = PatchListKey.WHITESPACE_TYPES.inverse().get(t);
+    if (whitespace == null) {
+      throw new IOException("Invalid whitespace type code: " + t);
+    }
+    DiffAlgorithm diffAlgorithm = PatchListKey.readDiffAlgorithm((char) readVarInt32(in));
+    return new DiffSummaryKey(
+        oldId, n == 0 ? null : Integer.valueOf(n), newId, whitespace, diffAlgorithm);
+  }
+
   private void writeObject(ObjectOutputStream out) throws IOException {
     writeCanBeNull(out, oldId);
     out.writeInt(parentNum == null ? 0 : parentNum);
@@ -101,6 +158,7 @@ public class DiffSummaryKey implements Serializable {
       throw new IOException("Invalid whitespace type: " + whitespace);
     }
     out.writeChar(c);
+    out.writeChar(diffAlgorithm != null ? diffAlgorithm.getCode() : 0);
   }
 
   private void readObject(ObjectInputStream in) throws IOException {
@@ -113,5 +171,6 @@ public class DiffSummaryKey implements Serializable {
     if (whitespace == null) {
       throw new IOException("Invalid whitespace type code: " + t);
     }
+    diffAlgorithm = PatchListKey.readDiffAlgorithm(in.readChar());
   }
 }
@@ -78,7 +78,10 @@ public class IntraLineDiff implements Serializable {
     return deepCopyEdits(edits);
   }
 
-  private void writeObject(ObjectOutputStream out) throws IOException {
+  private IntraLineDiff() {}
+
+  /** Write the encoding shared by Java serialization and the {@code diff_intraline} disk cache. */
+  void writeTo(OutputStream out) throws IOException {
     writeEnum(out, status);
     writeVarInt32(out, edits.size());
     for (Edit e : edits) {
@@ -96,7 +99,21 @@ public class IntraLineDiff implements Serializable {
     }
   }
 
+  static IntraLineDiff readFrom(InputStream in) throws IOException {
+    IntraLineDiff d = new IntraLineDiff();
+    d.readFields(in);
+    return d;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    writeTo(out);
+  }
+
   private void readObject(ObjectInputStream in) throws IOException {
+    readFields(in);
+  }
+
+  private void readFields(InputStream in) throws IOException {
     status = readEnum(in, Status.values());
     int editCount = readVarInt32(in);
     Edit[] editArray = new Edit[editCount];
@@ -14,17 +14,30 @@
 
 package com.google.gerrit.server.patch;
 
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
+
 import com.google.auto.value.AutoValue;
 import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import org.eclipse.jgit.lib.ObjectId;
 
 @AutoValue
 public abstract class IntraLineDiffKey implements Serializable {
-  public static final long serialVersionUID = 8L;
+  public static final long serialVersionUID = 9L;
 
   public static IntraLineDiffKey create(ObjectId aId, ObjectId bId, Whitespace whitespace) {
-    return new AutoValue_IntraLineDiffKey(aId, bId, whitespace);
+    return create(aId, bId, whitespace, DiffAlgorithm.MYERS);
+  }
+
+  public static IntraLineDiffKey create(
+      ObjectId aId, ObjectId bId, Whitespace whitespace, DiffAlgorithm diffAlgorithm) {
+    return new AutoValue_IntraLineDiffKey(aId, bId, whitespace, diffAlgorithm);
   }
 
   public abstract ObjectId getBlobA();
@@ -32,4 +45,30 @@ public abstract class IntraLineDiffKey implements Serializable {
   public abstract ObjectId getBlobB();
 
   public abstract Whitespace getWhitespace();
+
+  public abstract DiffAlgorithm getDiffAlgorithm();
+
+  /** Write the compact encoding used by the {@code diff_intraline} disk cache. */
+  void writeTo(OutputStream out) throws IOException {
+    writeNotNull(out, getBlobA());
+    writeNotNull(out, getBlobB());
+    writeVarInt32(out, PatchListKey.WHITESPACE_TYPES.get(getWhitespace()));
+    writeVarInt32(out, getDiffAlgorithm().getCode());
+  }
+
+  static IntraLineDiffKey readFrom(InputStream in) throws IOException {
+    ObjectId aId = readNotNull(in);
+    ObjectId bId = readNotNull(in);
+    char t = (char) readVarInt32(in);
+    Whitespace whitespace = PatchListKey.WHITESPACE_TYPES.inverse().get(t);
+    if (whitespace == null) {
+      throw new IOException("Invalid whitespace type code: " + t);
+    }
+    char a = (char) readVarInt32(in);
+    DiffAlgorithm diffAlgorithm = DiffAlgorithm.forCode(a);
+    if (diffAlgorithm == null) {
+      throw new IOException("Invalid diff algorithm code: " + a);
+    }
+    return create(aId, bId, whitespace, diffAlgorithm);
+  }
 }
@@ -17,6 +17,7 @@ package com.google.gerrit.server.patch;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.config.ConfigUtil;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.inject.Inject;
@@ -31,7 +32,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 import org.eclipse.jgit.diff.Edit;
-import org.eclipse.jgit.diff.MyersDiff;
 import org.eclipse.jgit.diff.ReplaceEdit;
 import org.eclipse.jgit.lib.Config;
 import org.slf4j.Logger;
@@ -50,6 +50,7 @@ class IntraLineLoader implements Callable<IntraLineDiff> {
   private static final Pattern CONTROL_BLOCK_START_RE = Pattern.compile("[{:][ \\t]*$");
 
   private final ExecutorService diffExecutor;
+  private final DiffMetrics metrics;
   private final long timeoutMillis;
   private final IntraLineDiffKey key;
   private final IntraLineDiffArgs args;
@@ -57,10 +58,12 @@ class IntraLineLoader implements Callable<IntraLineDiff> {
   @Inject
   IntraLineLoader(
       @DiffExecutor ExecutorService diffExecutor,
+      DiffMetrics metrics,
       @GerritServerConfig Config cfg,
       @Assisted IntraLineDiffKey key,
       @Assisted IntraLineDiffArgs args) {
     this.diffExecutor = diffExecutor;
+    this.metrics = metrics;
     timeoutMillis =
         ConfigUtil.getTimeUnit(
             cfg,
@@ -75,9 +78,18 @@ class IntraLineLoader implements Callable<IntraLineDiff> {
 
   @Override
   public IntraLineDiff call() throws Exception {
+    DiffAlgorithm algorithm = key.getDiffAlgorithm();
+    if (algorithm == DiffAlgorithm.PREFIX_SUFFIX) {
+      return new IntraLineDiff(IntraLineDiff.Status.DISABLED);
+    }
     Future<IntraLineDiff> result =
         diffExecutor.submit(
-            () -> IntraLineLoader.compute(args.aText(), args.bText(), args.edits()));
+            () -> {
+              try (Timer1.Context ctx = metrics.intralineDiffLatency.start(algorithm)) {
+                return IntraLineLoader.compute(
+                    args.aText(), args.bText(), args.edits(), algorithm);
+              }
+            });
     try {
       return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
     } catch (InterruptedException | TimeoutException e) {
@@ -106,6 +118,13 @@ class IntraLineLoader implements Callable<IntraLineDiff> {
 
   static IntraLineDiff compute(Text aText, Text bText, ImmutableList<Edit> immutableEdits)
       throws Exception {
+    return compute(aText, bText, immutableEdits, DiffAlgorithm.MYERS);
+  }
+
+  static IntraLineDiff compute(
+      Text aText, Text bText, ImmutableList<Edit> immutableEdits, DiffAlgorithm algorithm)
+      throws Exception {
+    org.eclipse.jgit.diff.DiffAlgorithm diffAlgorithm = algorithm.newInstance();
     List<Edit> edits = new ArrayList<>(immutableEdits);
     combineLineEdits(edits, aText, bText);
 
@@ -117,7 +136,7 @@ class IntraLineLoader implements Callable<IntraLineDiff> {
         CharText b = new CharText(bText, e.getBeginB(), e.getEndB());
         CharTextComparator cmp = new CharTextComparator();
 
-        List<Edit> wordEdits = MyersDiff.INSTANCE.diff(cmp, a, b);
+        List<Edit> wordEdits = diffAlgorithm.diff(cmp, a, b);
 
         // Combine edits that are really close together. If they are
         // just a few characters apart we tend to get better results
@@ -30,8 +30,10 @@ import com.google.gerrit.reviewdb.client.PatchSet;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -170,7 +172,10 @@ public class PatchList implements Serializable {
     return Arrays.binarySearch(patches, 0, patches.length, want, PATCH_CMP);
   }
 
-  private void writeObject(ObjectOutputStream output) throws IOException {
+  private PatchList() {}
+
+  /** Write the encoding shared by Java serialization and the {@code diff} disk cache. */
+  void writeTo(OutputStream output) throws IOException {
     final ByteArrayOutputStream buf = new ByteArrayOutputStream();
     try (DeflaterOutputStream out = new DeflaterOutputStream(buf)) {
       writeCanBeNull(out, oldId);
@@ -187,7 +192,21 @@ public class PatchList implements Serializable {
     writeBytes(output, buf.toByteArray());
   }
 
+  static PatchList readFrom(InputStream input) throws IOException {
+    PatchList p = new PatchList();
+    p.readFields(input);
+    return p;
+  }
+
+  private void writeObject(ObjectOutputStream output) throws IOException {
+    writeTo(output);
+  }
+
   private void readObject(ObjectInputStream input) throws IOException {
+    readFields(input);
+  }
+
+  private void readFields(InputStream input) throws IOException {
     final ByteArrayInputStream buf = new ByteArrayInputStream(readBytes(input));
     try (InflaterInputStream in = new InflaterInputStream(buf)) {
       oldId = readCanBeNull(in);
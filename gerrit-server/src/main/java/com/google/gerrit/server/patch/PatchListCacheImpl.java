@@ -24,6 +24,7 @@ import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
 import com.google.gerrit.reviewdb.client.Change;
 import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.cache.BinaryCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.inject.Inject;
@@ -48,16 +49,28 @@ public class PatchListCacheImpl implements PatchListCache {
       protected void configure() {
         factory(PatchListLoader.Factory.class);
         persist(FILE_NAME, PatchListKey.class, PatchList.class)
+            .keySerializer(BinaryCacheSerializer.of(PatchListKey::writeTo, PatchListKey::readFrom))
+            .valueSerializer(BinaryCacheSerializer.of(PatchList::writeTo, PatchList::readFrom))
+            .version(1)
             .maximumWeight(10 << 20)
             .weigher(PatchListWeigher.class);
 
         factory(IntraLineLoader.Factory.class);
         persist(INTRA_NAME, IntraLineDiffKey.class, IntraLineDiff.class)
+            .keySerializer(
+                BinaryCacheSerializer.of(IntraLineDiffKey::writeTo, IntraLineDiffKey::readFrom))
+            .valueSerializer(
+                BinaryCacheSerializer.of(IntraLineDiff::writeTo, IntraLineDiff::readFrom))
+            .version(1)
             .maximumWeight(10 << 20)
             .weigher(IntraLineWeigher.class);
 
         factory(DiffSummaryLoader.Factory.class);
         persist(DIFF_SUMMARY, DiffSummaryKey.class, DiffSummary.class)
+            .keySerializer(
+                BinaryCacheSerializer.of(DiffSummaryKey::writeTo, DiffSummaryKey::readFrom))
+            .valueSerializer(BinaryCacheSerializer.of(DiffSummary::writeTo, DiffSummary::readFrom))
+            .version(1)
             .maximumWeight(10 << 20)
             .weigher(DiffSummaryWeigher.class)
             .diskLimit(1 << 30);
@@ -74,6 +87,7 @@ public class PatchListCacheImpl implements PatchListCache {
   private final PatchListLoader.Factory fileLoaderFactory;
   private final IntraLineLoader.Factory intraLoaderFactory;
   private final DiffSummaryLoader.Factory diffSummaryLoaderFactory;
+  private final DiffAlgorithmSelector diffAlgorithmSelector;
   private final boolean computeIntraline;
 
   @Inject
@@ -84,6 +98,7 @@ public class PatchListCacheImpl implements PatchListCache {
       PatchListLoader.Factory fileLoaderFactory,
       IntraLineLoader.Factory intraLoaderFactory,
       DiffSummaryLoader.Factory diffSummaryLoaderFactory,
+      DiffAlgorithmSelector diffAlgorithmSelector,
       @GerritServerConfig Config cfg) {
     this.fileCache = fileCache;
     this.intraCache = intraCache;
@@ -91,6 +106,7 @@ public class PatchListCacheImpl implements PatchListCache {
     this.fileLoaderFactory = fileLoaderFactory;
     this.intraLoaderFactory = intraLoaderFactory;
     this.diffSummaryLoaderFactory = diffSummaryLoaderFactory;
+    this.diffAlgorithmSelector = diffAlgorithmSelector;
 
     this.computeIntraline =
         cfg.getBoolean(
@@ -100,6 +116,9 @@ public class PatchListCacheImpl implements PatchListCache {
   @Override
   public PatchList get(PatchListKey key, Project.NameKey project)
       throws PatchListNotAvailableException {
+    if (key.getDiffAlgorithm() == null) {
+      key = key.withDiffAlgorithm(diffAlgorithmSelector.forFiles(project));
+    }
     try {
       PatchList pl = fileCache.get(key, fileLoaderFactory.create(key, project));
       if (pl instanceof LargeObjectTombstone) {
@@ -176,6 +195,9 @@ public class PatchListCacheImpl implements PatchListCache {
   @Override
   public DiffSummary getDiffSummary(DiffSummaryKey key, Project.NameKey project)
       throws PatchListNotAvailableException {
+    if (key.getDiffAlgorithm() == null) {
+      key = key.withDiffAlgorithm(diffAlgorithmSelector.forFiles(project));
+    }
     try {
       return diffSummaryCache.get(key, diffSummaryLoaderFactory.create(key, project));
     } catch (ExecutionException e) {
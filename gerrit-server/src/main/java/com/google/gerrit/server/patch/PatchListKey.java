@@ -15,6 +15,8 @@
 package com.google.gerrit.server.patch;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readCanBeNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeCanBeNull;
@@ -24,15 +26,17 @@ import com.google.common.collect.ImmutableBiMap;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Objects;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.ObjectId;
 
 public class PatchListKey implements Serializable {
-  public static final long serialVersionUID = 28L;
+  public static final long serialVersionUID = 29L;
 
   // TODO(aliceks): Get rid of this enum and the parameter in the PatchListKey as we only use one of
   // its values.
@@ -101,6 +105,9 @@ public class PatchListKey implements Serializable {
   private transient Whitespace whitespace;
   private transient Algorithm algorithm;
 
+  /** Algorithm for the file diffs; null for the algorithm configured for the project. */
+  private transient DiffAlgorithm diffAlgorithm;
+
   private PatchListKey(AnyObjectId a, AnyObjectId b, Whitespace ws, Algorithm algorithm) {
     oldId = a != null ? a.copy() : null;
     newId = b.copy();
@@ -121,12 +128,19 @@ public class PatchListKey implements Serializable {
       Integer parentNum,
       ObjectId newId,
       Whitespace whitespace,
-      Algorithm algorithm) {
+      Algorithm algorithm,
+      @Nullable DiffAlgorithm diffAlgorithm) {
     this.oldId = oldId;
     this.parentNum = parentNum;
     this.newId = newId;
     this.whitespace = whitespace;
     this.algorithm = algorithm;
+    this.diffAlgorithm = diffAlgorithm;
+  }
+
+  /** @return copy of this key that diffs files with the given algorithm. */
+  public PatchListKey withDiffAlgorithm(DiffAlgorithm diffAlgorithm) {
+    return new PatchListKey(oldId, parentNum, newId, whitespace, algorithm, diffAlgorithm);
   }
 
   /** Old side commit, or null to assume ancestor or combined merge. */
@@ -154,9 +168,15 @@ public class PatchListKey implements Serializable {
     return algorithm;
   }
 
+  /** Algorithm for the file diffs, or null to use the one configured for the project. */
+  @Nullable
+  public DiffAlgorithm getDiffAlgorithm() {
+    return diffAlgorithm;
+  }
+
   @Override
   public int hashCode() {
-    return Objects.hash(oldId, parentNum, newId, whitespace, algorithm);
+    return Objects.hash(oldId, parentNum, newId, whitespace, algorithm, diffAlgorithm);
   }
 
   @Override
@@ -167,7 +187,8 @@ public class PatchListKey implements Serializable {
           && Objects.equals(parentNum, k.parentNum)
           && Objects.equals(newId, k.newId)
           && whitespace == k.whitespace
-          && algorithm == k.algorithm;
+          && algorithm == k.algorithm
+          && diffAlgorithm == k.diffAlgorithm;
     }
     return false;
   }
@@ -187,10 +208,55 @@ public class PatchListKey implements Serializable {
     n.append(whitespace.name());
     n.append(" ");
     n.append(algorithm.name());
+    if (diffAlgorithm != null) {
+      n.append(" ");
+      n.append(diffAlgorithm.name());
+    }
     n.append("]");
     return n.toString();
   }
 
+  /** Write the compact encoding used by the {@code diff} disk cache. */
+  void writeTo(OutputStream out) throws IOException {
+    writeCanBeNull(out, oldId);
+    writeVarInt32(out, parentNum == null ? 0 : parentNum);
+    writeNotNull(out, newId);
+    writeVarInt32(out, WHITESPACE_TYPES.get(whitespace));
+    writeVarInt32(out, ALGORITHM_TYPES.get(algorithm));
+    writeVarInt32(out, diffAlgorithm != null ? diffAlgorithm.getCode() : 0);
+  }
+
+  static PatchListKey readFrom(InputStream in) throws IOException {
+    ObjectId oldId = readCanBeNull(in);
+    int n = readVarInt32(in);
+    ObjectId newId = readNotNull(in);
+    char t = (char) readVarInt32(in);
+    Whitespace whitespace = WHITESPACE_TYPES.inverse().get(t);
+    if (whitespace == null) {
+      throw new IOException("Invalid whitespace type code: " + t);
+    }
+    char a = (char) readVarInt32(in);
+    Algorithm algorithm = ALGORITHM_TYPES.inverse().get(a);
+    if (algorithm == null) {
+      throw new IOException("Invalid algorithm code: " + a);
+    }
+    DiffAlgorithm diffAlgorithm = readDiffAlgorithm((char) readVarInt32(in));
+    return new PatchListKey(
+        oldId, n == 0 ? null : Integer.valueOf(n), newId, whitespace, algorithm, diffAlgorithm);
+  }
+
+  @Nullable
+  static DiffAlgorithm readDiffAlgorithm(char c) throws IOException {
+    if (c == 0) {
+      return null;
+    }
+    DiffAlgorithm diffAlgorithm = DiffAlgorithm.forCode(c);
+    if (diffAlgorithm == null) {
+      throw new IOException("Invalid diff algorithm code: " + c);
+    }
+    return diffAlgorithm;
+  }
+
   private void writeObject(ObjectOutputStream out) throws IOException {
     writeCanBeNull(out, oldId);
     out.writeInt(parentNum == null ? 0 : parentNum);
@@ -201,6 +267,7 @@ public class PatchListKey implements Serializable {
     }
     out.writeChar(c);
     out.writeChar(ALGORITHM_TYPES.get(algorithm));
+    out.writeChar(diffAlgorithm != null ? diffAlgorithm.getCode() : 0);
   }
 
   private void readObject(ObjectInputStream in) throws IOException {
@@ -215,5 +282,6 @@ public class PatchListKey implements Serializable {
     }
     char algorithmCharacter = in.readChar();
     algorithm = ALGORITHM_TYPES.inverse().get(algorithmCharacter);
+    diffAlgorithm = readDiffAlgorithm(in.readChar());
   }
 }
@@ -28,6 +28,7 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.reviewdb.client.Patch;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.ConfigUtil;
@@ -39,17 +40,22 @@ import com.google.gerrit.server.patch.EditTransformer.ContextAwareEdit;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.DiffFormatter;
@@ -89,9 +95,13 @@ public class PatchListLoader implements Callable<PatchList> {
   private final ThreeWayMergeStrategy mergeStrategy;
   private final ExecutorService diffExecutor;
   private final AutoMerger autoMerger;
+  private final DiffMetrics metrics;
   private final PatchListKey key;
   private final Project.NameKey project;
+  private final DiffAlgorithm algorithm;
+  private final Predicate<String> generatedFiles;
   private final long timeoutMillis;
+  private final int threads;
   private final boolean save;
 
   @Inject
@@ -101,6 +111,8 @@ public class PatchListLoader implements Callable<PatchList> {
       @GerritServerConfig Config cfg,
       @DiffExecutor ExecutorService de,
       AutoMerger am,
+      DiffAlgorithmSelector das,
+      DiffMetrics dm,
       @Assisted PatchListKey k,
       @Assisted Project.NameKey p) {
     repoManager = mgr;
@@ -108,8 +120,11 @@ public class PatchListLoader implements Callable<PatchList> {
     mergeStrategy = MergeUtil.getMergeStrategy(cfg);
     diffExecutor = de;
     autoMerger = am;
+    metrics = dm;
     key = k;
     project = p;
+    algorithm = k.getDiffAlgorithm() != null ? k.getDiffAlgorithm() : das.forFiles(p);
+    generatedFiles = das.generatedFiles(p);
     timeoutMillis =
         ConfigUtil.getTimeUnit(
             cfg,
@@ -118,6 +133,7 @@ public class PatchListLoader implements Callable<PatchList> {
             "timeout",
             TimeUnit.MILLISECONDS.convert(5, TimeUnit.SECONDS),
             TimeUnit.MILLISECONDS);
+    threads = cfg.getInt("cache", PatchListCacheImpl.FILE_NAME, "threads", 1);
     save = AutoMerger.cacheAutomerge(cfg);
   }
 
@@ -208,11 +224,18 @@ public class PatchListLoader implements Callable<PatchList> {
                 b,
                 comparisonType));
       }
-      for (DiffEntry diffEntry : diffEntries) {
+      List<FileHeader> fileHeaders =
+          threads > 1 && diffEntries.size() > 1
+              ? toFileHeaders(repo, ins, cmp, df, diffEntries)
+              : null;
+      for (int i = 0; i < diffEntries.size(); i++) {
+        DiffEntry diffEntry = diffEntries.get(i);
+        FileHeader fileHeader =
+            fileHeaders != null ? fileHeaders.get(i) : toFileHeader(key.getNewId(), df, diffEntry);
         Set<ContextAwareEdit> editsDueToRebase =
             getEditsDueToRebase(editsDueToRebasePerFilePath, diffEntry);
         Optional<PatchListEntry> patchListEntry =
-            getPatchListEntry(reader, df, diffEntry, aTree, bTree, editsDueToRebase);
+            getPatchListEntry(reader, fileHeader, diffEntry, aTree, bTree, editsDueToRebase);
         patchListEntry.ifPresent(entries::add);
       }
       return new PatchList(
@@ -380,13 +403,12 @@ public class PatchListLoader implements Callable<PatchList> {
 
   private Optional<PatchListEntry> getPatchListEntry(
       ObjectReader objectReader,
-      DiffFormatter diffFormatter,
+      FileHeader fileHeader,
       DiffEntry diffEntry,
       RevTree treeA,
       RevTree treeB,
       Set<ContextAwareEdit> editsDueToRebase)
       throws IOException {
-    FileHeader fileHeader = toFileHeader(key.getNewId(), diffFormatter, diffEntry);
     long oldSize = getFileSize(objectReader, diffEntry.getOldMode(), diffEntry.getOldPath(), treeA);
     long newSize = getFileSize(objectReader, diffEntry.getNewMode(), diffEntry.getNewPath(), treeB);
     Set<Edit> contentEditsDueToRebase = getContentEdits(editsDueToRebase);
@@ -444,26 +466,14 @@ public class PatchListLoader implements Callable<PatchList> {
         diffExecutor.submit(
             () -> {
               synchronized (diffEntry) {
-                return diffFormatter.toFileHeader(diffEntry);
+                return toFileHeader(diffFormatter, diffEntry);
               }
             });
 
     try {
       return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
     } catch (InterruptedException | TimeoutException e) {
-      log.warn(
-          timeoutMillis
-              + " ms timeout reached for Diff loader"
-              + " in project "
-              + project
-              + " on commit "
-              + commitB.name()
-              + " on path "
-              + diffEntry.getNewPath()
-              + " comparing "
-              + diffEntry.getOldId().name()
-              + ".."
-              + diffEntry.getNewId().name());
+      logTimeout(commitB, diffEntry);
       result.cancel(true);
       synchronized (diffEntry) {
         return toFileHeaderWithoutMyersDiff(diffFormatter, diffEntry);
@@ -476,11 +486,145 @@ public class PatchListLoader implements Callable<PatchList> {
     }
   }
 
+  /**
+   * Compute the file headers of all entries concurrently on {@link #threads} diff threads.
+   *
+   * <p>Each thread has its own {@code DiffFormatter} and {@code ObjectReader}, which it uses for
+   * all files it takes from the shared list. All files share a single deadline of {@link
+   * #timeoutMillis}. After the deadline, the diff threads compute the files they take next with
+   * {@link #toFileHeaderWithoutMyersDiff(DiffFormatter, DiffEntry)}, and the calling thread helps
+   * them with the files nobody took yet. Only files that were still in progress at the deadline are
+   * computed again on the calling thread, instead of waiting for their Myers diff.
+   */
+  private List<FileHeader> toFileHeaders(
+      Repository repo,
+      ObjectInserter ins,
+      RawTextComparator cmp,
+      DiffFormatter diffFormatter,
+      List<DiffEntry> diffEntries)
+      throws IOException {
+    int n = diffEntries.size();
+    List<CompletableFuture<FileHeader>> results = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      results.add(new CompletableFuture<>());
+    }
+    AtomicInteger next = new AtomicInteger();
+    AtomicBoolean expired = new AtomicBoolean();
+    List<Future<?>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(threads, n); i++) {
+      workers.add(
+          diffExecutor.submit(
+              () -> {
+                try (ObjectReader reader = newConcurrentReader(repo, ins);
+                    DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+                  df.setReader(reader, repo.getConfig());
+                  df.setDiffComparator(cmp);
+                  for (int j = next.getAndIncrement(); j < n; j = next.getAndIncrement()) {
+                    DiffEntry diffEntry = diffEntries.get(j);
+                    try {
+                      results
+                          .get(j)
+                          .complete(
+                              expired.get()
+                                  ? toFileHeaderWithoutMyersDiff(df, diffEntry)
+                                  : toFileHeader(df, diffEntry));
+                    } catch (IOException | RuntimeException e) {
+                      results.get(j).completeExceptionally(e);
+                    }
+                  }
+                }
+                return null;
+              }));
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    int takenBeforeDeadline = n;
+    List<FileHeader> fileHeaders = new ArrayList<>(n);
+    try {
+      for (int i = 0; i < n; i++) {
+        CompletableFuture<FileHeader> result = results.get(i);
+        if (!expired.get()) {
+          try {
+            long wait = Math.max(deadline - System.nanoTime(), 0);
+            fileHeaders.add(result.get(wait, TimeUnit.NANOSECONDS));
+            continue;
+          } catch (TimeoutException e) {
+            // Files taken after this point are computed without the Myers fallback.
+            expired.set(true);
+            takenBeforeDeadline = next.get();
+          }
+        }
+        if (!result.isDone()) {
+          if (i < takenBeforeDeadline) {
+            logTimeout(key.getNewId(), diffEntries.get(i));
+            fileHeaders.add(toFileHeaderWithoutMyersDiff(diffFormatter, diffEntries.get(i)));
+            continue;
+          }
+          for (int j = next.getAndIncrement(); j < n; j = next.getAndIncrement()) {
+            DiffEntry diffEntry = diffEntries.get(j);
+            results.get(j).complete(toFileHeaderWithoutMyersDiff(diffFormatter, diffEntry));
+          }
+        }
+        fileHeaders.add(result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while diffing " + key.getNewId().name());
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e.getMessage(), e.getCause());
+    } finally {
+      next.set(n);
+      for (Future<?> worker : workers) {
+        worker.cancel(true);
+      }
+    }
+    return fileHeaders;
+  }
+
+  private FileHeader toFileHeader(DiffFormatter diffFormatter, DiffEntry diffEntry)
+      throws IOException {
+    DiffAlgorithm a = algorithmFor(diffEntry);
+    diffFormatter.setDiffAlgorithm(a.newInstance());
+    try (Timer1.Context ctx = metrics.fileDiffLatency.start(a)) {
+      return diffFormatter.toFileHeader(diffEntry);
+    }
+  }
+
+  private DiffAlgorithm algorithmFor(DiffEntry diffEntry) {
+    String path =
+        diffEntry.getChangeType() == DiffEntry.ChangeType.DELETE
+            ? diffEntry.getOldPath()
+            : diffEntry.getNewPath();
+    return generatedFiles.test(path) ? DiffAlgorithm.PREFIX_SUFFIX : algorithm;
+  }
+
+  private static ObjectReader newConcurrentReader(Repository repo, ObjectInserter ins) {
+    if (ins instanceof InMemoryInserter) {
+      return ((InMemoryInserter) ins).newConcurrentReader(repo);
+    }
+    return ins.newReader();
+  }
+
+  private void logTimeout(ObjectId commitB, DiffEntry diffEntry) {
+    log.warn(
+        timeoutMillis
+            + " ms timeout reached for Diff loader"
+            + " in project "
+            + project
+            + " on commit "
+            + commitB.name()
+            + " on path "
+            + diffEntry.getNewPath()
+            + " comparing "
+            + diffEntry.getOldId().name()
+            + ".."
+            + diffEntry.getNewId().name());
+  }
+
   private FileHeader toFileHeaderWithoutMyersDiff(DiffFormatter diffFormatter, DiffEntry diffEntry)
       throws IOException {
-    HistogramDiff histogramDiff = new HistogramDiff();
-    histogramDiff.setFallbackAlgorithm(null);
-    diffFormatter.setDiffAlgorithm(histogramDiff);
+    diffFormatter.setDiffAlgorithm(DiffAlgorithm.HISTOGRAM_WITHOUT_FALLBACK.newInstance());
     return diffFormatter.toFileHeader(diffEntry);
   }
 
@@ -76,14 +76,16 @@ class PatchScriptBuilder {
   private List<Edit> edits;
   private final FileTypeRegistry registry;
   private final PatchListCache patchListCache;
+  private final DiffAlgorithmSelector diffAlgorithmSelector;
   private int context;
 
   @Inject
-  PatchScriptBuilder(FileTypeRegistry ftr, PatchListCache plc) {
+  PatchScriptBuilder(FileTypeRegistry ftr, PatchListCache plc, DiffAlgorithmSelector das) {
     a = new Side();
     b = new Side();
     registry = ftr;
     patchListCache = plc;
+    diffAlgorithmSelector = das;
   }
 
   void setRepository(Repository r, Project.NameKey projectKey) {
@@ -141,7 +143,11 @@ class PatchScriptBuilder {
     } else if (diffPrefs.intralineDifference) {
       IntraLineDiff d =
           patchListCache.getIntraLineDiff(
-              IntraLineDiffKey.create(a.id, b.id, diffPrefs.ignoreWhitespace),
+              IntraLineDiffKey.create(
+                  a.id,
+                  b.id,
+                  diffPrefs.ignoreWhitespace,
+                  diffAlgorithmSelector.forIntraline(projectKey, b.path)),
               IntraLineDiffArgs.create(a.src, b.src, edits, projectKey, bId, b.path));
       if (d != null) {
         switch (d.getStatus()) {
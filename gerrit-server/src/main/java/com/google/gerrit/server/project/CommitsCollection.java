@@ -14,6 +14,8 @@
 
 package com.google.gerrit.server.project;
 
+import static java.util.stream.Collectors.toList;
+
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.extensions.restapi.ChildCollection;
 import com.google.gerrit.extensions.restapi.IdString;
@@ -22,6 +24,8 @@ import com.google.gerrit.extensions.restapi.RestView;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.change.IncludedInResolver;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.ReachabilityCache;
+import com.google.gerrit.server.git.ReachabilityIndex;
 import com.google.gerrit.server.git.VisibleRefFilter;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.InternalChangeQuery;
@@ -50,17 +54,20 @@ public class CommitsCollection implements ChildCollection<ProjectResource, Commi
   private final GitRepositoryManager repoManager;
   private final VisibleRefFilter.Factory refFilter;
   private final Provider<InternalChangeQuery> queryProvider;
+  private final ReachabilityCache reachabilityCache;
 
   @Inject
   public CommitsCollection(
       DynamicMap<RestView<CommitResource>> views,
       GitRepositoryManager repoManager,
       VisibleRefFilter.Factory refFilter,
-      Provider<InternalChangeQuery> queryProvider) {
+      Provider<InternalChangeQuery> queryProvider,
+      ReachabilityCache reachabilityCache) {
     this.views = views;
     this.repoManager = repoManager;
     this.refFilter = refFilter;
     this.queryProvider = queryProvider;
+    this.reachabilityCache = reachabilityCache;
   }
 
   @Override
@@ -121,7 +128,17 @@ public class CommitsCollection implements ChildCollection<ProjectResource, Commi
       ProjectState state, Repository repo, RevCommit commit, Map<String, Ref> refs) {
     try (RevWalk rw = new RevWalk(repo)) {
       refs = refFilter.create(state, repo).filter(refs, true);
-      return IncludedInResolver.includedInAny(repo, rw, commit, refs.values());
+      ReachabilityIndex index = reachabilityCache.get(state.getProject().getNameKey(), repo);
+      if (index == null) {
+        return IncludedInResolver.includedInAny(repo, rw, commit, refs.values());
+      }
+      if (index.isReachable(index.reachableFrom(refs.values()), commit)) {
+        return true;
+      }
+      // Change refs and symbolic refs are not in the index.
+      List<Ref> other =
+          refs.values().stream().filter(r -> !ReachabilityIndex.isIndexed(r)).collect(toList());
+      return IncludedInResolver.includedInAny(repo, rw, commit, other);
     } catch (IOException e) {
       log.error(
           String.format(
@@ -0,0 +1,224 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.common.data.LabelType;
+import com.google.gerrit.common.data.LabelTypes;
+import com.google.gerrit.common.data.SubmitRecord;
+import com.google.gerrit.common.data.SubmitTypeRecord;
+import com.google.gerrit.extensions.client.SubmitType;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.PatchSetApproval;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.permissions.LabelPermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Java implementation of the default submit rule and submit type rule.
+ *
+ * <p>Applies the label functions of the project's {@link LabelType}s exactly like {@code
+ * default_submit} in {@code gerrit_common.pl}, without creating a Prolog environment. Only used if
+ * no project in the hierarchy has a {@code rules.pl}, since that could replace the rule or add a
+ * filter; {@link SubmitRuleEvaluator} falls back to Prolog otherwise.
+ */
+@Singleton
+public class DefaultSubmitRule {
+  private final PermissionBackend permissionBackend;
+  private final IdentifiedUser.GenericFactory userFactory;
+  private final boolean enabled;
+  private final boolean projectRules;
+
+  @Inject
+  DefaultSubmitRule(
+      @GerritServerConfig Config cfg,
+      PermissionBackend permissionBackend,
+      IdentifiedUser.GenericFactory userFactory) {
+    this.permissionBackend = permissionBackend;
+    this.userFactory = userFactory;
+    enabled = cfg.getBoolean("rules", null, "nativeDefaultRules", true);
+    // Same as RulesCache: without project rules, every project uses the default rules.
+    projectRules =
+        cfg.getBoolean("rules", null, "enable", true)
+            && cfg.getInt("rules", null, "maxSourceBytes", 128 << 10) > 0;
+  }
+
+  /**
+   * @param control control of the change to evaluate.
+   * @param opts evaluation options.
+   * @return whether the change's rules are the default ones, so this class can evaluate them.
+   */
+  boolean appliesTo(ChangeControl control, SubmitRuleOptions opts) {
+    if (!enabled || opts.rule() != null) {
+      return false;
+    } else if (!projectRules) {
+      return true;
+    }
+    for (ProjectState p : control.getProjectControl().getProjectState().tree()) {
+      if (p.getConfig().getRulesId() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Evaluate the default submit rule.
+   *
+   * @param cd change to evaluate.
+   * @param fastEvalLabels whether to assume reviewers may use the votes stored on the change.
+   * @return submit records; null if a label type cannot be evaluated without Prolog.
+   * @throws OrmException if the approvals or label types cannot be read.
+   * @throws PermissionBackendException if a vote's permission cannot be checked.
+   */
+  @Nullable
+  List<SubmitRecord> evaluate(ChangeData cd, boolean fastEvalLabels)
+      throws OrmException, PermissionBackendException {
+    LabelTypes types = cd.getLabelTypes();
+    Votes votes = new Votes(cd, types, fastEvalLabels);
+
+    SubmitRecord rec = new SubmitRecord();
+    rec.status = SubmitRecord.Status.OK;
+    rec.labels = new ArrayList<>(types.getLabelTypes().size());
+    for (LabelType type : types.getLabelTypes()) {
+      if (type.getMin() == null || type.getMax() == null) {
+        return null;
+      }
+      short min = type.getMin().getValue();
+      short max = type.getMax().getValue();
+
+      SubmitRecord.Label lbl = new SubmitRecord.Label();
+      lbl.label = type.getName();
+      switch (type.getFunctionName()) {
+        case "MaxWithBlock":
+          if ((lbl.appliedBy = votes.find(type, min)) != null) {
+            lbl.status = SubmitRecord.Label.Status.REJECT;
+          } else if ((lbl.appliedBy = votes.find(type, max)) != null) {
+            lbl.status = SubmitRecord.Label.Status.OK;
+          } else {
+            lbl.status = SubmitRecord.Label.Status.NEED;
+          }
+          break;
+        case "AnyWithBlock":
+          if (min < 0 && (lbl.appliedBy = votes.find(type, min)) != null) {
+            lbl.status = SubmitRecord.Label.Status.REJECT;
+          } else {
+            lbl.status = SubmitRecord.Label.Status.MAY;
+          }
+          break;
+        case "MaxNoBlock":
+          if ((lbl.appliedBy = votes.find(type, max)) != null) {
+            lbl.status = SubmitRecord.Label.Status.OK;
+          } else {
+            lbl.status = SubmitRecord.Label.Status.NEED;
+          }
+          break;
+        case "NoBlock":
+        case "NoOp":
+        case "PatchSetLock":
+          lbl.status = SubmitRecord.Label.Status.MAY;
+          break;
+        default:
+          lbl.status = SubmitRecord.Label.Status.IMPOSSIBLE;
+          break;
+      }
+      rec.labels.add(lbl);
+      if (lbl.status != SubmitRecord.Label.Status.OK
+          && lbl.status != SubmitRecord.Label.Status.MAY) {
+        rec.status = SubmitRecord.Status.NOT_READY;
+      }
+    }
+
+    List<SubmitRecord> out = new ArrayList<>(1);
+    out.add(rec);
+    return out;
+  }
+
+  /**
+   * Evaluate the default submit type rule.
+   *
+   * @param control control of the change to evaluate.
+   * @return the project's submit type; null if it is not set.
+   */
+  @Nullable
+  SubmitTypeRecord getSubmitType(ChangeControl control) {
+    SubmitType type = control.getProject().getSubmitType();
+    return type != null ? SubmitTypeRecord.OK(type) : null;
+  }
+
+  /** Current votes of a change, in the order {@code commit_label/2} enumerates them. */
+  private class Votes {
+    private final ChangeData cd;
+    private final boolean fastEvalLabels;
+    private final List<PatchSetApproval> approvals = new ArrayList<>();
+    private final List<LabelType> approvalTypes = new ArrayList<>();
+    private final Map<Account.Id, IdentifiedUser> users = new HashMap<>();
+
+    Votes(ChangeData cd, LabelTypes types, boolean fastEvalLabels) throws OrmException {
+      this.cd = cd;
+      this.fastEvalLabels = fastEvalLabels;
+      // _load_commit_labels/1 prepends to '$all', and index_commit_labels/1 prepends again while
+      // walking that list into the per-label hash that commit_label/2 reads for an atom label. The
+      // votes of one label are therefore seen in the order of currentApprovals().
+      for (PatchSetApproval a : cd.currentApprovals()) {
+        LabelType t = types.byLabel(a.getLabelId());
+        if (t != null) {
+          approvals.add(a);
+          approvalTypes.add(t);
+        }
+      }
+    }
+
+    /**
+     * Find the first vote of a value that its voter may cast, like {@code
+     * check_label_range_permission/3}.
+     *
+     * @return the voter; null if there is no such vote.
+     */
+    @Nullable
+    Account.Id find(LabelType type, short value) throws PermissionBackendException {
+      for (int i = 0; i < approvals.size(); i++) {
+        PatchSetApproval a = approvals.get(i);
+        if (a.getValue() != value || !approvalTypes.get(i).getName().equals(type.getName())) {
+          continue;
+        }
+        if (fastEvalLabels || canVote(a.getAccountId(), type, value)) {
+          return a.getAccountId();
+        }
+      }
+      return null;
+    }
+
+    private boolean canVote(Account.Id id, LabelType type, short value)
+        throws PermissionBackendException {
+      IdentifiedUser user = users.computeIfAbsent(id, userFactory::create);
+      return permissionBackend
+          .user(user)
+          .change(cd)
+          .test(new LabelPermission.WithValue(type, value));
+    }
+  }
+}
@@ -19,9 +19,11 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.GroupReference;
 import com.google.gerrit.common.errors.NoSuchGroupException;
@@ -31,6 +33,7 @@ import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.BinaryResult;
 import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.extensions.restapi.StreamingView;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.extensions.restapi.Url;
 import com.google.gerrit.reviewdb.client.AccountGroup;
@@ -48,6 +51,7 @@ import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.permissions.ProjectPermission;
 import com.google.gerrit.server.permissions.RefPermission;
 import com.google.gerrit.server.util.RegexListSearcher;
+import com.google.gerrit.server.util.StreamingMap;
 import com.google.gerrit.server.util.TreeFormatter;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
@@ -63,6 +67,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -81,7 +86,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** List projects visible to the calling user. */
-public class ListProjects implements RestReadView<TopLevelResource> {
+public class ListProjects implements RestReadView<TopLevelResource>, StreamingView {
   private static final Logger log = LoggerFactory.getLogger(ListProjects.class);
 
   public enum FilterType {
@@ -255,6 +260,7 @@ public class ListProjects implements RestReadView<TopLevelResource> {
   private String matchSubstring;
   private String matchRegex;
   private AccountGroup.UUID groupUuid;
+  private boolean streaming;
 
   @Inject
   protected ListProjects(
@@ -297,6 +303,11 @@ public class ListProjects implements RestReadView<TopLevelResource> {
     return this;
   }
 
+  @Override
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
   @Override
   public Object apply(TopLevelResource resource)
       throws BadRequestException, PermissionBackendException {
@@ -307,7 +318,28 @@ public class ListProjects implements RestReadView<TopLevelResource> {
           .setContentType("text/plain")
           .setCharacterEncoding(UTF_8);
     }
-    return apply();
+    if (!streaming) {
+      return apply();
+    }
+    format = OutputFormat.JSON;
+    if (!isGroupVisible()) {
+      return Collections.emptySortedMap();
+    }
+    // All permissions are checked here, so the entries cannot fail once streaming started.
+    ProjectIterator projects = new ProjectIterator();
+    return new StreamingMap<>(
+        new AbstractIterator<Map.Entry<String, ProjectInfo>>() {
+          @Override
+          protected Map.Entry<String, ProjectInfo> computeNext() {
+            ProjectInfo info = projects.next();
+            if (info == null) {
+              return endOfData();
+            }
+            String name = info.name;
+            setId(info);
+            return Maps.immutableEntry(name, info);
+          }
+        });
   }
 
   public SortedMap<String, ProjectInfo> apply()
@@ -318,14 +350,8 @@ public class ListProjects implements RestReadView<TopLevelResource> {
 
   public SortedMap<String, ProjectInfo> display(@Nullable OutputStream displayOutputStream)
       throws BadRequestException, PermissionBackendException {
-    if (groupUuid != null) {
-      try {
-        if (!groupControlFactory.controlFor(groupUuid).isVisible()) {
-          return Collections.emptySortedMap();
-        }
-      } catch (NoSuchGroupException ex) {
-        return Collections.emptySortedMap();
-      }
+    if (!isGroupVisible()) {
+      return Collections.emptySortedMap();
     }
 
     PrintWriter stdout = null;
@@ -334,20 +360,115 @@ public class ListProjects implements RestReadView<TopLevelResource> {
           new PrintWriter(new BufferedWriter(new OutputStreamWriter(displayOutputStream, UTF_8)));
     }
 
-    if (type == FilterType.PARENT_CANDIDATES) {
-      // Historically, PARENT_CANDIDATES implied showDescription.
-      showDescription = true;
-    }
-
-    int foundIndex = 0;
-    int found = 0;
     TreeMap<String, ProjectInfo> output = new TreeMap<>();
-    Map<String, String> hiddenNames = new HashMap<>();
-    Map<Project.NameKey, Boolean> accessibleParents = new HashMap<>();
-    PermissionBackend.WithUser perm = permissionBackend.user(currentUser);
-    final TreeMap<Project.NameKey, ProjectNode> treeMap = new TreeMap<>();
     try {
-      for (Project.NameKey projectName : filter(perm)) {
+      ProjectIterator projects = new ProjectIterator();
+      for (ProjectInfo info = projects.next(); info != null; info = projects.next()) {
+        if (stdout == null || format.isJson()) {
+          output.put(info.name, info);
+          continue;
+        }
+
+        if (!showBranch.isEmpty()) {
+          for (String name : showBranch) {
+            String ref = info.branches != null ? info.branches.get(name) : null;
+            if (ref == null) {
+              // Print stub (forty '-' symbols)
+              ref = "----------------------------------------";
+            }
+            stdout.print(ref);
+            stdout.print(' ');
+          }
+        }
+        stdout.print(info.name);
+
+        if (info.description != null) {
+          // We still want to list every project as one-liners, hence escaping \n.
+          stdout.print(" - " + StringUtil.escapeString(info.description));
+        }
+        stdout.print('\n');
+      }
+
+      for (ProjectInfo info : output.values()) {
+        setId(info);
+      }
+      if (stdout == null) {
+        return output;
+      } else if (format.isJson()) {
+        format
+            .newGson()
+            .toJson(output, new TypeToken<Map<String, ProjectInfo>>() {}.getType(), stdout);
+        stdout.print('\n');
+      } else if (showTree && projects.treeMap.size() > 0) {
+        printProjectTree(stdout, projects.treeMap);
+      }
+      return null;
+    } finally {
+      if (stdout != null) {
+        stdout.flush();
+      }
+    }
+  }
+
+  private boolean isGroupVisible() {
+    if (groupUuid != null) {
+      try {
+        return groupControlFactory.controlFor(groupUuid).isVisible();
+      } catch (NoSuchGroupException ex) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void setId(ProjectInfo info) {
+    info.id = Url.encode(info.name);
+    info.name = null;
+  }
+
+  /** Computes the projects to list, one at a time in name order. */
+  private class ProjectIterator {
+    private final PermissionBackend.WithUser perm = permissionBackend.user(currentUser);
+    private final Iterator<Project.NameKey> names;
+    private final Map<String, String> hiddenNames = new HashMap<>();
+    private final Set<Project.NameKey> accessibleParents;
+    private final TreeMap<Project.NameKey, ProjectNode> treeMap = new TreeMap<>();
+    private int foundIndex;
+    private int found;
+
+    ProjectIterator() throws BadRequestException, PermissionBackendException {
+      if (type == FilterType.PARENT_CANDIDATES) {
+        // Historically, PARENT_CANDIDATES implied showDescription.
+        showDescription = true;
+      }
+      Collection<Project.NameKey> visible = filter(perm);
+      names = visible.iterator();
+      accessibleParents =
+          showTree && format.isJson()
+              ? perm.filter(ProjectPermission.ACCESS, treeParentsOf(visible))
+              : Collections.emptySet();
+    }
+
+    private Set<Project.NameKey> treeParentsOf(Collection<Project.NameKey> projects) {
+      Set<Project.NameKey> parents = new HashSet<>();
+      for (Project.NameKey p : projects) {
+        ProjectState ps = projectCache.get(p);
+        ProjectState parent = ps != null ? Iterables.getFirst(ps.parents(), null) : null;
+        if (parent != null) {
+          parents.add(parent.getProject().getNameKey());
+        }
+      }
+      return parents;
+    }
+
+    /**
+     * @return next project to list; null when all projects were listed. Projects of a text tree
+     *     are collected in {@link #treeMap} instead.
+     */
+    @Nullable
+    ProjectInfo next() {
+      while (names.hasNext()) {
+        Project.NameKey projectName = names.next();
         final ProjectState e = projectCache.get(projectName);
         if (e == null || (!all && e.getProject().getState() == HIDDEN)) {
           // If we can't get it from the cache, pretend its not present.
@@ -372,7 +493,7 @@ public class ListProjects implements RestReadView<TopLevelResource> {
         if (showTree && format.isJson()) {
           ProjectState parent = Iterables.getFirst(e.parents(), null);
           if (parent != null) {
-            if (isParentAccessible(accessibleParents, perm, parent)) {
+            if (accessibleParents.contains(parent.getProject().getNameKey())) {
               info.parent = parent.getProject().getName();
             } else {
               info.parent = hiddenNames.get(parent.getProject().getName());
@@ -435,53 +556,11 @@ public class ListProjects implements RestReadView<TopLevelResource> {
           continue;
         }
         if (limit > 0 && ++found > limit) {
-          break;
-        }
-
-        if (stdout == null || format.isJson()) {
-          output.put(info.name, info);
-          continue;
-        }
-
-        if (!showBranch.isEmpty()) {
-          for (String name : showBranch) {
-            String ref = info.branches != null ? info.branches.get(name) : null;
-            if (ref == null) {
-              // Print stub (forty '-' symbols)
-              ref = "----------------------------------------";
-            }
-            stdout.print(ref);
-            stdout.print(' ');
-          }
+          return null;
         }
-        stdout.print(info.name);
-
-        if (info.description != null) {
-          // We still want to list every project as one-liners, hence escaping \n.
-          stdout.print(" - " + StringUtil.escapeString(info.description));
-        }
-        stdout.print('\n');
-      }
-
-      for (ProjectInfo info : output.values()) {
-        info.id = Url.encode(info.name);
-        info.name = null;
-      }
-      if (stdout == null) {
-        return output;
-      } else if (format.isJson()) {
-        format
-            .newGson()
-            .toJson(output, new TypeToken<Map<String, ProjectInfo>>() {}.getType(), stdout);
-        stdout.print('\n');
-      } else if (showTree && treeMap.size() > 0) {
-        printProjectTree(stdout, treeMap);
+        return info;
       }
       return null;
-    } finally {
-      if (stdout != null) {
-        stdout.flush();
-      }
     }
   }
 
@@ -515,22 +594,6 @@ public class ListProjects implements RestReadView<TopLevelResource> {
     return parents;
   }
 
-  private boolean isParentAccessible(
-      Map<Project.NameKey, Boolean> checked, PermissionBackend.WithUser perm, ProjectState p)
-      throws PermissionBackendException {
-    Project.NameKey name = p.getProject().getNameKey();
-    Boolean b = checked.get(name);
-    if (b == null) {
-      try {
-        perm.project(name).check(ProjectPermission.ACCESS);
-        b = true;
-      } catch (AuthException denied) {
-        b = false;
-      }
-      checked.put(name, b);
-    }
-    return b;
-  }
 
   private Iterable<Project.NameKey> scan() throws BadRequestException {
     if (matchPrefix != null) {
@@ -32,8 +32,9 @@ public class ProjectCacheClock {
   private final AtomicLong generation = new AtomicLong();
 
   @Inject
-  public ProjectCacheClock(@GerritServerConfig Config serverConfig) {
-    this(checkFrequency(serverConfig));
+  public ProjectCacheClock(
+      @GerritServerConfig Config serverConfig, ProjectConfigWatcher configWatcher) {
+    this(checkFrequency(serverConfig, configWatcher.isWatching()));
   }
 
   public ProjectCacheClock(long checkFrequencyMillis) {
@@ -72,14 +73,16 @@ public class ProjectCacheClock {
     return generation.get();
   }
 
-  private static long checkFrequency(Config serverConfig) {
+  private static long checkFrequency(Config serverConfig, boolean watching) {
     String freq = serverConfig.getString("cache", "projects", "checkFrequency");
     if (freq != null && ("disabled".equalsIgnoreCase(freq) || "off".equalsIgnoreCase(freq))) {
       return Long.MAX_VALUE;
     }
+    // With a running watcher, polling only catches events it missed.
+    long defaultMinutes = watching ? 60 : 5;
     return TimeUnit.MILLISECONDS.convert(
         ConfigUtil.getTimeUnit(
-            serverConfig, "cache", "projects", "checkFrequency", 5, TimeUnit.MINUTES),
+            serverConfig, "cache", "projects", "checkFrequency", defaultMinutes, TimeUnit.MINUTES),
         TimeUnit.MINUTES);
   }
 }
@@ -14,13 +14,18 @@
 
 package com.google.gerrit.server.project;
 
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
+import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.reviewdb.client.AccountGroup;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.cache.CacheModule;
@@ -35,8 +40,11 @@ import com.google.inject.TypeLiteral;
 import com.google.inject.internal.UniqueAnnotations;
 import com.google.inject.name.Named;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
@@ -57,6 +65,9 @@ public class ProjectCacheImpl implements ProjectCache {
   private static final String CACHE_NAME = "projects";
   private static final String CACHE_LIST = "project_list";
 
+  /** Set on threads whose lookups must not count as accesses, see {@link #withoutAccess}. */
+  private static final ThreadLocal<Boolean> notAccessing = new ThreadLocal<>();
+
   public static Module module() {
     return new CacheModule() {
       @Override
@@ -72,6 +83,12 @@ public class ProjectCacheImpl implements ProjectCache {
         bind(LifecycleListener.class)
             .annotatedWith(UniqueAnnotations.create())
             .to(ProjectCacheWarmer.class);
+
+        bind(ProjectConfigWatcher.class);
+        bind(LifecycleListener.class)
+            .annotatedWith(UniqueAnnotations.create())
+            .to(ProjectConfigWatcher.class);
+        DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ProjectConfigWatcher.class);
       }
     };
   }
@@ -130,6 +147,29 @@ public class ProjectCacheImpl implements ProjectCache {
 
   @Override
   public ProjectState checkedGet(Project.NameKey projectName) throws IOException {
+    ProjectState state = load(projectName);
+    if (state != null && notAccessing.get() == null) {
+      state.recordAccess(TimeUtil.nowMs());
+    }
+    return state;
+  }
+
+  /**
+   * Run a task whose project lookups are not counted as accesses, including lookups of parents made
+   * through {@link ProjectState}. Used by {@link ProjectCacheWarmer} so that warming does not alter
+   * the hot set.
+   */
+  static void withoutAccess(Runnable task) {
+    notAccessing.set(true);
+    try {
+      task.run();
+    } finally {
+      notAccessing.remove();
+    }
+  }
+
+  /** Get a project without counting it as accessed, for {@link ProjectCacheWarmer}. */
+  ProjectState load(Project.NameKey projectName) throws IOException {
     if (projectName == null) {
       return null;
     }
@@ -165,6 +205,56 @@ public class ProjectCacheImpl implements ProjectCache {
     }
   }
 
+  /** @return up to {@code limit} cached projects, most recently accessed first. */
+  List<Project.NameKey> recentlyAccessed(int limit) {
+    return byName
+        .asMap()
+        .values()
+        .stream()
+        .filter(s -> s.getLastAccess() > 0)
+        .sorted(comparingLong(ProjectState::getLastAccess).reversed())
+        .limit(limit)
+        .map(s -> s.getProject().getNameKey())
+        .collect(toList());
+  }
+
+  /** Invalidate the cached information about a project and all projects inheriting from it. */
+  void evictWithChildren(Project.NameKey p) {
+    List<String> names = new ArrayList<>();
+    names.add(p.get());
+    for (ProjectState s : byName.asMap().values()) {
+      if (inheritsFrom(s, p)) {
+        names.add(s.getProject().getName());
+      }
+    }
+    byName.invalidateAll(names);
+  }
+
+  /** Evict a project and its children if its cached configuration is no longer current. */
+  void evictIfOutOfDate(Project.NameKey p) {
+    ProjectState state = byName.getIfPresent(p.get());
+    if (state != null && state.isRevisionOutOfDate()) {
+      evictWithChildren(p);
+    }
+  }
+
+  private boolean inheritsFrom(ProjectState s, Project.NameKey p) {
+    Set<Project.NameKey> seen = new HashSet<>();
+    Project.NameKey parent = s.getProject().getParent(allProjectsName);
+    while (parent != null && seen.add(parent)) {
+      if (parent.equals(p)) {
+        return true;
+      }
+      ProjectState ps = byName.getIfPresent(parent.get());
+      if (ps == null) {
+        // The chain cannot be followed without loading; be conservative.
+        return true;
+      }
+      parent = ps.getProject().getParent(allProjectsName);
+    }
+    return false;
+  }
+
   @Override
   public void remove(Project p) {
     listLock.lock();
@@ -275,12 +365,18 @@ public class ProjectCacheImpl implements ProjectCache {
     private final ProjectState.Factory projectStateFactory;
     private final GitRepositoryManager mgr;
     private final ProjectCacheClock clock;
+    private final ProjectConfigWatcher watcher;
 
     @Inject
-    Loader(ProjectState.Factory psf, GitRepositoryManager g, ProjectCacheClock clock) {
+    Loader(
+        ProjectState.Factory psf,
+        GitRepositoryManager g,
+        ProjectCacheClock clock,
+        ProjectConfigWatcher watcher) {
       projectStateFactory = psf;
       mgr = g;
       this.clock = clock;
+      this.watcher = watcher;
     }
 
     @Override
@@ -293,6 +389,7 @@ public class ProjectCacheImpl implements ProjectCache {
 
         ProjectState state = projectStateFactory.create(cfg);
         state.initLastCheck(now);
+        watcher.watch(key, git.getDirectory());
         return state;
       }
     }
@@ -14,64 +14,349 @@
 
 package com.google.gerrit.server.project;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.AnonymousUser;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.ConfigUtil;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.TagCache;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
-import java.util.concurrent.ExecutorService;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Loads the project cache in the background on startup.
+ *
+ * <p>If {@code cache.projects.hotSetSize} is set, the most recently accessed projects are written
+ * to the site's data directory periodically and on shutdown, and loaded first on the next start
+ * together with the permission sort and tag caches of their branches. If {@code
+ * cache.projects.loadOnStartup} is set, all other projects are loaded afterwards.
+ *
+ * <p>Projects are loaded in two steps on a work-stealing pool: first the configurations of all
+ * projects in parallel, then their inherited access sections and labels, parents before children,
+ * so that no thread waits for another one to load a parent.
+ */
 @Singleton
 public class ProjectCacheWarmer implements LifecycleListener {
   private static final Logger log = LoggerFactory.getLogger(ProjectCacheWarmer.class);
 
+  private static final String HOT_SET_FILE = "project_hot_set";
+
+  /** Branches per project to warm the permission sort cache for. */
+  private static final int MAX_BRANCHES = 100;
+
   private final Config config;
-  private final ProjectCache cache;
+  private final ProjectCacheImpl cache;
+  private final AllProjectsName allProjectsName;
+  private final GitRepositoryManager repoManager;
+  private final PermissionCollection.Factory permissionFilter;
+  private final TagCache tagCache;
+  private final Provider<AnonymousUser> anonymousUser;
+  private final Path hotSetFile;
+  private final int hotSetSize;
+  private final long hotSetWriteInterval;
+  private final AtomicLong pending = new AtomicLong();
+  private final AtomicLong loaded = new AtomicLong();
+  private ScheduledExecutorService scheduler;
 
   @Inject
-  ProjectCacheWarmer(@GerritServerConfig Config config, ProjectCache cache) {
+  ProjectCacheWarmer(
+      @GerritServerConfig Config config,
+      ProjectCacheImpl cache,
+      AllProjectsName allProjectsName,
+      GitRepositoryManager repoManager,
+      PermissionCollection.Factory permissionFilter,
+      TagCache tagCache,
+      Provider<AnonymousUser> anonymousUser,
+      SitePaths site,
+      MetricMaker metrics) {
     this.config = config;
     this.cache = cache;
+    this.allProjectsName = allProjectsName;
+    this.repoManager = repoManager;
+    this.permissionFilter = permissionFilter;
+    this.tagCache = tagCache;
+    this.anonymousUser = anonymousUser;
+    this.hotSetFile = site.data_dir.resolve(HOT_SET_FILE);
+    this.hotSetSize = config.getInt("cache", "projects", "hotSetSize", 0);
+    this.hotSetWriteInterval =
+        ConfigUtil.getTimeUnit(
+            config,
+            "cache",
+            "projects",
+            "hotSetWriteInterval",
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.MILLISECONDS);
+
+    metrics.newCallbackMetric(
+        "caches/projects/warmer/pending",
+        Long.class,
+        new Description("Projects waiting to be loaded by the project cache warmer")
+            .setGauge()
+            .setUnit("projects"),
+        pending::get);
+    metrics.newCallbackMetric(
+        "caches/projects/warmer/loaded",
+        Long.class,
+        new Description("Projects loaded by the project cache warmer")
+            .setGauge()
+            .setUnit("projects"),
+        loaded::get);
   }
 
   @Override
   public void start() {
+    boolean loadAll = config.getBoolean("cache", "projects", "loadOnStartup", false);
+    List<Project.NameKey> hotSet =
+        hotSetSize > 0 ? readHotSet(hotSetFile, hotSetSize) : new ArrayList<>();
+    if (!loadAll && hotSetSize <= 0) {
+      return;
+    }
+
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ProjectCacheWarmer").setDaemon(true).build());
+    if (hotSetSize > 0 && hotSetWriteInterval > 0) {
+      // Also write the hot set while running, so it survives an unclean stop.
+      scheduler.scheduleWithFixedDelay(
+          () -> writeHotSet(hotSetFile, cache.recentlyAccessed(hotSetSize)),
+          hotSetWriteInterval,
+          hotSetWriteInterval,
+          TimeUnit.MILLISECONDS);
+    }
+    if (!loadAll && hotSet.isEmpty()) {
+      return;
+    }
+
     int cpus = Runtime.getRuntime().availableProcessors();
-    if (config.getBoolean("cache", "projects", "loadOnStartup", false)) {
-      ThreadPoolExecutor pool =
-          new ScheduledThreadPoolExecutor(
-              config.getInt("cache", "projects", "loadThreads", cpus),
-              new ThreadFactoryBuilder().setNameFormat("ProjectCacheLoader-%d").build());
-      ExecutorService scheduler = Executors.newFixedThreadPool(1);
-
-      log.info("Loading project cache");
-      scheduler.execute(
-          () -> {
-            for (Project.NameKey name : cache.all()) {
-              pool.execute(
-                  () -> {
-                    cache.get(name);
-                  });
+    ForkJoinPool pool =
+        new ForkJoinPool(
+            config.getInt("cache", "projects", "loadThreads", cpus),
+            p -> {
+              ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+              t.setName("ProjectCacheLoader-" + t.getPoolIndex());
+              return t;
+            },
+            null,
+            false);
+    scheduler.execute(
+        () -> {
+          try {
+            if (!hotSet.isEmpty()) {
+              log.info("Loading " + hotSet.size() + " recently used projects");
+              load(pool, hotSet);
+              run(pool, hotSet, this::warmRefs);
+              log.info("Finished loading recently used projects");
             }
-            pool.shutdown();
-            try {
-              pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (loadAll) {
+              log.info("Loading project cache");
+              load(pool, cache.all());
               log.info("Finished loading project cache");
-            } catch (InterruptedException e) {
-              log.warn("Interrupted while waiting for project cache to load");
             }
+          } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for project cache to load");
+          } finally {
+            pool.shutdown();
+          }
+        });
+  }
+
+  @Override
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    if (hotSetSize > 0) {
+      writeHotSet(hotSetFile, cache.recentlyAccessed(hotSetSize));
+    }
+  }
+
+  private void load(ForkJoinPool pool, Collection<Project.NameKey> names)
+      throws InterruptedException {
+    pending.addAndGet(names.size());
+    List<ProjectState> states = new ArrayList<>(names.size());
+    run(
+        pool,
+        names,
+        name -> {
+          try {
+            ProjectState state = cache.load(name);
+            if (state != null) {
+              synchronized (states) {
+                states.add(state);
+              }
+            }
+          } catch (IOException e) {
+            log.warn("Cannot load project " + name, e);
+          } finally {
+            pending.decrementAndGet();
+            loaded.incrementAndGet();
+          }
+        });
+
+    // Parents are at a lower depth than their children, so each level only
+    // reads parent states that are already complete.
+    for (List<ProjectState> level :
+        byDepth(states, s -> s.getProject().getNameKey(), parents(states)).values()) {
+      run(
+          pool,
+          level,
+          s -> {
+            s.getAllSectionsIndex();
+            s.getLabelTypes();
           });
     }
   }
 
-  @Override
-  public void stop() {}
+  private Function<Project.NameKey, Project.NameKey> parents(List<ProjectState> states) {
+    Map<Project.NameKey, Project.NameKey> parents = new HashMap<>();
+    for (ProjectState s : states) {
+      Project.NameKey parent = s.getProject().getParent(allProjectsName);
+      if (parent != null) {
+        parents.put(s.getProject().getNameKey(), parent);
+      }
+    }
+    return parents::get;
+  }
+
+  /**
+   * Group projects by their distance from the root of the hierarchy, in increasing order.
+   *
+   * @param items projects to group.
+   * @param name name of a project.
+   * @param parent parent of a project name; null for the root or unknown projects.
+   * @return projects by depth; parents of a project are at a lower depth.
+   */
+  static <T> TreeMap<Integer, List<T>> byDepth(
+      Collection<T> items,
+      Function<T, Project.NameKey> name,
+      Function<Project.NameKey, Project.NameKey> parent) {
+    Map<Project.NameKey, Integer> depths = new HashMap<>();
+    return items
+        .stream()
+        .collect(groupingBy(i -> depth(name.apply(i), parent, depths), TreeMap::new, toList()));
+  }
+
+  private static int depth(
+      Project.NameKey start,
+      Function<Project.NameKey, Project.NameKey> parent,
+      Map<Project.NameKey, Integer> d) {
+    List<Project.NameKey> chain = new ArrayList<>();
+    Set<Project.NameKey> seen = new HashSet<>();
+    Project.NameKey name = start;
+    int base = 0;
+    while (name != null && seen.add(name)) {
+      Integer known = d.get(name);
+      if (known != null) {
+        base = known + 1;
+        break;
+      }
+      chain.add(name);
+      name = parent.apply(name);
+    }
+    // A cycle in the parents leaves the looping projects at the depth reached.
+    for (int i = chain.size() - 1; i >= 0; i--) {
+      d.put(chain.get(i), base++);
+    }
+    return d.get(start);
+  }
+
+  private void warmRefs(Project.NameKey name) {
+    try (Repository repo = repoManager.openRepository(name)) {
+      ProjectState state = cache.load(name);
+      if (state == null) {
+        return;
+      }
+      RefPatternIndex index = state.getAllSectionsIndex();
+      AnonymousUser user = anonymousUser.get();
+      repo.getRefDatabase()
+          .getRefs(RefNames.REFS_HEADS)
+          .values()
+          .stream()
+          .limit(MAX_BRANCHES)
+          .map(Ref::getName)
+          .forEach(ref -> permissionFilter.filter(index, ref, user));
+      tagCache.warm(name, repo);
+    } catch (IOException e) {
+      log.warn("Cannot warm caches of project " + name, e);
+    }
+  }
+
+  private static <T> void run(ForkJoinPool pool, Collection<T> items, Consumer<T> task)
+      throws InterruptedException {
+    // Inheritance looks parents up through the cache, which must not record
+    // them as accessed and carry them into the hot set.
+    Consumer<T> warm = i -> ProjectCacheImpl.withoutAccess(() -> task.accept(i));
+    try {
+      pool.submit(() -> items.parallelStream().forEach(warm)).get();
+    } catch (ExecutionException e) {
+      log.warn("Error while loading project cache", e.getCause());
+    }
+  }
+
+  static List<Project.NameKey> readHotSet(Path hotSetFile, int hotSetSize) {
+    try {
+      return Files.readAllLines(hotSetFile, UTF_8)
+          .stream()
+          .filter(n -> !n.isEmpty())
+          .map(Project.NameKey::new)
+          .limit(hotSetSize)
+          .collect(toList());
+    } catch (NoSuchFileException e) {
+      return new ArrayList<>();
+    } catch (IOException e) {
+      log.warn("Cannot read " + hotSetFile, e);
+      return new ArrayList<>();
+    }
+  }
+
+  static void writeHotSet(Path hotSetFile, List<Project.NameKey> names) {
+    Path tmp = hotSetFile.resolveSibling(HOT_SET_FILE + ".tmp");
+    try {
+      Files.createDirectories(hotSetFile.getParent());
+      Files.write(tmp, names.stream().map(Project.NameKey::get).collect(toList()), UTF_8);
+      Files.move(
+          tmp, hotSetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Cannot write " + hotSetFile, e);
+    }
+  }
 }
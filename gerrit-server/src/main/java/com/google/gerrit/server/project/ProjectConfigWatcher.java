@@ -0,0 +1,242 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evicts projects from the {@link ProjectCache} as soon as their {@code refs/meta/config} changes.
+ *
+ * <p>Updates made by this server are seen as {@link GitReferenceUpdatedListener} events. Updates
+ * made to the repositories by other processes, for example by replication, are seen through a
+ * {@link WatchService} on the repositories of the loaded projects. Either way the project and all
+ * projects inheriting from it are evicted, leaving {@link ProjectCacheClock} polling as a safety
+ * net for missed events.
+ *
+ * <p>Enabled by {@code cache.projects.watchConfig}. Each project uses two or three watches; on
+ * Linux these count against {@code fs.inotify.max_user_watches}. Projects that cannot be watched
+ * are only reported once in total, and are refreshed by polling.
+ */
+@Singleton
+public class ProjectConfigWatcher implements GitReferenceUpdatedListener, LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(ProjectConfigWatcher.class);
+
+  private static boolean isEnabled(Config cfg) {
+    return cfg.getBoolean("cache", "projects", "watchConfig", false);
+  }
+
+  private static class Target {
+    final Project.NameKey project;
+    final Path gitDir;
+
+    Target(Project.NameKey project, Path gitDir) {
+      this.project = project;
+      this.gitDir = gitDir;
+    }
+  }
+
+  private final Provider<ProjectCacheImpl> projectCache;
+  private final boolean enabled;
+  private final WatchService watchService;
+  private final Map<WatchKey, Target> targets = new ConcurrentHashMap<>();
+  private final Set<Project.NameKey> watched = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger failed = new AtomicInteger();
+  private Thread thread;
+
+  @Inject
+  ProjectConfigWatcher(
+      Provider<ProjectCacheImpl> projectCache, @GerritServerConfig Config serverConfig) {
+    this.projectCache = projectCache;
+    this.enabled = isEnabled(serverConfig);
+    this.watchService = enabled ? newWatchService() : null;
+  }
+
+  /** @return whether repositories are watched; false if disabled or the watch service failed. */
+  boolean isWatching() {
+    return watchService != null;
+  }
+
+  private static WatchService newWatchService() {
+    try {
+      return FileSystems.getDefault().newWatchService();
+    } catch (IOException e) {
+      log.warn("Cannot watch project configurations, relying on cache.projects.checkFrequency", e);
+      return null;
+    }
+  }
+
+  @Override
+  public void start() {
+    if (watchService != null) {
+      thread = new Thread(this::run, "ProjectConfigWatcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.warn("Cannot close project configuration watcher", e);
+      }
+      if (failed.get() > 1) {
+        log.warn("Could not watch repositories of {} projects", failed.get());
+      }
+    }
+  }
+
+  @Override
+  public void onGitReferenceUpdated(GitReferenceUpdatedListener.Event event) {
+    // Needed even if the watch service failed, as polling then only uses its default frequency.
+    if (enabled && RefNames.REFS_CONFIG.equals(event.getRefName())) {
+      projectCache.get().evictWithChildren(new Project.NameKey(event.getProjectName()));
+    }
+  }
+
+  /**
+   * Watch the repository of a loaded project.
+   *
+   * <p>Both the loose {@code refs/meta/config} and {@code packed-refs} are watched; if {@code
+   * refs/meta} does not exist yet, {@code refs} is watched until it is created.
+   *
+   * @param project name of the project.
+   * @param gitDir directory of the repository; null for repositories not stored on disk.
+   */
+  void watch(Project.NameKey project, File gitDir) {
+    if (watchService == null || gitDir == null || !watched.add(project)) {
+      return;
+    }
+    Path dir = gitDir.toPath();
+    Path meta = dir.resolve(RefNames.REFS_CONFIG).getParent();
+    try {
+      register(project, dir, dir);
+      register(project, dir, Files.isDirectory(meta) ? meta : meta.getParent());
+    } catch (IOException | ClosedWatchServiceException e) {
+      watched.remove(project);
+      cannotWatch(project, e);
+    }
+  }
+
+  private void cannotWatch(Project.NameKey project, Exception e) {
+    if (e instanceof ClosedWatchServiceException) {
+      return;
+    }
+    if (failed.getAndIncrement() == 0) {
+      log.warn(
+          "Cannot watch repository of project "
+              + project
+              + "; projects that cannot be watched rely on cache.projects.checkFrequency."
+              + " On Linux, consider raising fs.inotify.max_user_watches.",
+          e);
+    } else {
+      log.debug("Cannot watch repository of project {}", project, e);
+    }
+  }
+
+  private void register(Project.NameKey project, Path gitDir, Path dir) throws IOException {
+    targets.put(
+        dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+        new Target(project, gitDir));
+  }
+
+  private void run() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      Target target = targets.get(key);
+      boolean changed = false;
+      if (target != null) {
+        try {
+          changed = isConfigChange(key, target);
+        } catch (IOException | ClosedWatchServiceException e) {
+          cannotWatch(target.project, e);
+          changed = true;
+        }
+      }
+      if (!key.reset()) {
+        targets.remove(key);
+        if (target != null) {
+          watched.remove(target.project);
+        }
+      }
+      if (changed) {
+        try {
+          projectCache.get().evictIfOutOfDate(target.project);
+        } catch (RuntimeException e) {
+          log.warn("Cannot check configuration of project " + target.project, e);
+        }
+      }
+    }
+  }
+
+  private boolean isConfigChange(WatchKey key, Target target) throws IOException {
+    Path dir = (Path) key.watchable();
+    Path refs = target.gitDir.resolve("refs");
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        changed = true;
+        continue;
+      }
+      String name = event.context().toString();
+      if (dir.equals(target.gitDir)) {
+        changed |= name.equals("packed-refs");
+      } else if (dir.equals(refs)) {
+        if (name.equals("meta") && event.kind() == ENTRY_CREATE) {
+          register(target.project, target.gitDir, refs.resolve(name));
+          changed = true;
+        }
+      } else {
+        changed |= name.equals("config");
+      }
+    }
+    return changed;
+  }
+}
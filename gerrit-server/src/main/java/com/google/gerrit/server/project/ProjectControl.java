@@ -140,7 +140,7 @@ public class ProjectControl {
   private final Collection<ContributorAgreement> contributorAgreements;
   private final Metrics metrics;
 
-  private List<SectionMatcher> allSections;
+  private RefPatternIndex allSections;
   private List<SectionMatcher> localSections;
   private Map<String, RefControl> refControls;
   private Boolean declaredOwner;
@@ -197,7 +197,7 @@ public class ProjectControl {
     }
     RefControl ctl = refControls.get(refName);
     if (ctl == null) {
-      PermissionCollection relevant = permissionFilter.filter(access(), refName, user);
+      PermissionCollection relevant = permissionFilter.filter(accessIndex(), refName, user);
       ctl = new RefControl(this, refName, relevant);
       refControls.put(refName, ctl);
     }
@@ -405,8 +405,12 @@ public class ProjectControl {
   }
 
   private List<SectionMatcher> access() {
+    return accessIndex().getSections();
+  }
+
+  private RefPatternIndex accessIndex() {
     if (allSections == null) {
-      allSections = state.getAllSections();
+      allSections = state.getAllSectionsIndex();
     }
     return allSections;
   }
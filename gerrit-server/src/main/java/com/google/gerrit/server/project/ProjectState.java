@@ -105,9 +105,15 @@ public class ProjectState {
   /** Local access sections, wrapped in SectionMatchers for faster evaluation. */
   private volatile List<SectionMatcher> localAccessSections;
 
+  /** Local and inherited access sections, compiled for matching against references. */
+  private volatile RefPatternIndex allSectionsIndex;
+
   /** Theme information loaded from site_path/themes. */
   private volatile ThemeInfo theme;
 
+  /** Last time this state was returned by the cache; racy, only used to rank projects. */
+  private long lastAccess;
+
   /** If this is all projects, the capabilities used by the server. */
   private final CapabilityCollection capabilities;
 
@@ -164,6 +170,16 @@ public class ProjectState {
     }
   }
 
+  void recordAccess(long now) {
+    if (lastAccess != now) {
+      lastAccess = now;
+    }
+  }
+
+  long getLastAccess() {
+    return lastAccess;
+  }
+
   void initLastCheck(long generation) {
     lastCheckGeneration = generation;
   }
@@ -179,7 +195,7 @@ public class ProjectState {
     return false;
   }
 
-  private boolean isRevisionOutOfDate() {
+  boolean isRevisionOutOfDate() {
     try (Repository git = gitMgr.openRepository(getProject().getNameKey())) {
       Ref ref = git.getRefDatabase().exactRef(RefNames.REFS_CONFIG);
       if (ref == null || ref.getObjectId() == null) {
@@ -294,6 +310,21 @@ public class ProjectState {
     return all;
   }
 
+  /**
+   * Obtain all local and inherited sections, compiled for matching against many references.
+   *
+   * <p>The index is kept until a project in the hierarchy is reloaded or the parent changes.
+   */
+  RefPatternIndex getAllSectionsIndex() {
+    List<SectionMatcher> all = getAllSections();
+    RefPatternIndex idx = allSectionsIndex;
+    if (idx == null || !idx.isFor(all)) {
+      idx = new RefPatternIndex(all);
+      allSectionsIndex = idx;
+    }
+    return idx;
+  }
+
   /**
    * @return all {@link AccountGroup}'s to which the owner privilege for 'refs/*' is assigned for
    *     this project (the local owners), if there are no local owners the local owners of the
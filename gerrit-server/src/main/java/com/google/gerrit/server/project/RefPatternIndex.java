@@ -0,0 +1,235 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static com.google.gerrit.server.project.RefPattern.isRE;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Access sections of a project hierarchy, compiled for matching against many references.
+ *
+ * <p>Exact and prefix patterns are stored in a single character trie, so a reference is checked
+ * against all of them in one pass over its name. Regular expressions that can be expressed as a
+ * finite automaton are combined into one DFA, which rejects most references in one pass before the
+ * individual expressions are run. Expressions using features only {@code java.util.regex}
+ * supports, and patterns with parameters such as {@code ${username}}, are checked individually.
+ *
+ * <p>Instances are immutable and are built once per {@link ProjectState}; matching does not
+ * allocate other than the result.
+ */
+class RefPatternIndex {
+  /** Largest combined DFA to keep; larger unions are skipped and each expression is run. */
+  private static final int MAX_COMBINED_STATES = 10_000;
+
+  /**
+   * Characters that are meaningful to brics but not to java.util.regex, or vice versa. Possessive
+   * quantifiers like {@code *+} are repeated quantifiers to brics, but do not backtrack in Java.
+   */
+  private static final Pattern NOT_DFA_COMPATIBLE =
+      Pattern.compile("[\"$&~#@<>]|\\(\\?|\\\\[0-9A-Za-z]|[^\\[]\\^|[*+?}]\\+");
+
+  private final ImmutableList<SectionMatcher> sections;
+  private final Node trie;
+  private final RunAutomaton anyRegex;
+  private final int[] regexSections;
+  private final RunAutomaton[] regexes;
+  private final int[] otherSections;
+
+  RefPatternIndex(List<SectionMatcher> sections) {
+    this.sections = ImmutableList.copyOf(sections);
+    trie = new Node();
+
+    List<Integer> regexSections = new ArrayList<>();
+    List<Automaton> automata = new ArrayList<>();
+    List<Integer> otherSections = new ArrayList<>();
+    for (int i = 0; i < sections.size(); i++) {
+      SectionMatcher sm = sections.get(i);
+      String pattern = sm.section.getName();
+      if (sm.matcher instanceof RefPatternMatcher.ExpandParameters) {
+        otherSections.add(i);
+      } else if (isRE(pattern)) {
+        Automaton a = toAutomaton(pattern);
+        if (a != null) {
+          regexSections.add(i);
+          automata.add(a);
+        } else {
+          otherSections.add(i);
+        }
+      } else if (pattern.endsWith("/*")) {
+        trie.add(pattern, pattern.length() - 1).prefixes.add(i);
+      } else {
+        trie.add(pattern, pattern.length()).exact.add(i);
+      }
+    }
+    trie.freeze();
+
+    this.regexSections = Ints.toArray(regexSections);
+    regexes = new RunAutomaton[automata.size()];
+    for (int i = 0; i < regexes.length; i++) {
+      regexes[i] = new RunAutomaton(automata.get(i));
+    }
+    anyRegex = combine(automata);
+    this.otherSections = Ints.toArray(otherSections);
+  }
+
+  /** @return sections of the index, in priority order. */
+  ImmutableList<SectionMatcher> getSections() {
+    return sections;
+  }
+
+  /** @return whether the index was built from exactly these section matchers. */
+  boolean isFor(List<SectionMatcher> other) {
+    if (other.size() != sections.size()) {
+      return false;
+    }
+    for (int i = 0; i < sections.size(); i++) {
+      if (other.get(i) != sections.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the sections that may apply to a reference.
+   *
+   * @param ref reference name.
+   * @param result set to which the positions in {@link #getSections()} of all sections whose
+   *     pattern matches {@code ref} are added. For sections with parameters only the constant
+   *     prefix of the pattern is matched; these still need to be matched with the user.
+   */
+  void match(String ref, BitSet result) {
+    Node n = trie;
+    for (int i = 0; ; i++) {
+      set(result, n.prefixSections);
+      if (i == ref.length()) {
+        set(result, n.exactSections);
+        break;
+      }
+      int k = Arrays.binarySearch(n.keys, ref.charAt(i));
+      if (k < 0) {
+        break;
+      }
+      n = n.children[k];
+    }
+
+    if (anyRegex == null || anyRegex.run(ref)) {
+      for (int i = 0; i < regexes.length; i++) {
+        if (regexes[i].run(ref)) {
+          result.set(regexSections[i]);
+        }
+      }
+    }
+
+    for (int i : otherSections) {
+      SectionMatcher sm = sections.get(i);
+      if (sm.matcher instanceof RefPatternMatcher.ExpandParameters
+          ? ((RefPatternMatcher.ExpandParameters) sm.matcher).matchPrefix(ref)
+          : sm.match(ref, null)) {
+        result.set(i);
+      }
+    }
+  }
+
+  private static void set(BitSet result, int[] positions) {
+    for (int i : positions) {
+      result.set(i);
+    }
+  }
+
+  private static Automaton toAutomaton(String pattern) {
+    String re = pattern.substring(1);
+    if (NOT_DFA_COMPATIBLE.matcher(re).find()) {
+      return null;
+    }
+    try {
+      Automaton a = new RegExp(re, RegExp.NONE).toAutomaton();
+      a.minimize();
+      return a;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static RunAutomaton combine(List<Automaton> automata) {
+    if (automata.size() < 2) {
+      return null;
+    }
+    Automaton union = Automaton.union(automata);
+    union.minimize();
+    if (union.getNumberOfStates() > MAX_COMBINED_STATES) {
+      return null;
+    }
+    return new RunAutomaton(union);
+  }
+
+  private static class Node {
+    private List<Character> keyList = new ArrayList<>();
+    private List<Node> childList = new ArrayList<>();
+    private List<Integer> prefixes = new ArrayList<>();
+    private List<Integer> exact = new ArrayList<>();
+
+    private char[] keys;
+    private Node[] children;
+    private int[] prefixSections;
+    private int[] exactSections;
+
+    private Node add(String pattern, int length) {
+      Node n = this;
+      for (int i = 0; i < length; i++) {
+        char c = pattern.charAt(i);
+        int k = n.keyList.indexOf(c);
+        if (k < 0) {
+          k = n.keyList.size();
+          n.keyList.add(c);
+          n.childList.add(new Node());
+        }
+        n = n.childList.get(k);
+      }
+      return n;
+    }
+
+    private void freeze() {
+      Integer[] order = new Integer[keyList.size()];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Character.compare(keyList.get(a), keyList.get(b)));
+      keys = new char[order.length];
+      children = new Node[order.length];
+      for (int i = 0; i < order.length; i++) {
+        keys[i] = keyList.get(order[i]);
+        children[i] = childList.get(order[i]);
+        children[i].freeze();
+      }
+      prefixSections = Ints.toArray(prefixes);
+      exactSections = Ints.toArray(exact);
+      keyList = null;
+      childList = null;
+      prefixes = null;
+      exact = null;
+    }
+  }
+}
@@ -0,0 +1,275 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparing;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.common.data.SubmitRecord;
+import com.google.gerrit.common.data.SubmitTypeRecord;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.PatchSet;
+import com.google.gerrit.reviewdb.client.PatchSetApproval;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Cache of submit rule results, shared by all callers of {@link SubmitRuleEvaluator}.
+ *
+ * <p>Entries are keyed by a digest of what the rules can read: the change, the evaluated patch set,
+ * the current approvals, the {@code refs/meta/config} revision of every project up the hierarchy
+ * (covering {@code rules.pl}, labels and permissions) and the evaluation options. The calling user
+ * is only part of the key if a project in the hierarchy has its own {@code rules.pl}; the default
+ * rules do not depend on it. An update to any of the inputs thus leads to a new key rather than an
+ * invalidation. Entries also expire after a few minutes, as the permission checks on votes depend
+ * on group membership, which is not part of the key.
+ */
+@Singleton
+public class SubmitRecordCache {
+  static final String CACHE_NAME = "submit_records";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, String.class, Entry.class)
+            .maximumWeight(10000)
+            .expireAfterWrite(10, MINUTES);
+        bind(SubmitRecordCache.class);
+      }
+    };
+  }
+
+  static class Entry {
+    @Nullable final ImmutableList<SubmitRecord> records;
+    @Nullable final SubmitTypeRecord type;
+    final long reductions;
+
+    Entry(@Nullable List<SubmitRecord> records, @Nullable SubmitTypeRecord type, long reductions) {
+      this.records = records != null ? ImmutableList.copyOf(copy(records)) : null;
+      this.type = type;
+      this.reductions = reductions;
+    }
+  }
+
+  private final Cache<String, Entry> cache;
+  private final Counter1<String> lookups;
+  private final Counter0 reductionsSaved;
+
+  @Inject
+  SubmitRecordCache(@Named(CACHE_NAME) Cache<String, Entry> cache, MetricMaker metricMaker) {
+    this.cache = cache;
+    lookups =
+        metricMaker.newCounter(
+            "rules/submit_cache/lookup_count",
+            new Description("Lookups of submit rule results, by whether they were cached")
+                .setRate()
+                .setUnit("lookups"),
+            Field.ofString("result"));
+    reductionsSaved =
+        metricMaker.newCounter(
+            "rules/submit_cache/reductions_saved",
+            new Description("Prolog reductions not executed thanks to cached submit rule results")
+                .setRate()
+                .setUnit("reductions"));
+  }
+
+  /**
+   * Compute the cache key of an evaluation.
+   *
+   * @param kind which rule is evaluated, e.g. {@code "submit_rule"}.
+   * @param cd change to evaluate.
+   * @param control control of the change.
+   * @param ps patch set the rules are evaluated for.
+   * @param opts evaluation options; must not have a custom rule.
+   * @param user user the rules are evaluated for; null if the rules do not see a user.
+   * @return key of the evaluation.
+   * @throws OrmException if the approvals cannot be read.
+   */
+  String key(
+      String kind,
+      ChangeData cd,
+      ChangeControl control,
+      PatchSet ps,
+      SubmitRuleOptions opts,
+      @Nullable CurrentUser user)
+      throws OrmException {
+    List<ObjectId> configs = new ArrayList<>();
+    boolean customRules = false;
+    for (ProjectState p : control.getProjectControl().getProjectState().tree()) {
+      configs.add(p.getConfig().getRevision());
+      customRules |= p.getConfig().getRulesId() != null;
+    }
+    String userKey = null;
+    if (user != null) {
+      userKey =
+          user.isIdentifiedUser()
+              ? Integer.toString(user.getAccountId().get())
+              : user.getClass().getName();
+    }
+    return key(
+        kind,
+        opts,
+        control.getChange(),
+        control.getNotes().getRevision(),
+        ps,
+        cd.currentApprovals(),
+        configs,
+        customRules,
+        userKey);
+  }
+
+  /**
+   * Compute the cache key of an evaluation from its inputs.
+   *
+   * @param configRevisions {@code refs/meta/config} revisions of the project and its parents.
+   * @param customRules whether a project in the hierarchy has its own {@code rules.pl}.
+   * @param user identity of the user the rules are evaluated for; only used with custom rules.
+   */
+  static String key(
+      String kind,
+      SubmitRuleOptions opts,
+      Change c,
+      @Nullable ObjectId notesRevision,
+      PatchSet ps,
+      Collection<PatchSetApproval> currentApprovals,
+      List<ObjectId> configRevisions,
+      boolean customRules,
+      @Nullable String user) {
+    Hasher h = Hashing.sha256().newHasher();
+    byte[] buf = new byte[20];
+    h.putString(kind, UTF_8)
+        .putBoolean(opts.fastEvalLabels())
+        .putBoolean(opts.allowDraft())
+        .putBoolean(opts.allowClosed())
+        .putBoolean(opts.skipFilters());
+
+    h.putInt(c.getId().get())
+        .putString(c.getDest().get(), UTF_8)
+        .putChar(c.getStatus().getCode())
+        .putInt(c.getOwner().get())
+        .putString(Strings.nullToEmpty(c.getTopic()), UTF_8)
+        .putBoolean(c.isPrivate())
+        .putBoolean(c.isWorkInProgress())
+        .putInt(c.getRowVersion())
+        .putLong(c.getLastUpdatedOn().getTime());
+    hashObjectId(h, notesRevision, buf);
+
+    h.putInt(ps.getId().get())
+        .putString(ps.getRevision().get(), UTF_8)
+        .putInt(ps.getUploader().get())
+        .putBoolean(ps.isDraft());
+    List<PatchSetApproval> approvals = new ArrayList<>(currentApprovals);
+    approvals.sort(
+        comparing(PatchSetApproval::getLabel).thenComparing(a -> a.getAccountId().get()));
+    for (PatchSetApproval a : approvals) {
+      h.putString(a.getLabel(), UTF_8)
+          .putInt(a.getAccountId().get())
+          .putInt(a.getRealAccountId().get())
+          .putShort(a.getValue())
+          .putLong(a.getGranted().getTime());
+    }
+
+    for (ObjectId rev : configRevisions) {
+      hashObjectId(h, rev, buf);
+    }
+    if (customRules && user != null) {
+      h.putString(user, UTF_8);
+    }
+    return h.hash().toString();
+  }
+
+  @Nullable
+  List<SubmitRecord> getRecords(String key) {
+    Entry e = lookup(key);
+    return e != null && e.records != null ? copy(e.records) : null;
+  }
+
+  void putRecords(String key, List<SubmitRecord> records, long reductions) {
+    cache.put(key, new Entry(records, null, reductions));
+  }
+
+  @Nullable
+  SubmitTypeRecord getType(String key) {
+    Entry e = lookup(key);
+    return e != null ? e.type : null;
+  }
+
+  void putType(String key, SubmitTypeRecord type, long reductions) {
+    cache.put(key, new Entry(null, type, reductions));
+  }
+
+  @Nullable
+  private Entry lookup(String key) {
+    Entry e = cache.getIfPresent(key);
+    if (e != null) {
+      lookups.increment("hit");
+      reductionsSaved.incrementBy(e.reductions);
+    } else {
+      lookups.increment("miss");
+    }
+    return e;
+  }
+
+  private static void hashObjectId(Hasher h, @Nullable ObjectId id, byte[] buf) {
+    MoreObjects.firstNonNull(id, ObjectId.zeroId()).copyRawTo(buf, 0);
+    h.putBytes(buf);
+  }
+
+  /** Deep copy, as {@link SubmitRecord} is mutable and callers may modify their records. */
+  private static List<SubmitRecord> copy(List<SubmitRecord> records) {
+    List<SubmitRecord> result = new ArrayList<>(records.size());
+    for (SubmitRecord r : records) {
+      SubmitRecord c = new SubmitRecord();
+      c.status = r.status;
+      c.errorMessage = r.errorMessage;
+      if (r.labels != null) {
+        c.labels = new ArrayList<>(r.labels.size());
+        for (SubmitRecord.Label l : r.labels) {
+          SubmitRecord.Label cl = new SubmitRecord.Label();
+          cl.label = l.label;
+          cl.status = l.status;
+          cl.appliedBy = l.appliedBy;
+          c.labels.add(cl);
+        }
+      }
+      result.add(c);
+    }
+    return result;
+  }
+}
@@ -30,6 +30,7 @@ import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.account.AccountCache;
 import com.google.gerrit.server.account.Accounts;
 import com.google.gerrit.server.account.Emails;
+import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gwtorm.server.OrmException;
 import com.googlecode.prolog_cafe.exceptions.CompileException;
@@ -87,6 +88,8 @@ public class SubmitRuleEvaluator {
   private final AccountCache accountCache;
   private final Accounts accounts;
   private final Emails emails;
+  private final SubmitRecordCache submitRecordCache;
+  private final DefaultSubmitRule defaultSubmitRule;
   private final ChangeData cd;
   private final ChangeControl control;
 
@@ -99,11 +102,18 @@ public class SubmitRuleEvaluator {
   private Term submitRule;
 
   public SubmitRuleEvaluator(
-      AccountCache accountCache, Accounts accounts, Emails emails, ChangeData cd)
+      AccountCache accountCache,
+      Accounts accounts,
+      Emails emails,
+      @Nullable SubmitRecordCache submitRecordCache,
+      @Nullable DefaultSubmitRule defaultSubmitRule,
+      ChangeData cd)
       throws OrmException {
     this.accountCache = accountCache;
     this.accounts = accounts;
     this.emails = emails;
+    this.submitRecordCache = submitRecordCache;
+    this.defaultSubmitRule = defaultSubmitRule;
     this.cd = cd;
     this.control = cd.changeControl();
   }
@@ -237,6 +247,37 @@ public class SubmitRuleEvaluator {
       }
     }
 
+    String key = cacheKey("submit_rule", control.getUser());
+    if (key != null) {
+      List<SubmitRecord> cached = submitRecordCache.getRecords(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    List<SubmitRecord> records = null;
+    if (useDefaultSubmitRule()) {
+      try {
+        records = defaultSubmitRule.evaluate(cd, opts.fastEvalLabels());
+      } catch (OrmException | PermissionBackendException e) {
+        return ruleError(
+            String.format(
+                "Cannot evaluate default submit rule for change %s of %s",
+                cd.getId(), getProjectName()),
+            e);
+      }
+    }
+    if (records == null) {
+      records = evaluateSubmitRule();
+    }
+    if (key != null
+        && records.stream().noneMatch(r -> r.status == SubmitRecord.Status.RULE_ERROR)) {
+      submitRecordCache.putRecords(key, records, reductionsConsumed);
+    }
+    return records;
+  }
+
+  private List<SubmitRecord> evaluateSubmitRule() {
     List<Term> results;
     try {
       results =
@@ -428,6 +469,28 @@ public class SubmitRuleEvaluator {
       return SubmitTypeRecord.error(msg);
     }
 
+    String key = cacheKey("submit_type", null);
+    if (key != null) {
+      SubmitTypeRecord cached = submitRecordCache.getType(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    SubmitTypeRecord type = null;
+    if (useDefaultSubmitRule()) {
+      type = defaultSubmitRule.getSubmitType(control);
+    }
+    if (type == null) {
+      type = evaluateSubmitType();
+    }
+    if (key != null && type.isOk()) {
+      submitRecordCache.putType(key, type, reductionsConsumed);
+    }
+    return type;
+  }
+
+  private SubmitTypeRecord evaluateSubmitType() {
     List<Term> results;
     try {
       results =
@@ -484,6 +547,33 @@ public class SubmitRuleEvaluator {
     }
   }
 
+  private boolean useDefaultSubmitRule() {
+    return defaultSubmitRule != null && defaultSubmitRule.appliesTo(control, opts);
+  }
+
+  /**
+   * @return key of this evaluation in the {@link SubmitRecordCache}; null if the results must not
+   *     be cached.
+   */
+  @Nullable
+  private String cacheKey(String kind, @Nullable CurrentUser user) {
+    if (submitRecordCache == null || opts.rule() != null) {
+      return null;
+    }
+    try {
+      // The evaluated patch set may not be the current one, e.g. for
+      // the submit type of an older patch set.
+      PatchSet ps = patchSet != null ? patchSet : cd.currentPatchSet();
+      if (ps == null) {
+        return null;
+      }
+      return submitRecordCache.key(kind, cd, control, ps, opts, user);
+    } catch (OrmException e) {
+      log.warn("Cannot compute submit rule cache key for change " + cd.getId(), e);
+      return null;
+    }
+  }
+
   private SubmitTypeRecord typeError(String err) {
     return typeError(err, null);
   }
@@ -51,6 +51,11 @@ public class AndChangeSource extends AndSource<ChangeData> implements ChangeData
         throw new OrmRuntimeException(e);
       }
     }
+    for (Predicate<ChangeData> p : getChildren()) {
+      if (p instanceof ConflictsPredicate.CheckConflict) {
+        ((ConflictsPredicate.CheckConflict) p).prefetch(buffer);
+      }
+    }
     return super.transformBuffer(buffer);
   }
 
@@ -0,0 +1,91 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.query.change;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.gerrit.reviewdb.client.Change;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Files touched by the current patch sets of the open changes of one branch.
+ *
+ * <p>Instances are immutable; {@link #update(Map)} returns a modified copy.
+ */
+class BranchFiles {
+  static BranchFiles create(Map<Change.Id, ImmutableSet<String>> changes) {
+    return new BranchFiles(ImmutableMap.copyOf(changes));
+  }
+
+  private final ImmutableMap<Change.Id, ImmutableSet<String>> files;
+  private final ImmutableSetMultimap<String, Change.Id> byPath;
+
+  private BranchFiles(ImmutableMap<Change.Id, ImmutableSet<String>> files) {
+    this.files = files;
+    ImmutableSetMultimap.Builder<String, Change.Id> b = ImmutableSetMultimap.builder();
+    for (Map.Entry<Change.Id, ImmutableSet<String>> e : files.entrySet()) {
+      for (String path : e.getValue()) {
+        b.put(path, e.getKey());
+      }
+    }
+    byPath = b.build();
+  }
+
+  /**
+   * Find the changes touching any of the given paths.
+   *
+   * @param paths paths to look for.
+   * @return changes with at least one of the paths in their current patch set.
+   */
+  Set<Change.Id> touching(Collection<String> paths) {
+    Set<Change.Id> result = new HashSet<>();
+    for (String path : paths) {
+      result.addAll(byPath.get(path));
+    }
+    return result;
+  }
+
+  boolean contains(Change.Id id) {
+    return files.containsKey(id);
+  }
+
+  /** @return number of paths held, used as the cache weight. */
+  int weight() {
+    return 1 + byPath.size();
+  }
+
+  /**
+   * Apply changes to the set.
+   *
+   * @param changes updated changes; a null entry removes the change.
+   * @return new copy with the changes applied.
+   */
+  BranchFiles update(Map<Change.Id, ImmutableSet<String>> changes) {
+    Map<Change.Id, ImmutableSet<String>> newFiles = new HashMap<>(files);
+    for (Map.Entry<Change.Id, ImmutableSet<String>> e : changes.entrySet()) {
+      if (e.getValue() != null) {
+        newFiles.put(e.getKey(), e.getValue());
+      } else {
+        newFiles.remove(e.getKey());
+      }
+    }
+    return new BranchFiles(ImmutableMap.copyOf(newFiles));
+  }
+}
@@ -71,9 +71,11 @@ import com.google.gerrit.server.patch.DiffSummary;
 import com.google.gerrit.server.patch.PatchListCache;
 import com.google.gerrit.server.patch.PatchListNotAvailableException;
 import com.google.gerrit.server.project.ChangeControl;
+import com.google.gerrit.server.project.DefaultSubmitRule;
 import com.google.gerrit.server.project.NoSuchChangeException;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.project.SubmitRecordCache;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.project.SubmitRuleOptions;
 import com.google.gwtorm.server.OrmException;
@@ -336,7 +338,7 @@ public class ChangeData {
     ChangeData cd =
         new ChangeData(
             null, null, null, null, null, null, null, null, null, null, null, null, null, null,
-            null, null, null, null, null, null, project, id, null, null, null);
+            null, null, null, null, null, null, null, null, project, id, null, null, null);
     cd.currentPatchSet = new PatchSet(new PatchSet.Id(id, currentPatchSetId));
     return cd;
   }
@@ -351,6 +353,7 @@ public class ChangeData {
   private final ChangeMessagesUtil cmUtil;
   private final ChangeNotes.Factory notesFactory;
   private final CommentsUtil commentsUtil;
+  private final DefaultSubmitRule defaultSubmitRule;
   private final Emails emails;
   private final GitRepositoryManager repoManager;
   private final IdentifiedUser.GenericFactory userFactory;
@@ -360,6 +363,7 @@ public class ChangeData {
   private final PatchListCache patchListCache;
   private final PatchSetUtil psUtil;
   private final ProjectCache projectCache;
+  private final SubmitRecordCache submitRecordCache;
   private final TrackingFooters trackingFooters;
 
   // Required assisted injected fields.
@@ -422,6 +426,7 @@ public class ChangeData {
       ChangeMessagesUtil cmUtil,
       ChangeNotes.Factory notesFactory,
       CommentsUtil commentsUtil,
+      DefaultSubmitRule defaultSubmitRule,
       Emails emails,
       GitRepositoryManager repoManager,
       IdentifiedUser.GenericFactory userFactory,
@@ -431,6 +436,7 @@ public class ChangeData {
       PatchListCache patchListCache,
       PatchSetUtil psUtil,
       ProjectCache projectCache,
+      SubmitRecordCache submitRecordCache,
       TrackingFooters trackingFooters,
       @Assisted ReviewDb db,
       @Assisted Project.NameKey project,
@@ -446,6 +452,7 @@ public class ChangeData {
     this.cmUtil = cmUtil;
     this.notesFactory = notesFactory;
     this.commentsUtil = commentsUtil;
+    this.defaultSubmitRule = defaultSubmitRule;
     this.emails = emails;
     this.repoManager = repoManager;
     this.userFactory = userFactory;
@@ -456,6 +463,7 @@ public class ChangeData {
     this.psUtil = psUtil;
     this.projectCache = projectCache;
     this.starredChangesUtil = starredChangesUtil;
+    this.submitRecordCache = submitRecordCache;
     this.trackingFooters = trackingFooters;
 
     // May be null in tests when created via createForTest above, in which case lazy-loading will
@@ -1013,7 +1021,8 @@ public class ChangeData {
         return Collections.emptyList();
       }
       records =
-          new SubmitRuleEvaluator(accountCache, accounts, emails, this)
+          new SubmitRuleEvaluator(
+                  accountCache, accounts, emails, submitRecordCache, defaultSubmitRule, this)
               .setOptions(options)
               .evaluate();
       submitRecords.put(options, records);
@@ -1033,7 +1042,9 @@ public class ChangeData {
   public SubmitTypeRecord submitTypeRecord() throws OrmException {
     if (submitTypeRecord == null) {
       submitTypeRecord =
-          new SubmitRuleEvaluator(accountCache, accounts, emails, this).getSubmitType();
+          new SubmitRuleEvaluator(
+                  accountCache, accounts, emails, submitRecordCache, defaultSubmitRule, this)
+              .getSubmitType();
     }
     return submitTypeRecord;
   }
@@ -1042,6 +1053,10 @@ public class ChangeData {
     this.mergeable = mergeable;
   }
 
+  public boolean hasMergeable() {
+    return mergeable != null;
+  }
+
   public Boolean isMergeable() throws OrmException {
     if (mergeable == null) {
       Change c = change();
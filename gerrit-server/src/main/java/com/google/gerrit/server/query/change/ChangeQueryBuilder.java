@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.GroupReference;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.common.errors.NotSignedInException;
@@ -67,6 +68,7 @@ import com.google.gerrit.server.mail.Address;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.notedb.NotesMigration;
 import com.google.gerrit.server.notedb.ReviewerStateInternal;
+import com.google.gerrit.server.patch.DiffExecutor;
 import com.google.gerrit.server.patch.PatchListCache;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.project.ChangeControl;
@@ -87,6 +89,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -190,6 +193,8 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
 
   @VisibleForTesting
   public static class Arguments {
+    private static final int DEFAULT_CONFLICTS_THREADS = Runtime.getRuntime().availableProcessors();
+
     final AccountCache accountCache;
     final AccountResolver accountResolver;
     final AllProjectsName allProjectsName;
@@ -202,6 +207,7 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
     final ChangeNotes.Factory notesFactory;
     final CommentsUtil commentsUtil;
     final ConflictsCache conflictsCache;
+    final ExecutorService diffExecutor;
     final DynamicMap<ChangeHasOperandFactory> hasOperands;
     final DynamicMap<ChangeOperatorFactory> opFactories;
     final GitRepositoryManager repoManager;
@@ -209,6 +215,7 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
     final IdentifiedUser.GenericFactory userFactory;
     final IndexConfig indexConfig;
     final NotesMigration notesMigration;
+    final OpenChangeFiles openChangeFiles;
     final PatchListCache patchListCache;
     final ProjectCache projectCache;
     final Provider<InternalChangeQuery> queryProvider;
@@ -218,6 +225,7 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
     final StarredChangesUtil starredChangesUtil;
     final SubmitDryRun submitDryRun;
     final boolean allowsDrafts;
+    final int conflictsThreads;
 
     private final Provider<CurrentUser> self;
 
@@ -247,6 +255,8 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
         ChangeIndexCollection indexes,
         SubmitDryRun submitDryRun,
         ConflictsCache conflictsCache,
+        @Nullable OpenChangeFiles openChangeFiles,
+        @DiffExecutor ExecutorService diffExecutor,
         IndexConfig indexConfig,
         Provider<ListMembers> listMembers,
         StarredChangesUtil starredChangesUtil,
@@ -276,6 +286,9 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
           listChildProjects,
           submitDryRun,
           conflictsCache,
+          openChangeFiles,
+          diffExecutor,
+          cfg == null ? 0 : cfg.getInt("change", "conflictsThreads", DEFAULT_CONFLICTS_THREADS),
           indexes != null ? indexes.getSearchIndex() : null,
           indexConfig,
           listMembers,
@@ -308,6 +321,9 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
         Provider<ListChildProjects> listChildProjects,
         SubmitDryRun submitDryRun,
         ConflictsCache conflictsCache,
+        OpenChangeFiles openChangeFiles,
+        ExecutorService diffExecutor,
+        int conflictsThreads,
         ChangeIndex index,
         IndexConfig indexConfig,
         Provider<ListMembers> listMembers,
@@ -336,6 +352,9 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
       this.listChildProjects = listChildProjects;
       this.submitDryRun = submitDryRun;
       this.conflictsCache = conflictsCache;
+      this.openChangeFiles = openChangeFiles;
+      this.diffExecutor = diffExecutor;
+      this.conflictsThreads = conflictsThreads;
       this.index = index;
       this.indexConfig = indexConfig;
       this.listMembers = listMembers;
@@ -370,6 +389,9 @@ public class ChangeQueryBuilder extends QueryBuilder<ChangeData> {
           listChildProjects,
           submitDryRun,
           conflictsCache,
+          openChangeFiles,
+          diffExecutor,
+          conflictsThreads,
           index,
           indexConfig,
           listMembers,
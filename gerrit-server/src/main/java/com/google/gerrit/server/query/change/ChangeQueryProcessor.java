@@ -21,6 +21,7 @@ import com.google.gerrit.extensions.common.PluginDefinedInfo;
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.index.IndexConfig;
 import com.google.gerrit.index.QueryOptions;
+import com.google.gerrit.index.SortKey;
 import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryProcessor;
@@ -35,6 +36,7 @@ import com.google.gerrit.server.index.change.IndexedChangeQuery;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.project.ChangeControl;
+import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import java.util.ArrayList;
@@ -114,6 +116,12 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
     return IndexedChangeQuery.createOptions(indexConfig, start, limit, requestedFields);
   }
 
+  @Override
+  protected SortKey sortKey(ChangeData cd) throws OrmException {
+    // Matches the index sort: last updated, then change number, both descending.
+    return SortKey.create(cd.change().getLastUpdatedOn().getTime(), cd.getId().get());
+  }
+
   @Override
   public List<PluginDefinedInfo> create(ChangeData cd) {
     List<PluginDefinedInfo> plugins = new ArrayList<>(attributeFactories.plugins().size());
@@ -14,7 +14,16 @@
 
 package com.google.gerrit.server.query.change;
 
+import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
+import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
+
 import com.google.gerrit.extensions.client.SubmitType;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Objects;
 import org.eclipse.jgit.lib.ObjectId;
@@ -56,6 +65,30 @@ public class ConflictKey implements Serializable {
     return contentMerge;
   }
 
+  /** Write the compact encoding used by the {@code conflicts} disk cache. */
+  void writeTo(OutputStream out) throws IOException {
+    writeNotNull(out, commit);
+    writeNotNull(out, otherCommit);
+    writeString(out, submitType.name());
+    out.write(contentMerge ? 1 : 0);
+  }
+
+  static ConflictKey readFrom(InputStream in) throws IOException {
+    ObjectId commit = readNotNull(in);
+    ObjectId otherCommit = readNotNull(in);
+    SubmitType submitType;
+    try {
+      submitType = SubmitType.valueOf(readString(in));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid submit type", e);
+    }
+    int contentMerge = in.read();
+    if (contentMerge < 0) {
+      throw new EOFException();
+    }
+    return new ConflictKey(commit, otherCommit, submitType, contentMerge != 0);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof ConflictKey)) {
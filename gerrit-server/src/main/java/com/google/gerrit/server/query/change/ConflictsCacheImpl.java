@@ -15,6 +15,8 @@
 package com.google.gerrit.server.query.change;
 
 import com.google.common.cache.Cache;
+import com.google.gerrit.server.cache.BinaryCacheSerializer;
+import com.google.gerrit.server.cache.BooleanCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
 import com.google.inject.Inject;
 import com.google.inject.Module;
@@ -29,7 +31,10 @@ public class ConflictsCacheImpl implements ConflictsCache {
     return new CacheModule() {
       @Override
       protected void configure() {
-        persist(NAME, ConflictKey.class, Boolean.class).maximumWeight(37400);
+        persist(NAME, ConflictKey.class, Boolean.class)
+            .maximumWeight(37400)
+            .keySerializer(BinaryCacheSerializer.of(ConflictKey::writeTo, ConflictKey::readFrom))
+            .valueSerializer(BooleanCacheSerializer.INSTANCE);
         bind(ConflictsCache.class).to(ConflictsCacheImpl.class);
       }
     };
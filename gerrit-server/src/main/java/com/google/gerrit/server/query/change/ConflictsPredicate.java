@@ -14,7 +14,9 @@
 
 package com.google.gerrit.server.query.change;
 
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.SubmitTypeRecord;
+import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.reviewdb.client.Change;
@@ -33,7 +35,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -42,8 +48,12 @@ import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ConflictsPredicate {
+  private static final Logger log = LoggerFactory.getLogger(ConflictsPredicate.class);
+
   // UI code may depend on this string, so use caution when changing.
   protected static final String TOO_MANY_FILES = "too many files to find conflicts";
 
@@ -54,25 +64,47 @@ public class ConflictsPredicate {
     ChangeDataCache changeDataCache =
         new ChangeDataCache(c, args.db, args.changeDataFactory, args.projectCache);
     List<String> files = listFiles(c, args, changeDataCache);
-    if (3 + files.size() > args.indexConfig.maxTerms()) {
-      // Short-circuit with a nice error message if we exceed the index
-      // backend's term limit. This assumes that "conflicts:foo" is the entire
-      // query; if there are more terms in the input, we might not
-      // short-circuit here, which will result in a more generic error message
-      // later on in the query parsing.
-      throw new QueryParseException(TOO_MANY_FILES);
-    }
+    Set<Change.Id> candidates =
+        args.openChangeFiles != null ? args.openChangeFiles.touching(c.getDest(), files) : null;
+    Predicate<ChangeData> overlap;
+    if (candidates != null && 3 + candidates.size() <= args.indexConfig.maxTerms()) {
+      // The open changes touching the same files are already known, so
+      // query them by number instead of asking the index for every path.
+      candidates.remove(c.getId());
+      if (candidates.isEmpty()) {
+        // Nothing overlaps. Match only the change itself, which is already
+        // excluded below, so the index returns nothing. A non-index
+        // predicate such as not(any()) would instead be rewritten to page
+        // through all open changes.
+        candidates.add(c.getId());
+      }
+      List<Predicate<ChangeData>> idPredicates = new ArrayList<>(candidates.size());
+      for (Change.Id id : candidates) {
+        idPredicates.add(new LegacyChangeIdPredicate(id));
+      }
+      overlap = Predicate.or(idPredicates);
+    } else {
+      if (3 + files.size() > args.indexConfig.maxTerms()) {
+        // Short-circuit with a nice error message if we exceed the index
+        // backend's term limit. This assumes that "conflicts:foo" is the entire
+        // query; if there are more terms in the input, we might not
+        // short-circuit here, which will result in a more generic error message
+        // later on in the query parsing.
+        throw new QueryParseException(TOO_MANY_FILES);
+      }
 
-    List<Predicate<ChangeData>> filePredicates = new ArrayList<>(files.size());
-    for (String file : files) {
-      filePredicates.add(new EqualsPathPredicate(ChangeQueryBuilder.FIELD_PATH, file));
+      List<Predicate<ChangeData>> filePredicates = new ArrayList<>(files.size());
+      for (String file : files) {
+        filePredicates.add(new EqualsPathPredicate(ChangeQueryBuilder.FIELD_PATH, file));
+      }
+      overlap = Predicate.or(filePredicates);
     }
 
     List<Predicate<ChangeData>> and = new ArrayList<>(5);
     and.add(new ProjectPredicate(c.getProject().get()));
     and.add(new RefPredicate(c.getDest().get()));
     and.add(Predicate.not(new LegacyChangeIdPredicate(c.getId())));
-    and.add(Predicate.or(filePredicates));
+    and.add(overlap);
     and.add(new CheckConflict(ChangeQueryBuilder.FIELD_CONFLICTS, value, args, c, changeDataCache));
     return Predicate.and(and);
   }
@@ -111,7 +143,7 @@ public class ConflictsPredicate {
     }
   }
 
-  private static final class CheckConflict extends ChangeOperatorPredicate {
+  static final class CheckConflict extends ChangeOperatorPredicate {
     private final Arguments args;
     private final Change c;
     private final ChangeDataCache changeDataCache;
@@ -126,14 +158,95 @@ public class ConflictsPredicate {
 
     @Override
     public boolean match(ChangeData object) throws OrmException {
-      Change otherChange = object.change();
-      if (otherChange == null || !otherChange.getDest().equals(c.getDest())) {
+      Trial trial = trial(object);
+      if (trial == null) {
         return false;
       }
+      Boolean conflicts = args.conflictsCache.getIfPresent(trial.key);
+      if (conflicts != null) {
+        return conflicts;
+      }
+      try {
+        return run(trial);
+      } catch (IntegrationException | NoSuchProjectException | IOException e) {
+        throw new OrmException(e);
+      }
+    }
+
+    /**
+     * Run the trial merges of a batch of candidates in parallel.
+     *
+     * <p>Results only go to the conflicts cache, where {@link #match(ChangeData)} picks them up.
+     * Failures are ignored here; {@code match} retries those candidates and reports the error.
+     *
+     * @param changes candidates about to be matched.
+     */
+    void prefetch(List<ChangeData> changes) {
+      if (args.diffExecutor == null || args.conflictsThreads <= 1 || changes.size() < 2) {
+        return;
+      }
+
+      // Lazily loaded state is not thread safe; load it on this thread.
+      Queue<Trial> todo = new ConcurrentLinkedQueue<>();
+      try {
+        for (ChangeData cd : changes) {
+          Trial trial = trial(cd);
+          if (trial != null && args.conflictsCache.getIfPresent(trial.key) == null) {
+            todo.add(trial);
+          }
+        }
+        if (todo.size() < 2) {
+          return;
+        }
+        try (Repository repo = args.repoManager.openRepository(c.getProject())) {
+          changeDataCache.getAlreadyAccepted(repo);
+        }
+      } catch (OrmException | IOException e) {
+        return;
+      }
+
+      int threads = Math.min(args.conflictsThreads, todo.size());
+      List<Future<?>> workers = new ArrayList<>(threads);
+      for (int i = 0; i < threads; i++) {
+        workers.add(
+            args.diffExecutor.submit(
+                () -> {
+                  for (Trial trial = todo.poll(); trial != null; trial = todo.poll()) {
+                    try {
+                      run(trial);
+                    } catch (IntegrationException
+                        | NoSuchProjectException
+                        | IOException
+                        | OrmException e) {
+                      // Retried by match().
+                    }
+                  }
+                }));
+      }
+      for (Future<?> w : workers) {
+        try {
+          w.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (ExecutionException e) {
+          log.warn("Cannot check conflicts with change " + c.getId(), e);
+        }
+      }
+    }
+
+    @Nullable
+    private Trial trial(ChangeData object) throws OrmException {
+      Change otherChange = object.change();
+      if (otherChange == null
+          || !otherChange.getStatus().isOpen()
+          || !otherChange.getDest().equals(c.getDest())) {
+        return null;
+      }
 
       SubmitTypeRecord str = object.submitTypeRecord();
       if (!str.isOk()) {
-        return false;
+        return null;
       }
 
       ObjectId other = ObjectId.fromString(object.currentPatchSet().getRevision().get());
@@ -143,26 +256,24 @@ public class ConflictsPredicate {
               other,
               str.type,
               changeDataCache.getProjectState().isUseContentMerge());
-      Boolean conflicts = args.conflictsCache.getIfPresent(conflictsKey);
-      if (conflicts != null) {
-        return conflicts;
-      }
+      return new Trial(otherChange, other, str.type, conflictsKey);
+    }
 
-      try (Repository repo = args.repoManager.openRepository(otherChange.getProject());
+    private boolean run(Trial trial)
+        throws IntegrationException, NoSuchProjectException, IOException, OrmException {
+      try (Repository repo = args.repoManager.openRepository(trial.change.getProject());
           CodeReviewRevWalk rw = CodeReviewCommit.newRevWalk(repo)) {
-        conflicts =
+        boolean conflicts =
             !args.submitDryRun.run(
-                str.type,
+                trial.type,
                 repo,
                 rw,
-                otherChange.getDest(),
+                trial.change.getDest(),
                 changeDataCache.getTestAgainst(),
-                other,
+                trial.other,
                 getAlreadyAccepted(repo, rw));
-        args.conflictsCache.put(conflictsKey, conflicts);
+        args.conflictsCache.put(trial.key, conflicts);
         return conflicts;
-      } catch (IntegrationException | NoSuchProjectException | IOException e) {
-        throw new OrmException(e);
       }
     }
 
@@ -187,6 +298,20 @@ public class ConflictsPredicate {
     }
   }
 
+  private static class Trial {
+    final Change change;
+    final ObjectId other;
+    final SubmitType type;
+    final ConflictKey key;
+
+    Trial(Change change, ObjectId other, SubmitType type, ConflictKey key) {
+      this.change = change;
+      this.other = other;
+      this.type = type;
+      this.key = key;
+    }
+  }
+
   public static class ChangeDataCache {
     protected final Change change;
     protected final Provider<ReviewDb> db;
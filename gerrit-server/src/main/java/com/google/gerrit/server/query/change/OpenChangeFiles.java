@@ -0,0 +1,293 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.query.change;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.TreeMultiset;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.ChangeIndexedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.index.change.ChangeField;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-branch {@link BranchFiles} used to find the candidates of {@code conflicts:}.
+ *
+ * <p>Entries are loaded from the secondary index once and then maintained incrementally: indexing a
+ * change only marks it, and the next reader re-reads the marked changes from the index instead of
+ * reloading the whole branch.
+ *
+ * <p>Marks are numbered. Each cached entry remembers the last mark it reflects, and an entry being
+ * loaded the number current when its load started, so a change marked while a branch is loaded is
+ * still applied to the loaded entry.
+ */
+@Singleton
+public class OpenChangeFiles implements ChangeIndexedListener {
+  private static final Logger log = LoggerFactory.getLogger(OpenChangeFiles.class);
+  static final String CACHE_NAME = "open_change_files";
+
+  /** Beyond this many pending marks, dropping all branches is cheaper than refreshing them. */
+  private static final int MAX_MARKS = 10000;
+
+  private static final ImmutableSet<String> FIELDS =
+      ImmutableSet.of(ChangeField.CHANGE.getName(), ChangeField.PATCH_SET.getName());
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, Branch.NameKey.class, Snapshot.class)
+            .maximumWeight(1 << 20)
+            .weigher(Weigher.class);
+
+        bind(OpenChangeFiles.class);
+        DynamicSet.bind(binder(), ChangeIndexedListener.class).to(OpenChangeFiles.class);
+      }
+    };
+  }
+
+  /** Files of a branch, reflecting all marks up to {@link #sequence}. */
+  static class Snapshot {
+    final BranchFiles files;
+    final long sequence;
+
+    Snapshot(BranchFiles files, long sequence) {
+      this.files = files;
+      this.sequence = sequence;
+    }
+  }
+
+  private final Cache<Branch.NameKey, Snapshot> cache;
+  private final OneOffRequestContext requestContext;
+  private final Provider<InternalChangeQuery> queryProvider;
+
+  // Guarded by marks.
+  private final NavigableMap<Long, Change.Id> marks = new TreeMap<>();
+  private final TreeMultiset<Long> loading = TreeMultiset.create();
+  private long sequence;
+  private long dropped;
+
+  @Inject
+  OpenChangeFiles(
+      @Named(CACHE_NAME) Cache<Branch.NameKey, Snapshot> cache,
+      OneOffRequestContext requestContext,
+      Provider<InternalChangeQuery> queryProvider) {
+    this.cache = cache;
+    this.requestContext = requestContext;
+    this.queryProvider = queryProvider;
+  }
+
+  /**
+   * Find the open changes of a branch touching any of the given paths.
+   *
+   * @param branch destination branch.
+   * @param paths paths to look for.
+   * @return matching changes; null if the changes cannot be read from the index.
+   */
+  @Nullable
+  Set<Change.Id> touching(Branch.NameKey branch, Collection<String> paths) {
+    BranchFiles files = get(branch);
+    return files != null ? files.touching(paths) : null;
+  }
+
+  @Nullable
+  private BranchFiles get(Branch.NameKey branch) {
+    Snapshot snapshot;
+    boolean[] loaded = new boolean[1];
+    try {
+      snapshot =
+          cache.get(
+              branch,
+              () -> {
+                loaded[0] = true;
+                return loadBranch(branch);
+              });
+    } catch (ExecutionException e) {
+      log.warn("Cannot fetch open changes of " + branch, e);
+      return null;
+    }
+
+    long last;
+    List<Change.Id> todo = new ArrayList<>();
+    synchronized (marks) {
+      if (loaded[0]) {
+        // Now in the cache, the entry holds back pruning by itself.
+        loading.remove(snapshot.sequence);
+      }
+      if (snapshot.sequence < dropped) {
+        // Loaded before the marks it missed were dropped.
+        cache.asMap().remove(branch, snapshot);
+        return get(branch);
+      }
+      if (sequence == snapshot.sequence) {
+        return snapshot.files;
+      }
+      last = sequence;
+      todo.addAll(marks.tailMap(snapshot.sequence, false).values());
+    }
+
+    synchronized (this) {
+      Snapshot current = cache.getIfPresent(branch);
+      if (current == null || current.sequence < snapshot.sequence) {
+        return get(branch);
+      } else if (current.sequence >= last) {
+        return current.files;
+      }
+      try {
+        // Marks after the snapshot also cover every entry that is at least as
+        // new; applying an older mark again only re-reads the change.
+        Map<Change.Id, ChangeData> changes = load(todo);
+        for (Map.Entry<Branch.NameKey, Snapshot> e : cache.asMap().entrySet()) {
+          Snapshot s = e.getValue();
+          if (s.sequence >= snapshot.sequence && s.sequence < last) {
+            Map<Change.Id, ImmutableSet<String>> updates =
+                updates(e.getKey(), s.files, todo, changes);
+            BranchFiles files = updates.isEmpty() ? s.files : s.files.update(updates);
+            cache.put(e.getKey(), new Snapshot(files, last));
+          }
+        }
+      } catch (OrmException e) {
+        log.warn("Cannot refresh changes " + todo + " of " + branch, e);
+        cache.invalidate(branch);
+        return get(branch);
+      }
+    }
+    prune();
+    Snapshot current = cache.getIfPresent(branch);
+    return current != null ? current.files : get(branch);
+  }
+
+  @Override
+  public void onChangeIndexed(int id) {
+    // Always mark, even if nothing is cached yet: a branch being loaded right
+    // now may have read the change before it was indexed.
+    mark(new Change.Id(id));
+  }
+
+  @Override
+  public void onChangeDeleted(int id) {
+    mark(new Change.Id(id));
+  }
+
+  private void mark(Change.Id id) {
+    synchronized (marks) {
+      marks.put(++sequence, id);
+      if (marks.size() > MAX_MARKS) {
+        marks.clear();
+        dropped = sequence;
+        cache.invalidateAll();
+      }
+    }
+  }
+
+  /** Drop marks that every cached entry and every running load already reflects. */
+  private void prune() {
+    synchronized (marks) {
+      long min = sequence;
+      for (Snapshot s : cache.asMap().values()) {
+        min = Math.min(min, s.sequence);
+      }
+      if (!loading.isEmpty()) {
+        min = Math.min(min, loading.firstEntry().getElement());
+      }
+      marks.headMap(min, true).clear();
+    }
+  }
+
+  private Snapshot loadBranch(Branch.NameKey branch) throws OrmException {
+    long start;
+    synchronized (marks) {
+      start = sequence;
+      loading.add(start);
+    }
+    try (ManualRequestContext ctx = requestContext.open()) {
+      Map<Change.Id, ImmutableSet<String>> changes = new HashMap<>();
+      for (ChangeData cd : queryProvider.get().setRequestedFields(FIELDS).byBranchOpen(branch)) {
+        changes.put(cd.getId(), paths(cd));
+      }
+      return new Snapshot(BranchFiles.create(changes), start);
+    } catch (OrmException | RuntimeException e) {
+      synchronized (marks) {
+        loading.remove(start);
+      }
+      throw e;
+    }
+  }
+
+  private Map<Change.Id, ChangeData> load(Collection<Change.Id> ids) throws OrmException {
+    Map<Change.Id, ChangeData> result = new HashMap<>();
+    try (ManualRequestContext ctx = requestContext.open()) {
+      for (ChangeData cd : queryProvider.get().setRequestedFields(FIELDS).byLegacyChangeIds(ids)) {
+        Change c = cd.change();
+        if (c != null && c.getStatus().isOpen()) {
+          result.put(cd.getId(), cd);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Map<Change.Id, ImmutableSet<String>> updates(
+      Branch.NameKey branch,
+      BranchFiles files,
+      Collection<Change.Id> ids,
+      Map<Change.Id, ChangeData> open)
+      throws OrmException {
+    Map<Change.Id, ImmutableSet<String>> result = new HashMap<>();
+    for (Change.Id id : ids) {
+      ChangeData cd = open.get(id);
+      if (cd != null && cd.change().getDest().equals(branch)) {
+        result.put(id, paths(cd));
+      } else if (files.contains(id)) {
+        result.put(id, null);
+      }
+    }
+    return result;
+  }
+
+  private static ImmutableSet<String> paths(ChangeData cd) throws OrmException {
+    List<String> paths = cd.currentFilePaths();
+    return paths != null ? ImmutableSet.copyOf(paths) : ImmutableSet.of();
+  }
+
+  static class Weigher implements com.google.common.cache.Weigher<Branch.NameKey, Snapshot> {
+    @Override
+    public int weigh(Branch.NameKey key, Snapshot value) {
+      return value.files.weight();
+    }
+  }
+}
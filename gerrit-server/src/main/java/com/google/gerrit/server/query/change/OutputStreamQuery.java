@@ -35,6 +35,8 @@ import com.google.gerrit.server.data.QueryStatsAttribute;
 import com.google.gerrit.server.events.EventFactory;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.project.ChangeControl;
+import com.google.gerrit.server.project.DefaultSubmitRule;
+import com.google.gerrit.server.project.SubmitRecordCache;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gson.Gson;
 import com.google.gwtorm.server.OrmException;
@@ -79,6 +81,8 @@ public class OutputStreamQuery {
   private final AccountCache accountCache;
   private final Accounts accounts;
   private final Emails emails;
+  private final SubmitRecordCache submitRecordCache;
+  private final DefaultSubmitRule defaultSubmitRule;
   private final GitRepositoryManager repoManager;
   private final ChangeQueryBuilder queryBuilder;
   private final ChangeQueryProcessor queryProcessor;
@@ -106,6 +110,8 @@ public class OutputStreamQuery {
       AccountCache accountCache,
       Accounts accounts,
       Emails emails,
+      SubmitRecordCache submitRecordCache,
+      DefaultSubmitRule defaultSubmitRule,
       GitRepositoryManager repoManager,
       ChangeQueryBuilder queryBuilder,
       ChangeQueryProcessor queryProcessor,
@@ -116,6 +122,8 @@ public class OutputStreamQuery {
     this.accountCache = accountCache;
     this.accounts = accounts;
     this.emails = emails;
+    this.submitRecordCache = submitRecordCache;
+    this.defaultSubmitRule = defaultSubmitRule;
     this.repoManager = repoManager;
     this.queryBuilder = queryBuilder;
     this.queryProcessor = queryProcessor;
@@ -132,6 +140,10 @@ public class OutputStreamQuery {
     queryProcessor.setStart(n);
   }
 
+  public void setSearchAfter(String token) {
+    queryProcessor.setSearchAfter(token);
+  }
+
   public void setIncludePatchSets(boolean on) {
     includePatchSets = on;
   }
@@ -219,6 +231,7 @@ public class OutputStreamQuery {
 
         stats.rowCount = results.entities().size();
         stats.moreChanges = results.more();
+        stats.searchAfter = results.searchAfter();
         stats.runTimeMilliseconds = TimeUtil.nowMs() - stats.runTimeMilliseconds;
         show(stats);
       } catch (OrmException err) {
@@ -260,7 +273,8 @@ public class OutputStreamQuery {
     if (includeSubmitRecords) {
       eventFactory.addSubmitRecords(
           c,
-          new SubmitRuleEvaluator(accountCache, accounts, emails, d)
+          new SubmitRuleEvaluator(
+                  accountCache, accounts, emails, submitRecordCache, defaultSubmitRule, d)
               .setAllowClosed(true)
               .setAllowDraft(true)
               .evaluate());
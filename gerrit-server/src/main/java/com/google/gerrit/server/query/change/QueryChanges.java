@@ -24,11 +24,13 @@ import com.google.gerrit.extensions.common.ChangeInfo;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.extensions.restapi.StreamingView;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.index.query.QueryResult;
 import com.google.gerrit.server.change.ChangeJson;
 import com.google.gerrit.server.index.change.ChangeField;
+import com.google.gerrit.server.util.StreamingList;
 import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import java.util.ArrayList;
@@ -39,11 +41,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.kohsuke.args4j.Option;
 
-public class QueryChanges implements RestReadView<TopLevelResource> {
+public class QueryChanges implements RestReadView<TopLevelResource>, StreamingView {
   private final ChangeJson.Factory json;
   private final ChangeQueryBuilder qb;
   private final ChangeQueryProcessor imp;
   private EnumSet<ListChangesOption> options;
+  private boolean streaming;
 
   @Option(
     name = "--query",
@@ -83,6 +86,16 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
     imp.setStart(start);
   }
 
+  @Option(
+    name = "--search-after",
+    aliases = {"-N"},
+    metaVar = "TOKEN",
+    usage = "Continue after the last change of a previous page"
+  )
+  public void setSearchAfter(String token) {
+    imp.setSearchAfter(token);
+  }
+
   @Inject
   QueryChanges(ChangeJson.Factory json, ChangeQueryBuilder qb, ChangeQueryProcessor qp) {
     this.json = json;
@@ -103,6 +116,11 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
     return queries.get(i);
   }
 
+  @Override
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
   @Override
   public List<?> apply(TopLevelResource rsrc)
       throws BadRequestException, AuthException, OrmException {
@@ -120,7 +138,10 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
       }
       throw new BadRequestException(e.getMessage(), e);
     }
-    return out.size() == 1 ? out.get(0) : out;
+    if (out.size() == 1) {
+      return out.get(0);
+    }
+    return streaming ? new StreamingList<>(out.iterator()) : out;
   }
 
   private List<List<ChangeInfo>> query() throws OrmException, QueryParseException {
@@ -135,7 +156,6 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
       throw new QueryParseException("limit of 10 queries");
     }
 
-    int cnt = queries.size();
     List<QueryResult<ChangeData>> results = imp.query(qb.parse(queries));
 
     boolean requireLazyLoad =
@@ -144,18 +164,8 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
 
     ChangeJson cjson = json.create(options);
     cjson.setPluginDefinedAttributesFactory(this.imp);
-    List<List<ChangeInfo>> res =
-        cjson
-            .lazyLoad(requireLazyLoad || containsAnyOf(options, ChangeJson.REQUIRE_LAZY_LOAD))
-            .formatQueryResults(results);
-
-    for (int n = 0; n < cnt; n++) {
-      List<ChangeInfo> info = res.get(n);
-      if (results.get(n).more()) {
-        info.get(info.size() - 1)._moreChanges = true;
-      }
-    }
-    return res;
+    cjson.lazyLoad(requireLazyLoad || containsAnyOf(options, ChangeJson.REQUIRE_LAZY_LOAD));
+    return streaming ? cjson.streamQueryResults(results) : cjson.formatQueryResults(results);
   }
 
   private static boolean containsAnyOf(
@@ -14,7 +14,6 @@
 
 package com.google.gerrit.server.update;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.gerrit.server.git.LockFailureException;
 import java.io.IOException;
 import org.eclipse.jgit.internal.JGitText;
@@ -55,8 +54,7 @@ public class RefUpdateUtil {
    * @throws LockFailureException if the transaction was aborted due to lock failure.
    * @throws IOException if any result was not {@code OK}.
    */
-  @VisibleForTesting
-  static void checkResults(BatchRefUpdate bru) throws IOException {
+  public static void checkResults(BatchRefUpdate bru) throws IOException {
     int lockFailure = 0;
     int aborted = 0;
     int failure = 0;
@@ -0,0 +1,68 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.util;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.Lists;
+import com.google.gerrit.extensions.restapi.StreamingResult;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * List whose elements are computed by an iterator only when needed.
+ *
+ * <p>{@link #elements()} hands out the source iterator, so a REST response can be written without
+ * holding all elements in memory. Any other access reads all elements into the list first.
+ */
+public class StreamingList<T> extends AbstractList<T> implements StreamingResult<T> {
+  private Iterator<T> source;
+  private List<T> elements;
+
+  public StreamingList(Iterator<T> source) {
+    this.source = source;
+  }
+
+  @Override
+  public Iterator<T> elements() {
+    if (elements != null) {
+      return elements.iterator();
+    }
+    checkState(source != null, "elements were already streamed");
+    Iterator<T> it = source;
+    source = null;
+    return it;
+  }
+
+  @Override
+  public T get(int index) {
+    return read().get(index);
+  }
+
+  @Override
+  public int size() {
+    return read().size();
+  }
+
+  private List<T> read() {
+    if (elements == null) {
+      checkState(source != null, "elements were already streamed");
+      elements = Lists.newArrayList(source);
+      source = null;
+    }
+    return elements;
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.util;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.gerrit.extensions.restapi.StreamingResult;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map whose entries are computed by an iterator only when needed.
+ *
+ * <p>{@link #elements()} hands out the source iterator, so a REST response can be written without
+ * holding all entries in memory. Any other access reads all entries into the map first, keeping
+ * the iteration order of the source.
+ */
+public class StreamingMap<K, V> extends AbstractMap<K, V>
+    implements StreamingResult<Map.Entry<K, V>> {
+  private Iterator<Map.Entry<K, V>> source;
+  private Map<K, V> entries;
+
+  public StreamingMap(Iterator<Map.Entry<K, V>> source) {
+    this.source = source;
+  }
+
+  @Override
+  public Iterator<Map.Entry<K, V>> elements() {
+    if (entries != null) {
+      return entries.entrySet().iterator();
+    }
+    checkState(source != null, "entries were already streamed");
+    Iterator<Map.Entry<K, V>> it = source;
+    source = null;
+    return it;
+  }
+
+  @Override
+  public V get(Object key) {
+    return read().get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return read().containsKey(key);
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return read().entrySet();
+  }
+
+  private Map<K, V> read() {
+    if (entries == null) {
+      checkState(source != null, "entries were already streamed");
+      entries = new LinkedHashMap<>();
+      while (source.hasNext()) {
+        Map.Entry<K, V> e = source.next();
+        entries.put(e.getKey(), e.getValue());
+      }
+      source = null;
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.rules;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RulesCacheTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+  private static final String RULES = "submit_rule(submit(R)) :- R = label('Verified', ok(_)).\n";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private SitePaths site;
+  private ObjectId rulesId;
+  private Cache<ObjectId, RulesCache.Machine> machines;
+  private WorkQueue workQueue;
+  private RulesCache rulesCache;
+
+  @Before
+  public void setUp() throws Exception {
+    site = new SitePaths(tmp.newFolder().toPath());
+    Config cfg = new Config();
+    cfg.setString("cache", null, "directory", "cache");
+    cfg.setBoolean("rules", null, "compileOnLoad", true);
+
+    InMemoryRepositoryManager repoManager = new InMemoryRepositoryManager();
+    rulesId = new TestRepository<>(repoManager.createRepository(PROJECT)).blob(RULES);
+
+    machines = CacheBuilder.newBuilder().build();
+    workQueue =
+        Guice.createInjector(
+                new AbstractModule() {
+                  @Override
+                  protected void configure() {
+                    bind(Config.class).annotatedWith(GerritServerConfig.class).toInstance(cfg);
+                  }
+                })
+            .getInstance(WorkQueue.class);
+    rulesCache =
+        new RulesCache(
+            cfg,
+            site,
+            repoManager,
+            DynamicSet.emptySet(),
+            machines,
+            workQueue,
+            new DisabledMetricMaker());
+  }
+
+  @Test
+  public void compiledJarIsUsedAfterInvalidate() throws Exception {
+    rulesCache.loadMachine(PROJECT, rulesId);
+    assertThat(machines.getIfPresent(rulesId).weight).isEqualTo(RULES.length());
+
+    for (WorkQueue.Task<?> task : workQueue.getTasks()) {
+      task.get(60, SECONDS);
+    }
+    Path jar = site.resolve("cache").resolve("rules").resolve("rules-" + rulesId.name() + ".jar");
+    assertThat(Files.isRegularFile(jar)).isTrue();
+
+    machines.invalidate(rulesId);
+    rulesCache.loadMachine(PROJECT, rulesId);
+    assertThat(machines.getIfPresent(rulesId).weight).isEqualTo((int) Files.size(jar));
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.events;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.Iterables;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.SitePaths;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EventLogTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private SitePaths site;
+
+  @Before
+  public void setUp() throws IOException {
+    Path dir = tmp.newFolder().toPath();
+    site = new SitePaths(dir);
+  }
+
+  @Test
+  public void disabledByDefault() {
+    EventLog log = new EventLog(new Config(), site, null, null, null);
+    log.start();
+    assertThat(log.isEnabled()).isFalse();
+    log.onEvent(event("p"));
+    assertThat(log.read(1, 10)).isEmpty();
+  }
+
+  @Test
+  public void appendAndRead() {
+    EventLog log = newLog(64 << 20, 16);
+    log.onEvent(event("p1"));
+    log.onEvent(event("p2"));
+    assertThat(log.nextSequence()).isEqualTo(3);
+
+    List<EventLog.Entry> entries = log.read(1, 10);
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).seq).isEqualTo(1);
+    assertThat(entries.get(0).type).isEqualTo(ProjectCreatedEvent.TYPE);
+    assertThat(entries.get(0).project).isEqualTo(new Project.NameKey("p1"));
+    assertThat(new String(entries.get(0).json, UTF_8)).startsWith("{\"seq\":1,");
+    assertThat(log.read(2, 10).get(0).project).isEqualTo(new Project.NameKey("p2"));
+    assertThat(log.read(3, 10)).isEmpty();
+  }
+
+  @Test
+  public void resumeAfterRestart() {
+    EventLog log = newLog(64 << 20, 16);
+    for (int i = 0; i < 5; i++) {
+      log.onEvent(event("p" + i));
+    }
+    log.stop();
+
+    log = newLog(64 << 20, 16);
+    assertThat(log.nextSequence()).isEqualTo(6);
+    List<EventLog.Entry> entries = log.read(3, 2);
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).seq).isEqualTo(3);
+    assertThat(entries.get(1).project).isEqualTo(new Project.NameKey("p3"));
+
+    log.onEvent(event("p5"));
+    assertThat(log.read(5, 10)).hasSize(2);
+  }
+
+  @Test
+  public void oldSegmentsAreDeleted() {
+    // Every record starts a new segment.
+    EventLog log = newLog(1, 2);
+    for (int i = 0; i < 10; i++) {
+      log.onEvent(event("p" + i));
+    }
+    log.stop();
+
+    log = newLog(1, 2);
+    List<EventLog.Entry> entries = log.read(1, 100);
+    assertThat(entries).hasSize(1);
+    assertThat(entries.get(0).seq).isEqualTo(10);
+  }
+
+  @Test
+  public void oversizedRecordLengthEndsSegment() throws IOException {
+    EventLog log = newLog(64 << 20, 16);
+    log.onEvent(event("p1"));
+    log.onEvent(event("p2"));
+    log.stop();
+
+    Path segment;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(site.data_dir.resolve("events"))) {
+      segment = Iterables.getOnlyElement(files);
+    }
+    long size = Files.size(segment);
+    try (DataOutputStream out =
+        new DataOutputStream(Files.newOutputStream(segment, StandardOpenOption.APPEND))) {
+      out.writeInt(Integer.MAX_VALUE);
+      out.writeInt(42);
+    }
+
+    log = newLog(64 << 20, 16);
+    assertThat(log.nextSequence()).isEqualTo(3);
+    assertThat(Files.size(segment)).isEqualTo(size);
+    assertThat(log.read(1, 10)).hasSize(2);
+  }
+
+  private EventLog newLog(long segmentSize, int maxSegments) {
+    Config cfg = new Config();
+    cfg.setBoolean("eventLog", null, "enabled", true);
+    cfg.setLong("eventLog", null, "segmentSize", segmentSize);
+    cfg.setInt("eventLog", null, "maxSegments", maxSegments);
+    EventLog log = new EventLog(cfg, site, null, null, null);
+    log.start();
+    assertThat(log.isEnabled()).isTrue();
+    return log;
+  }
+
+  private static ProjectCreatedEvent event(String project) {
+    ProjectCreatedEvent e = new ProjectCreatedEvent();
+    e.projectName = project;
+    e.headName = "refs/heads/master";
+    return e;
+  }
+}
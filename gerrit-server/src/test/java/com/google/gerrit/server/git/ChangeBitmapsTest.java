@@ -0,0 +1,104 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.ReviewerSet;
+import com.google.gerrit.testutil.TestChanges;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ChangeBitmapsTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+  private static final Branch.NameKey MASTER = new Branch.NameKey(PROJECT, "refs/heads/master");
+  private static final Branch.NameKey STABLE = new Branch.NameKey(PROJECT, "refs/heads/stable");
+  private static final Account.Id OWNER = new Account.Id(1);
+  private static final Account.Id OTHER = new Account.Id(2);
+
+  @Test
+  public void visibleByBranch() {
+    ChangeBitmaps bitmaps =
+        ChangeBitmaps.create(changes(change(1, MASTER, false), change(2, STABLE, false)));
+
+    assertThat(bitmaps.visible(b -> true, OTHER, id -> false)).isEqualTo(ids(1, 2));
+    assertThat(bitmaps.visible(MASTER::equals, OTHER, id -> false)).isEqualTo(ids(1));
+    assertThat(bitmaps.visible(b -> false, OTHER, id -> false)).isEqualTo(ids());
+    assertThat(bitmaps.branch(new Change.Id(2))).isEqualTo(STABLE);
+    assertThat(bitmaps.branch(new Change.Id(3))).isNull();
+  }
+
+  @Test
+  public void privateChangeVisibleToOwnerOrByCheck() {
+    ChangeBitmaps bitmaps =
+        ChangeBitmaps.create(changes(change(1, MASTER, true), change(2, MASTER, false)));
+
+    assertThat(bitmaps.visible(b -> true, OWNER, id -> false)).isEqualTo(ids(1, 2));
+    assertThat(bitmaps.visible(b -> true, OTHER, id -> false)).isEqualTo(ids(2));
+    assertThat(bitmaps.visible(b -> true, null, id -> false)).isEqualTo(ids(2));
+    assertThat(bitmaps.visible(b -> true, OTHER, id -> true)).isEqualTo(ids(1, 2));
+    assertThat(bitmaps.visible(b -> false, OWNER, id -> true)).isEqualTo(ids());
+  }
+
+  @Test
+  public void update() {
+    ChangeBitmaps bitmaps =
+        ChangeBitmaps.create(
+            changes(change(1, MASTER, false), change(2, MASTER, false), change(3, STABLE, false)));
+
+    Map<Change.Id, ChangeBitmaps.Entry> updates = changes(change(1, STABLE, true));
+    updates.put(new Change.Id(3), null);
+    updates.putAll(changes(change(4, MASTER, false)));
+    ChangeBitmaps updated = bitmaps.update(updates);
+
+    assertThat(updated.visible(MASTER::equals, OTHER, id -> false)).isEqualTo(ids(2, 4));
+    assertThat(updated.visible(STABLE::equals, OTHER, id -> false)).isEqualTo(ids());
+    assertThat(updated.visible(STABLE::equals, OWNER, id -> false)).isEqualTo(ids(1));
+    assertThat(updated.branch(new Change.Id(1))).isEqualTo(STABLE);
+    assertThat(updated.branch(new Change.Id(3))).isNull();
+
+    // Original is unchanged.
+    assertThat(bitmaps.visible(MASTER::equals, OTHER, id -> false)).isEqualTo(ids(1, 2));
+  }
+
+  private static Map<Change.Id, ChangeBitmaps.Entry> changes(Change... changes) {
+    Map<Change.Id, ChangeBitmaps.Entry> result = new HashMap<>();
+    for (Change c : changes) {
+      result.put(c.getId(), new ChangeBitmaps.Entry(c, ReviewerSet.empty()));
+    }
+    return result;
+  }
+
+  private static Change change(int id, Branch.NameKey dest, boolean isPrivate) {
+    Change c = TestChanges.newChange(PROJECT, OWNER, id);
+    c.setDest(dest);
+    c.setPrivate(isPrivate);
+    return c;
+  }
+
+  private static BitSet ids(int... ids) {
+    BitSet result = new BitSet();
+    for (int id : ids) {
+      result.set(id);
+    }
+    return result;
+  }
+}
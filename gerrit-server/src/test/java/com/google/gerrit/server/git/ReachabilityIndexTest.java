@@ -0,0 +1,120 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.reviewdb.client.Project;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import java.util.Collection;
+import java.util.Collections;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReachabilityIndexTest {
+  private TestRepository<InMemoryRepository> tr;
+  private ReachabilityIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    tr = new TestRepository<>(new InMemoryRepository(new DfsRepositoryDescription("repo")));
+    index = new ReachabilityIndex(new Project.NameKey("repo"));
+  }
+
+  @Test
+  public void refsContaining() throws Exception {
+    RevCommit a = tr.commit().create();
+    RevCommit b = tr.commit().parent(a).create();
+    RevCommit c = tr.commit().parent(a).create();
+    RevCommit d = tr.commit().parent(b).parent(c).create();
+    tr.update("refs/heads/master", d);
+    tr.update("refs/heads/stable", c);
+    tr.update("refs/tags/v1", tr.tag("v1", b));
+
+    assertThat(index.update(tr.getRepository(), refs())).isTrue();
+    assertThat(index.refsContaining(a))
+        .containsExactly("refs/heads/master", "refs/heads/stable", "refs/tags/v1");
+    assertThat(index.refsContaining(b)).containsExactly("refs/heads/master", "refs/tags/v1");
+    assertThat(index.refsContaining(c)).containsExactly("refs/heads/master", "refs/heads/stable");
+    assertThat(index.refsContaining(d)).containsExactly("refs/heads/master");
+    assertThat(index.update(tr.getRepository(), refs())).isFalse();
+  }
+
+  @Test
+  public void incrementalUpdate() throws Exception {
+    RevCommit a = tr.commit().create();
+    tr.update("refs/heads/master", a);
+    index.update(tr.getRepository(), refs());
+
+    RevCommit b = tr.commit().parent(a).create();
+    RevCommit other = tr.commit().create();
+    tr.update("refs/heads/master", b);
+    tr.update("refs/heads/other", other);
+    assertThat(index.update(tr.getRepository(), refs())).isTrue();
+    assertThat(index.refsContaining(a)).containsExactly("refs/heads/master");
+    assertThat(index.refsContaining(b)).containsExactly("refs/heads/master");
+    assertThat(index.refsContaining(other)).containsExactly("refs/heads/other");
+
+    tr.delete("refs/heads/other");
+    assertThat(index.update(tr.getRepository(), refs())).isTrue();
+    assertThat(index.refsContaining(other)).isEmpty();
+  }
+
+  @Test
+  public void reachableFrom() throws Exception {
+    RevCommit a = tr.commit().create();
+    RevCommit b = tr.commit().parent(a).create();
+    RevCommit c = tr.commit().create();
+    tr.update("refs/heads/master", b);
+    tr.update("refs/heads/secret", c);
+    index.update(tr.getRepository(), refs());
+
+    EWAHCompressedBitmap visible =
+        index.reachableFrom(
+            Collections.singleton(tr.getRepository().exactRef("refs/heads/master")));
+    assertThat(index.isReachable(visible, a)).isTrue();
+    assertThat(index.isReachable(visible, b)).isTrue();
+    assertThat(index.isReachable(visible, c)).isFalse();
+  }
+
+  @Test
+  public void rebuildWhenMostCommitsAreUnreachable() throws Exception {
+    RevCommit a = tr.commit().create();
+    tr.update("refs/heads/master", a);
+    RevCommit c = a;
+    for (int i = 0; i < ReachabilityIndex.MIN_REBUILD; i++) {
+      c = tr.commit().parent(c).create();
+    }
+    tr.update("refs/heads/tmp", c);
+    index.update(tr.getRepository(), refs());
+    assertThat(index.refsContaining(c)).containsExactly("refs/heads/tmp");
+
+    tr.delete("refs/heads/tmp");
+    assertThat(index.update(tr.getRepository(), refs())).isTrue();
+    assertThat(index.weight()).isLessThan(64 * 10);
+    assertThat(index.refsContaining(a)).containsExactly("refs/heads/master");
+    assertThat(index.refsContaining(c)).isEmpty();
+  }
+
+  private Collection<Ref> refs() throws Exception {
+    return tr.getRepository().getRefDatabase().getRefs(RefDatabase.ALL).values();
+  }
+}
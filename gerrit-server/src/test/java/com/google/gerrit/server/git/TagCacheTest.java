@@ -0,0 +1,104 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.reviewdb.client.Project;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TagCacheTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("repo");
+
+  private TestRepository<InMemoryRepository> tr;
+  private RevCommit root;
+  private RevCommit master;
+  private Cache<String, TagCache.EntryVal> tagSets;
+  private Cache<Project.NameKey, ReachabilityIndex> indexes;
+
+  @Before
+  public void setUp() throws Exception {
+    tr = new TestRepository<>(new InMemoryRepository(new DfsRepositoryDescription("repo")));
+    root = tr.commit().create();
+    master = tr.commit().parent(root).create();
+    RevCommit secret = tr.commit().parent(root).create();
+    tr.update("refs/heads/master", master);
+    tr.update("refs/heads/secret", secret);
+    tr.update("refs/tags/v1", tr.tag("v1", root));
+    tr.update("refs/tags/v2", tr.tag("v2", master));
+    tr.update("refs/tags/s1", secret);
+    tagSets = CacheBuilder.newBuilder().build();
+    indexes = CacheBuilder.newBuilder().build();
+  }
+
+  @Test
+  public void reachableTagsFromIndex() throws Exception {
+    TagCache cache = newTagCache(true);
+    assertThat(reachable(cache, "refs/heads/master"))
+        .containsExactly("refs/tags/v1", "refs/tags/v2");
+    assertThat(reachable(cache, "refs/heads/secret"))
+        .containsExactly("refs/tags/v1", "refs/tags/s1");
+    assertThat(indexes.getIfPresent(PROJECT)).isNotNull();
+    assertThat(tagSets.getIfPresent(PROJECT.get())).isNull();
+
+    // The index follows the refs of the repository.
+    tr.update("refs/heads/master", root);
+    assertThat(reachable(cache, "refs/heads/master")).containsExactly("refs/tags/v1");
+  }
+
+  @Test
+  public void reachableTagsFromTagSetWhenIndexDisabled() throws Exception {
+    TagCache cache = newTagCache(false);
+    assertThat(reachable(cache, "refs/heads/master"))
+        .containsExactly("refs/tags/v1", "refs/tags/v2");
+    assertThat(indexes.getIfPresent(PROJECT)).isNull();
+    assertThat(tagSets.getIfPresent(PROJECT.get())).isNotNull();
+  }
+
+  private TagCache newTagCache(boolean indexEnabled) {
+    Config cfg = new Config();
+    if (indexEnabled) {
+      cfg.setLong("cache", ReachabilityCache.CACHE_NAME, "memoryLimit", 1 << 20);
+    }
+    return new TagCache(tagSets, new ReachabilityCache(indexes, cfg));
+  }
+
+  private List<String> reachable(TagCache cache, String branch) throws Exception {
+    Repository repo = tr.getRepository();
+    Predicate<Ref> p =
+        cache.reachableTags(PROJECT, repo, Collections.singleton(repo.exactRef(branch)));
+    List<String> result = new ArrayList<>();
+    for (Ref tag : repo.getRefDatabase().getRefs("refs/tags/").values()) {
+      if (p.test(tag)) {
+        result.add(tag.getName());
+      }
+    }
+    return result;
+  }
+}
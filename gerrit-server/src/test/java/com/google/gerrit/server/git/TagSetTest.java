@@ -0,0 +1,131 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.reviewdb.client.Project;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TagSetTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("repo");
+
+  private TestRepository<InMemoryRepository> tr;
+  private RevCommit root;
+  private RevCommit master;
+  private RevCommit secret;
+
+  @Before
+  public void setUp() throws Exception {
+    tr = new TestRepository<>(new InMemoryRepository(new DfsRepositoryDescription("repo")));
+    root = tr.commit().create();
+    master = tr.commit().parent(root).create();
+    secret = tr.commit().parent(root).create();
+    tr.update("refs/heads/master", master);
+    tr.update("refs/heads/secret", secret);
+    tr.update("refs/tags/v1", tr.tag("v1", root));
+    tr.update("refs/tags/v2", tr.tag("v2", master));
+    tr.update("refs/tags/s1", secret);
+  }
+
+  @Test
+  public void reachableTags() throws Exception {
+    TagSet tags = new TagSet(PROJECT);
+    tags.build(tr.getRepository(), null, null);
+
+    assertThat(reachable(tags, "refs/heads/master"))
+        .containsExactly("refs/tags/v1", "refs/tags/v2");
+    assertThat(reachable(tags, "refs/heads/secret"))
+        .containsExactly("refs/tags/v1", "refs/tags/s1");
+  }
+
+  @Test
+  public void serializationRoundTrip() throws Exception {
+    TagSet tags = new TagSet(PROJECT);
+    tags.build(tr.getRepository(), null, null);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    tags.writeTo(out);
+    TagSet copy = new TagSet(PROJECT);
+    copy.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+    assertThat(reachable(copy, "refs/heads/master"))
+        .containsExactly("refs/tags/v1", "refs/tags/v2");
+    assertThat(reachable(copy, "refs/heads/secret"))
+        .containsExactly("refs/tags/v1", "refs/tags/s1");
+  }
+
+  @Test
+  public void refreshForNewBranchSharesColumn() throws Exception {
+    TagSet old = new TagSet(PROJECT);
+    old.build(tr.getRepository(), null, null);
+    tr.update("refs/heads/copy", master);
+
+    TagMatcher m = matcher(old, "refs/heads/copy");
+    old.prepare(m);
+    assertThat(m.newRefs).hasSize(1);
+    TagSet tags = new TagSet(PROJECT);
+    tags.build(tr.getRepository(), old, m);
+
+    assertThat(reachable(tags, "refs/heads/copy")).containsExactly("refs/tags/v1", "refs/tags/v2");
+  }
+
+  @Test
+  public void rewoundBranchLosesTags() throws Exception {
+    TagSet old = new TagSet(PROJECT);
+    old.build(tr.getRepository(), null, null);
+    tr.update("refs/heads/master", root);
+
+    TagMatcher m = matcher(old, "refs/heads/master");
+    old.prepare(m);
+    assertThat(m.lostRefs).hasSize(1);
+    TagSet tags = new TagSet(PROJECT);
+    tags.build(tr.getRepository(), old, m);
+
+    assertThat(reachable(tags, "refs/heads/master")).containsExactly("refs/tags/v1");
+    assertThat(reachable(old, "refs/heads/secret")).containsExactly("refs/tags/v1", "refs/tags/s1");
+  }
+
+  private List<String> reachable(TagSet tags, String... include) throws Exception {
+    TagMatcher m = matcher(tags, include);
+    tags.prepare(m);
+    List<String> result = new ArrayList<>();
+    for (Ref tag : tr.getRepository().getRefDatabase().getRefs("refs/tags/").values()) {
+      if (m.isReachable(tag)) {
+        result.add(tag.getName());
+      }
+    }
+    return result;
+  }
+
+  private TagMatcher matcher(TagSet tags, String... include) throws Exception {
+    List<Ref> refs = new ArrayList<>();
+    for (String name : Arrays.asList(include)) {
+      refs.add(tr.getRepository().exactRef(name));
+    }
+    return new TagMatcher(null, null, tr.getRepository(), refs, tags, false);
+  }
+}
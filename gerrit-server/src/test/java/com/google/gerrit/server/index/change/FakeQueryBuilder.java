@@ -28,7 +28,7 @@ public class FakeQueryBuilder extends ChangeQueryBuilder {
         new ChangeQueryBuilder.Arguments(
             null, null, null, null, null, null, null, null, null, null, null, null, null, null,
             null, null, null, null, null, null, indexes, null, null, null, null, null, null, null,
-            null));
+            null, null, null));
   }
 
   @Operator
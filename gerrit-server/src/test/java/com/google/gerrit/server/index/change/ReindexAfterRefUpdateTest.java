@@ -0,0 +1,196 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractListeningExecutorService;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.InternalChangeQuery;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gerrit.testutil.GerritBaseTests;
+import com.google.gerrit.testutil.TestChanges;
+import com.google.inject.util.Providers;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReindexAfterRefUpdateTest extends GerritBaseTests {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+  private static final Branch.NameKey BRANCH = new Branch.NameKey(PROJECT, "refs/heads/master");
+
+  private QueueingExecutor executor;
+  private AtomicInteger indexed;
+  private ReindexAfterRefUpdate reindexer;
+
+  @Before
+  public void setUp() throws Exception {
+    Change change = TestChanges.newChange(PROJECT, new Account.Id(1));
+    ChangeData cd = ChangeData.createForTest(PROJECT, change.getId(), 1);
+
+    ManualRequestContext ctx = createNiceMock(ManualRequestContext.class);
+    expect(ctx.getReviewDbProvider()).andReturn(Providers.<ReviewDb>of(null)).anyTimes();
+    OneOffRequestContext requestContext = createNiceMock(OneOffRequestContext.class);
+    expect(requestContext.open()).andReturn(ctx).anyTimes();
+
+    InternalChangeQuery query = createNiceMock(InternalChangeQuery.class);
+    expect(query.byBranchNew(BRANCH)).andReturn(ImmutableList.of(cd)).anyTimes();
+
+    ChangeNotes notes = createNiceMock(ChangeNotes.class);
+    expect(notes.getChange()).andReturn(change).anyTimes();
+    ChangeNotes.Factory notesFactory = createNiceMock(ChangeNotes.Factory.class);
+    expect(notesFactory.createChecked(null, PROJECT, change.getId())).andReturn(notes).anyTimes();
+
+    indexed = new AtomicInteger();
+    ChangeIndexer indexer = createMock(ChangeIndexer.class);
+    indexer.index((ReviewDb) null, change);
+    expectLastCall()
+        .andAnswer(
+            () -> {
+              indexed.incrementAndGet();
+              return null;
+            })
+        .anyTimes();
+    ChangeIndexer.Factory indexerFactory = createMock(ChangeIndexer.Factory.class);
+    expect(
+            indexerFactory.create(
+                anyObject(ListeningExecutorService.class), anyObject(ChangeIndexCollection.class)))
+        .andReturn(indexer)
+        .anyTimes();
+
+    replay(ctx, requestContext, query, notes, notesFactory, indexer, indexerFactory);
+
+    executor = new QueueingExecutor();
+    reindexer =
+        new ReindexAfterRefUpdate(
+            new Config(),
+            requestContext,
+            Providers.of(query),
+            indexerFactory,
+            null,
+            notesFactory,
+            new AllUsersName("All-Users"),
+            null,
+            executor,
+            null,
+            createNiceMock(ProjectCache.class),
+            null,
+            null,
+            new DisabledMetricMaker());
+  }
+
+  @Test
+  public void updatesWaitingForTheSameTaskAreCoalesced() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      reindexer.onGitReferenceUpdated(event());
+    }
+    assertThat(executor.tasks).hasSize(1);
+
+    executor.runAll();
+    assertThat(indexed.get()).isEqualTo(1);
+    assertThat(reindexer.isTracked(BRANCH)).isFalse();
+  }
+
+  @Test
+  public void onlyLatestGenerationIsReindexed() throws Exception {
+    reindexer.onGitReferenceUpdated(event());
+    // Reading the changes of the first update queues their index tasks.
+    executor.runNext();
+    assertThat(executor.tasks).hasSize(1);
+
+    reindexer.onGitReferenceUpdated(event());
+    reindexer.onGitReferenceUpdated(event());
+    assertThat(reindexer.isTracked(BRANCH)).isTrue();
+
+    executor.runAll();
+    assertThat(indexed.get()).isEqualTo(1);
+    assertThat(reindexer.isTracked(BRANCH)).isFalse();
+  }
+
+  private static GitReferenceUpdatedListener.Event event() {
+    GitReferenceUpdatedListener.Event e = createNiceMock(GitReferenceUpdatedListener.Event.class);
+    expect(e.getProjectName()).andReturn(PROJECT.get()).anyTimes();
+    expect(e.getRefName()).andReturn(BRANCH.get()).anyTimes();
+    replay(e);
+    return e;
+  }
+
+  /** Executor that queues tasks until the test runs them. */
+  private static class QueueingExecutor extends AbstractListeningExecutorService {
+    final Deque<Runnable> tasks = new ArrayDeque<>();
+
+    void runNext() {
+      tasks.poll().run();
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        runNext();
+      }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return ImmutableList.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+  }
+}
@@ -57,6 +57,8 @@ import com.google.gerrit.testutil.TestChanges;
 import com.google.gerrit.testutil.TestTimeUtil;
 import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
@@ -3569,6 +3571,180 @@ public class ChangeNotesTest extends AbstractChangeNotesTest {
     TestChanges.incrementPatchSet(c);
   }
 
+  @Test
+  public void incrementalParseMatchesFullParse() throws Exception {
+    Change c = newWorkInProgressChange();
+    Account.Id otherId = otherUser.getAccountId();
+    List<ObjectId> metaIds = new ArrayList<>();
+    metaIds.add(metaId(c));
+
+    ChangeUpdate update = newUpdate(c, changeOwner);
+    update.putReviewer(otherId, REVIEWER);
+    update.setChangeMessage("Added reviewer");
+    update.commit();
+    metaIds.add(metaId(c));
+
+    update = newUpdate(c, changeOwner);
+    update.setWorkInProgress(false);
+    update.setTopic("topic");
+    update.setHashtags(ImmutableSet.of("foo"));
+    update.commit();
+    metaIds.add(metaId(c));
+
+    update = newUpdate(c, otherUser);
+    update.putApproval("Code-Review", (short) 1);
+    update.putComment(
+        Status.PUBLISHED,
+        newComment(
+            c.currentPatchSetId(),
+            "file",
+            "uuid",
+            new CommentRange(1, 1, 2, 1),
+            2,
+            otherUser,
+            null,
+            TimeUtil.nowTs(),
+            "comment",
+            (short) 1,
+            "abcd1234abcd1234abcd1234abcd1234abcd1234",
+            false));
+    update.commit();
+    metaIds.add(metaId(c));
+
+    incrementPatchSet(c);
+    metaIds.add(metaId(c));
+
+    update = newUpdate(c, changeOwner);
+    update.merge(
+        RequestId.forChange(c),
+        ImmutableList.of(
+            submitRecord("OK", null, submitLabel("Code-Review", "OK", otherId))));
+    update.commit();
+    metaIds.add(metaId(c));
+
+    update = newUpdate(c, otherUser);
+    update.putApproval("Code-Review", (short) 2);
+    update.commit();
+    metaIds.add(metaId(c));
+
+    for (int i = 0; i < metaIds.size(); i++) {
+      ChangeNotesParser.Checkpoint base = checkpoint(c, metaIds.get(i));
+      for (int j = i; j < metaIds.size(); j++) {
+        assertSameState(parse(c, metaIds.get(j), base), parse(c, metaIds.get(j), null));
+      }
+    }
+  }
+
+  @Test
+  public void serializedStateMatchesParsedState() throws Exception {
+    Change c = newChange();
+    Account.Id otherId = otherUser.getAccountId();
+    ChangeUpdate update = newUpdate(c, changeOwner);
+    update.putReviewer(otherId, REVIEWER);
+    update.putReviewerByEmail(new Address("Foo Bar", "foo@example.com"), CC);
+    update.setAssignee(otherId);
+    update.setTopic("");
+    update.setHashtags(ImmutableSet.of("foo", "bar"));
+    update.setChangeMessage("Message");
+    update.setTag("tag");
+    update.commit();
+
+    update = newUpdate(c, otherUser);
+    update.putApproval("Code-Review", (short) -1);
+    update.putComment(
+        Status.PUBLISHED,
+        newComment(
+            c.currentPatchSetId(),
+            "file",
+            "uuid",
+            new CommentRange(1, 1, 2, 1),
+            2,
+            otherUser,
+            null,
+            TimeUtil.nowTs(),
+            "comment",
+            (short) 0,
+            "abcd1234abcd1234abcd1234abcd1234abcd1234",
+            true));
+    update.commit();
+    incrementPatchSet(c);
+
+    update = newUpdate(c, changeOwner);
+    update.merge(
+        RequestId.forChange(c),
+        ImmutableList.of(
+            submitRecord("NOT_READY", null, submitLabel("Code-Review", "REJECT", otherId))));
+    update.commit();
+
+    ChangeNotesState expected = parse(c, metaId(c), null);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    expected.writeTo(out);
+    ChangeNotesState actual =
+        ChangeNotesState.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+    assertSameState(actual, expected);
+    assertThat(actual.reviewersByEmail()).isEqualTo(expected.reviewersByEmail());
+    assertThat(actual.changeMessagesByPatchSet().values().iterator().next())
+        .isSameAs(actual.allChangeMessages().get(0));
+  }
+
+  private ObjectId metaId(Change c) throws Exception {
+    return repo.exactRef(changeMetaRef(c.getId())).getObjectId();
+  }
+
+  private ChangeNotesParser.Checkpoint checkpoint(Change c, ObjectId tip) throws Exception {
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      ChangeNotesParser parser =
+          new ChangeNotesParser(c.getId(), tip, walk, noteUtil, args.metrics);
+      parser.parseAll();
+      return parser.getCheckpoint();
+    }
+  }
+
+  private ChangeNotesState parse(Change c, ObjectId tip, ChangeNotesParser.Checkpoint base)
+      throws Exception {
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      return new ChangeNotesParser(c.getId(), tip, walk, noteUtil, args.metrics, base).parseAll();
+    }
+  }
+
+  private static void assertSameState(ChangeNotesState actual, ChangeNotesState expected) {
+    assertThat(actual.metaId()).isEqualTo(expected.metaId());
+    assertThat(actual.columns()).isEqualTo(expected.columns());
+    assertThat(actual.pastAssignees()).isEqualTo(expected.pastAssignees());
+    assertThat(actual.hashtags()).isEqualTo(expected.hashtags());
+    assertThat(patchSets(actual)).isEqualTo(patchSets(expected));
+    assertThat(actual.approvals()).isEqualTo(expected.approvals());
+    assertThat(actual.reviewers()).isEqualTo(expected.reviewers());
+    assertThat(actual.pendingReviewers()).isEqualTo(expected.pendingReviewers());
+    assertThat(actual.allPastReviewers()).isEqualTo(expected.allPastReviewers());
+    assertThat(actual.reviewerUpdates()).isEqualTo(expected.reviewerUpdates());
+    assertThat(actual.submitRecords()).isEqualTo(expected.submitRecords());
+    assertThat(actual.allChangeMessages().toString())
+        .isEqualTo(expected.allChangeMessages().toString());
+    assertThat(actual.changeMessagesByPatchSet().toString())
+        .isEqualTo(expected.changeMessagesByPatchSet().toString());
+    assertThat(actual.publishedComments()).isEqualTo(expected.publishedComments());
+  }
+
+  private static List<String> patchSets(ChangeNotesState state) {
+    List<String> result = new ArrayList<>();
+    for (Map.Entry<PatchSet.Id, PatchSet> e : state.patchSets()) {
+      PatchSet ps = e.getValue();
+      result.add(
+          String.join(
+              " ",
+              e.getKey().toString(),
+              ps.getRevision().get(),
+              ps.getUploader().toString(),
+              ps.getCreatedOn().toString(),
+              ps.getGroups().toString(),
+              String.valueOf(ps.getDescription()),
+              String.valueOf(ps.isDraft())));
+    }
+    return result;
+  }
+
   private RevCommit incrementPatchSet(Change c) throws Exception {
     return incrementPatchSet(c, userFactory.create(c.getOwner()));
   }
@@ -0,0 +1,157 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.notedb;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NoteDbCommitQueueTest {
+  private Project.NameKey project;
+  private Repository repo;
+  private TestRepository<Repository> tr;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    project = new Project.NameKey("project");
+    repo = new InMemoryRepositoryManager().createRepository(project);
+    tr = new TestRepository<>(repo);
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void disabled() throws Exception {
+    NoteDbCommitQueue queue = newQueue(false);
+    CountingUpdate bru = create("refs/a", tr.commit().create());
+
+    assertThat(execute(queue, bru)).isNull();
+    assertThat(bru.executed.get()).isEqualTo(1);
+    assertThat(repo.exactRef("refs/a")).isNotNull();
+  }
+
+  @Test
+  public void disjointUpdatesAreCombined() throws Exception {
+    NoteDbCommitQueue queue = newQueue(true);
+    RevCommit a = tr.commit().create();
+    RevCommit b = tr.commit().create();
+    CountingUpdate bruA = create("refs/a", a);
+    CountingUpdate bruB = create("refs/b", b);
+
+    // The window is long, so the first writer waits until both updates are queued.
+    Future<?> fa = executor.submit(() -> execute(queue, bruA));
+    Future<?> fb = executor.submit(() -> execute(queue, bruB));
+    assertThat(fa.get(5, SECONDS)).isNull();
+    assertThat(fb.get(5, SECONDS)).isNull();
+
+    // Neither update was executed on its own.
+    assertThat(bruA.executed.get()).isEqualTo(0);
+    assertThat(bruB.executed.get()).isEqualTo(0);
+    assertThat(repo.exactRef("refs/a").getObjectId()).isEqualTo(a);
+    assertThat(repo.exactRef("refs/b").getObjectId()).isEqualTo(b);
+  }
+
+  @Test
+  public void updateAbortedByOtherUpdateIsRetriedAlone() throws Exception {
+    NoteDbCommitQueue queue = newQueue(true);
+    RevCommit a = tr.commit().create();
+    RevCommit b = tr.commit().create();
+    CountingUpdate bruA = create("refs/a", a);
+    // refs/b does not exist, so this update fails and aborts the combined transaction.
+    CountingUpdate bruB = newUpdate();
+    bruB.addCommand(new ReceiveCommand(a, b, "refs/b", ReceiveCommand.Type.UPDATE));
+
+    Future<?> fa = executor.submit(() -> execute(queue, bruA));
+    Future<?> fb = executor.submit(() -> execute(queue, bruB));
+    assertThat(fa.get(5, SECONDS)).isNull();
+    assertThat(fb.get(5, SECONDS)).isInstanceOf(IOException.class);
+
+    assertThat(bruA.executed.get()).isEqualTo(1);
+    assertThat(bruA.getCommands().get(0).getResult()).isEqualTo(ReceiveCommand.Result.OK);
+    assertThat(repo.exactRef("refs/a").getObjectId()).isEqualTo(a);
+    assertThat(repo.exactRef("refs/b")).isNull();
+  }
+
+  private NoteDbCommitQueue newQueue(boolean enabled) {
+    Config cfg = new Config();
+    cfg.setBoolean("noteDb", "changes", "groupCommit", enabled);
+    cfg.setString("noteDb", "changes", "groupCommitWindow", "1 min");
+    cfg.setInt("noteDb", "changes", "groupCommitMaxSize", 2);
+    return new NoteDbCommitQueue(
+        cfg,
+        () -> new PersonIdent("Gerrit Server", "noreply@gerritcodereview.com"),
+        new NoteDbMetrics(new DisabledMetricMaker()));
+  }
+
+  private IOException execute(NoteDbCommitQueue queue, BatchRefUpdate bru) {
+    try (RevWalk rw = new RevWalk(repo)) {
+      queue.execute(project, repo, bru, rw);
+      return null;
+    } catch (IOException e) {
+      return e;
+    }
+  }
+
+  private CountingUpdate create(String ref, ObjectId id) {
+    CountingUpdate bru = newUpdate();
+    bru.addCommand(new ReceiveCommand(ObjectId.zeroId(), id, ref));
+    return bru;
+  }
+
+  private CountingUpdate newUpdate() {
+    return new CountingUpdate(repo);
+  }
+
+  /** Counts how often an update is executed directly instead of as part of a group commit. */
+  private static class CountingUpdate extends BatchRefUpdate {
+    final AtomicInteger executed = new AtomicInteger();
+
+    CountingUpdate(Repository repo) {
+      super(repo.getRefDatabase());
+    }
+
+    @Override
+    public void execute(RevWalk walk, ProgressMonitor monitor) throws IOException {
+      executed.incrementAndGet();
+      super.execute(walk, monitor);
+    }
+  }
+}
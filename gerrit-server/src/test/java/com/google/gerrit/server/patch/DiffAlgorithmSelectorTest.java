@@ -0,0 +1,109 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.RepositoryConfig;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import java.util.function.Predicate;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiffAlgorithmSelectorTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+
+  private Config cfg;
+  private InMemoryRepositoryManager repoManager;
+
+  @Before
+  public void setUp() {
+    cfg = new Config();
+    repoManager = new InMemoryRepositoryManager();
+  }
+
+  @Test
+  public void defaults() {
+    assertThat(selector().forFiles(PROJECT)).isEqualTo(DiffAlgorithm.HISTOGRAM);
+    assertThat(selector().forIntraline(PROJECT, "a.txt")).isEqualTo(DiffAlgorithm.MYERS);
+    assertThat(selector().generatedFiles(PROJECT).test("a.txt")).isFalse();
+  }
+
+  @Test
+  public void configuredAlgorithm() {
+    cfg.setString("repository", "*", "diffAlgorithm", "HISTOGRAM_WITHOUT_FALLBACK");
+    assertThat(selector().forFiles(PROJECT)).isEqualTo(DiffAlgorithm.HISTOGRAM_WITHOUT_FALLBACK);
+    assertThat(selector().forIntraline(PROJECT, "a.txt"))
+        .isEqualTo(DiffAlgorithm.HISTOGRAM_WITHOUT_FALLBACK);
+  }
+
+  @Test
+  public void repositoryDiffAlgorithmWithoutConfiguredAlgorithm() throws Exception {
+    repoManager.createRepository(PROJECT).getConfig().setString("diff", null, "algorithm", "myers");
+    assertThat(selector().forFiles(PROJECT)).isEqualTo(DiffAlgorithm.MYERS);
+    assertThat(selector().forFiles(new Project.NameKey("other")))
+        .isEqualTo(DiffAlgorithm.HISTOGRAM);
+
+    cfg.setString("repository", "*", "diffAlgorithm", "HISTOGRAM");
+    assertThat(selector().forFiles(PROJECT)).isEqualTo(DiffAlgorithm.HISTOGRAM);
+  }
+
+  @Test
+  public void generatedFileSuffix() {
+    cfg.setStringList(
+        "repository", "*", "generatedFile", ImmutableList.of(".pb.go", "/package-lock.json"));
+    Predicate<String> generated = selector().generatedFiles(PROJECT);
+    assertThat(generated.test("api/service.pb.go")).isTrue();
+    assertThat(generated.test("web/package-lock.json")).isTrue();
+    assertThat(generated.test("package-lock.json")).isFalse();
+    assertThat(generated.test("api/service.go")).isFalse();
+    assertThat(generated.test(null)).isFalse();
+    assertThat(selector().forIntraline(PROJECT, "api/service.pb.go"))
+        .isEqualTo(DiffAlgorithm.PREFIX_SUFFIX);
+  }
+
+  @Test
+  public void generatedFileRegex() {
+    cfg.setString("repository", "*", "generatedFile", "^gen/.*\\.java");
+    Predicate<String> generated = selector().generatedFiles(PROJECT);
+    assertThat(generated.test("gen/Foo.java")).isTrue();
+    assertThat(generated.test("src/gen/Foo.java")).isFalse();
+    assertThat(generated.test("gen/Foo.kt")).isFalse();
+  }
+
+  @Test
+  public void invalidGeneratedFileRegexIsIgnored() {
+    cfg.setStringList(
+        "repository", "*", "generatedFile", ImmutableList.of("^gen/(.*\\.java", ".pb.go"));
+    Predicate<String> generated = selector().generatedFiles(PROJECT);
+    assertThat(generated.test("gen/Foo.java")).isFalse();
+    assertThat(generated.test("api/service.pb.go")).isTrue();
+  }
+
+  @Test
+  public void generatedFilesOnlyForMatchingProject() {
+    cfg.setString("repository", "other", "generatedFile", ".pb.go");
+    assertThat(selector().generatedFiles(PROJECT).test("api/service.pb.go")).isFalse();
+    assertThat(selector().generatedFiles(new Project.NameKey("other")).test("api/service.pb.go"))
+        .isTrue();
+  }
+
+  private DiffAlgorithmSelector selector() {
+    return new DiffAlgorithmSelector(new RepositoryConfig(cfg), repoManager);
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.junit.Test;
+
+public class DiffAlgorithmTest {
+  @Test
+  public void prefixSuffixReportsSingleEdit() {
+    EditList edits = prefixSuffix("a\nb\nc\nd\ne\n", "a\nx\nc\ny\ne\n");
+    assertThat(edits).containsExactly(new Edit(1, 4, 1, 4));
+  }
+
+  @Test
+  public void prefixSuffixInsertion() {
+    EditList edits = prefixSuffix("a\nb\n", "a\nx\ny\nb\n");
+    assertThat(edits).containsExactly(new Edit(1, 1, 1, 3));
+  }
+
+  @Test
+  public void prefixSuffixDeletion() {
+    EditList edits = prefixSuffix("a\nx\nb\n", "a\nb\n");
+    assertThat(edits).containsExactly(new Edit(1, 2, 1, 1));
+  }
+
+  @Test
+  public void prefixSuffixNothingInCommon() {
+    EditList edits = prefixSuffix("a\nb\n", "c\nd\ne\n");
+    assertThat(edits).containsExactly(new Edit(0, 2, 0, 3));
+  }
+
+  @Test
+  public void prefixSuffixIdentical() {
+    assertThat(prefixSuffix("a\nb\n", "a\nb\n")).isEmpty();
+  }
+
+  @Test
+  public void codesRoundTrip() {
+    for (DiffAlgorithm a : DiffAlgorithm.values()) {
+      assertThat(DiffAlgorithm.forCode(a.getCode())).isEqualTo(a);
+    }
+    assertThat(DiffAlgorithm.forCode('?')).isNull();
+  }
+
+  private static EditList prefixSuffix(String a, String b) {
+    return DiffAlgorithm.PREFIX_SUFFIX
+        .newInstance()
+        .diff(RawTextComparator.DEFAULT, text(a), text(b));
+  }
+
+  private static RawText text(String s) {
+    return new RawText(s.getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class IntraLineDiffKeyTest {
+  private static final ObjectId A = ObjectId.fromString("0123456789012345678901234567890123456789");
+  private static final ObjectId B = ObjectId.fromString("abcdefabcdefabcdefabcdefabcdefabcdefabcd");
+
+  @Test
+  public void defaultsToMyers() {
+    assertThat(IntraLineDiffKey.create(A, B, Whitespace.IGNORE_NONE).getDiffAlgorithm())
+        .isEqualTo(DiffAlgorithm.MYERS);
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    for (DiffAlgorithm a : DiffAlgorithm.values()) {
+      IntraLineDiffKey k = IntraLineDiffKey.create(A, B, Whitespace.IGNORE_LEADING_AND_TRAILING, a);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      k.writeTo(out);
+      IntraLineDiffKey read =
+          IntraLineDiffKey.readFrom(new ByteArrayInputStream(out.toByteArray()));
+      assertThat(read).isEqualTo(k);
+      assertThat(read.getDiffAlgorithm()).isEqualTo(a);
+
+      assertThat(PatchListKeyTest.roundTrip(k)).isEqualTo(k);
+    }
+  }
+
+  @Test
+  public void diffAlgorithmIsPartOfKey() {
+    assertThat(IntraLineDiffKey.create(A, B, Whitespace.IGNORE_NONE, DiffAlgorithm.MYERS))
+        .isNotEqualTo(
+            IntraLineDiffKey.create(A, B, Whitespace.IGNORE_NONE, DiffAlgorithm.HISTOGRAM));
+  }
+}
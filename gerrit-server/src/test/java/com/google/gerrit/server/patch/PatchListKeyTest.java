@@ -0,0 +1,104 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class PatchListKeyTest {
+  private static final ObjectId OLD_ID =
+      ObjectId.fromString("0123456789012345678901234567890123456789");
+  private static final ObjectId NEW_ID =
+      ObjectId.fromString("abcdefabcdefabcdefabcdefabcdefabcdefabcd");
+
+  @Test
+  public void binaryRoundTrip() throws Exception {
+    for (PatchListKey k : keys()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      k.writeTo(out);
+      PatchListKey read = PatchListKey.readFrom(new ByteArrayInputStream(out.toByteArray()));
+      assertThat(read).isEqualTo(k);
+      assertThat(read.getDiffAlgorithm()).isEqualTo(k.getDiffAlgorithm());
+    }
+  }
+
+  @Test
+  public void javaSerializationRoundTrip() throws Exception {
+    for (PatchListKey k : keys()) {
+      PatchListKey read = (PatchListKey) roundTrip(k);
+      assertThat(read).isEqualTo(k);
+      assertThat(read.getDiffAlgorithm()).isEqualTo(k.getDiffAlgorithm());
+    }
+  }
+
+  @Test
+  public void diffAlgorithmIsPartOfKey() {
+    PatchListKey k = PatchListKey.againstDefaultBase(NEW_ID, Whitespace.IGNORE_NONE);
+    assertThat(k.withDiffAlgorithm(DiffAlgorithm.MYERS))
+        .isNotEqualTo(k.withDiffAlgorithm(DiffAlgorithm.HISTOGRAM));
+    assertThat(k.withDiffAlgorithm(DiffAlgorithm.MYERS)).isNotEqualTo(k);
+  }
+
+  @Test
+  public void diffSummaryKeyKeepsDiffAlgorithm() throws Exception {
+    for (PatchListKey k : keys()) {
+      DiffSummaryKey s = DiffSummaryKey.fromPatchListKey(k);
+      assertThat(s.getDiffAlgorithm()).isEqualTo(k.getDiffAlgorithm());
+      assertThat(s.toPatchListKey()).isEqualTo(k);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      s.writeTo(out);
+      assertThat(DiffSummaryKey.readFrom(new ByteArrayInputStream(out.toByteArray())))
+          .isEqualTo(s);
+      assertThat(roundTrip(s)).isEqualTo(s);
+    }
+
+    PatchListKey k = PatchListKey.againstDefaultBase(NEW_ID, Whitespace.IGNORE_NONE);
+    assertThat(DiffSummaryKey.fromPatchListKey(k.withDiffAlgorithm(DiffAlgorithm.MYERS)))
+        .isNotEqualTo(
+            DiffSummaryKey.fromPatchListKey(k.withDiffAlgorithm(DiffAlgorithm.PREFIX_SUFFIX)));
+  }
+
+  private static PatchListKey[] keys() {
+    PatchListKey base = PatchListKey.againstDefaultBase(NEW_ID, Whitespace.IGNORE_NONE);
+    return new PatchListKey[] {
+      base,
+      base.withDiffAlgorithm(DiffAlgorithm.MYERS),
+      base.withDiffAlgorithm(DiffAlgorithm.PREFIX_SUFFIX),
+      PatchListKey.againstParentNum(2, NEW_ID, Whitespace.IGNORE_ALL)
+          .withDiffAlgorithm(DiffAlgorithm.HISTOGRAM),
+      PatchListKey.againstCommit(OLD_ID, NEW_ID, Whitespace.IGNORE_TRAILING)
+          .withDiffAlgorithm(DiffAlgorithm.HISTOGRAM_WITHOUT_FALLBACK),
+    };
+  }
+
+  static Object roundTrip(Object o) throws Exception {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+      out.writeObject(o);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+      return in.readObject();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.RepositoryConfig;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PatchListLoaderTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+  private static final int FILES = 10;
+
+  private InMemoryRepositoryManager repoManager;
+  private RevCommit commit;
+  private ExecutorService executor;
+  private CountDownLatch blocked;
+
+  @Before
+  public void setUp() throws Exception {
+    repoManager = new InMemoryRepositoryManager();
+    InMemoryRepository repo = repoManager.createRepository(PROJECT);
+    TestRepository<InMemoryRepository> tr = new TestRepository<>(repo);
+    TestRepository<InMemoryRepository>.CommitBuilder parent = tr.commit();
+    for (int i = 0; i < FILES; i++) {
+      parent.add("file" + i, "line 1\nline 2\nline 3\n");
+    }
+    TestRepository<InMemoryRepository>.CommitBuilder child = tr.commit().parent(parent.create());
+    for (int i = 0; i < FILES; i++) {
+      child.add("file" + i, "line 1\nline " + i + "\nline 3\n");
+    }
+    commit = child.message("Change all files").create();
+  }
+
+  @After
+  public void tearDown() {
+    if (blocked != null) {
+      blocked.countDown();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void parallelMatchesSerial() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    List<String> serial = describe(load(1, executor));
+    List<String> parallel = describe(load(4, executor));
+    assertThat(serial).hasSize(FILES + 1);
+    assertThat(parallel).containsExactlyElementsIn(serial).inOrder();
+  }
+
+  @Test
+  public void callingThreadTakesFilesAfterTimeout() throws Exception {
+    executor = blockedExecutor();
+    List<String> serial = describe(load(1, executor));
+    List<String> parallel = describe(load(4, executor));
+    assertThat(parallel).containsExactlyElementsIn(serial).inOrder();
+  }
+
+  @Test
+  public void interruptIsRestored() throws Exception {
+    executor = blockedExecutor();
+    Thread.currentThread().interrupt();
+    try {
+      load(4, executor);
+      fail("expected InterruptedIOException");
+    } catch (InterruptedIOException e) {
+      assertThat(Thread.interrupted()).isTrue();
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  private ExecutorService blockedExecutor() {
+    // The only thread waits until tearDown, so diff workers never start.
+    ExecutorService e = Executors.newSingleThreadExecutor();
+    blocked = new CountDownLatch(1);
+    e.submit(
+        () -> {
+          blocked.await();
+          return null;
+        });
+    return e;
+  }
+
+  private PatchList load(int threads, ExecutorService diffExecutor) throws Exception {
+    Config cfg = new Config();
+    cfg.setInt("cache", PatchListCacheImpl.FILE_NAME, "threads", threads);
+    cfg.setString("cache", PatchListCacheImpl.FILE_NAME, "timeout", "10 ms");
+    return new PatchListLoader(
+            repoManager,
+            null,
+            cfg,
+            diffExecutor,
+            new AutoMerger(cfg, new PersonIdent("gerrit", "gerrit@example.com")),
+            new DiffAlgorithmSelector(new RepositoryConfig(cfg), repoManager),
+            new DiffMetrics(new DisabledMetricMaker()),
+            PatchListKey.againstDefaultBase(commit, Whitespace.IGNORE_NONE),
+            PROJECT)
+        .call();
+  }
+
+  private static List<String> describe(PatchList patchList) {
+    List<String> result = new ArrayList<>();
+    for (PatchListEntry e : patchList.getPatches()) {
+      result.add(e.getNewName() + " " + e.getEdits());
+    }
+    return result;
+  }
+}
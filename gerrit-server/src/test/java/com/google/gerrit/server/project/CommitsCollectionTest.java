@@ -40,6 +40,7 @@ import com.google.gerrit.server.util.ThreadLocalRequestContext;
 import com.google.gerrit.testutil.InMemoryDatabase;
 import com.google.gerrit.testutil.InMemoryModule;
 import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import com.google.gerrit.testutil.NoteDbMode;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -47,6 +48,7 @@ import com.google.inject.Provider;
 import com.google.inject.util.Providers;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -78,7 +80,8 @@ public class CommitsCollectionTest {
 
   @Before
   public void setUp() throws Exception {
-    Injector injector = Guice.createInjector(new InMemoryModule());
+    Injector injector =
+        Guice.createInjector(new InMemoryModule(config(), NoteDbMode.newNotesMigrationFromEnv()));
     injector.injectMembers(this);
     lifecycle = new LifecycleManager();
     lifecycle.add(injector);
@@ -230,6 +233,11 @@ public class CommitsCollectionTest {
     assertFalse(commits.canRead(state, r, rw.parseCommit(id1)));
   }
 
+  /** @return server configuration of the test. */
+  protected Config config() {
+    return InMemoryModule.newDefaultConfig();
+  }
+
   private ProjectState readProjectState() throws Exception {
     return projectCache.get(project.getName());
   }
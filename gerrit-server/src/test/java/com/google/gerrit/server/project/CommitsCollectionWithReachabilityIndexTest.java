@@ -0,0 +1,27 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import org.eclipse.jgit.lib.Config;
+
+/** Runs the {@link CommitsCollectionTest} tests through the reachability index. */
+public class CommitsCollectionWithReachabilityIndexTest extends CommitsCollectionTest {
+  @Override
+  protected Config config() {
+    Config cfg = super.config();
+    cfg.setLong("cache", "git_reachability", "memoryLimit", 1 << 20);
+    return cfg;
+  }
+}
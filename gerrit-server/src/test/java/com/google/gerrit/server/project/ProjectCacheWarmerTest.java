@@ -0,0 +1,99 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.reviewdb.client.Project;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectCacheWarmerTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void parentsBeforeChildren() {
+    Map<Project.NameKey, Project.NameKey> parents =
+        ImmutableMap.of(
+            name("child"), name("parent"),
+            name("grandchild"), name("child"),
+            name("parent"), name("All-Projects"),
+            name("other"), name("All-Projects"));
+    TreeMap<Integer, List<Project.NameKey>> levels =
+        ProjectCacheWarmer.byDepth(
+            names("grandchild", "other", "child", "All-Projects", "parent"),
+            n -> n,
+            parents::get);
+
+    assertThat(levels.keySet()).containsExactly(0, 1, 2, 3).inOrder();
+    assertThat(levels.get(0)).containsExactly(name("All-Projects"));
+    assertThat(levels.get(1)).containsExactly(name("parent"), name("other"));
+    assertThat(levels.get(2)).containsExactly(name("child"));
+    assertThat(levels.get(3)).containsExactly(name("grandchild"));
+  }
+
+  @Test
+  public void missingParentsAndCycles() {
+    Map<Project.NameKey, Project.NameKey> parents =
+        ImmutableMap.of(
+            name("orphan"), name("unloaded"),
+            name("a"), name("b"),
+            name("b"), name("a"));
+    TreeMap<Integer, List<Project.NameKey>> levels =
+        ProjectCacheWarmer.byDepth(names("orphan", "a", "b"), n -> n, parents::get);
+
+    // Unloaded parents still count, so the orphan stays below its parent.
+    assertThat(levels.get(1)).contains(name("orphan"));
+    assertThat(levels.values().stream().mapToInt(List::size).sum()).isEqualTo(3);
+  }
+
+  @Test
+  public void hotSetRoundTrip() throws Exception {
+    Path file = tmp.newFolder().toPath().resolve("data").resolve("project_hot_set");
+    assertThat(ProjectCacheWarmer.readHotSet(file, 10)).isEmpty();
+
+    ProjectCacheWarmer.writeHotSet(file, names("foo", "bar/baz", "qux"));
+    assertThat(ProjectCacheWarmer.readHotSet(file, 10))
+        .containsExactly(name("foo"), name("bar/baz"), name("qux"))
+        .inOrder();
+    assertThat(ProjectCacheWarmer.readHotSet(file, 2))
+        .containsExactly(name("foo"), name("bar/baz"))
+        .inOrder();
+    assertThat(Files.exists(file.resolveSibling("project_hot_set.tmp"))).isFalse();
+
+    ProjectCacheWarmer.writeHotSet(file, names("new"));
+    assertThat(ProjectCacheWarmer.readHotSet(file, 10)).containsExactly(name("new"));
+  }
+
+  private static Project.NameKey name(String name) {
+    return new Project.NameKey(name);
+  }
+
+  private static List<Project.NameKey> names(String... names) {
+    ImmutableList.Builder<Project.NameKey> b = ImmutableList.builder();
+    for (String n : names) {
+      b.add(name(n));
+    }
+    return b.build();
+  }
+}
@@ -0,0 +1,159 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.lifecycle.LifecycleManager;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.git.MetaDataUpdate;
+import com.google.gerrit.server.git.ProjectConfig;
+import com.google.gerrit.server.schema.SchemaCreator;
+import com.google.gerrit.testutil.InMemoryDatabase;
+import com.google.gerrit.testutil.InMemoryModule;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.util.Providers;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link ProjectConfigWatcher} and the eviction of inheriting projects. */
+public class ProjectConfigWatcherTest {
+  private static final Project.NameKey PARENT = new Project.NameKey("parent");
+  private static final Project.NameKey CHILD = new Project.NameKey("child");
+  private static final Project.NameKey GRANDCHILD = new Project.NameKey("grandchild");
+  private static final Project.NameKey OTHER = new Project.NameKey("other");
+
+  @Inject private InMemoryDatabase schemaFactory;
+  @Inject private InMemoryRepositoryManager repoManager;
+  @Inject private SchemaCreator schemaCreator;
+  @Inject private MetaDataUpdate.Server metaDataUpdateFactory;
+  @Inject private ProjectCacheImpl projectCache;
+
+  private LifecycleManager lifecycle;
+  private ReviewDb db;
+
+  @Before
+  public void setUp() throws Exception {
+    Injector injector = Guice.createInjector(new InMemoryModule());
+    injector.injectMembers(this);
+    lifecycle = new LifecycleManager();
+    lifecycle.add(injector);
+    lifecycle.start();
+
+    db = schemaFactory.open();
+    schemaCreator.create(db);
+
+    createProject(PARENT, null);
+    createProject(CHILD, PARENT);
+    createProject(GRANDCHILD, CHILD);
+    createProject(OTHER, null);
+    // Parent chains end at All-Projects, which must be cached to be followed.
+    projectCache.getAllProjects();
+  }
+
+  @After
+  public void tearDown() {
+    if (lifecycle != null) {
+      lifecycle.stop();
+    }
+    if (db != null) {
+      db.close();
+    }
+    InMemoryDatabase.drop(schemaFactory);
+  }
+
+  @Test
+  public void evictWithChildren() throws Exception {
+    ProjectState parent = projectCache.get(PARENT);
+    ProjectState child = projectCache.get(CHILD);
+    ProjectState grandchild = projectCache.get(GRANDCHILD);
+    ProjectState other = projectCache.get(OTHER);
+
+    projectCache.evictWithChildren(CHILD);
+    assertThat(projectCache.get(PARENT)).isSameAs(parent);
+    assertThat(projectCache.get(CHILD)).isNotSameAs(child);
+    assertThat(projectCache.get(GRANDCHILD)).isNotSameAs(grandchild);
+    assertThat(projectCache.get(OTHER)).isSameAs(other);
+  }
+
+  @Test
+  public void evictWithChildrenWhenParentChainIsNotCached() throws Exception {
+    projectCache.get(PARENT);
+    ProjectState grandchild = projectCache.get(GRANDCHILD);
+    ProjectState other = projectCache.get(OTHER);
+    projectCache.evict(CHILD);
+
+    // Without the child in the cache, the grandchild may inherit from the parent.
+    projectCache.evictWithChildren(PARENT);
+    assertThat(projectCache.get(GRANDCHILD)).isNotSameAs(grandchild);
+    assertThat(projectCache.get(OTHER)).isSameAs(other);
+  }
+
+  @Test
+  public void configUpdateEvictsInheritingProjects() throws Exception {
+    Config cfg = new Config();
+    cfg.setBoolean("cache", "projects", "watchConfig", true);
+    ProjectConfigWatcher watcher = new ProjectConfigWatcher(Providers.of(projectCache), cfg);
+    ProjectState child = projectCache.get(CHILD);
+    ProjectState other = projectCache.get(OTHER);
+
+    watcher.onGitReferenceUpdated(event(PARENT, "refs/heads/master"));
+    assertThat(projectCache.get(CHILD)).isSameAs(child);
+
+    watcher.onGitReferenceUpdated(event(PARENT, RefNames.REFS_CONFIG));
+    assertThat(projectCache.get(CHILD)).isNotSameAs(child);
+    assertThat(projectCache.get(OTHER)).isSameAs(other);
+  }
+
+  @Test
+  public void disabledByDefault() throws Exception {
+    ProjectConfigWatcher watcher =
+        new ProjectConfigWatcher(Providers.of(projectCache), new Config());
+    ProjectState parent = projectCache.get(PARENT);
+
+    watcher.onGitReferenceUpdated(event(PARENT, RefNames.REFS_CONFIG));
+    assertThat(projectCache.get(PARENT)).isSameAs(parent);
+  }
+
+  private void createProject(Project.NameKey name, Project.NameKey parent) throws Exception {
+    ProjectConfig cfg = new ProjectConfig(name);
+    cfg.load(repoManager.createRepository(name));
+    if (parent != null) {
+      cfg.getProject().setParentName(parent);
+    }
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(name)) {
+      cfg.commit(md);
+    }
+  }
+
+  private static GitReferenceUpdatedListener.Event event(Project.NameKey project, String ref) {
+    GitReferenceUpdatedListener.Event e = createNiceMock(GitReferenceUpdatedListener.Event.class);
+    expect(e.getProjectName()).andReturn(project.get()).anyTimes();
+    expect(e.getRefName()).andReturn(ref).anyTimes();
+    replay(e);
+    return e;
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.common.data.AccessSection;
+import com.google.gerrit.reviewdb.client.Project;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.junit.Test;
+
+public class RefPatternIndexTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+
+  @Test
+  public void exactAndPrefix() {
+    RefPatternIndex index =
+        index("refs/*", "refs/heads/*", "refs/heads/master", "refs/heads/master/*", "refs/tags/*");
+
+    assertThat(match(index, "refs/heads/master")).isEqualTo(bits(0, 1, 2));
+    assertThat(match(index, "refs/heads/master/x")).isEqualTo(bits(0, 1, 3));
+    assertThat(match(index, "refs/heads/stable")).isEqualTo(bits(0, 1));
+    assertThat(match(index, "refs/heads/")).isEqualTo(bits(0, 1));
+    assertThat(match(index, "refs/tags/v1")).isEqualTo(bits(0, 4));
+    assertThat(match(index, "HEAD")).isEqualTo(bits());
+  }
+
+  @Test
+  public void regularExpressions() {
+    RefPatternIndex index =
+        index(
+            "^refs/heads/rel-[0-9]+",
+            "^refs/heads/(foo|bar)/.*",
+            "^refs/heads/\\d+",
+            "refs/heads/rel-1");
+
+    assertThat(match(index, "refs/heads/rel-1")).isEqualTo(bits(0, 3));
+    assertThat(match(index, "refs/heads/rel-x")).isEqualTo(bits());
+    assertThat(match(index, "refs/heads/bar/baz")).isEqualTo(bits(1));
+    assertThat(match(index, "refs/heads/123")).isEqualTo(bits(2));
+    assertThat(match(index, "refs/heads/d")).isEqualTo(bits());
+  }
+
+  @Test
+  public void possessiveQuantifiersUseJavaRegex() {
+    RefPatternIndex index = index("^refs/heads/a*+a", "^refs/heads/[0-9]++", "^refs/heads/x?+x");
+
+    // A possessive quantifier keeps everything it matched, so these never match.
+    assertThat(match(index, "refs/heads/aa")).isEqualTo(bits());
+    assertThat(match(index, "refs/heads/x")).isEqualTo(bits());
+    assertThat(match(index, "refs/heads/12")).isEqualTo(bits(1));
+  }
+
+  @Test
+  public void parametersMatchPrefix() {
+    RefPatternIndex index = index("refs/heads/sandbox/${username}/*", "refs/heads/*");
+
+    assertThat(match(index, "refs/heads/sandbox/joe/x")).isEqualTo(bits(0, 1));
+    assertThat(match(index, "refs/heads/master")).isEqualTo(bits(1));
+  }
+
+  private static RefPatternIndex index(String... patterns) {
+    List<SectionMatcher> sections = new ArrayList<>();
+    for (String p : patterns) {
+      sections.add(SectionMatcher.wrap(PROJECT, new AccessSection(p)));
+    }
+    return new RefPatternIndex(sections);
+  }
+
+  private static BitSet match(RefPatternIndex index, String ref) {
+    BitSet result = new BitSet();
+    index.match(ref, result);
+    return result;
+  }
+
+  private static BitSet bits(int... bits) {
+    BitSet result = new BitSet();
+    for (int b : bits) {
+      result.set(b);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.LabelId;
+import com.google.gerrit.reviewdb.client.PatchSet;
+import com.google.gerrit.reviewdb.client.PatchSetApproval;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.testutil.TestChanges;
+import java.sql.Timestamp;
+import java.util.List;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubmitRecordCacheTest {
+  private static final Account.Id OWNER = new Account.Id(1);
+  private static final SubmitRuleOptions OPTS = SubmitRuleOptions.defaults().build();
+  private static final ObjectId CONFIG =
+      ObjectId.fromString("1111111111111111111111111111111111111111");
+
+  private Change change;
+  private PatchSet ps1;
+  private PatchSet ps2;
+
+  @Before
+  public void setUp() {
+    change = TestChanges.newChange(new Project.NameKey("project"), OWNER, 1);
+    ps1 =
+        TestChanges.newPatchSet(
+            new PatchSet.Id(change.getId(), 1), "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef", OWNER);
+    ps2 =
+        TestChanges.newPatchSet(
+            new PatchSet.Id(change.getId(), 2), "cafebabecafebabecafebabecafebabecafebabe", OWNER);
+  }
+
+  @Test
+  public void sameInputsGiveSameKey() {
+    assertThat(key(ps2, approvals(1), configs(CONFIG), true, "1"))
+        .isEqualTo(key(ps2, approvals(1), configs(CONFIG), true, "1"));
+  }
+
+  @Test
+  public void patchSetIsPartOfKey() {
+    assertThat(key(ps1, approvals(1), configs(CONFIG), false, null))
+        .isNotEqualTo(key(ps2, approvals(1), configs(CONFIG), false, null));
+  }
+
+  @Test
+  public void approvalsArePartOfKey() {
+    assertThat(key(ps2, approvals(1), configs(CONFIG), false, null))
+        .isNotEqualTo(key(ps2, approvals(-1), configs(CONFIG), false, null));
+    assertThat(key(ps2, approvals(1), configs(CONFIG), false, null))
+        .isNotEqualTo(key(ps2, ImmutableList.of(), configs(CONFIG), false, null));
+  }
+
+  @Test
+  public void configRevisionsArePartOfKey() {
+    ObjectId bumped = ObjectId.fromString("2222222222222222222222222222222222222222");
+    assertThat(key(ps2, approvals(1), configs(CONFIG), false, null))
+        .isNotEqualTo(key(ps2, approvals(1), configs(bumped), false, null));
+    assertThat(key(ps2, approvals(1), configs(CONFIG), false, null))
+        .isNotEqualTo(key(ps2, approvals(1), configs(CONFIG, bumped), false, null));
+  }
+
+  @Test
+  public void userIsPartOfKeyOnlyWithCustomRules() {
+    assertThat(key(ps2, approvals(1), configs(CONFIG), true, "1"))
+        .isNotEqualTo(key(ps2, approvals(1), configs(CONFIG), true, "2"));
+    assertThat(key(ps2, approvals(1), configs(CONFIG), false, "1"))
+        .isEqualTo(key(ps2, approvals(1), configs(CONFIG), false, "2"));
+  }
+
+  private String key(
+      PatchSet ps,
+      List<PatchSetApproval> approvals,
+      List<ObjectId> configs,
+      boolean customRules,
+      String user) {
+    return SubmitRecordCache.key(
+        "submit_rule", OPTS, change, null, ps, approvals, configs, customRules, user);
+  }
+
+  private List<PatchSetApproval> approvals(int value) {
+    return ImmutableList.of(
+        new PatchSetApproval(
+            new PatchSetApproval.Key(ps2.getId(), OWNER, new LabelId("Code-Review")),
+            (short) value,
+            new Timestamp(1000)));
+  }
+
+  private static List<ObjectId> configs(ObjectId... revisions) {
+    return ImmutableList.copyOf(revisions);
+  }
+}
@@ -1053,6 +1053,34 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     assertQuery(newQuery("status:new limit:2").withStart(3));
   }
 
+  @Test
+  public void searchAfter() throws Exception {
+    TestRepository<Repo> repo = createProject("repo");
+    List<Change> changes = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      changes.add(insert(repo, newChange(repo)));
+    }
+
+    List<ChangeInfo> results =
+        assertQuery(newQuery("status:new limit:2"), changes.get(4), changes.get(3));
+    String token = results.get(1)._searchAfter;
+    assertThat(token).isNotNull();
+
+    results =
+        assertQuery(
+            newQuery("status:new limit:2").withSearchAfter(token), changes.get(2), changes.get(1));
+    token = results.get(1)._searchAfter;
+    assertThat(token).isNotNull();
+
+    results = assertQuery(newQuery("status:new limit:2").withSearchAfter(token), changes.get(0));
+    assertThat(results.get(0)._moreChanges).isNull();
+    assertThat(results.get(0)._searchAfter).isNull();
+
+    assertThatQueryException(newQuery("status:new").withSearchAfter("bogus"))
+        .hasMessageThat()
+        .isEqualTo("Invalid search-after token: bogus");
+  }
+
   @Test
   public void maxPages() throws Exception {
     TestRepository<Repo> repo = createProject("repo");
@@ -1732,6 +1760,39 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     assertQuery("conflicts:" + change4.getId().get());
   }
 
+  @Test
+  public void conflictsFollowIndexedChanges() throws Exception {
+    TestRepository<Repo> repo = createProject("repo");
+    RevCommit commit1 = repo.parseBody(repo.commit().add("file1", "contents1").create());
+    RevCommit commit2 = repo.parseBody(repo.commit().add("file2", "contents2").create());
+    Change change1 = insert(repo, newChangeForCommit(repo, commit1));
+    insert(repo, newChangeForCommit(repo, commit2));
+    assertQuery("conflicts:" + change1.getId().get());
+
+    RevCommit commit3 = repo.parseBody(repo.commit().add("file1", "contents3").create());
+    Change change3 = insert(repo, newChangeForCommit(repo, commit3));
+    assertQuery("conflicts:" + change1.getId().get(), change3);
+
+    gApi.changes().id(change3.getChangeId()).abandon();
+    assertQuery("conflicts:" + change1.getId().get());
+  }
+
+  @Test
+  public void conflictsFollowNewPatchSets() throws Exception {
+    TestRepository<Repo> repo = createProject("repo");
+    RevCommit commit1 = repo.parseBody(repo.commit().add("file1", "contents1").create());
+    RevCommit commit2 = repo.parseBody(repo.commit().add("file1", "contents2").create());
+    Change change1 = insert(repo, newChangeForCommit(repo, commit1));
+    Change change2 = insert(repo, newChangeForCommit(repo, commit2));
+    assertQuery("conflicts:" + change1.getId().get(), change2);
+
+    // The new patch set only touches file2, so only change2 is re-read and
+    // dropped from the candidates; the rest of the branch is kept.
+    newPatchSet(repo, change2);
+    assertQuery("conflicts:" + change1.getId().get());
+    assertQuery("conflicts:" + change2.getId().get());
+  }
+
   @Test
   public void reviewedBy() throws Exception {
     resetTimeWithClockStep(2, MINUTES);
@@ -2078,6 +2139,39 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     cd.currentApprovals();
   }
 
+  @Test
+  public void prepopulatePartialFieldsWithoutChange() throws Exception {
+    assume().that(notesMigration.readChanges()).isFalse();
+    TestRepository<Repo> repo = createProject("repo");
+    Change change1 = insert(repo, newChange(repo));
+    Change change2 = insert(repo, newChange(repo));
+    change2 = newPatchSet(repo, change2);
+
+    db = new DisabledReviewDb();
+    requestContext.setContext(newRequestContext(userId));
+    // The internal query does not check visibility, which would read the change.
+    List<ChangeData> cds =
+        queryProvider
+            .get()
+            .setRequestedFields(
+                ImmutableSet.of(
+                    ChangeField.LEGACY_ID.getName(),
+                    ChangeField.PROJECT.getName(),
+                    ChangeField.PATCH_SET.getName()))
+            .byProject(change1.getProject());
+    assertThat(cds.stream().map(ChangeData::getId).collect(toList()))
+        .containsExactly(change2.getId(), change1.getId())
+        .inOrder();
+
+    ChangeData cd = cds.get(0);
+    assertThat(cd.project()).isEqualTo(change2.getProject());
+    assertThat(cd.patchSets().stream().map(PatchSet::getId).collect(toList()))
+        .containsExactly(new PatchSet.Id(change2.getId(), 1), new PatchSet.Id(change2.getId(), 2));
+
+    exception.expect(DisabledReviewDb.Disabled.class);
+    cd.change();
+  }
+
   @Test
   public void reindexIfStale() throws Exception {
     Account.Id user = createAccount("user");
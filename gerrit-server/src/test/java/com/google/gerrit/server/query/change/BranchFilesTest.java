@@ -0,0 +1,69 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.query.change;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.reviewdb.client.Change;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class BranchFilesTest {
+  private static final Change.Id ID1 = new Change.Id(1);
+  private static final Change.Id ID2 = new Change.Id(2);
+  private static final Change.Id ID3 = new Change.Id(3);
+
+  @Test
+  public void touching() {
+    BranchFiles files =
+        BranchFiles.create(
+            ImmutableMap.of(
+                ID1, ImmutableSet.of("a", "b"),
+                ID2, ImmutableSet.of("b", "c")));
+    assertThat(files.touching(ImmutableList.of("a"))).containsExactly(ID1);
+    assertThat(files.touching(ImmutableList.of("b"))).containsExactly(ID1, ID2);
+    assertThat(files.touching(ImmutableList.of("a", "c"))).containsExactly(ID1, ID2);
+    assertThat(files.touching(ImmutableList.of("d"))).isEmpty();
+    assertThat(files.weight()).isEqualTo(5);
+  }
+
+  @Test
+  public void update() {
+    BranchFiles files =
+        BranchFiles.create(
+            ImmutableMap.of(
+                ID1, ImmutableSet.of("a"),
+                ID2, ImmutableSet.of("b")));
+
+    Map<Change.Id, ImmutableSet<String>> updates = new HashMap<>();
+    updates.put(ID1, null);
+    updates.put(ID2, ImmutableSet.of("c"));
+    updates.put(ID3, ImmutableSet.of("a"));
+    BranchFiles updated = files.update(updates);
+
+    assertThat(updated.contains(ID1)).isFalse();
+    assertThat(updated.touching(ImmutableList.of("a"))).containsExactly(ID3);
+    assertThat(updated.touching(ImmutableList.of("b"))).isEmpty();
+    assertThat(updated.touching(ImmutableList.of("c"))).containsExactly(ID2);
+
+    // The original is unchanged.
+    assertThat(files.contains(ID1)).isTrue();
+    assertThat(files.touching(ImmutableList.of("b"))).containsExactly(ID2);
+  }
+}
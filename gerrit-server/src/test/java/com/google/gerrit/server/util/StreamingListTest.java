@@ -0,0 +1,56 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import java.util.Iterator;
+import java.util.Map;
+import org.junit.Test;
+
+public class StreamingListTest {
+  @Test
+  public void streamOnce() {
+    StreamingList<String> list = new StreamingList<>(ImmutableList.of("a", "b").iterator());
+    assertThat(ImmutableList.copyOf(list.elements())).containsExactly("a", "b").inOrder();
+    try {
+      list.size();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageThat().isEqualTo("elements were already streamed");
+    }
+  }
+
+  @Test
+  public void readBeforeStream() {
+    StreamingList<String> list = new StreamingList<>(ImmutableList.of("a", "b").iterator());
+    assertThat(list).containsExactly("a", "b").inOrder();
+    assertThat(ImmutableList.copyOf(list.elements())).containsExactly("a", "b").inOrder();
+  }
+
+  @Test
+  public void mapKeepsOrder() {
+    Iterator<Map.Entry<String, Integer>> src =
+        ImmutableMap.of("b", 1, "a", 2).entrySet().iterator();
+    StreamingMap<String, Integer> map = new StreamingMap<>(src);
+    assertThat(map.get("a")).isEqualTo(2);
+    assertThat(map.keySet()).containsExactly("b", "a").inOrder();
+    assertThat(Iterators.size(map.elements())).isEqualTo(2);
+  }
+}
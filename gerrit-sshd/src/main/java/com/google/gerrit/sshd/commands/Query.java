@@ -92,6 +92,16 @@ public class Query extends SshCommand {
     processor.setStart(start);
   }
 
+  @Option(
+    name = "--search-after",
+    aliases = {"-N"},
+    metaVar = "TOKEN",
+    usage = "Continue after the last change of a previous query"
+  )
+  void setSearchAfter(String token) {
+    processor.setSearchAfter(token);
+  }
+
   @Argument(
     index = 0,
     required = true,
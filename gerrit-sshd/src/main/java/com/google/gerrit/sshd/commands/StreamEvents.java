@@ -23,18 +23,23 @@ import com.google.gerrit.extensions.annotations.RequiresCapability;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.registration.RegistrationHandle;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventLog;
 import com.google.gerrit.server.events.EventTypes;
 import com.google.gerrit.server.events.ProjectNameKeySerializer;
 import com.google.gerrit.server.events.SupplierSerializer;
 import com.google.gerrit.server.git.WorkQueue.CancelableRunnable;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.gerrit.sshd.BaseCommand;
 import com.google.gerrit.sshd.CommandMetaData;
 import com.google.gerrit.sshd.StreamCommandExecutor;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -67,15 +72,32 @@ final class StreamEvents extends BaseCommand {
   )
   private List<String> subscribedToEvents = new ArrayList<>();
 
+  @Option(
+    name = "--resume-from",
+    metaVar = "SEQ",
+    usage = "replay events recorded in the event log starting at sequence number SEQ"
+  )
+  private Long resumeFrom;
+
   @Inject private IdentifiedUser currentUser;
 
   @Inject private DynamicSet<UserScopedEventListener> eventListeners;
 
   @Inject @StreamCommandExecutor private ScheduledThreadPoolExecutor pool;
 
+  @Inject private EventLog eventLog;
+
+  @Inject private OneOffRequestContext requestContext;
+
   /** Queue of events to stream to the connected user. */
   private final LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>(MAX_EVENTS);
 
+  /**
+   * Sequence number of the next event to read from {@link #eventLog}; only used while the event
+   * log is enabled, otherwise events are passed through {@link #queue}.
+   */
+  private long next = -1;
+
   private Gson gson;
 
   private RegistrationHandle eventListenerRegistration;
@@ -97,7 +119,11 @@ final class StreamEvents extends BaseCommand {
       new CancelableRunnable() {
         @Override
         public void run() {
-          writeEvents();
+          if (next >= 0) {
+            writeLoggedEvents();
+          } else {
+            writeEvents();
+          }
         }
 
         @Override
@@ -130,6 +156,9 @@ final class StreamEvents extends BaseCommand {
 
   private PrintWriter stdout;
 
+  /** True if writing an event from {@link #eventLog} to the output failed. */
+  private volatile boolean outputError;
+
   @Override
   public void start(Environment env) throws IOException {
     try {
@@ -145,7 +174,27 @@ final class StreamEvents extends BaseCommand {
       return;
     }
 
+    if (resumeFrom != null && !eventLog.isEnabled()) {
+      err.write("fatal: --resume-from requires eventLog.enabled\n".getBytes(UTF_8));
+      err.flush();
+      onExit(1);
+      return;
+    }
+
     stdout = toPrintWriter(out);
+    gson =
+        new GsonBuilder()
+            .registerTypeAdapter(Supplier.class, new SupplierSerializer())
+            .registerTypeAdapter(Project.NameKey.class, new ProjectNameKeySerializer())
+            .create();
+
+    if (eventLog.isEnabled()) {
+      next = resumeFrom != null ? Math.max(resumeFrom, 1) : eventLog.nextSequence();
+      eventListenerRegistration = eventLog.addListener(this::schedule);
+      schedule();
+      return;
+    }
+
     eventListenerRegistration =
         eventListeners.add(
             new UserScopedEventListener() {
@@ -161,12 +210,6 @@ final class StreamEvents extends BaseCommand {
                 return currentUser;
               }
             });
-
-    gson =
-        new GsonBuilder()
-            .registerTypeAdapter(Supplier.class, new SupplierSerializer())
-            .registerTypeAdapter(Project.NameKey.class, new ProjectNameKeySerializer())
-            .create();
   }
 
   private void removeEventListenerRegistration() {
@@ -217,6 +260,14 @@ final class StreamEvents extends BaseCommand {
     }
   }
 
+  private void schedule() {
+    synchronized (taskLock) {
+      if (task == null && !done) {
+        task = pool.submit(writer);
+      }
+    }
+  }
+
   private Event poll() {
     synchronized (taskLock) {
       Event event = queue.poll();
@@ -269,6 +320,65 @@ final class StreamEvents extends BaseCommand {
     }
   }
 
+  private void writeLoggedEvents() {
+    if (Thread.interrupted() || stdout.checkError() || outputError) {
+      removeEventListenerRegistration();
+      flush();
+      onExit(0);
+      return;
+    }
+
+    long end = eventLog.nextSequence();
+    List<EventLog.Entry> entries = eventLog.read(next, BATCH_SIZE);
+    if (entries.isEmpty() && next < end) {
+      // The remaining events cannot be read back; skip them instead of retrying forever.
+      write(new DroppedOutputEvent());
+      next = end;
+    } else if (!entries.isEmpty()) {
+      if (entries.get(0).seq > next) {
+        // Requested events were already deleted from the log.
+        write(new DroppedOutputEvent());
+        flush();
+      }
+      try (ManualRequestContext ctx = requestContext.open()) {
+        ReviewDb db = ctx.getReviewDbProvider().get();
+        for (EventLog.Entry e : entries) {
+          if ((subscribedToEvents.isEmpty() || subscribedToEvents.contains(e.type))
+              && eventLog.isVisibleTo(e, currentUser, db)) {
+            write(e);
+          }
+        }
+      } catch (OrmException e) {
+        log.error("Cannot check visibility of events", e);
+        removeEventListenerRegistration();
+        flush();
+        onExit(1);
+        return;
+      }
+      next = entries.get(entries.size() - 1).seq + 1;
+    }
+    flush();
+
+    synchronized (taskLock) {
+      // Events appended since the read, even if it returned nothing, did not schedule a new task
+      // while this one was set.
+      boolean more = next < eventLog.nextSequence();
+      task = !done && more ? pool.submit(writer) : null;
+    }
+  }
+
+  private void write(EventLog.Entry e) {
+    synchronized (stdout) {
+      // Pass the shared serialized bytes through unchanged.
+      try {
+        out.write(e.json);
+        out.write('\n');
+      } catch (IOException err) {
+        outputError = true;
+      }
+    }
+  }
+
   private void write(Object message) {
     String msg = null;
     try {